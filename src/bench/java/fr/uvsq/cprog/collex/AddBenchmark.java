@@ -0,0 +1,93 @@
+package fr.uvsq.cprog.collex;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of Dns.addItem, persistence included, on a copy of a synthetic database. The rewrite
+ * mode costs a full file rewrite per add; select it with {@code -p persistence=rewrite}, or the
+ * sharded mode, appending to one of 16 shard files, with {@code -p persistence=sharded}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class AddBenchmark {
+  @Param({"10000", "1000000", "10000000"})
+  private int entries;
+
+  @Param({"journal"})
+  private String persistence;
+
+  private Path directory;
+  private Dns dns;
+  private int next;
+
+  /**
+   * Loads a private copy of the database with the selected persistence mode.
+   *
+   * @throws Exception if the database cannot be copied or loaded
+   */
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    directory = Files.createTempDirectory("dns-add");
+    Path database = directory.resolve("dns-database.txt");
+    Files.copy(SyntheticDatabase.cached(entries), database, StandardCopyOption.REPLACE_EXISTING);
+    DnsStorage storage;
+    switch (persistence) {
+      case "rewrite":
+        storage = new TextFileStorage(database);
+        break;
+      case "sharded":
+        storage = new ShardedStorage(new TextFileStorage(database),
+            ShardedStorage.DEFAULT_SHARD_COUNT);
+        break;
+      default:
+        storage = new JournalStorage(database, JournalStorage.DEFAULT_COMPACTION_THRESHOLD);
+        break;
+    }
+    dns = new Dns(storage);
+    next = entries;
+  }
+
+  /**
+   * Closes the database and deletes its copy.
+   *
+   * @throws Exception if the files cannot be deleted
+   */
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    dns.close();
+    try (Stream<Path> paths = Files.walk(directory)) {
+      for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+        Files.delete(path);
+      }
+    }
+  }
+
+  @Benchmark
+  public void addItem() throws DnsException {
+    int host = next++;
+    dns.addItem(new AdresseIP(SyntheticDatabase.ip(host)),
+        new NomMachine(SyntheticDatabase.name(host)));
+  }
+}
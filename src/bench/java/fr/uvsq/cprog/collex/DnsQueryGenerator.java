@@ -0,0 +1,118 @@
+package fr.uvsq.cprog.collex;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Load generator for DnsUdpServer, sending a mix of A and PTR queries for the entries of a
+ * database file and keeping a fixed number of queries in flight.
+ *
+ * <p>Usage: {@code java -cp target/classes fr.uvsq.cprog.collex.DnsQueryGenerator
+ * [port database seconds window]}. Without a port, a server is started on the loopback interface
+ * with a synthetic database of 100,000 entries.
+ */
+public class DnsQueryGenerator {
+  private DnsQueryGenerator() {
+  }
+
+  /**
+   * Runs the load test and prints the answered queries per second.
+   *
+   * @param args the server port, the database file, the duration and the window
+   * @throws Exception if the load test cannot run
+   */
+  public static void main(String[] args) throws Exception {
+    int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+    int window = args.length > 3 ? Integer.parseInt(args[3]) : 64;
+    Path database;
+    DnsUdpServer server = null;
+    if (args.length > 1) {
+      database = Paths.get(args[1]);
+    } else {
+      database = Files.createTempFile("dns-udp", ".txt");
+      database.toFile().deleteOnExit();
+      SyntheticDatabase.write(database, 100_000);
+      server = DnsUdpServer.onLoopback(new Dns(database), 0);
+      server.start(Runtime.getRuntime().availableProcessors());
+    }
+    int port = server != null ? server.getLocalAddress().getPort() : Integer.parseInt(args[0]);
+
+    List<byte[]> queries = queries(database);
+    try (DatagramChannel channel = DatagramChannel.open();
+        Selector selector = Selector.open()) {
+      channel.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+      channel.configureBlocking(false);
+      channel.register(selector, SelectionKey.OP_READ);
+      ByteBuffer response = ByteBuffer.allocateDirect(DnsUdpServer.MAX_MESSAGE);
+      ThreadLocalRandom random = ThreadLocalRandom.current();
+
+      long answered = 0;
+      long timeouts = 0;
+      long end = System.nanoTime() + seconds * 1_000_000_000L;
+      int inFlight = 0;
+      while (System.nanoTime() < end) {
+        while (inFlight < window) {
+          channel.write(ByteBuffer.wrap(queries.get(random.nextInt(queries.size()))));
+          inFlight++;
+        }
+        if (selector.select(100) == 0) {
+          timeouts += inFlight; // Consider the outstanding queries lost
+          inFlight = 0;
+          continue;
+        }
+        selector.selectedKeys().clear();
+        response.clear();
+        while (channel.read(response) > 0) {
+          answered++;
+          inFlight--;
+          response.clear();
+        }
+      }
+      System.out.printf("%,d réponses en %d s : %,.0f requêtes/s, %,d perdues%n",
+          answered, seconds, answered / (double) seconds, timeouts);
+    } finally {
+      if (server != null) {
+        server.close();
+      }
+    }
+  }
+
+  private static List<byte[]> queries(Path database) throws Exception {
+    List<byte[]> queries = new ArrayList<>();
+    new DnsLoader().load(database, item -> {
+      if (queries.size() < 200_000) {
+        String name = item.getNomMachine().getNomQualifie();
+        queries.add(encode(queries.size(), name, DnsUdpServer.TYPE_A));
+        int ip = item.getAdresseIp().toInt();
+        String reverse = (ip & 0xFF) + "." + ((ip >>> 8) & 0xFF) + "."
+            + ((ip >>> 16) & 0xFF) + "." + (ip >>> 24) + ".in-addr.arpa";
+        queries.add(encode(queries.size(), reverse, DnsUdpServer.TYPE_PTR));
+      }
+    });
+    return queries;
+  }
+
+  private static byte[] encode(int id, String name, int type) {
+    ByteBuffer buffer = ByteBuffer.allocate(DnsUdpServer.MAX_MESSAGE);
+    buffer.putShort((short) id).putShort((short) 0x0100).putShort((short) 1)
+        .putShort((short) 0).putShort((short) 0).putShort((short) 0);
+    for (String label : name.split("\\.")) {
+      buffer.put((byte) label.length()).put(label.getBytes(StandardCharsets.US_ASCII));
+    }
+    buffer.put((byte) 0).putShort((short) type).putShort((short) DnsUdpServer.CLASS_IN);
+    byte[] query = new byte[buffer.position()];
+    buffer.flip().get(query);
+    return query;
+  }
+}
@@ -0,0 +1,59 @@
+package fr.uvsq.cprog.collex;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+
+/**
+ * Measures the memory taken per entry by a Dns instance loaded from a synthetic database, with
+ * the entries on the heap and outside the heap: heap retained after a full collection, and
+ * direct buffers.
+ *
+ * <p>Usage: {@code java -Xmx8g -cp target/benchmarks.jar fr.uvsq.cprog.collex.EntryFootprint
+ * [entries]}, 1,000,000 entries by default.
+ */
+public class EntryFootprint {
+  private EntryFootprint() {
+  }
+
+  /**
+   * Loads the database once per store and prints the bytes per entry.
+   *
+   * @param args the number of entries
+   * @throws Exception if the database cannot be written or loaded
+   */
+  public static void main(String[] args) throws Exception {
+    int entries = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+    Path database = SyntheticDatabase.cached(entries);
+    for (boolean offHeap : new boolean[] {true, false}) {
+      long heapBefore = usedHeap();
+      long directBefore = usedDirect();
+      Dns dns = new Dns(new TextFileStorage(database), false, offHeap);
+      long heap = usedHeap() - heapBefore;
+      long direct = usedDirect() - directBefore;
+      System.out.printf("%-10s %,d entrées : tas %,d o/entrée, hors tas %,d o/entrée, "
+              + "total %,d o/entrée%n", offHeap ? "hors tas" : "tas", entries, heap / entries,
+          direct / entries, (heap + direct) / entries);
+      dns.close();
+      dns = null;
+    }
+  }
+
+  private static long usedHeap() throws InterruptedException {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+      Thread.sleep(100);
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  private static long usedDirect() {
+    for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+      if (pool.getName().equals("direct")) {
+        return pool.getMemoryUsed();
+      }
+    }
+    return 0;
+  }
+}
@@ -0,0 +1,90 @@
+package fr.uvsq.cprog.collex;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Measures the throughput of concurrent Dns.addItem calls on the journal storage, each add
+ * written and forced on its own or merged with the others by a GroupCommitStorage.
+ *
+ * <p>Usage: {@code java -cp target/benchmarks.jar fr.uvsq.cprog.collex.GroupCommitTiming
+ * [seconds]}, 2 seconds per configuration by default.
+ */
+public class GroupCommitTiming {
+  private static final int ENTRIES = 100_000;
+  private static final int[] THREADS = {1, 4, 16, 64};
+
+  private GroupCommitTiming() {
+  }
+
+  /**
+   * Times every configuration for every number of writer threads.
+   *
+   * @param args the duration of each measure in seconds
+   * @throws Exception if a database cannot be written or loaded
+   */
+  public static void main(String[] args) throws Exception {
+    int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 2;
+    for (int threads : THREADS) {
+      time("direct + sync", threads, seconds, null);
+      for (GroupCommitStorage.Durability durability : GroupCommitStorage.Durability.values()) {
+        time("groupé " + durability, threads, seconds, durability);
+      }
+    }
+  }
+
+  private static void time(String label, int threads, int seconds,
+      GroupCommitStorage.Durability durability) throws Exception {
+    Path directory = Files.createTempDirectory("dns-group");
+    try {
+      Path database = directory.resolve("dns-database.txt");
+      Files.copy(SyntheticDatabase.cached(ENTRIES), database);
+      JournalStorage journal = new JournalStorage(database, Long.MAX_VALUE);
+      DnsStorage storage = durability == null ? journal
+          : new GroupCommitStorage(journal, 0, durability,
+              GroupCommitStorage.DEFAULT_SYNC_INTERVAL_MILLIS);
+      Dns dns = new Dns(storage);
+
+      AtomicInteger next = new AtomicInteger(ENTRIES);
+      long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+      List<Thread> writers = new ArrayList<>();
+      for (int t = 0; t < threads; t++) {
+        Thread writer = new Thread(() -> {
+          try {
+            while (System.nanoTime() < deadline) {
+              int host = next.getAndIncrement();
+              dns.addItem(new AdresseIP(SyntheticDatabase.ip(host)),
+                  new NomMachine(SyntheticDatabase.name(host)));
+              if (durability == null) {
+                journal.sync(); // Same durability as the batch mode, one sync per add
+              }
+            }
+          } catch (DnsException e) {
+            e.printStackTrace();
+          }
+        });
+        writer.start();
+        writers.add(writer);
+      }
+      for (Thread writer : writers) {
+        writer.join();
+      }
+      dns.close();
+
+      int added = next.get() - ENTRIES;
+      System.out.printf("%-16s %3d threads : %,9d ajouts/s%n",
+          label, threads, added / seconds);
+    } finally {
+      try (Stream<Path> paths = Files.walk(directory)) {
+        for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+          Files.delete(path);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,42 @@
+package fr.uvsq.cprog.collex;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time to load a synthetic database, from the file to ready indexes.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+public class LoadBenchmark {
+  @Param({"10000", "1000000", "10000000"})
+  private int entries;
+
+  private Path database;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    database = SyntheticDatabase.cached(entries);
+  }
+
+  @Benchmark
+  public Dns loadDatabase() throws DnsException {
+    return new Dns(database);
+  }
+}
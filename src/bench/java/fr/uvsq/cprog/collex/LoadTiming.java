@@ -0,0 +1,50 @@
+package fr.uvsq.cprog.collex;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Measures the time-to-ready of a Dns instance loading a synthetic database, first from the text
+ * file and then from the binary snapshot written by that first load.
+ *
+ * <p>Usage: {@code java -cp target/classes fr.uvsq.cprog.collex.LoadTiming 1000000 10000000}
+ */
+public class LoadTiming {
+  private LoadTiming() {
+  }
+
+  /**
+   * Generates one database per size given on the command line and times its loading.
+   *
+   * @param args the database sizes, 1M and 10M lines by default
+   * @throws Exception if a database cannot be written or loaded
+   */
+  public static void main(String[] args) throws Exception {
+    String[] sizes = args.length > 0 ? args : new String[] {"1000000", "10000000"};
+    for (String size : sizes) {
+      int entries = Integer.parseInt(size);
+      Path path = Files.createTempFile("dns-load", ".txt");
+      Path snapshot = BinarySnapshot.pathFor(path);
+      try {
+        SyntheticDatabase.write(path, entries);
+        time("texte", entries, path, path);
+        time("instantané", entries, path, snapshot);
+      } finally {
+        Files.deleteIfExists(path);
+        Files.deleteIfExists(snapshot);
+      }
+    }
+  }
+
+  private static void time(String source, int entries, Path path, Path read) throws Exception {
+    System.gc();
+    long start = System.nanoTime();
+    Dns dns = new Dns(new TextFileStorage(path, true));
+    long elapsed = System.nanoTime() - start;
+    Runtime runtime = Runtime.getRuntime();
+    long heap = runtime.totalMemory() - runtime.freeMemory();
+    System.out.printf("%,d lignes, %s (%,d octets) : prêt en %,d ms, tas utilisé %,d Mo%n",
+        entries, source, Files.size(read), elapsed / 1_000_000, heap >> 20);
+    dns.close();
+  }
+}
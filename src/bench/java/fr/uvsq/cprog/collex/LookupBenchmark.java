@@ -0,0 +1,90 @@
+package fr.uvsq.cprog.collex;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Lookups and listings on synthetic databases of increasing size.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class LookupBenchmark {
+  private static final int SAMPLES = 4096;
+
+  @Param({"10000", "1000000", "10000000"})
+  private int entries;
+
+  private Dns dns;
+  private AdresseIP[] ips;
+  private NomMachine[] noms;
+  private String[] domains;
+  private int next;
+
+  /**
+   * Loads the database and draws the keys looked up by the benchmarks.
+   *
+   * @throws Exception if the database cannot be loaded
+   */
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    dns = new Dns(SyntheticDatabase.cached(entries));
+    Random random = new Random(42);
+    ips = new AdresseIP[SAMPLES];
+    noms = new NomMachine[SAMPLES];
+    domains = new String[SAMPLES];
+    for (int i = 0; i < SAMPLES; i++) {
+      int host = random.nextInt(entries);
+      ips[i] = new AdresseIP(SyntheticDatabase.ip(host));
+      noms[i] = new NomMachine(SyntheticDatabase.name(host));
+      domains[i] = SyntheticDatabase.domain(random.nextInt(SyntheticDatabase.DOMAINS));
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws DnsException {
+    dns.close();
+  }
+
+  private int next() {
+    next = (next + 1) & (SAMPLES - 1);
+    return next;
+  }
+
+  @Benchmark
+  public DnsItem getItemByIp() {
+    return dns.getItem(ips[next()]);
+  }
+
+  @Benchmark
+  public DnsItem getItemByName() {
+    return dns.getItem(noms[next()]);
+  }
+
+  @Benchmark
+  public List<DnsItem> getItems() {
+    return dns.getItems(domains[next()]);
+  }
+
+  @Benchmark
+  public List<DnsItem> getItemsSortedByIp() {
+    return dns.getItemsSortedByIp(domains[next()]);
+  }
+}
@@ -0,0 +1,127 @@
+package fr.uvsq.cprog.collex;
+
+import java.nio.CharBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of DnsTUI.nextCommande on an endless mix of the commands users type, and of classifying
+ * the same lines with DnsTUI.parse compared with the former split-and-regex classifier.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ParseBenchmark {
+  static final String COMMANDS = "www.uvsq.fr\n"
+      + "193.51.31.90\n"
+      + "ls uvsq.fr\n"
+      + "ls -a uvsq.fr\n"
+      + "add 193.51.25.24 pikachu.uvsq.fr\n";
+
+  private static final Pattern IP_PATTERN =
+      Pattern.compile("^((25[0-5]|(2[0-4]|1\\d|[1-9]|)\\d)\\.){3}"
+          + "(25[0-5]|(2[0-4]|1\\d|[1-9]|)\\d)$");
+  private static final Pattern QUALIFIED_NAME_PATTERN = Pattern.compile("^[^\\s]+\\.[^\\s]+$");
+
+  private final String[] lines = COMMANDS.split("\n");
+  private int next;
+  private Path database;
+  private Dns dns;
+  private DnsTUI tui;
+
+  /**
+   * Creates a TUI reading the command mix in a loop.
+   *
+   * @throws Exception if the database cannot be created
+   */
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    database = Files.createTempFile("dns-parse", ".txt");
+    dns = new Dns(database);
+    tui = new DnsTUI(new Scanner(new CyclingReadable(COMMANDS)), dns);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    Files.deleteIfExists(database);
+  }
+
+  @Benchmark
+  public Commande nextCommande() {
+    return tui.nextCommande();
+  }
+
+  private String nextLine() {
+    String line = lines[next];
+    next = next + 1 == lines.length ? 0 : next + 1;
+    return line;
+  }
+
+  @Benchmark
+  public Commande parse() {
+    return tui.parse(nextLine());
+  }
+
+  /**
+   * Classifier used before DnsTUI.parse: regex split, keyword checks, then the IP and name
+   * patterns, with the address parsed a second time by its constructor.
+   */
+  @Benchmark
+  public Commande regexClassifier() {
+    String[] parts = nextLine().trim().split("\\s+");
+    if (parts[0].equalsIgnoreCase("quit")) {
+      return new QuitterCommande();
+    }
+    if (parts[0].equalsIgnoreCase("ls")) {
+      return new ListeDomaineCommande(dns, parts[parts.length - 1], parts.length == 3);
+    }
+    if (parts[0].equalsIgnoreCase("add")) {
+      return new AjoutCommande(dns, new AdresseIP(parts[1]), new NomMachine(parts[2]));
+    }
+    if (IP_PATTERN.matcher(parts[0]).matches()) {
+      return new RechercheIpCommande(dns, new AdresseIP(parts[0]));
+    }
+    if (QUALIFIED_NAME_PATTERN.matcher(parts[0]).matches()) {
+      return new RechercheNomCommande(dns, new NomMachine(parts[0]));
+    }
+    return null;
+  }
+
+  /**
+   * Source repeating the same text forever.
+   */
+  static final class CyclingReadable implements Readable {
+    private final char[] text;
+    private int position;
+
+    CyclingReadable(String text) {
+      this.text = text.toCharArray();
+    }
+
+    @Override
+    public int read(CharBuffer buffer) {
+      int length = Math.min(buffer.remaining(), text.length - position);
+      buffer.put(text, position, length);
+      position = (position + length) % text.length;
+      return length;
+    }
+  }
+}
@@ -0,0 +1,118 @@
+package fr.uvsq.cprog.collex;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures read throughput of one shared Dns instance as the number of reader threads grows,
+ * while an optional writer keeps adding entries.
+ *
+ * <p>Usage: {@code java -cp target/classes fr.uvsq.cprog.collex.ReadScaling [entries] [seconds]
+ * [writer]}, where {@code writer} is {@code true} to add entries during each run.
+ */
+public class ReadScaling {
+  private ReadScaling() {
+  }
+
+  /**
+   * Runs the benchmark for 1, 2, 4... threads up to the number of available processors.
+   *
+   * @param args the database size (1M by default), the duration of each run in seconds and
+   *     whether a writer runs along the readers
+   * @throws Exception if the database cannot be created
+   */
+  public static void main(String[] args) throws Exception {
+    int entries = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+    int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+    AtomicInteger added = args.length > 2 && Boolean.parseBoolean(args[2])
+        ? new AtomicInteger() : null;
+    Path path = Files.createTempFile("dns-read", ".txt");
+    try {
+      SyntheticDatabase.write(path, entries);
+      Dns dns = new Dns(path);
+      int processors = Runtime.getRuntime().availableProcessors();
+      for (int threads = 1; threads <= processors; threads *= 2) {
+        int before = added == null ? 0 : added.get();
+        double rate = run(dns, entries, threads, seconds, added);
+        System.out.printf("%2d thread(s) : %,.0f lectures/s (%,.0f par thread)%n",
+            threads, rate, rate / threads);
+        if (added != null) {
+          System.out.printf("               %,.0f ajouts/s%n",
+              (added.get() - before) / (double) seconds);
+        }
+      }
+      dns.close();
+    } finally {
+      Files.deleteIfExists(path);
+    }
+  }
+
+  /**
+   * Runs the readers, and a writer adding hosts after the synthetic ones if added is not null.
+   */
+  private static double run(Dns dns, int entries, int threads, int seconds, AtomicInteger added)
+      throws InterruptedException {
+    LongAdder operations = new LongAdder();
+    CountDownLatch start = new CountDownLatch(1);
+    long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+    List<Thread> readers = new ArrayList<>();
+    for (int t = 0; t < threads; t++) {
+      Thread reader = new Thread(() -> {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        AdresseIP[] ips = new AdresseIP[1024];
+        NomMachine[] noms = new NomMachine[1024];
+        for (int i = 0; i < ips.length; i++) {
+          int host = random.nextInt(entries);
+          ips[i] = new AdresseIP(SyntheticDatabase.ip(host));
+          noms[i] = new NomMachine(SyntheticDatabase.name(host));
+        }
+        try {
+          start.await();
+        } catch (InterruptedException e) {
+          return;
+        }
+        long count = 0;
+        while (System.nanoTime() < deadline) {
+          for (int i = 0; i < ips.length; i++) {
+            dns.getItem(ips[i]);
+            dns.getItem(noms[i]);
+          }
+          count += 2 * ips.length;
+        }
+        operations.add(count);
+      });
+      reader.start();
+      readers.add(reader);
+    }
+    Thread writer = null;
+    if (added != null) {
+      writer = new Thread(() -> {
+        try {
+          start.await();
+          while (System.nanoTime() < deadline) {
+            int host = entries + added.getAndIncrement();
+            dns.addItem(new AdresseIP(SyntheticDatabase.ip(host)),
+                new NomMachine(SyntheticDatabase.name(host)));
+          }
+        } catch (InterruptedException | DnsException e) {
+          // The run ends without this writer
+        }
+      });
+      writer.start();
+    }
+    start.countDown();
+    for (Thread reader : readers) {
+      reader.join();
+    }
+    if (writer != null) {
+      writer.join();
+    }
+    return operations.sum() / (double) seconds;
+  }
+}
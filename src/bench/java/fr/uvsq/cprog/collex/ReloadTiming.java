@@ -0,0 +1,70 @@
+package fr.uvsq.cprog.collex;
+
+import java.io.BufferedWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Measures the time a {@link DnsReloader} takes to apply a change of the database file, for
+ * changes of increasing size in a database of fixed size. Each change moves the next entries of
+ * the file to new addresses.
+ *
+ * <p>Usage: {@code java -cp target/classes fr.uvsq.cprog.collex.ReloadTiming 1000000}
+ */
+public class ReloadTiming {
+  private static final int[] CHANGES = {1, 100, 10_000, 100_000};
+
+  private ReloadTiming() {
+  }
+
+  /**
+   * Loads a synthetic database, then rewrites it with more and more changed lines and times each
+   * reload.
+   *
+   * @param args the database size, 1M lines by default
+   * @throws Exception if the database cannot be written or loaded
+   */
+  public static void main(String[] args) throws Exception {
+    int entries = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+    Path directory = Files.createTempDirectory("dns-reload");
+    Path path = directory.resolve("dns-database.txt");
+    try {
+      SyntheticDatabase.write(path, entries);
+      Dns dns = new Dns(path);
+      // Reloads are only triggered here
+      DnsReloader reloader = new DnsReloader(dns, path, Long.MAX_VALUE);
+      int[] shifts = new int[entries];
+      int next = 0;
+      for (int round = 1; round <= 3; round++) {
+        for (int changes : CHANGES) {
+          for (int i = 0; i < Math.min(changes, entries); i++, next = (next + 1) % entries) {
+            shifts[next] = shifts[next] == 0 ? 0x01000000 : 0;
+          }
+          write(path, shifts);
+          long start = System.nanoTime();
+          int lines = reloader.reload();
+          long elapsed = System.nanoTime() - start;
+          System.out.printf("%,d lignes, %,d modifiées : %,d lignes relues en %,d µs%n",
+              entries, changes, lines, elapsed / 1000);
+        }
+      }
+      reloader.close();
+    } finally {
+      Files.deleteIfExists(path);
+      Files.delete(directory);
+    }
+  }
+
+  /**
+   * Writes the database with the address of each entry shifted by the given amount.
+   */
+  private static void write(Path path, int[] shifts) throws Exception {
+    try (BufferedWriter writer = Files.newBufferedWriter(path)) {
+      for (int i = 0; i < shifts.length; i++) {
+        int ip = SyntheticDatabase.ip(i) + shifts[i];
+        writer.write(SyntheticDatabase.name(i) + " " + new AdresseIP(ip));
+        writer.newLine();
+      }
+    }
+  }
+}
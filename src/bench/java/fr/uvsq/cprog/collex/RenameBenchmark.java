@@ -0,0 +1,69 @@
+package fr.uvsq.cprog.collex;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of renaming an entry in the index of a single domain holding every entry, as Dns does for
+ * mv: a removal then an addition. New names either land anywhere in the domain or all at the
+ * same place, the worst case for the gaps of the listing arrays; select it with
+ * {@code -p names=clustered}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class RenameBenchmark {
+  @Param({"1000", "100000", "1000000"})
+  private int entries;
+
+  @Param({"spread", "clustered"})
+  private String names;
+
+  private final Random random = new Random(42);
+  private DomainIndex index;
+  private DnsItem[] items;
+  private int next;
+
+  /**
+   * Indexes the entries of a single domain.
+   */
+  @Setup(Level.Trial)
+  public void setUp() {
+    index = new DomainIndex();
+    items = new DnsItem[entries];
+    index.beginBulk();
+    for (int i = 0; i < entries; i++) {
+      items[i] = new DnsItem(new AdresseIP(SyntheticDatabase.ip(i)),
+          new NomMachine("h" + i + ".uvsq.fr"));
+      index.add(items[i]);
+    }
+    index.endBulk();
+  }
+
+  @Benchmark
+  public DnsItem rename() {
+    int host = random.nextInt(entries);
+    DnsItem old = items[host];
+    index.remove(old);
+    int at = names.equals("clustered") ? entries / 2 : random.nextInt(entries);
+    String name = "h" + at + "-" + next++;
+    items[host] = new DnsItem(old.getAdresseIp(), new NomMachine(name + ".uvsq.fr"));
+    index.add(items[host]);
+    return old;
+  }
+}
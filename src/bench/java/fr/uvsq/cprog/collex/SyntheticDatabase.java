@@ -0,0 +1,65 @@
+package fr.uvsq.cprog.collex;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Synthetic databases shared by the benchmarks. Host i is named {@code hi.d(i % 1000).uvsq.fr}
+ * and has the address 10.0.0.0 + i, so a benchmark can draw existing names and addresses.
+ */
+final class SyntheticDatabase {
+  static final int DOMAINS = 1000;
+  static final int FIRST_IP = 0x0A000000;
+
+  private SyntheticDatabase() {
+  }
+
+  static String name(int host) {
+    return "h" + host + "." + domain(host % DOMAINS);
+  }
+
+  static String domain(int domain) {
+    return "d" + domain + ".uvsq.fr";
+  }
+
+  static int ip(int host) {
+    return FIRST_IP + host;
+  }
+
+  /**
+   * Writes a synthetic database of the given size.
+   *
+   * @param path the file to write
+   * @param entries the number of lines
+   * @throws IOException if the file cannot be written
+   */
+  static void write(Path path, int entries) throws IOException {
+    try (BufferedWriter writer = Files.newBufferedWriter(path)) {
+      for (int i = 0; i < entries; i++) {
+        writer.write(name(i) + " " + new AdresseIP(ip(i)));
+        writer.newLine();
+      }
+    }
+  }
+
+  /**
+   * Returns a synthetic database of the given size in the temporary directory, writing it on
+   * first use only so that successive benchmark forks share it.
+   *
+   * @param entries the number of lines
+   * @return the path to the database
+   * @throws IOException if the file cannot be written
+   */
+  static Path cached(int entries) throws IOException {
+    Path path = Paths.get(System.getProperty("java.io.tmpdir"), "dns-bench-" + entries + ".txt");
+    if (!Files.exists(path)) {
+      Path temporary = Files.createTempFile("dns-bench", ".txt");
+      write(temporary, entries);
+      Files.move(temporary, path);
+    }
+    return path;
+  }
+}
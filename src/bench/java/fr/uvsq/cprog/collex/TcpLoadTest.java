@@ -0,0 +1,110 @@
+package fr.uvsq.cprog.collex;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Load test for DnsTcpServer on the loopback interface: opens many connections, keeps them all
+ * open, and sends name lookups over them from a few client threads.
+ *
+ * <p>Usage: {@code java -cp target/benchmarks.jar fr.uvsq.cprog.collex.TcpLoadTest
+ * [connections seconds threads]}, 2,000 connections for 10 seconds from 4 threads by default.
+ */
+public class TcpLoadTest {
+  private static final int ENTRIES = 100_000;
+
+  private TcpLoadTest() {
+  }
+
+  /**
+   * Connection of the load test, sending one command at a time.
+   */
+  private static final class Connection {
+    private final Socket socket;
+    private final OutputStream out;
+    private final BufferedReader in;
+
+    Connection(InetSocketAddress address) throws Exception {
+      socket = new Socket(address.getAddress(), address.getPort());
+      socket.setTcpNoDelay(true);
+      out = socket.getOutputStream();
+      in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+          StandardCharsets.UTF_8), 512);
+    }
+
+    void request(byte[] command) throws Exception {
+      out.write(command);
+      String line;
+      while ((line = in.readLine()) != null && !line.isEmpty()) {
+        // Read the whole response
+      }
+    }
+  }
+
+  /**
+   * Runs the load test and prints the connections held and the requests per second.
+   *
+   * @param args the number of connections, the duration and the number of client threads
+   * @throws Exception if the load test cannot run
+   */
+  public static void main(String[] args) throws Exception {
+    int connections = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+    int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+    int threads = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+
+    Path database = Files.createTempFile("dns-tcp", ".txt");
+    database.toFile().deleteOnExit();
+    SyntheticDatabase.write(database, ENTRIES);
+    try (DnsTcpServer server = DnsTcpServer.onLoopback(new Dns(database), 0)) {
+      server.start();
+      List<Connection> open = new ArrayList<>();
+      for (int i = 0; i < connections; i++) {
+        open.add(new Connection(server.getLocalAddress()));
+      }
+      Thread.sleep(200);
+      System.out.printf("%,d connexions ouvertes, %,d tenues par le serveur%n",
+          open.size(), server.getConnectionCount());
+
+      LongAdder requests = new LongAdder();
+      long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+      List<Thread> clients = new ArrayList<>();
+      for (int t = 0; t < threads; t++) {
+        int first = t;
+        Thread client = new Thread(() -> {
+          ThreadLocalRandom random = ThreadLocalRandom.current();
+          try {
+            for (int i = first; System.nanoTime() < deadline; i += threads) {
+              Connection connection = open.get(i % open.size());
+              String name = SyntheticDatabase.name(random.nextInt(ENTRIES)) + "\n";
+              connection.request(name.getBytes(StandardCharsets.UTF_8));
+              requests.increment();
+            }
+          } catch (Exception e) {
+            e.printStackTrace();
+          }
+        });
+        client.start();
+        clients.add(client);
+      }
+      for (Thread client : clients) {
+        client.join();
+      }
+
+      System.out.printf("%,d requêtes en %d s : %,d requêtes/s, %,d connexions tenues%n",
+          requests.sum(), seconds, requests.sum() / seconds, server.getConnectionCount());
+      for (Connection connection : open) {
+        connection.socket.close();
+      }
+    }
+  }
+}
@@ -0,0 +1,101 @@
+package fr.uvsq.cprog.collex;
+
+import java.util.Arrays;
+
+/**
+ * Addresses of a machine name that has several, packed in an int array in the order they were
+ * added. A set is never modified once published: adding or removing an address creates a new
+ * set, so readers need no lock.
+ *
+ * <p>The set also remembers where the next rotated answer starts. That position is updated
+ * without synchronization: two concurrent answers may start at the same address, which only
+ * delays the rotation by one answer.
+ */
+final class AddressSet {
+  private final int[] addresses;
+  private int next;
+
+  /**
+   * Creates a set of addresses.
+   *
+   * @param addresses the packed addresses, all distinct, at least two; the array is kept
+   */
+  AddressSet(int... addresses) {
+    this.addresses = addresses;
+  }
+
+  /**
+   * Returns the number of addresses.
+   *
+   * @return the number of addresses
+   */
+  int size() {
+    return addresses.length;
+  }
+
+  /**
+   * Returns an address.
+   *
+   * @param index the position of the address, in the order they were added
+   * @return the packed address
+   */
+  int get(int index) {
+    return addresses[index];
+  }
+
+  /**
+   * Returns a set with one more address, at the end.
+   *
+   * @param ip the packed address, absent from this set
+   * @return the new set
+   */
+  AddressSet with(int ip) {
+    int[] copy = Arrays.copyOf(addresses, addresses.length + 1);
+    copy[addresses.length] = ip;
+    return new AddressSet(copy);
+  }
+
+  /**
+   * Returns the addresses other than one, in the same order.
+   *
+   * @param ip the packed address to leave out
+   * @return the remaining addresses, or this set's addresses if the address is absent
+   */
+  int[] without(int ip) {
+    int[] copy = new int[addresses.length - 1];
+    int j = 0;
+    for (int address : addresses) {
+      if (address != ip) {
+        if (j == copy.length) {
+          return addresses.clone(); // Absent
+        }
+        copy[j++] = address;
+      }
+    }
+    return copy;
+  }
+
+  /**
+   * Returns the addresses in the order they were added.
+   *
+   * @return a new array of packed addresses
+   */
+  int[] toArray() {
+    return addresses.clone();
+  }
+
+  /**
+   * Returns the addresses starting one position further than the previous call did, wrapping
+   * around, so that successive answers spread the clients over every address.
+   *
+   * @return a new array of packed addresses
+   */
+  int[] rotate() {
+    int start = next;
+    next = start + 1 < addresses.length ? start + 1 : 0;
+    int[] rotated = new int[addresses.length];
+    System.arraycopy(addresses, start, rotated, 0, addresses.length - start);
+    System.arraycopy(addresses, 0, rotated, addresses.length - start, start);
+    return rotated;
+  }
+}
@@ -1,18 +1,12 @@
 package fr.uvsq.cprog.collex;
 
-import java.util.Objects;
-import java.util.regex.Pattern;
-
 /**
  * Represents an IP address (e.g., 192.168.0.1).
+ * The address is stored packed in a single {@code int}, most significant octet first.
  */
 @SuppressWarnings("AbbreviationAsWordInName")
-public class AdresseIP {
-  private static final Pattern IP_PATTERN = 
-      Pattern.compile("^((25[0-5]|(2[0-4]|1\\d|[1-9]|)\\d)\\.){3}"
-          + "(25[0-5]|(2[0-4]|1\\d|[1-9]|)\\d)$");
-  
-  private final String adresse;
+public class AdresseIP implements Comparable<AdresseIP> {
+  private final int valeur;
 
   /**
    * Creates an IP address from a string.
@@ -21,10 +15,74 @@ public class AdresseIP {
    * @throws IllegalArgumentException if the address format is invalid
    */
   public AdresseIP(String adresse) {
-    if (adresse == null || !IP_PATTERN.matcher(adresse).matches()) {
+    long parsed = adresse == null ? -1 : parse(adresse, 0, adresse.length());
+    if (parsed < 0) {
       throw new IllegalArgumentException("Format d'adresse IP invalide : " + adresse);
     }
-    this.adresse = adresse;
+    this.valeur = (int) parsed;
+  }
+
+  /**
+   * Creates an IP address from its packed representation.
+   *
+   * @param valeur the address packed in an int, most significant octet first
+   */
+  public AdresseIP(int valeur) {
+    this.valeur = valeur;
+  }
+
+  /**
+   * Parses a dotted quad in a single pass without any intermediate allocation.
+   * Octets must be in the range 0-255 and must not have leading zeros.
+   *
+   * @param text the characters to parse
+   * @param start the index of the first character
+   * @param end the index after the last character
+   * @return the packed address as an unsigned value, or -1 if the text is not a valid address
+   */
+  static long parse(CharSequence text, int start, int end) {
+    return parse(text, null, start, end);
+  }
+
+  /**
+   * Parses a dotted quad written in ASCII bytes, in place, with the same rules as for
+   * characters.
+   *
+   * @param bytes the bytes to parse
+   * @param start the index of the first byte
+   * @param end the index after the last byte
+   * @return the packed address as an unsigned value, or -1 if the bytes are not a valid address
+   */
+  static long parse(byte[] bytes, int start, int end) {
+    return parse(null, bytes, start, end);
+  }
+
+  private static long parse(CharSequence text, byte[] bytes, int start, int end) {
+    long result = 0;
+    int octets = 0;
+    int octet = -1;
+    for (int i = start; i < end; i++) {
+      char c = text != null ? text.charAt(i) : (char) (bytes[i] & 0xFF);
+      if (c >= '0' && c <= '9') {
+        if (octet == 0) {
+          return -1; // Leading zero
+        }
+        octet = octet < 0 ? c - '0' : octet * 10 + (c - '0');
+        if (octet > 255) {
+          return -1;
+        }
+      } else if (c == '.' && octet >= 0 && octets < 3) {
+        result = (result << 8) | octet;
+        octets++;
+        octet = -1;
+      } else {
+        return -1;
+      }
+    }
+    if (octet < 0 || octets != 3) {
+      return -1;
+    }
+    return (result << 8) | octet;
   }
 
   /**
@@ -33,12 +91,38 @@ public class AdresseIP {
    * @return the IP address string
    */
   public String getAdresse() {
-    return adresse;
+    return ((valeur >>> 24) & 0xFF) + "." + ((valeur >>> 16) & 0xFF) + "."
+        + ((valeur >>> 8) & 0xFF) + "." + (valeur & 0xFF);
+  }
+
+  /**
+   * Appends the dotted form of the address, without creating a string.
+   *
+   * @param out the builder receiving the address
+   * @return the builder
+   */
+  StringBuilder appendTo(StringBuilder out) {
+    return out.append((valeur >>> 24) & 0xFF).append('.').append((valeur >>> 16) & 0xFF)
+        .append('.').append((valeur >>> 8) & 0xFF).append('.').append(valeur & 0xFF);
+  }
+
+  /**
+   * Returns the packed representation of the address.
+   *
+   * @return the address packed in an int, most significant octet first
+   */
+  public int toInt() {
+    return valeur;
+  }
+
+  @Override
+  public int compareTo(AdresseIP other) {
+    return Integer.compareUnsigned(valeur, other.valeur);
   }
 
   @Override
   public String toString() {
-    return adresse;
+    return getAdresse();
   }
 
   @Override
@@ -50,11 +134,11 @@ public class AdresseIP {
       return false;
     }
     AdresseIP other = (AdresseIP) obj;
-    return Objects.equals(adresse, other.adresse);
+    return valeur == other.valeur;
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(adresse);
+    return Integer.hashCode(valeur);
   }
 }
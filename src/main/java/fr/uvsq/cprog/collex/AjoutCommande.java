@@ -1,30 +1,103 @@
 package fr.uvsq.cprog.collex;
 
+import java.util.function.Consumer;
+
 /**
- * Command to add a new DNS entry.
+ * Command to add a new DNS entry, or one more address to a machine name.
+ *
+ * <p>A durable add returns once the entry is persisted. Otherwise it returns as soon as the entry
+ * is visible to lookups and its write is queued; a failure of that write is counted in the
+ * statistics of the database and handed to the session that issued the command, if any.
  */
 public class AjoutCommande implements Commande {
   private final Dns dns;
   private final AdresseIP adresseIp;
   private final NomMachine nomMachine;
+  private final boolean durable;
+  private final boolean multiple;
+  private final Consumer<String> failures;
 
   /**
-   * Creates a command to add a DNS entry.
+   * Creates a command to add a DNS entry, waiting for it to be persisted.
    *
    * @param dns the DNS database
    * @param adresseIp the IP address
    * @param nomMachine the machine name
    */
   public AjoutCommande(Dns dns, AdresseIP adresseIp, NomMachine nomMachine) {
+    this(dns, adresseIp, nomMachine, true);
+  }
+
+  /**
+   * Creates a command to add a DNS entry.
+   *
+   * @param dns the DNS database
+   * @param adresseIp the IP address
+   * @param nomMachine the machine name
+   * @param durable whether the command waits for the entry to be persisted
+   */
+  public AjoutCommande(Dns dns, AdresseIP adresseIp, NomMachine nomMachine, boolean durable) {
+    this(dns, adresseIp, nomMachine, durable, false);
+  }
+
+  /**
+   * Creates a command to add a DNS entry or an address.
+   *
+   * @param dns the DNS database
+   * @param adresseIp the IP address
+   * @param nomMachine the machine name
+   * @param durable whether the command waits for the entry to be persisted; an address added to
+   *     an existing name always is
+   * @param multiple whether the address is added to the name if it already exists, instead of
+   *     being refused
+   */
+  public AjoutCommande(Dns dns, AdresseIP adresseIp, NomMachine nomMachine, boolean durable,
+      boolean multiple) {
+    this(dns, adresseIp, nomMachine, durable, multiple, null);
+  }
+
+  /**
+   * Creates a command to add a DNS entry or an address, reporting a failed asynchronous write
+   * to the session that issued it.
+   *
+   * @param dns the DNS database
+   * @param adresseIp the IP address
+   * @param nomMachine the machine name
+   * @param durable whether the command waits for the entry to be persisted; an address added to
+   *     an existing name always is
+   * @param multiple whether the address is added to the name if it already exists, instead of
+   *     being refused
+   * @param failures receives the error message of a write that fails after the command
+   *     returned, possibly from another thread, or null
+   */
+  public AjoutCommande(Dns dns, AdresseIP adresseIp, NomMachine nomMachine, boolean durable,
+      boolean multiple, Consumer<String> failures) {
     this.dns = dns;
     this.adresseIp = adresseIp;
     this.nomMachine = nomMachine;
+    this.durable = durable;
+    this.multiple = multiple;
+    this.failures = failures;
   }
 
   @Override
   public Object execute() {
     try {
-      dns.addItem(adresseIp, nomMachine);
+      if (multiple) {
+        dns.addAddress(nomMachine, adresseIp);
+      } else if (durable) {
+        dns.addItem(adresseIp, nomMachine);
+      } else {
+        dns.addItemAsync(adresseIp, nomMachine).whenComplete((ignored, e) -> {
+          if (e != null) {
+            String message = nomMachine + " non sauvegardé : " + e.getMessage();
+            dns.getStats().recordSaveFailure(message);
+            if (failures != null) {
+              failures.accept("ERREUR : " + message);
+            }
+          }
+        });
+      }
       return "Entrée DNS ajoutée : " + adresseIp + " " + nomMachine;
     } catch (DnsException e) {
       return "ERREUR : " + e.getMessage();
@@ -0,0 +1,193 @@
+package fr.uvsq.cprog.collex;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.CRC32C;
+
+/**
+ * Binary copy of a text database file, read much faster than the text on startup.
+ *
+ * <p>The file starts with a 32-byte header: magic number, format version, size and CRC32C of
+ * the content of the text file it was built from, a reserved int, number of entries and CRC32 of
+ * the body. The body holds each entry as a packed IPv4 int followed by the length and UTF-8 bytes
+ * of the name. A snapshot is only used while the text file still has the recorded size and
+ * checksum, so any edit of the text file makes the snapshot ignored, whatever its modification
+ * time. Checking the text costs one sequential read of it, far cheaper than parsing it.
+ */
+final class BinarySnapshot {
+  static final int MAGIC = 0x444E5342; // "DNSB"
+  static final int VERSION = 2;
+  static final int HEADER_SIZE = 32;
+  private static final int READ_BUFFER_SIZE = 1 << 16;
+
+  private BinarySnapshot() {
+  }
+
+  /**
+   * Returns the path of the snapshot built from a text database file.
+   *
+   * @param databasePath the text database file
+   * @return the snapshot path, next to the text file
+   */
+  static Path pathFor(Path databasePath) {
+    return databasePath.resolveSibling(databasePath.getFileName() + ".bin");
+  }
+
+  /**
+   * Computes the checksum of the content of a text file, as recorded in a snapshot.
+   *
+   * @param source the text file
+   * @return the CRC32C of its bytes
+   * @throws IOException if the file cannot be read
+   */
+  static int checksum(Path source) throws IOException {
+    CRC32C crc = new CRC32C();
+    ByteBuffer buffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+    try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+      while (channel.read(buffer) >= 0) {
+        buffer.flip();
+        crc.update(buffer);
+        buffer.clear();
+      }
+    }
+    return (int) crc.getValue();
+  }
+
+  /**
+   * Computes the checksum of the content of a text file about to be written.
+   *
+   * @param content the bytes of the file
+   * @return the CRC32C of the bytes
+   */
+  static int checksum(byte[] content) {
+    CRC32C crc = new CRC32C();
+    crc.update(content);
+    return (int) crc.getValue();
+  }
+
+  /**
+   * Writes a snapshot atomically, replacing any previous one.
+   *
+   * @param snapshot the snapshot file
+   * @param items the entries to write
+   * @param sourceSize the size of the text file holding the same entries
+   * @param sourceChecksum the checksum of the content of that file, see {@link #checksum}
+   * @throws IOException if the snapshot cannot be written
+   */
+  static void write(Path snapshot, Collection<DnsItem> items, long sourceSize,
+      int sourceChecksum) throws IOException {
+    ByteArrayOutputStream body = new ByteArrayOutputStream(items.size() * 24);
+    DataOutputStream output = new DataOutputStream(body);
+    int count = 0;
+    for (DnsItem item : items) {
+      byte[] name = item.getNomMachine().getNomQualifie().getBytes(StandardCharsets.UTF_8);
+      output.writeInt(item.getAdresseIp().toInt());
+      output.writeShort(name.length);
+      output.write(name);
+      count++;
+    }
+    byte[] bytes = body.toByteArray();
+    CRC32 crc = new CRC32();
+    crc.update(bytes);
+
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    header.putInt(MAGIC).putInt(VERSION).putLong(sourceSize).putInt(sourceChecksum).putInt(0)
+        .putInt(count).putInt((int) crc.getValue()).flip();
+
+    Path temporary = snapshot.resolveSibling(snapshot.getFileName() + ".tmp");
+    try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      ByteBuffer[] buffers = {header, ByteBuffer.wrap(bytes)};
+      while (buffers[1].hasRemaining()) {
+        channel.write(buffers);
+      }
+    }
+    Files.move(temporary, snapshot, StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Tells whether a snapshot was built from the current content of a text file. The text file is
+   * read to compute its checksum only if it has the recorded size.
+   *
+   * @param snapshot the snapshot file
+   * @param source the text database file
+   * @return true if both files exist and the snapshot matches the text file
+   */
+  static boolean isFresh(Path snapshot, Path source) {
+    if (!Files.exists(snapshot) || !Files.exists(source)) {
+      return false;
+    }
+    try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      while (header.hasRemaining() && channel.read(header) >= 0) {
+        // Read the whole header
+      }
+      header.flip();
+      return header.remaining() == HEADER_SIZE && header.getInt() == MAGIC
+          && header.getInt() == VERSION && header.getLong() == Files.size(source)
+          && header.getInt() == checksum(source);
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Reads every entry of a snapshot. The checksum is verified before any entry is handed to
+   * the sink, so a damaged snapshot delivers nothing.
+   *
+   * @param snapshot the snapshot file
+   * @param sink receives the entries in file order
+   * @throws IOException if the file cannot be read or is not a valid snapshot
+   */
+  static void read(Path snapshot, Consumer<DnsItem> sink) throws IOException {
+    ByteBuffer buffer;
+    try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+        throw new IOException("Instantané binaire invalide : " + snapshot);
+      }
+      buffer = ByteBuffer.allocate((int) size);
+      while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+        // Read the whole file
+      }
+      buffer.flip();
+    }
+
+    if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+      throw new IOException("Format d'instantané binaire inconnu : " + snapshot);
+    }
+    buffer.position(24);
+    int count = buffer.getInt();
+    int checksum = buffer.getInt();
+    byte[] bytes = buffer.array();
+    CRC32 crc = new CRC32();
+    crc.update(bytes, HEADER_SIZE, buffer.limit() - HEADER_SIZE);
+    if ((int) crc.getValue() != checksum) {
+      throw new IOException("Somme de contrôle invalide : " + snapshot);
+    }
+
+    for (int i = 0; i < count; i++) {
+      int ip = buffer.getInt();
+      int length = buffer.getShort() & 0xFFFF;
+      String nom = new String(bytes, buffer.position(), length, StandardCharsets.UTF_8);
+      buffer.position(buffer.position() + length);
+      try {
+        sink.accept(new DnsItem(new AdresseIP(ip), new NomMachine(nom)));
+      } catch (IllegalArgumentException e) {
+        // Skip invalid entries
+      }
+    }
+  }
+}
@@ -0,0 +1,44 @@
+package fr.uvsq.cprog.collex;
+
+import java.util.Locale;
+
+/**
+ * Command to display the state of the Bloom filters in front of the lookups, optionally after
+ * rebuilding them.
+ */
+public class BloomCommande implements Commande {
+  private final Dns dns;
+  private final boolean rebuild;
+
+  /**
+   * Creates a command to display the Bloom filters.
+   *
+   * @param dns the DNS database
+   * @param rebuild if true, rebuild the filters from the current entries first
+   */
+  public BloomCommande(Dns dns, boolean rebuild) {
+    this.dns = dns;
+    this.rebuild = rebuild;
+  }
+
+  @Override
+  public Object execute() {
+    if (rebuild) {
+      dns.rebuildFilters();
+    }
+    BloomFilter ips = dns.getIpFilter();
+    BloomFilter names = dns.getNameFilter();
+    if (ips == null) {
+      return "Filtres de Bloom désactivés (bloom rebuild pour les activer)";
+    }
+    return describe("adresses IP", ips) + "\n" + describe("noms", names);
+  }
+
+  private static String describe(String nom, BloomFilter filter) {
+    return String.format(Locale.ROOT, "filtre des %s : %d bits, %d hachages, %d/%d clés, "
+        + "faux positifs attendus %.3f %%, observés %.3f %% (%d rejets, %d faux positifs)",
+        nom, filter.bitSize(), filter.hashCount(), filter.insertions(), filter.capacity(),
+        filter.expectedFalsePositiveRate() * 100, filter.observedFalsePositiveRate() * 100,
+        filter.rejections(), filter.falsePositives());
+  }
+}
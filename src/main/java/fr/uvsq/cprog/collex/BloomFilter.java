@@ -0,0 +1,182 @@
+package fr.uvsq.cprog.collex;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bloom filter over 32-bit key hashes, answering "definitely absent" or "maybe present".
+ * It also counts the lookups it rejected and the false positives reported by its caller, so the
+ * observed false-positive rate can be compared with the expected one.
+ *
+ * <p>Bits are read with volatile semantics, so readers see every key added before they started.
+ * Callers serialize additions.
+ */
+class BloomFilter {
+  /** Largest number of bits, a power of two that an int mask still addresses. */
+  static final int MAX_BITS = 1 << 30;
+
+  private final AtomicLongArray bits;
+  private final int mask;
+  private final int hashes;
+  private final long capacity;
+  private volatile long insertions;
+  private final LongAdder rejections = new LongAdder();
+  private final LongAdder falsePositives = new LongAdder();
+
+  /**
+   * Creates a filter sized for a number of keys and a target false-positive rate.
+   *
+   * @param capacity the number of keys the filter is sized for
+   * @param falsePositiveRate the false-positive rate expected at full capacity
+   */
+  BloomFilter(long capacity, double falsePositiveRate) {
+    int size = size(capacity, falsePositiveRate);
+    this.bits = new AtomicLongArray(size / 64);
+    this.mask = size - 1;
+    this.hashes = (int) Math.max(1, Math.round((double) size / capacity * Math.log(2)));
+    this.capacity = capacity;
+  }
+
+  /**
+   * Returns the number of bits of a filter: the optimal number for the capacity and the rate,
+   * rounded up to a power of two between 64 and {@value #MAX_BITS}. A larger capacity than the
+   * largest filter suits gets a higher false-positive rate.
+   *
+   * @param capacity the number of keys the filter is sized for
+   * @param falsePositiveRate the false-positive rate expected at full capacity
+   * @return the number of bits
+   */
+  static int size(long capacity, double falsePositiveRate) {
+    long optimal = (long) Math.ceil(-capacity * Math.log(falsePositiveRate)
+        / (Math.log(2) * Math.log(2)));
+    if (optimal > MAX_BITS) {
+      return MAX_BITS;
+    }
+    return (int) Math.max(64, Long.highestOneBit(optimal - 1) << 1);
+  }
+
+  private static long mix(int hash) {
+    long h = hash * 0x9E3779B97F4A7C15L;
+    h ^= h >>> 33;
+    h *= 0xC4CEB9FE1A85EC53L;
+    return h ^ (h >>> 33);
+  }
+
+  /**
+   * Adds a key.
+   *
+   * @param hash the hash of the key
+   */
+  void add(int hash) {
+    long h = mix(hash);
+    int h1 = (int) h;
+    int h2 = (int) (h >>> 32) | 1;
+    for (int i = 0; i < hashes; i++) {
+      int bit = (h1 + i * h2) & mask;
+      int word = bit >>> 6;
+      bits.set(word, bits.get(word) | (1L << bit)); // Additions are serialized
+    }
+    insertions++;
+  }
+
+  /**
+   * Tells whether a key may have been added. A negative answer is counted as a rejection.
+   *
+   * @param hash the hash of the key
+   * @return false if the key was never added, true if it may have been
+   */
+  boolean mightContain(int hash) {
+    long h = mix(hash);
+    int h1 = (int) h;
+    int h2 = (int) (h >>> 32) | 1;
+    for (int i = 0; i < hashes; i++) {
+      int bit = (h1 + i * h2) & mask;
+      if ((bits.get(bit >>> 6) & (1L << bit)) == 0) {
+        rejections.increment();
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Counts a key reported as maybe present that turned out to be absent.
+   */
+  void recordFalsePositive() {
+    falsePositives.increment();
+  }
+
+  /**
+   * Returns the number of bits of the filter.
+   *
+   * @return the size of the filter in bits
+   */
+  int bitSize() {
+    return mask + 1;
+  }
+
+  /**
+   * Returns the number of bits set per key.
+   *
+   * @return the number of hash functions
+   */
+  int hashCount() {
+    return hashes;
+  }
+
+  /**
+   * Returns the number of keys the filter was sized for.
+   *
+   * @return the capacity of the filter
+   */
+  long capacity() {
+    return capacity;
+  }
+
+  /**
+   * Returns the number of added keys.
+   *
+   * @return the number of insertions
+   */
+  long insertions() {
+    return insertions;
+  }
+
+  /**
+   * Returns the false-positive rate expected from the current number of keys.
+   *
+   * @return the theoretical false-positive rate, between 0 and 1
+   */
+  double expectedFalsePositiveRate() {
+    return Math.pow(1 - Math.exp(-(double) hashes * insertions / bitSize()), hashes);
+  }
+
+  /**
+   * Returns the false-positive rate observed on absent keys since the filter was built.
+   *
+   * @return the observed false-positive rate, or 0 if no absent key was looked up
+   */
+  double observedFalsePositiveRate() {
+    long positives = falsePositives.sum();
+    long absent = positives + rejections.sum();
+    return absent == 0 ? 0 : (double) positives / absent;
+  }
+
+  /**
+   * Returns the number of lookups answered "definitely absent".
+   *
+   * @return the number of rejections
+   */
+  long rejections() {
+    return rejections.sum();
+  }
+
+  /**
+   * Returns the number of reported false positives.
+   *
+   * @return the number of false positives
+   */
+  long falsePositives() {
+    return falsePositives.sum();
+  }
+}
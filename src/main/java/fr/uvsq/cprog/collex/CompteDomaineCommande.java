@@ -0,0 +1,26 @@
+package fr.uvsq.cprog.collex;
+
+/**
+ * Command to count the machines of a domain and of its subdomains.
+ */
+public class CompteDomaineCommande implements Commande {
+  private final Dns dns;
+  private final String domaine;
+
+  /**
+   * Creates a command to count machines under a domain.
+   *
+   * @param dns the DNS database
+   * @param domaine the domain name
+   */
+  public CompteDomaineCommande(Dns dns, String domaine) {
+    this.dns = dns;
+    this.domaine = domaine;
+  }
+
+  @Override
+  public Object execute() {
+    return dns.countItemsUnder(domaine) + " machine(s) dans le domaine " + domaine
+        + " et ses sous-domaines";
+  }
+}
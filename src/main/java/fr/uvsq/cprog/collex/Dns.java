@@ -2,105 +2,526 @@ package fr.uvsq.cprog.collex;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 /**
  * DNS database class that manages DNS entries with file persistence.
+ *
+ * <p>An instance can be shared between threads. Lookups and listings take no lock while entries
+ * are only added: every index publishes its changes so that readers see either the old or the
+ * new state of an entry. Writers are serialized, which keeps the IP and name indexes consistent
+ * with each other.
+ *
+ * <p>A machine name may have several addresses, each stored as an entry of its own so that
+ * reverse lookups stay a single probe; the addresses of such a name are also kept together in a
+ * packed {@link AddressSet}. Lookups by name return the entry of its first address.
+ *
+ * <p>Removals, updates and the changes read from the database file by a {@link DnsReloader} are
+ * applied under a sequence number that is odd meanwhile, so that readers see every part of a
+ * change or none. Lookups and listings started during such a change block until it ends, parked
+ * on a monitor rather than spinning, and those that overlapped its start are retried. A reload
+ * rewriting much of the file therefore stalls the readers for as long as it is applied.
+ *
+ * <p>Changes are handed to the storage while the writer still holds the lock, so they are
+ * persisted in the order they were made, even when the storage writes them later.
  */
 @SuppressWarnings("AbbreviationAsWordInName")
 public class Dns {
-  private final Map<AdresseIP, DnsItem> ipMap;
-  private final Map<NomMachine, DnsItem> nameMap;
-  private final Path databasePath;
+  private static final long FILTER_MIN_CAPACITY = 1024;
+  private static final double FILTER_FALSE_POSITIVE_RATE = 0.01;
+  private static final int DEFAULT_LISTING_CACHE_CAPACITY = 64;
+
+  private final EntryStore entries;
+  private final DomainIndex domainIndex;
+  private final IpTrie ipTrie;
+  private final Map<NomMachine, AddressSet> addressSets = new ConcurrentHashMap<>();
+  private final DnsStorage storage;
+  private final DnsStats stats = new DnsStats();
+  private final ListingCache listingCache =
+      new ListingCache(DEFAULT_LISTING_CACHE_CAPACITY, stats);
+  private volatile BloomFilter ipFilter;
+  private volatile BloomFilter nameFilter;
+  private final Object writeLock = new Object();
+  private final Object changeEnded = new Object();
+  private volatile long changeSequence;
+  private DnsReloader reloader;
 
   /**
    * Creates a DNS database and loads entries from the properties file.
+   * The property {@code dns.persistence} selects how changes are saved: {@code rewrite} (the
+   * default) rewrites the whole file, {@code journal} appends them to a journal compacted once
+   * it exceeds {@code dns.journal.compaction.threshold} bytes, {@code sharded} splits the
+   * database into {@code dns.shards} files by domain and appends each add to one of them. With
+   * {@code dns.snapshot=binary}, a binary snapshot of the database file is kept next to it and
+   * read on startup while fresh.
+   * With {@code dns.commit=group}, concurrent adds are merged into shared writes made by a
+   * background thread, within a window of {@code dns.commit.window.ms} milliseconds. Writes are
+   * forced to the device before the adds complete ({@code dns.durability=batch}), every
+   * {@code dns.durability.interval.ms} milliseconds ({@code interval}), or never ({@code none}).
+   * With {@code dns.filter=bloom}, Bloom filters reject most lookups of absent entries before
+   * the indexes are probed. {@code dns.listing.cache.capacity} bounds the number of rendered
+   * listings kept in cache. With {@code dns.store=offheap}, entries are packed in direct buffers
+   * outside the heap and only looked up by address or name; listings then scan every entry.
+   * With {@code dns.reload=watch}, changes made to the database file by other programs are
+   * applied incrementally, once the file has been quiet for {@code dns.reload.debounce.ms}
+   * milliseconds.
    *
    * @param propertiesFile the path to the properties file
    * @throws DnsException if the database cannot be loaded
    */
   public Dns(String propertiesFile) throws DnsException {
-    this.ipMap = new HashMap<>();
-    this.nameMap = new HashMap<>();
+    this(loadProperties(propertiesFile));
+  }
+
+  private Dns(Properties props) throws DnsException {
+    this(createStorage(props), useFilters(props), useOffHeap(props));
+    listingCache.setCapacity((int) longProperty(props, "dns.listing.cache.capacity",
+        DEFAULT_LISTING_CACHE_CAPACITY));
+    String reload = props.getProperty("dns.reload", "none");
+    switch (reload) {
+      case "none":
+        break;
+      case "watch":
+        if (props.getProperty("dns.persistence", "rewrite").equals("sharded")) {
+          storage.close();
+          throw new DnsException("Le rechargement ne surveille pas les partitions");
+        }
+        reloader = new DnsReloader(this, Paths.get(props.getProperty("dns.database.file")),
+            longProperty(props, "dns.reload.debounce.ms", DnsReloader.DEFAULT_DEBOUNCE_MILLIS));
+        break;
+      default:
+        storage.close();
+        throw new DnsException("Mode de rechargement inconnu : " + reload);
+    }
+  }
+
+  /**
+   * Constructor for testing with a specific database path.
+   *
+   * @param databasePath the path to the database file
+   * @throws DnsException if the database cannot be loaded
+   */
+  Dns(Path databasePath) throws DnsException {
+    this(new TextFileStorage(databasePath));
+  }
+
+  /**
+   * Constructor for testing with a specific storage.
+   *
+   * @param storage the storage holding the database
+   * @throws DnsException if the database cannot be loaded
+   */
+  Dns(DnsStorage storage) throws DnsException {
+    this(storage, false);
+  }
+
+  /**
+   * Constructor for testing with a specific storage and optional Bloom filters.
+   *
+   * @param storage the storage holding the database
+   * @param filters whether lookups go through Bloom filters, built once the entries are loaded
+   * @throws DnsException if the database cannot be loaded
+   */
+  Dns(DnsStorage storage, boolean filters) throws DnsException {
+    this(storage, filters, false);
+  }
 
+  /**
+   * Constructor for testing with a specific storage, optional Bloom filters and a choice of
+   * entry store.
+   *
+   * @param storage the storage holding the database
+   * @param filters whether lookups go through Bloom filters, built once the entries are loaded
+   * @param offHeap whether entries are kept outside the heap, without domain and network
+   *     indexes
+   * @throws DnsException if the database cannot be loaded
+   */
+  Dns(DnsStorage storage, boolean filters, boolean offHeap) throws DnsException {
+    if (offHeap) {
+      OffHeapEntryStore store = new OffHeapEntryStore();
+      stats.trackStore(store);
+      this.entries = store;
+    } else {
+      this.entries = new HeapEntryStore();
+    }
+    this.domainIndex = offHeap ? null : new DomainIndex();
+    this.ipTrie = offHeap ? null : new IpTrie();
+    this.storage = storage;
+    if (domainIndex == null) {
+      storage.load(this::indexIfAbsent, this::unindexIfPresent);
+    } else {
+      domainIndex.beginBulk();
+      try {
+        storage.load(this::indexIfAbsent, this::unindexIfPresent);
+      } finally {
+        domainIndex.endBulk();
+      }
+    }
+    if (filters) {
+      rebuildFilters();
+    }
+  }
+
+  private static Properties loadProperties(String propertiesFile) throws DnsException {
     try {
       Properties props = new Properties();
-      try (InputStream input = getClass().getClassLoader()
+      try (InputStream input = Dns.class.getClassLoader()
           .getResourceAsStream(propertiesFile)) {
         if (input == null) {
           throw new DnsException("Fichier de propriétés introuvable : " + propertiesFile);
         }
         props.load(input);
       }
-
-      String dbFile = props.getProperty("dns.database.file");
-      if (dbFile == null) {
-        throw new DnsException("Propriété 'dns.database.file' non trouvée");
-      }
-
-      this.databasePath = Paths.get(dbFile);
-      loadDatabase();
+      return props;
     } catch (IOException e) {
       throw new DnsException("Erreur lors du chargement de la base de données", e);
     }
   }
 
+  private static DnsStorage createStorage(Properties props) throws DnsException {
+    String dbFile = props.getProperty("dns.database.file");
+    if (dbFile == null) {
+      throw new DnsException("Propriété 'dns.database.file' non trouvée");
+    }
+    Path databasePath = Paths.get(dbFile);
+
+    String snapshot = props.getProperty("dns.snapshot", "none");
+    if (!snapshot.equals("none") && !snapshot.equals("binary")) {
+      throw new DnsException("Type d'instantané inconnu : " + snapshot);
+    }
+    TextFileStorage text = new TextFileStorage(databasePath, snapshot.equals("binary"));
+
+    DnsStorage storage;
+    String persistence = props.getProperty("dns.persistence", "rewrite");
+    switch (persistence) {
+      case "rewrite":
+        storage = text;
+        break;
+      case "journal":
+        storage = new JournalStorage(text, longProperty(props,
+            "dns.journal.compaction.threshold", JournalStorage.DEFAULT_COMPACTION_THRESHOLD));
+        break;
+      case "sharded":
+        storage = new ShardedStorage(text, (int) longProperty(props, "dns.shards",
+            ShardedStorage.DEFAULT_SHARD_COUNT));
+        break;
+      default:
+        throw new DnsException("Mode de persistance inconnu : " + persistence);
+    }
+
+    String commit = props.getProperty("dns.commit", "direct");
+    switch (commit) {
+      case "direct":
+        return storage;
+      case "group":
+        return new GroupCommitStorage(storage,
+            longProperty(props, "dns.commit.window.ms", GroupCommitStorage.DEFAULT_WINDOW_MILLIS),
+            durability(props), longProperty(props, "dns.durability.interval.ms",
+                GroupCommitStorage.DEFAULT_SYNC_INTERVAL_MILLIS));
+      default:
+        throw new DnsException("Mode d'écriture inconnu : " + commit);
+    }
+  }
+
+  private static GroupCommitStorage.Durability durability(Properties props)
+      throws DnsException {
+    String durability = props.getProperty("dns.durability", "batch");
+    switch (durability) {
+      case "batch":
+        return GroupCommitStorage.Durability.BATCH;
+      case "interval":
+        return GroupCommitStorage.Durability.INTERVAL;
+      case "none":
+        return GroupCommitStorage.Durability.NONE;
+      default:
+        throw new DnsException("Mode de durabilité inconnu : " + durability);
+    }
+  }
+
+  private static boolean useFilters(Properties props) throws DnsException {
+    String filter = props.getProperty("dns.filter", "none");
+    switch (filter) {
+      case "none":
+        return false;
+      case "bloom":
+        return true;
+      default:
+        throw new DnsException("Type de filtre inconnu : " + filter);
+    }
+  }
+
+  private static boolean useOffHeap(Properties props) throws DnsException {
+    String store = props.getProperty("dns.store", "heap");
+    switch (store) {
+      case "heap":
+        return false;
+      case "offheap":
+        return true;
+      default:
+        throw new DnsException("Type de stockage inconnu : " + store);
+    }
+  }
+
+  private static long longProperty(Properties props, String name, long defaultValue)
+      throws DnsException {
+    String value = props.getProperty(name);
+    if (value == null) {
+      return defaultValue;
+    }
+    try {
+      return Long.parseLong(value.trim());
+    } catch (NumberFormatException e) {
+      throw new DnsException("Valeur invalide pour la propriété '" + name + "' : " + value, e);
+    }
+  }
+
+  private void indexIfAbsent(DnsItem item) {
+    if (!entries.containsIp(item.getAdresseIp().toInt())) {
+      index(item); // Duplicate addresses keep the first entry
+    }
+  }
+
   /**
-   * Constructor for testing with a specific database path.
-   *
-   * @param databasePath the path to the database file
-   * @throws DnsException if the database cannot be loaded
+   * Indexes an entry whose address is absent, as the only address of its name or as one more.
    */
-  Dns(Path databasePath) throws DnsException {
-    this.ipMap = new HashMap<>();
-    this.nameMap = new HashMap<>();
-    this.databasePath = databasePath;
-    loadDatabase();
+  private void index(DnsItem entry) {
+    DnsItem item = domainIndex == null ? entry : domainIndex.shareDomain(entry);
+    NomMachine nom = item.getNomMachine();
+    DnsItem first = entries.get(nom);
+    if (first == null) {
+      filter(item);
+      entries.put(item);
+    } else {
+      int ip = item.getAdresseIp().toInt();
+      AddressSet set = addressSets.get(nom);
+      addressSets.put(nom, set != null ? set.with(ip)
+          : new AddressSet(first.getAdresseIp().toInt(), ip));
+      filter(item);
+      entries.putAddress(item);
+    }
+    if (domainIndex != null) {
+      domainIndex.add(item);
+      ipTrie.put(item.getAdresseIp().toInt(), item);
+    }
   }
 
-  private void loadDatabase() throws DnsException {
-    if (!Files.exists(databasePath)) {
-      return; // Empty database
+  private void filter(DnsItem item) {
+    BloomFilter ips = ipFilter;
+    BloomFilter names = nameFilter;
+    if (ips != null) { // Filters first, so a visible entry is never rejected
+      ips.add(item.getAdresseIp().toInt());
+      names.add(item.getNomMachine().hashCode());
     }
+  }
 
+  /**
+   * Removes an entry from the indexes. If its name keeps other addresses and the name index
+   * referred to this entry, it now refers to the first remaining address.
+   */
+  private void unindex(DnsItem item) {
+    entries.remove(item);
+    if (domainIndex != null) {
+      domainIndex.remove(item);
+      ipTrie.remove(item.getAdresseIp().toInt());
+    }
+    NomMachine nom = item.getNomMachine();
+    AddressSet set = addressSets.get(nom);
+    if (set == null) {
+      return;
+    }
+    int[] rest = set.without(item.getAdresseIp().toInt());
+    if (rest.length == 1) {
+      addressSets.remove(nom);
+    } else {
+      addressSets.put(nom, new AddressSet(rest));
+    }
+    if (!entries.containsName(nom)) {
+      DnsItem first = entries.get(rest[0]);
+      entries.remove(first);
+      entries.put(first);
+    }
+  }
+
+  private void unindexIfPresent(DnsItem item) {
+    DnsItem current = entries.get(item.getAdresseIp().toInt());
+    if (item.equals(current)) {
+      unindex(current);
+    }
+  }
+
+  /**
+   * Returns every entry of a machine name, in the order of its addresses.
+   */
+  private List<DnsItem> records(NomMachine nom) throws DnsException {
+    DnsItem first = entries.get(nom);
+    if (first == null) {
+      throw new DnsException("Le nom de machine n'existe pas : " + nom);
+    }
+    AddressSet set = addressSets.get(nom);
+    if (set == null) {
+      return List.of(first);
+    }
+    List<DnsItem> records = new ArrayList<>(set.size());
+    for (int i = 0; i < set.size(); i++) {
+      records.add(entries.get(set.get(i)));
+    }
+    return records;
+  }
+
+  /**
+   * Removes entries then adds others, and hands the changes to the storage. Entries both removed
+   * and added are left as they are. Readers see the whole change or none of it. The caller holds
+   * the write lock.
+   *
+   * @return the future of the save
+   */
+  private CompletableFuture<Void> change(List<DnsItem> removed, List<DnsItem> added) {
+    List<DnsItem> removals = new ArrayList<>(removed);
+    List<DnsItem> additions = new ArrayList<>(added);
+    removals.removeIf(added::contains);
+    additions.removeIf(removed::contains);
+    changeSequence++; // Odd: readers wait
     try {
-      List<String> lines = Files.readAllLines(databasePath);
-      for (String line : lines) {
-        line = line.trim();
-        if (line.isEmpty() || line.startsWith("#")) {
-          continue;
-        }
+      for (DnsItem item : removals) {
+        unindex(item);
+      }
+      for (DnsItem item : additions) {
+        index(item);
+      }
+    } finally {
+      endChange();
+    }
+    for (DnsItem item : removals) {
+      listingCache.invalidate(item.getNomMachine().getNomDomaine());
+    }
+    for (DnsItem item : additions) {
+      listingCache.invalidate(item.getNomMachine().getNomDomaine());
+    }
+    return storage.saveChangesAsync(removals, additions, entries.values());
+  }
 
-        String[] parts = line.split("\\s+");
-        if (parts.length != 2) {
-          continue; // Skip invalid lines
-        }
+  /**
+   * Ends the change begun by making the sequence number odd, and wakes up the readers waiting
+   * for it. The caller holds the write lock.
+   */
+  private void endChange() {
+    changeSequence++;
+    synchronized (changeEnded) {
+      changeEnded.notifyAll();
+    }
+  }
 
+  /**
+   * Waits until no change is being applied, parked on a monitor if one is.
+   *
+   * @return the sequence number to compare with once the read is done
+   */
+  private long stableSequence() {
+    long sequence = changeSequence;
+    if ((sequence & 1) == 0) {
+      return sequence;
+    }
+    boolean interrupted = false;
+    synchronized (changeEnded) {
+      // The writer makes the sequence even before taking the monitor, so no wake-up is missed
+      while (((sequence = changeSequence) & 1) != 0) {
         try {
-          NomMachine nom = new NomMachine(parts[0]);
-          AdresseIP ip = new AdresseIP(parts[1]);
-          DnsItem item = new DnsItem(ip, nom);
-          ipMap.put(ip, item);
-          nameMap.put(nom, item);
-        } catch (IllegalArgumentException e) {
-          // Skip invalid entries
+          changeEnded.wait();
+        } catch (InterruptedException e) {
+          interrupted = true; // Lookups cannot fail, the change ends shortly
         }
       }
-    } catch (IOException e) {
-      throw new DnsException("Erreur lors de la lecture de la base de données", e);
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    return sequence;
+  }
+
+  /**
+   * Runs a read until no change was applied during it.
+   */
+  private <T> T consistent(Supplier<T> read) {
+    while (true) {
+      long sequence = stableSequence();
+      T result = read.get();
+      if (changeSequence == sequence) {
+        return result;
+      }
     }
   }
 
+  /**
+   * Returns the domain index, or without one an index of the entries of a domain, and of its
+   * subdomains if requested, found by scanning every entry.
+   */
+  private DomainIndex domains(String domain, boolean recursive) {
+    if (domainIndex != null) {
+      return domainIndex;
+    }
+    DomainIndex scanned = new DomainIndex();
+    String suffix = "." + domain;
+    scanned.beginBulk();
+    entries.forEach(item -> {
+      String itemDomain = item.getNomMachine().getNomDomaine();
+      if (itemDomain.equals(domain) || (recursive && itemDomain.endsWith(suffix))) {
+        scanned.add(item);
+      }
+    });
+    scanned.endBulk();
+    return scanned;
+  }
+
+  /**
+   * Rebuilds the Bloom filters from the current entries, sized for twice their number, and
+   * enables them if they were not. Rebuilding restores the expected false-positive rate after
+   * many additions.
+   */
+  public void rebuildFilters() {
+    synchronized (writeLock) {
+      long capacity = Math.max(FILTER_MIN_CAPACITY, 2L * entries.size());
+      BloomFilter ips = new BloomFilter(capacity, FILTER_FALSE_POSITIVE_RATE);
+      BloomFilter names = new BloomFilter(capacity, FILTER_FALSE_POSITIVE_RATE);
+      entries.forEach(item -> {
+        ips.add(item.getAdresseIp().toInt());
+        names.add(item.getNomMachine().hashCode());
+      });
+      nameFilter = names;
+      ipFilter = ips;
+    }
+  }
+
+  /**
+   * Returns the Bloom filter in front of the IP lookups.
+   *
+   * @return the filter, or null if filters are disabled
+   */
+  BloomFilter getIpFilter() {
+    return ipFilter;
+  }
+
+  /**
+   * Returns the Bloom filter in front of the name lookups.
+   *
+   * @return the filter, or null if filters are disabled
+   */
+  BloomFilter getNameFilter() {
+    return nameFilter;
+  }
+
   /**
    * Gets a DNS entry by IP address.
    *
@@ -108,7 +529,32 @@ public class Dns {
    * @return the DNS entry, or null if not found
    */
   public DnsItem getItem(AdresseIP ip) {
-    return ipMap.get(ip);
+    return getItem(ip.toInt());
+  }
+
+  /**
+   * Gets a DNS entry by packed IP address, without allocating.
+   *
+   * @param ip the IP address packed in an int
+   * @return the DNS entry, or null if not found
+   */
+  DnsItem getItem(int ip) {
+    BloomFilter filter = ipFilter;
+    if (filter != null && !filter.mightContain(ip)) {
+      stats.recordIpLookup(false);
+      return null;
+    }
+    DnsItem item;
+    long sequence;
+    do {
+      sequence = stableSequence();
+      item = entries.get(ip);
+    } while (changeSequence != sequence);
+    if (item == null && filter != null) {
+      filter.recordFalsePositive();
+    }
+    stats.recordIpLookup(item != null);
+    return item;
   }
 
   /**
@@ -118,33 +564,218 @@ public class Dns {
    * @return the DNS entry, or null if not found
    */
   public DnsItem getItem(NomMachine nom) {
-    return nameMap.get(nom);
+    BloomFilter filter = nameFilter;
+    if (filter != null && !filter.mightContain(nom.hashCode())) {
+      stats.recordNameLookup(false);
+      return null;
+    }
+    DnsItem item;
+    long sequence;
+    do {
+      sequence = stableSequence();
+      item = entries.get(nom);
+    } while (changeSequence != sequence);
+    if (item == null && filter != null) {
+      filter.recordFalsePositive();
+    }
+    stats.recordNameLookup(item != null);
+    return item;
+  }
+
+  /**
+   * Gets a DNS entry by a machine name read from a message, without creating a NomMachine.
+   *
+   * @param nom the qualified name, in lower case
+   * @return the DNS entry, or null if not found
+   */
+  DnsItem getItem(NameProbe nom) {
+    BloomFilter filter = nameFilter;
+    if (filter != null && !filter.mightContain(nom.hash())) {
+      stats.recordNameLookup(false);
+      return null;
+    }
+    DnsItem item;
+    long sequence;
+    do {
+      sequence = stableSequence();
+      item = entries.get(nom);
+    } while (changeSequence != sequence);
+    if (item == null && filter != null) {
+      filter.recordFalsePositive();
+    }
+    stats.recordNameLookup(item != null);
+    return item;
+  }
+
+  /**
+   * Gets every IP address of a machine name. A name having several addresses returns them in
+   * the order they were added, or, when rotating, starting one address further at each call for
+   * that name, so that successive clients are spread over all of them.
+   *
+   * @param nom the machine name to search for
+   * @param rotate whether the order rotates from one call to the next
+   * @return a new array of addresses packed in ints, empty if the name is not found
+   */
+  public int[] getAddresses(NomMachine nom, boolean rotate) {
+    DnsItem item = getItem(nom);
+    return item == null ? new int[0] : getAddresses(item, rotate);
+  }
+
+  /**
+   * Gets every IP address of the machine name of an entry found by a lookup, like
+   * {@link #getAddresses(NomMachine, boolean)}, without counting another lookup.
+   *
+   * @param item the entry of the name
+   * @param rotate whether the order rotates from one call to the next
+   * @return a new array of addresses packed in ints
+   */
+  int[] getAddresses(DnsItem item, boolean rotate) {
+    AddressSet set = addressSets.get(item.getNomMachine());
+    if (set == null) {
+      return new int[] {item.getAdresseIp().toInt()};
+    }
+    return rotate ? set.rotate() : set.toArray();
+  }
+
+  /**
+   * Returns the cache of rendered domain listings, invalidated by every add.
+   *
+   * @return the listing cache
+   */
+  ListingCache getListingCache() {
+    return listingCache;
+  }
+
+  /**
+   * Returns the runtime statistics of this database.
+   *
+   * @return the statistics, updated by lookups and by the application loop
+   */
+  public DnsStats getStats() {
+    return stats;
   }
 
   /**
    * Gets all DNS entries for a given domain, sorted by machine name.
    *
-   * @param domain the domain name
+   * @param domain the domain name, in any case
    * @return list of DNS entries in the domain, sorted by machine name
    */
   public List<DnsItem> getItems(String domain) {
-    return nameMap.values().stream()
-        .filter(item -> item.getNomMachine().getNomDomaine().equals(domain))
-        .sorted(Comparator.comparing(item -> item.getNomMachine().getNomMachine()))
-        .collect(Collectors.toList());
+    String key = domain.toLowerCase(Locale.ROOT);
+    return consistent(() -> domains(key, false).byName(key));
   }
 
   /**
-   * Gets all DNS entries for a given domain, sorted by IP address.
+   * Gets all DNS entries for a given domain, sorted by numeric IP address.
    *
-   * @param domain the domain name
+   * @param domain the domain name, in any case
    * @return list of DNS entries in the domain, sorted by IP address
    */
   public List<DnsItem> getItemsSortedByIp(String domain) {
-    return nameMap.values().stream()
-        .filter(item -> item.getNomMachine().getNomDomaine().equals(domain))
-        .sorted(Comparator.comparing(item -> item.getAdresseIp().getAdresse()))
-        .collect(Collectors.toList());
+    String key = domain.toLowerCase(Locale.ROOT);
+    return consistent(() -> domains(key, false).byIp(key));
+  }
+
+  /**
+   * Gets all DNS entries of a domain and of its subdomains. Only the entries of the subtree are
+   * visited, whatever the size of the database.
+   *
+   * @param domain the domain name, in any case
+   * @return list of DNS entries under the domain, each domain sorted by machine name and followed
+   *     by its subdomains in label order
+   */
+  public List<DnsItem> getItemsUnder(String domain) {
+    String key = domain.toLowerCase(Locale.ROOT);
+    return consistent(() -> domains(key, true).subtree(key));
+  }
+
+  /**
+   * Returns a cursor over the entries of a domain, reading the indexes as it advances instead of
+   * copying the listing. Entries added or reloaded while iterating may or may not be returned.
+   *
+   * @param domain the domain name, in any case
+   * @param sortByIp whether the entries are sorted by numeric IP address rather than by name
+   * @param recursive whether the entries of the subdomains are included, each domain followed by
+   *     its subdomains in label order when sorting by name
+   * @param after the machine of the entry after which the cursor starts, or null to start at the
+   *     first entry
+   * @param afterIp the address of that entry, so that the cursor resumes between two addresses
+   *     of the same name; the entry need not exist any more. Without it, the cursor starts after
+   *     every address of the machine when sorting by name, and after its first address when
+   *     sorting by IP address, the machine then having to exist
+   * @return the cursor over the entries
+   * @throws IllegalArgumentException if {@code after} is outside the listed domain, or is
+   *     unknown while sorting by IP address without an address
+   */
+  public Iterator<DnsItem> iterateItems(String domain, boolean sortByIp, boolean recursive,
+      NomMachine after, AdresseIP afterIp) {
+    DnsItem cursor = null;
+    if (after != null && afterIp != null) {
+      cursor = new DnsItem(afterIp, after);
+    } else if (after != null && sortByIp) {
+      cursor = entries.get(after);
+      if (cursor == null) {
+        throw new IllegalArgumentException("Machine inconnue : " + after);
+      }
+    } else if (after != null) {
+      // The greatest address sorts after every address of the name
+      cursor = new DnsItem(new AdresseIP(-1), after);
+    }
+    String key = domain.toLowerCase(Locale.ROOT);
+    return domains(key, recursive).iterator(key, sortByIp, recursive, cursor);
+  }
+
+  /**
+   * Counts the DNS entries of a domain, without its subdomains.
+   *
+   * @param domain the domain name, in any case
+   * @return the number of entries of the domain
+   */
+  public int countItems(String domain) {
+    String key = domain.toLowerCase(Locale.ROOT);
+    return consistent(() -> domains(key, false).size(key));
+  }
+
+  /**
+   * Counts the DNS entries of a domain and of its subdomains, without visiting them.
+   *
+   * @param domain the domain name, in any case
+   * @return the number of entries under the domain
+   */
+  public int countItemsUnder(String domain) {
+    String key = domain.toLowerCase(Locale.ROOT);
+    return consistent(() -> domains(key, true).subtreeSize(key));
+  }
+
+  /**
+   * Gets all DNS entries whose address belongs to a network, in numeric order of address.
+   * Only the entries of the network are visited, whatever the size of the database.
+   *
+   * @param network the network address; bits beyond the prefix are ignored
+   * @param prefixLength the length of the network prefix, between 0 and 32
+   * @return list of DNS entries in the network, sorted by IP address
+   * @throws IllegalArgumentException if the prefix length is out of range
+   */
+  public List<DnsItem> getItemsInNetwork(AdresseIP network, int prefixLength) {
+    if (prefixLength < 0 || prefixLength > 32) {
+      throw new IllegalArgumentException("Longueur de préfixe invalide : " + prefixLength);
+    }
+    return consistent(() -> network(network.toInt(), prefixLength));
+  }
+
+  private List<DnsItem> network(int network, int prefixLength) {
+    if (ipTrie != null) {
+      return ipTrie.range(network, prefixLength);
+    }
+    IpTrie scanned = new IpTrie();
+    int mask = prefixLength == 0 ? 0 : -1 << (32 - prefixLength);
+    entries.forEach(item -> {
+      if (((item.getAdresseIp().toInt() ^ network) & mask) == 0) {
+        scanned.put(item.getAdresseIp().toInt(), item);
+      }
+    });
+    return scanned.range(network, prefixLength);
   }
 
   /**
@@ -155,34 +786,285 @@ public class Dns {
    * @throws DnsException if the IP or name already exists, or if saving fails
    */
   public void addItem(AdresseIP ip, NomMachine nom) throws DnsException {
-    if (ipMap.containsKey(ip)) {
-      throw new DnsException("L'adresse IP existe déjà : " + ip);
+    GroupCommitStorage.await(addItemAsync(ip, nom));
+  }
+
+  /**
+   * Adds a new DNS entry without waiting for it to be persisted. The entry is visible to lookups
+   * as soon as the method returns. Only a storage with group commit persists it in the
+   * background; other storages save it before returning.
+   *
+   * @param ip the IP address
+   * @param nom the machine name
+   * @return a future completed once the entry is persisted, or completed exceptionally with a
+   *     DnsException if saving fails
+   * @throws DnsException if the IP or name already exists
+   */
+  public CompletableFuture<Void> addItemAsync(AdresseIP ip, NomMachine nom)
+      throws DnsException {
+    DnsItem item = new DnsItem(ip, nom);
+    synchronized (writeLock) {
+      if (entries.containsIp(ip.toInt())) {
+        throw new DnsException("L'adresse IP existe déjà : " + ip);
+      }
+      if (entries.containsName(nom)) {
+        throw new DnsException("Le nom de machine existe déjà : " + nom);
+      }
+      index(item);
+      listingCache.invalidate(nom.getNomDomaine());
+      return storage.saveAsync(List.of(item), entries.values());
+    }
+  }
+
+  /**
+   * Adds several DNS entries at once. Every entry is checked against the database and against
+   * the other entries first, so either all of them are added or none is. As with
+   * {@link #addAddress}, a name may come with several addresses, or get one more, but every
+   * address must be new. The entries become visible together, and are persisted in a single
+   * pass; if saving fails they are removed again.
+   *
+   * @param items the entries to add
+   * @throws DnsException if an IP already exists or is repeated, or if saving fails
+   */
+  public void addItems(Collection<DnsItem> items) throws DnsException {
+    List<DnsItem> added = new ArrayList<>(items);
+    synchronized (writeLock) {
+      Set<AdresseIP> ips = new HashSet<>();
+      for (DnsItem item : added) {
+        AdresseIP ip = item.getAdresseIp();
+        if (entries.containsIp(ip.toInt())) {
+          throw new DnsException("L'adresse IP existe déjà : " + ip);
+        }
+        if (!ips.add(ip)) {
+          throw new DnsException("L'adresse IP apparaît plusieurs fois : " + ip);
+        }
+      }
+      if (added.isEmpty()) {
+        return;
+      }
+
+      changeSequence++; // Odd: readers wait until the whole batch is indexed
+      if (domainIndex != null) {
+        domainIndex.beginBulk();
+      }
+      try {
+        for (DnsItem item : added) {
+          index(item);
+        }
+      } finally {
+        if (domainIndex != null) {
+          domainIndex.endBulk();
+        }
+        endChange();
+      }
+      invalidateDomains(added);
+
+      try {
+        storage.save(added, entries.values());
+      } catch (DnsException e) {
+        changeSequence++;
+        try {
+          for (int i = added.size() - 1; i >= 0; i--) {
+            unindex(added.get(i));
+          }
+        } finally {
+          endChange();
+        }
+        invalidateDomains(added);
+        throw e;
+      }
     }
-    if (nameMap.containsKey(nom)) {
-      throw new DnsException("Le nom de machine existe déjà : " + nom);
+  }
+
+  private void invalidateDomains(List<DnsItem> items) {
+    Set<String> domains = new HashSet<>();
+    for (DnsItem item : items) {
+      if (domains.add(item.getNomMachine().getNomDomaine())) {
+        listingCache.invalidate(item.getNomMachine().getNomDomaine());
+      }
     }
+  }
 
-    DnsItem item = new DnsItem(ip, nom);
-    ipMap.put(ip, item);
-    nameMap.put(nom, item);
+  /**
+   * Adds an address to a machine name, which then answers with several addresses. The name is
+   * created if it is absent. Reverse lookups of the new address find the name like any other
+   * entry.
+   *
+   * @param nom the machine name
+   * @param ip the IP address to add
+   * @throws DnsException if the IP already exists, or if saving fails
+   */
+  public void addAddress(NomMachine nom, AdresseIP ip) throws DnsException {
+    CompletableFuture<Void> saved;
+    synchronized (writeLock) {
+      if (entries.containsIp(ip.toInt())) {
+        throw new DnsException("L'adresse IP existe déjà : " + ip);
+      }
+      saved = change(List.of(), List.of(new DnsItem(ip, nom)));
+    }
+    GroupCommitStorage.await(saved);
+  }
 
-    saveToFile();
+  /**
+   * Removes a machine name with all its addresses. The indexes are updated in constant time per
+   * address, and in logarithmic time in the sorted listings of its domain; the storage records
+   * the removal without rewriting the other entries, unless it rewrites the whole file on every
+   * change.
+   *
+   * @param nom the machine name
+   * @return the removed entry, the first address of the name if it had several
+   * @throws DnsException if no entry has this name, or if saving fails
+   */
+  public DnsItem removeItem(NomMachine nom) throws DnsException {
+    List<DnsItem> removed;
+    CompletableFuture<Void> saved;
+    synchronized (writeLock) {
+      removed = records(nom);
+      saved = change(removed, List.of());
+    }
+    GroupCommitStorage.await(saved);
+    return removed.get(0);
   }
 
-  private void saveToFile() throws DnsException {
-    try {
-      List<String> lines = new ArrayList<>();
-      for (DnsItem item : nameMap.values()) {
-        lines.add(item.getNomMachine() + " " + item.getAdresseIp());
+  /**
+   * Removes the entry of an IP address, like {@link #removeItem(NomMachine)}. A name having
+   * other addresses keeps them.
+   *
+   * @param ip the IP address
+   * @return the removed entry
+   * @throws DnsException if no entry has this address, or if saving fails
+   */
+  public DnsItem removeItem(AdresseIP ip) throws DnsException {
+    DnsItem item;
+    CompletableFuture<Void> saved;
+    synchronized (writeLock) {
+      item = entries.get(ip.toInt());
+      if (item == null) {
+        throw new DnsException("L'adresse IP n'existe pas : " + ip);
       }
+      saved = change(List.of(item), List.of());
+    }
+    GroupCommitStorage.await(saved);
+    return item;
+  }
 
-      // Sort lines for consistent output
-      lines.sort(String::compareTo);
+  /**
+   * Moves a machine name to another IP address, which becomes its only address. The change is
+   * persisted as the removal of the previous entries followed by the add of the new one.
+   *
+   * @param nom the machine name
+   * @param ip the new IP address
+   * @return the previous entry, the first address of the name if it had several
+   * @throws DnsException if no entry has this name, if another name has this address, or if
+   *     saving fails
+   */
+  public DnsItem updateItem(NomMachine nom, AdresseIP ip) throws DnsException {
+    List<DnsItem> old;
+    CompletableFuture<Void> saved;
+    synchronized (writeLock) {
+      old = records(nom);
+      DnsItem sameIp = entries.get(ip.toInt());
+      if (sameIp != null && !sameIp.getNomMachine().equals(nom)) {
+        throw new DnsException("L'adresse IP existe déjà : " + ip);
+      }
+      saved = change(old, List.of(new DnsItem(ip, nom)));
+    }
+    GroupCommitStorage.await(saved);
+    return old.get(0);
+  }
 
-      Files.write(databasePath, lines, StandardOpenOption.CREATE,
-          StandardOpenOption.TRUNCATE_EXISTING);
-    } catch (IOException e) {
-      throw new DnsException("Erreur lors de la sauvegarde de la base de données", e);
+  /**
+   * Renames a machine name, keeping its IP addresses. The change is persisted as the removal of
+   * the previous entries followed by the add of the new ones.
+   *
+   * @param nom the machine name
+   * @param nouveauNom the new machine name
+   * @return the previous entry, the first address of the name if it had several
+   * @throws DnsException if no entry has this name, if another entry has the new name, or if
+   *     saving fails
+   */
+  public DnsItem updateItem(NomMachine nom, NomMachine nouveauNom) throws DnsException {
+    List<DnsItem> old;
+    CompletableFuture<Void> saved;
+    synchronized (writeLock) {
+      old = records(nom);
+      if (!nouveauNom.equals(nom) && entries.containsName(nouveauNom)) {
+        throw new DnsException("Le nom de machine existe déjà : " + nouveauNom);
+      }
+      List<DnsItem> renamed = new ArrayList<>(old.size());
+      for (DnsItem item : old) {
+        renamed.add(new DnsItem(item.getAdresseIp(), nouveauNom));
+      }
+      saved = change(old, renamed);
+    }
+    GroupCommitStorage.await(saved);
+    return old.get(0);
+  }
+
+  /**
+   * Applies changes read from the database file, without persisting them. Readers see all of
+   * them at once, when they are applied. The cost depends on the number of changes only.
+   *
+   * @param removed the entries to remove, each only if the entry of its address is still the
+   *     same: an address bound to another name in the meantime keeps it
+   * @param added the entries to add, after the removals. An entry already present is kept as is,
+   *     the entry having its address is replaced by it, and a name already present gets it as
+   *     one more address
+   */
+  void applyChanges(Collection<DnsItem> removed, Collection<DnsItem> added) {
+    synchronized (writeLock) {
+      Set<String> domains = new HashSet<>();
+      changeSequence++; // Odd: readers wait
+      try {
+        for (DnsItem item : removed) {
+          if (item.equals(entries.get(item.getAdresseIp().toInt()))) {
+            unindex(item);
+            domains.add(item.getNomMachine().getNomDomaine());
+          }
+        }
+        // Inserting into the sorted arrays costs less than sorting them, except for a change
+        // rewriting a large part of the database
+        boolean bulk = domainIndex != null && added.size() * 8L > entries.size();
+        if (bulk) {
+          domainIndex.beginBulk();
+        }
+        try {
+          for (DnsItem item : added) {
+            DnsItem sameIp = entries.get(item.getAdresseIp().toInt());
+            if (item.equals(sameIp)) {
+              continue;
+            }
+            if (sameIp != null) {
+              unindex(sameIp);
+              domains.add(sameIp.getNomMachine().getNomDomaine());
+            }
+            index(item);
+            domains.add(item.getNomMachine().getNomDomaine());
+          }
+        } finally {
+          if (bulk) {
+            domainIndex.endBulk();
+          }
+        }
+      } finally {
+        endChange();
+      }
+      for (String domain : domains) {
+        listingCache.invalidate(domain);
+      }
+    }
+  }
+
+  /**
+   * Stops watching the database file, then closes the storage, waiting for pending persistence
+   * work.
+   *
+   * @throws DnsException if pending changes cannot be persisted
+   */
+  public void close() throws DnsException {
+    if (reloader != null) {
+      reloader.close();
     }
+    storage.close();
   }
 }
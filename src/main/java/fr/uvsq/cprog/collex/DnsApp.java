@@ -1,11 +1,28 @@
 package fr.uvsq.cprog.collex;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Scanner;
 
 /**
  * Main DNS application.
  */
 public class DnsApp {
+  static final int BATCH_FLUSH_INTERVAL = 10_000;
+  private static final int BATCH_BUFFER_SIZE = 1 << 16;
+
   private final DnsTUI tui;
 
   /**
@@ -19,14 +36,25 @@ public class DnsApp {
 
   /**
    * Runs the DNS application main loop.
+   * The execution time of every command is recorded in the statistics of the database.
    */
   public void run() {
+    DnsStats stats = tui.getStats();
     System.out.println("DNS Simulator - Tapez 'quit' pour quitter");
     System.out.println("Commandes disponibles:");
     System.out.println("  <nom.qualifie>           - Afficher l'adresse IP");
     System.out.println("  <adresse.ip>             - Afficher le nom qualifié");
-    System.out.println("  ls [-a] <domaine>        - Lister les machines du domaine");
-    System.out.println("  add <ip> <nom.qualifie>  - Ajouter une entrée DNS");
+    System.out.println("  ls [-a] [-r] <domaine>   - Lister les machines du domaine");
+    System.out.println("  ls --limit N [--after <nom>[@<ip>]] <domaine> - Lister par pages");
+    System.out.println("  ls -net <ip>/<longueur>  - Lister les machines d'un réseau");
+    System.out.println("  count <domaine>          - Compter les machines du domaine");
+    System.out.println("  add [-async] <ip> <nom>  - Ajouter une entrée DNS");
+    System.out.println("  add -multi <ip> <nom>    - Ajouter une adresse à un nom");
+    System.out.println("  del <nom|ip>             - Supprimer une entrée DNS");
+    System.out.println("  mv <nom> <nom|ip>        - Renommer ou déplacer une entrée DNS");
+    System.out.println("  import <fichier>         - Importer les entrées d'un fichier");
+    System.out.println("  stats                    - Afficher les statistiques");
+    System.out.println("  bloom [rebuild]          - Afficher ou reconstruire les filtres");
     System.out.println("  quit                     - Quitter l'application");
     System.out.println();
 
@@ -35,36 +63,156 @@ public class DnsApp {
       Commande cmd = tui.nextCommande();
       
       if (cmd == null) {
+        if (tui.isFinished()) {
+          break;
+        }
         continue;
       }
 
-      Object result = cmd.execute();
-      
+      Object result = execute(cmd, tui, stats);
+
       if ("quit".equals(result)) {
         System.out.println("Au revoir !");
         break;
       }
+    }
+  }
 
+  /**
+   * Replays commands until the input is exhausted or a quit command, without banner or
+   * prompts. Results are written through the output of the interface, flushed every
+   * {@value #BATCH_FLUSH_INTERVAL} results and at the end.
+   */
+  public void runBatch() {
+    DnsStats stats = tui.getStats();
+    int unflushed = 0;
+    while (true) {
+      Commande cmd = tui.nextCommande();
+      if (cmd == null) {
+        if (tui.isFinished()) {
+          break;
+        }
+        continue;
+      }
+
+      Object result = execute(cmd, tui, stats);
+      if ("quit".equals(result)) {
+        break;
+      }
+
+      if (++unflushed == BATCH_FLUSH_INTERVAL) {
+        tui.flush();
+        unflushed = 0;
+      }
+    }
+    tui.flush();
+  }
+
+  /**
+   * Executes a command, displays its result unless it is the quit command, and records the
+   * execution time. The time includes the display, since a listing reads its entries only as it
+   * is written.
+   *
+   * @param cmd the command to execute
+   * @param tui the interface displaying the result
+   * @param stats the statistics receiving the execution time
+   * @return the result of the command
+   */
+  static Object execute(Commande cmd, DnsTUI tui, DnsStats stats) {
+    long start = System.nanoTime();
+    Object result = cmd.execute();
+    if (!"quit".equals(result)) {
       tui.affiche(result);
     }
+    stats.recordCommande(cmd.getClass(), System.nanoTime() - start);
+    return result;
   }
 
   /**
    * Main entry point of the application.
+   * With {@code --udp <port>}, a DNS server also answers A and PTR queries on that port of the
+   * loopback interface until the application quits. With {@code --tcp <port>}, clients can send
+   * the same commands as the console over TCP on that port of the loopback interface. With
+   * {@code --batch} or a script file, the commands are replayed from the script, or from the
+   * standard input, in batch mode.
    *
-   * @param args command line arguments (not used)
+   * @param args command line arguments: {@code [--udp <port>] [--tcp <port>] [--batch]
+   *     [<script>]}
    */
   public static void main(String[] args) {
+    Integer udpPort = null;
+    Integer tcpPort = null;
+    boolean batch = false;
+    Path script = null;
+    try {
+      for (int i = 0; i < args.length; i++) {
+        if (args[i].equals("--udp") && i + 1 < args.length) {
+          udpPort = Integer.parseInt(args[++i]);
+        } else if (args[i].equals("--tcp") && i + 1 < args.length) {
+          tcpPort = Integer.parseInt(args[++i]);
+        } else if (args[i].equals("--batch")) {
+          batch = true;
+        } else if (script == null && !args[i].startsWith("-")) {
+          script = Paths.get(args[i]);
+          batch = true;
+        } else {
+          throw new IllegalArgumentException(args[i]);
+        }
+      }
+    } catch (IllegalArgumentException e) {
+      System.err.println("Usage: DnsApp [--udp <port>] [--tcp <port>] [--batch] [<script>]");
+      System.exit(2);
+      return;
+    }
+
     try {
       Dns dns = new Dns("application.properties");
-      Scanner scanner = new Scanner(System.in);
-      DnsTUI tui = new DnsTUI(scanner, dns);
-      DnsApp app = new DnsApp(tui);
-      app.run();
-      scanner.close();
-    } catch (DnsException e) {
+      DnsUdpServer server = null;
+      if (udpPort != null) {
+        server = DnsUdpServer.onLoopback(dns, udpPort);
+        server.start(Runtime.getRuntime().availableProcessors());
+        System.out.println("Serveur DNS UDP à l'écoute sur " + server.getLocalAddress());
+      }
+      DnsTcpServer tcpServer = null;
+      if (tcpPort != null) {
+        tcpServer = DnsTcpServer.onLoopback(dns, tcpPort);
+        tcpServer.start();
+        System.out.println("Serveur de commandes TCP à l'écoute sur "
+            + tcpServer.getLocalAddress());
+      }
+      if (batch) {
+        replay(dns, script);
+      } else {
+        Scanner scanner = new Scanner(System.in);
+        DnsTUI tui = new DnsTUI(scanner, dns);
+        DnsApp app = new DnsApp(tui);
+        app.run();
+        scanner.close();
+      }
+      if (server != null) {
+        server.close();
+      }
+      if (tcpServer != null) {
+        tcpServer.close();
+      }
+      dns.close();
+    } catch (DnsException | IOException e) {
       System.err.println("ERREUR FATALE : " + e.getMessage());
       System.exit(1);
+    } catch (UncheckedIOException e) {
+      System.err.println("ERREUR FATALE : " + e.getCause().getMessage());
+      System.exit(1);
+    }
+  }
+
+  private static void replay(Dns dns, Path script) throws IOException {
+    InputStream input = script == null ? System.in : Files.newInputStream(script);
+    Charset charset = script == null ? Charset.defaultCharset() : StandardCharsets.UTF_8;
+    try (BufferedReader reader = new BufferedReader(
+        new InputStreamReader(input, charset), BATCH_BUFFER_SIZE)) {
+      PrintStream out = new PrintStream(new BufferedOutputStream(
+          new FileOutputStream(FileDescriptor.out), BATCH_BUFFER_SIZE), false);
+      new DnsApp(new DnsTUI(reader, out, dns)).runBatch();
     }
   }
 }
@@ -0,0 +1,225 @@
+package fr.uvsq.cprog.collex;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+import java.util.function.LongPredicate;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Streaming reader for database files made of "name ip" lines.
+ * The file is read through a single reusable buffer and tokenized directly on the bytes,
+ * without regular expressions and without holding the lines in memory. Each valid entry is handed
+ * to the sink as soon as it is read, so the indexes are built incrementally.
+ *
+ * <p>To reload a changed file, each entry line can also be identified by a 64-bit hash of its
+ * bytes, so that only the lines not seen before are parsed.
+ */
+class DnsLoader {
+  private static final int BUFFER_SIZE = 1 << 20;
+  private static final VarHandle WORDS =
+      MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+  private static final long PRIME1 = 0x9E3779B185EBCA87L;
+  private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+
+  private final byte[] buffer;
+
+  /**
+   * Receives the bounds of each line of the file in the buffer.
+   */
+  private interface LineHandler {
+    void line(int start, int end);
+  }
+
+  /**
+   * Creates a loader reading the file by blocks of 1 MiB.
+   */
+  DnsLoader() {
+    this(BUFFER_SIZE);
+  }
+
+  /**
+   * Creates a loader with a specific buffer size.
+   *
+   * @param bufferSize the number of bytes read at once, which also bounds the length of a line
+   */
+  DnsLoader(int bufferSize) {
+    this.buffer = new byte[bufferSize];
+  }
+
+  /**
+   * Reads every valid entry of a database file. Blank lines, comments starting with '#' and
+   * invalid lines are skipped.
+   *
+   * @param path the database file
+   * @param sink receives the entries in file order
+   * @throws IOException if the file cannot be read
+   */
+  void load(Path path, Consumer<DnsItem> sink) throws IOException {
+    read(path, (start, end) -> parseLine(start, end, sink));
+  }
+
+  /**
+   * Reads every valid entry of a file that also records removals, as lines made of a '-' token
+   * followed by the removed entry.
+   *
+   * @param path the file
+   * @param sink receives the entries in file order
+   * @param removals receives the removed entries in file order
+   * @throws IOException if the file cannot be read
+   */
+  void load(Path path, Consumer<DnsItem> sink, Consumer<DnsItem> removals) throws IOException {
+    read(path, (start, end) -> {
+      int first = skipBlanks(start, end);
+      if (first + 1 < end && buffer[first] == '-' && isBlank(buffer[first + 1])) {
+        parseLine(first + 1, end, removals);
+      } else {
+        parseLine(first, end, sink);
+      }
+    });
+  }
+
+  /**
+   * Reads a database file again, parsing only the lines whose hash is not known. The hash covers
+   * the bytes of the line without its surrounding blanks and is never 0. Blank lines and
+   * comments are skipped without hashing; invalid lines are hashed but deliver no entry.
+   *
+   * @param path the database file
+   * @param known tells whether a line hash was already loaded; called once per entry line
+   * @param changed receives the entries of the unknown lines, with their hash, in file order
+   * @throws IOException if the file cannot be read
+   */
+  void reload(Path path, LongPredicate known, ObjLongConsumer<DnsItem> changed)
+      throws IOException {
+    read(path, (start, end) -> {
+      int first = skipBlanks(start, end);
+      if (first == end || buffer[first] == '#') {
+        return;
+      }
+      int last = end;
+      while (isBlank(buffer[last - 1])) {
+        last--;
+      }
+      long hash = hash(first, last);
+      if (!known.test(hash)) {
+        parseLine(first, last, item -> changed.accept(item, hash));
+      }
+    });
+  }
+
+  /**
+   * Hashes a range of the buffer 8 bytes at a time, with the rounds of xxHash64 followed by a
+   * finalizer spreading the bits.
+   */
+  private long hash(int from, int to) {
+    long h = PRIME2 ^ (to - from);
+    int i = from;
+    for (; i + Long.BYTES <= to; i += Long.BYTES) {
+      h = Long.rotateLeft(h + (long) WORDS.get(buffer, i) * PRIME2, 31) * PRIME1;
+    }
+    long tail = 0;
+    for (int shift = 0; i < to; i++, shift += 8) {
+      tail |= (buffer[i] & 0xFFL) << shift;
+    }
+    h = Long.rotateLeft(h + tail * PRIME2, 31) * PRIME1;
+    h = (h ^ (h >>> 33)) * 0xFF51AFD7ED558CCDL;
+    h = (h ^ (h >>> 33)) * 0xC4CEB9FE1A85EC53L;
+    h ^= h >>> 33;
+    return h == 0 ? 1 : h;
+  }
+
+  private void read(Path path, LineHandler handler) throws IOException {
+    try (InputStream input = Files.newInputStream(path)) {
+      int filled = 0;
+      boolean skipping = false;
+      while (true) {
+        int read = input.read(buffer, filled, buffer.length - filled);
+        if (read > 0) {
+          filled += read;
+        }
+
+        int start = 0;
+        int end;
+        while ((end = indexOf('\n', start, filled)) >= 0) {
+          if (!skipping) {
+            handler.line(start, end);
+          }
+          skipping = false;
+          start = end + 1;
+        }
+
+        if (read < 0) {
+          if (start < filled && !skipping) {
+            handler.line(start, filled);
+          }
+          return;
+        }
+        if (start == 0 && filled == buffer.length) {
+          skipping = true; // A line longer than the buffer cannot be valid
+          filled = 0;
+        } else {
+          System.arraycopy(buffer, start, buffer, 0, filled - start);
+          filled -= start;
+        }
+      }
+    }
+  }
+
+  private int indexOf(char c, int from, int to) {
+    for (int i = from; i < to; i++) {
+      if (buffer[i] == c) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static boolean isBlank(byte b) {
+    return b == ' ' || b == '\t' || b == '\r' || b == '\f' || b == 0x0B;
+  }
+
+  private int skipBlanks(int from, int to) {
+    while (from < to && isBlank(buffer[from])) {
+      from++;
+    }
+    return from;
+  }
+
+  private int skipToken(int from, int to) {
+    while (from < to && !isBlank(buffer[from])) {
+      from++;
+    }
+    return from;
+  }
+
+  private void parseLine(int start, int end, Consumer<DnsItem> sink) {
+    int nameStart = skipBlanks(start, end);
+    if (nameStart == end || buffer[nameStart] == '#') {
+      return;
+    }
+    int nameEnd = skipToken(nameStart, end);
+    int ipStart = skipBlanks(nameEnd, end);
+    int ipEnd = skipToken(ipStart, end);
+    if (ipStart == ipEnd || skipBlanks(ipEnd, end) != end) {
+      return; // Skip invalid lines
+    }
+
+    long ip = AdresseIP.parse(buffer, ipStart, ipEnd);
+    if (ip < 0) {
+      return;
+    }
+
+    try {
+      String nom = new String(buffer, nameStart, nameEnd - nameStart, StandardCharsets.UTF_8);
+      sink.accept(new DnsItem(new AdresseIP((int) ip), new NomMachine(nom)));
+    } catch (IllegalArgumentException e) {
+      // Skip invalid entries
+    }
+  }
+}
@@ -0,0 +1,165 @@
+package fr.uvsq.cprog.collex;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Watches the database file and applies to the database the changes other programs make to it.
+ *
+ * <p>The reloader remembers the hash of every entry line of the file with the entry it
+ * defines. On a change, the file is read again and hashed line by line on the bytes, but only the
+ * lines with an unknown hash are parsed; the known hashes no longer found give the entries to
+ * remove. An entry is only removed if the database still holds it: an address bound to another
+ * name since the line was read, through a journal for instance, is kept. Only the changed entries
+ * are then indexed, in one step invisible to readers until it completes, see
+ * {@link Dns#applyChanges}.
+ *
+ * <p>Rewrites of the file by the database itself find entries that are already present and
+ * change nothing. Deleting the file does not empty the database.
+ */
+class DnsReloader implements AutoCloseable {
+  static final long DEFAULT_DEBOUNCE_MILLIS = 50;
+
+  private final Dns dns;
+  private final Path databasePath;
+  private final long debounceMillis;
+  private final DnsLoader loader = new DnsLoader();
+  private final LineHashes lines = new LineHashes();
+  private final AtomicLong reloads = new AtomicLong();
+  private final WatchService watcher;
+  private final Thread thread;
+
+  /**
+   * Reads the hashes of the current lines of the database file, then starts watching it from a
+   * background thread.
+   *
+   * @param dns the database the changes are applied to, loaded from the file
+   * @param databasePath the database file
+   * @param debounceMillis how long the file must stay unchanged before it is read, so that a
+   *     file being written is read once
+   * @throws DnsException if the file cannot be read or watched
+   */
+  DnsReloader(Dns dns, Path databasePath, long debounceMillis) throws DnsException {
+    this.dns = dns;
+    this.databasePath = databasePath.toAbsolutePath();
+    this.debounceMillis = debounceMillis;
+    try {
+      lines.startRead();
+      if (Files.exists(databasePath)) {
+        loader.reload(databasePath, lines::found,
+            (item, hash) -> lines.add(hash, item));
+      }
+      lines.endRead(new ArrayList<>());
+      watcher = FileSystems.getDefault().newWatchService();
+      this.databasePath.getParent().register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+          StandardWatchEventKinds.ENTRY_MODIFY);
+    } catch (IOException e) {
+      throw new DnsException("Impossible de surveiller la base de données : " + databasePath, e);
+    }
+    this.thread = new Thread(this::run, "dns-reloader");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Returns the number of reads of the changed file.
+   *
+   * @return the number of reloads
+   */
+  long getReloadCount() {
+    return reloads.get();
+  }
+
+  /**
+   * Reads the database file and applies the changes found since the previous read.
+   *
+   * @return the number of removed and added lines
+   * @throws DnsException if the file cannot be read
+   */
+  synchronized int reload() throws DnsException {
+    if (!Files.exists(databasePath)) {
+      return 0;
+    }
+    List<DnsItem> added = new ArrayList<>();
+    lines.startRead();
+    try {
+      loader.reload(databasePath, lines::found, (item, hash) -> {
+        lines.add(hash, item);
+        added.add(item);
+      });
+    } catch (IOException e) {
+      lines.abortRead();
+      throw new DnsException("Erreur lors du rechargement de la base de données", e);
+    }
+    List<DnsItem> removed = new ArrayList<>();
+    lines.endRead(removed);
+    reloads.incrementAndGet();
+    if (!removed.isEmpty() || !added.isEmpty()) {
+      dns.applyChanges(removed, added);
+    }
+    return removed.size() + added.size();
+  }
+
+  private void run() {
+    Path name = databasePath.getFileName();
+    try {
+      while (true) {
+        if (!changed(watcher.take(), name)) {
+          continue;
+        }
+        // Wait until the writes stop, the events they raise are merged into one reload
+        WatchKey key;
+        while ((key = watcher.poll(debounceMillis, TimeUnit.MILLISECONDS)) != null) {
+          changed(key, name);
+        }
+        try {
+          reload();
+        } catch (DnsException e) {
+          System.err.println("ERREUR : " + e.getMessage());
+        }
+      }
+    } catch (InterruptedException | ClosedWatchServiceException e) {
+      // Closed
+    }
+  }
+
+  /**
+   * Tells whether a key reports a change of the database file, and resets it.
+   */
+  private static boolean changed(WatchKey key, Path name) {
+    boolean changed = false;
+    for (WatchEvent<?> event : key.pollEvents()) {
+      changed |= event.kind() == StandardWatchEventKinds.OVERFLOW || name.equals(event.context());
+    }
+    key.reset();
+    return changed;
+  }
+
+  /**
+   * Stops watching the file. A reload in progress completes first.
+   *
+   * @throws DnsException if the watch service cannot be closed
+   */
+  @Override
+  public void close() throws DnsException {
+    try {
+      watcher.close();
+      thread.join();
+    } catch (IOException e) {
+      throw new DnsException("Erreur lors de l'arrêt de la surveillance", e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
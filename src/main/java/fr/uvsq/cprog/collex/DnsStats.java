@@ -0,0 +1,122 @@
+package fr.uvsq.cprog.collex;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runtime statistics of a DNS database: latency of each command type and hit and miss counts
+ * of the lookups. Recording is cheap and allocation-free so it can stay enabled in production.
+ */
+public class DnsStats {
+  private final long startNanos = System.nanoTime();
+  private final Map<Class<?>, LatencyHistogram> commandes = new ConcurrentHashMap<>();
+  private final LongAdder ipHits = new LongAdder();
+  private final LongAdder ipMisses = new LongAdder();
+  private final LongAdder nameHits = new LongAdder();
+  private final LongAdder nameMisses = new LongAdder();
+  private final LongAdder listingHits = new LongAdder();
+  private final LongAdder listingMisses = new LongAdder();
+  private final LongAdder saveFailures = new LongAdder();
+  private volatile String lastSaveFailure;
+  private volatile OffHeapEntryStore offHeapStore;
+
+  /**
+   * Records the execution time of a command.
+   *
+   * @param type the class of the command
+   * @param nanos the execution time in nanoseconds
+   */
+  public void recordCommande(Class<?> type, long nanos) {
+    LatencyHistogram histogram = commandes.get(type);
+    if (histogram == null) {
+      histogram = commandes.computeIfAbsent(type, t -> new LatencyHistogram());
+    }
+    histogram.record(nanos);
+  }
+
+  void recordIpLookup(boolean hit) {
+    (hit ? ipHits : ipMisses).increment();
+  }
+
+  void recordNameLookup(boolean hit) {
+    (hit ? nameHits : nameMisses).increment();
+  }
+
+  void recordListing(boolean hit) {
+    (hit ? listingHits : listingMisses).increment();
+  }
+
+  /**
+   * Records a write that failed after its command returned, as an asynchronous add does.
+   *
+   * @param message the error message
+   */
+  void recordSaveFailure(String message) {
+    saveFailures.increment();
+    lastSaveFailure = message;
+  }
+
+  /**
+   * Reports the space of an off-heap entry store along the other statistics.
+   *
+   * @param store the entry store of the database
+   */
+  void trackStore(OffHeapEntryStore store) {
+    this.offHeapStore = store;
+  }
+
+  /**
+   * Returns the latency histogram of a command type.
+   *
+   * @param type the class of the command
+   * @return the histogram, or null if no command of this type was recorded
+   */
+  LatencyHistogram getHistogram(Class<?> type) {
+    return commandes.get(type);
+  }
+
+  /**
+   * Renders the statistics as a table: p50, p99, p99.9 and max latency in microseconds and
+   * throughput since start for each command type, then the lookup hits and misses and the
+   * listing cache hits and misses, the writes that failed after their command returned, and
+   * the allocated and dead space of an off-heap store.
+   *
+   * @return the rendered statistics
+   */
+  public String render() {
+    double seconds = Math.max(1e-9, (System.nanoTime() - startNanos) / 1e9);
+    StringBuilder out = new StringBuilder();
+    out.append(String.format(Locale.ROOT, "%-24s %10s %10s %10s %10s %10s %10s%n",
+        "commande", "nombre", "p50 (us)", "p99 (us)", "p999 (us)", "max (us)", "par s"));
+
+    Map<String, LatencyHistogram> sorted = new TreeMap<>();
+    commandes.forEach((type, histogram) -> sorted.put(type.getSimpleName(), histogram));
+    sorted.forEach((nom, histogram) -> out.append(String.format(Locale.ROOT,
+        "%-24s %10d %10.1f %10.1f %10.1f %10.1f %10.1f%n", nom, histogram.getCount(),
+        histogram.getPercentile(50) / 1e3, histogram.getPercentile(99) / 1e3,
+        histogram.getPercentile(99.9) / 1e3, histogram.getMax() / 1e3,
+        histogram.getCount() / seconds)));
+
+    out.append(String.format(Locale.ROOT, "recherches par IP  : %d trouvées, %d absentes%n",
+        ipHits.sum(), ipMisses.sum()));
+    out.append(String.format(Locale.ROOT, "recherches par nom : %d trouvées, %d absentes%n",
+        nameHits.sum(), nameMisses.sum()));
+    out.append(String.format(Locale.ROOT, "cache des listes   : %d succès, %d échecs",
+        listingHits.sum(), listingMisses.sum()));
+    long failures = saveFailures.sum();
+    if (failures > 0) {
+      out.append(String.format(Locale.ROOT, "%nécritures échouées : %d, dernière : %s",
+          failures, lastSaveFailure));
+    }
+    OffHeapEntryStore store = offHeapStore;
+    if (store != null) {
+      out.append(String.format(Locale.ROOT,
+          "%nstockage hors tas  : %d octets alloués, %d octets morts, %d compactages",
+          store.allocatedBytes(), store.deadBytes(), store.compactions()));
+    }
+    return out.toString();
+  }
+}
@@ -0,0 +1,91 @@
+package fr.uvsq.cprog.collex;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Persistence strategy for the DNS database.
+ */
+interface DnsStorage {
+  /**
+   * Reads every persisted entry, and the removals persisted after them. Replaying both streams
+   * in the order they are delivered gives the entries of the database.
+   *
+   * @param sink receives the entries in the order they were persisted
+   * @param removals receives the entries removed after being delivered to the sink
+   * @throws DnsException if the entries cannot be read
+   */
+  void load(Consumer<DnsItem> sink, Consumer<DnsItem> removals) throws DnsException;
+
+  /**
+   * Persists newly added entries.
+   *
+   * @param added the entries that were just added
+   * @param all a view of every entry of the database, including the added ones
+   * @throws DnsException if the entries cannot be persisted
+   */
+  default void save(List<DnsItem> added, Collection<DnsItem> all) throws DnsException {
+    saveChanges(List.of(), added, all);
+  }
+
+  /**
+   * Persists removed and added entries. The removals come first, so an entry updated in place
+   * is removed then added again.
+   *
+   * @param removed the entries that were just removed
+   * @param added the entries that were just added
+   * @param all a view of every entry of the database, after the changes
+   * @throws DnsException if the changes cannot be persisted
+   */
+  void saveChanges(List<DnsItem> removed, List<DnsItem> added, Collection<DnsItem> all)
+      throws DnsException;
+
+  /**
+   * Persists newly added entries without waiting for the write. Unless overridden, the entries
+   * are saved before the method returns.
+   *
+   * @param added the entries that were just added
+   * @param all a view of every entry of the database, including the added ones
+   * @return a future completed once the entries are persisted, or completed exceptionally with
+   *     a DnsException if they cannot be
+   */
+  default CompletableFuture<Void> saveAsync(List<DnsItem> added, Collection<DnsItem> all) {
+    return saveChangesAsync(List.of(), added, all);
+  }
+
+  /**
+   * Persists removed and added entries without waiting for the write. Unless overridden, the
+   * changes are saved before the method returns.
+   *
+   * @param removed the entries that were just removed
+   * @param added the entries that were just added
+   * @param all a view of every entry of the database, after the changes
+   * @return a future completed once the changes are persisted, or completed exceptionally with
+   *     a DnsException if they cannot be
+   */
+  default CompletableFuture<Void> saveChangesAsync(List<DnsItem> removed, List<DnsItem> added,
+      Collection<DnsItem> all) {
+    try {
+      saveChanges(removed, added, all);
+      return CompletableFuture.completedFuture(null);
+    } catch (DnsException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+  }
+
+  /**
+   * Forces the persisted entries to the storage device, so they survive a system crash.
+   *
+   * @throws DnsException if the entries cannot be forced
+   */
+  void sync() throws DnsException;
+
+  /**
+   * Releases the resources held by the storage, waiting for pending work.
+   *
+   * @throws DnsException if pending work cannot be completed
+   */
+  void close() throws DnsException;
+}
@@ -1,134 +1,382 @@
 package fr.uvsq.cprog.collex;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.util.Queue;
 import java.util.Scanner;
-import java.util.regex.Pattern;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
  * Text User Interface for DNS operations.
  * Handles user input parsing and output display.
+ *
+ * <p>The interface reads either from a Scanner, for interactive use, or from a BufferedReader
+ * with results written to a given stream, for replaying scripts in batch mode.
+ *
+ * <p>Lines are classified by a hand-written scanner: the first token is either a keyword, an
+ * IPv4 address parsed in a single pass, or a qualified name, and the parsed value is handed to
+ * the command as is.
+ *
+ * <p>Errors that arrive after their command returned, such as the failed write of an
+ * asynchronous add, are kept and displayed after the result of the next command of the session.
  */
 @SuppressWarnings("AbbreviationAsWordInName")
 public class DnsTUI {
-  private static final Pattern IP_PATTERN = 
-      Pattern.compile("^((25[0-5]|(2[0-4]|1\\d|[1-9]|)\\d)\\.){3}"
-          + "(25[0-5]|(2[0-4]|1\\d|[1-9]|)\\d)$");
-  private static final Pattern QUALIFIED_NAME_PATTERN = Pattern.compile("^[^\\s]+\\.[^\\s]+$");
-  
+  private static final String[] NO_TOKENS = new String[0];
+
   private final Scanner scanner;
+  private final BufferedReader reader;
+  private final PrintStream out;
   private final Dns dns;
+  private final Queue<String> failures = new ConcurrentLinkedQueue<>();
+  private boolean finished;
 
   /**
-   * Creates a DNS TUI.
+   * Creates a DNS TUI writing to the standard output.
    *
    * @param scanner the scanner for reading user input
    * @param dns the DNS database
    */
   public DnsTUI(Scanner scanner, Dns dns) {
     this.scanner = scanner;
+    this.reader = null;
+    this.out = null;
+    this.dns = dns;
+  }
+
+  /**
+   * Creates a DNS TUI reading a script.
+   *
+   * @param reader the reader supplying one command per line
+   * @param out the stream receiving results and error messages
+   * @param dns the DNS database
+   */
+  public DnsTUI(BufferedReader reader, PrintStream out, Dns dns) {
+    this.scanner = null;
+    this.reader = reader;
+    this.out = out;
     this.dns = dns;
   }
 
+  private PrintStream out() {
+    return out == null ? System.out : out;
+  }
+
+  private String readLine() {
+    if (scanner != null) {
+      return scanner.hasNextLine() ? scanner.nextLine() : null;
+    }
+    try {
+      return reader.readLine();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Tells whether the input is exhausted.
+   *
+   * @return true once a read found no more input
+   */
+  public boolean isFinished() {
+    return finished;
+  }
+
   /**
    * Reads and parses the next command from user input.
    *
-   * @return the parsed command, or null if input is invalid
+   * @return the parsed command, or null if input is invalid or exhausted
    */
   public Commande nextCommande() {
-    if (!scanner.hasNextLine()) {
+    String line = readLine();
+    if (line == null) {
+      finished = true;
       return null;
     }
 
-    String line = scanner.nextLine().trim();
-    if (line.isEmpty()) {
+    return parse(line);
+  }
+
+  /**
+   * Splits a line into tokens separated by blanks, as {@link String#trim()} defines them.
+   */
+  static String[] tokenize(String line) {
+    int count = 0;
+    int length = line.length();
+    for (int i = 0; i < length; i++) {
+      if (line.charAt(i) > ' ' && (i == 0 || line.charAt(i - 1) <= ' ')) {
+        count++;
+      }
+    }
+    if (count == 0) {
+      return NO_TOKENS;
+    }
+
+    String[] tokens = new String[count];
+    int token = 0;
+    int start = -1;
+    for (int i = 0; i <= length; i++) {
+      boolean blank = i == length || line.charAt(i) <= ' ';
+      if (!blank && start < 0) {
+        start = i;
+      } else if (blank && start >= 0) {
+        tokens[token++] = line.substring(start, i);
+        start = -1;
+      }
+    }
+    return tokens;
+  }
+
+  /**
+   * Parses one command line.
+   *
+   * @param line the line to parse
+   * @return the parsed command, or null if the line is blank or invalid
+   */
+  Commande parse(String line) {
+    String[] parts = tokenize(line);
+    if (parts.length == 0) {
       return null;
     }
 
-    String[] parts = line.split("\\s+");
-    
-    // Check for quit command
-    if (parts[0].equalsIgnoreCase("quit")) {
-      return new QuitterCommande();
+    // A token containing a dot is an IP address or a qualified name
+    String first = parts[0];
+    int dot = first.indexOf('.', 1);
+    if (dot > 0 && dot < first.length() - 1) {
+      return parseRecherche(first);
     }
 
-    // Check for ls command
-    if (parts[0].equalsIgnoreCase("ls")) {
+    if (first.equalsIgnoreCase("quit")) {
+      return new QuitterCommande();
+    }
+    if (first.equalsIgnoreCase("ls")) {
       return parseListeCommande(parts);
     }
-
-    // Check for add command
-    if (parts[0].equalsIgnoreCase("add")) {
+    if (first.equalsIgnoreCase("add")) {
       return parseAjoutCommande(parts);
     }
-
-    // Check if it's an IP address
-    if (IP_PATTERN.matcher(parts[0]).matches()) {
-      try {
-        AdresseIP ip = new AdresseIP(parts[0]);
-        return new RechercheIpCommande(dns, ip);
-      } catch (IllegalArgumentException e) {
-        System.out.println("ERREUR : Adresse IP invalide");
+    if (first.equalsIgnoreCase("del")) {
+      return parseSuppressionCommande(parts);
+    }
+    if (first.equalsIgnoreCase("mv")) {
+      return parseModificationCommande(parts);
+    }
+    if (first.equalsIgnoreCase("count")) {
+      if (parts.length != 2) {
+        out().println("ERREUR : Usage: count <domaine>");
         return null;
       }
+      return new CompteDomaineCommande(dns, parts[1]);
     }
-
-    // Check if it's a qualified name
-    if (QUALIFIED_NAME_PATTERN.matcher(parts[0]).matches()) {
-      try {
-        NomMachine nom = new NomMachine(parts[0]);
-        return new RechercheNomCommande(dns, nom);
-      } catch (IllegalArgumentException e) {
-        System.out.println("ERREUR : Nom de machine invalide");
+    if (first.equalsIgnoreCase("bloom")) {
+      if (parts.length > 2 || (parts.length == 2 && !parts[1].equals("rebuild"))) {
+        out().println("ERREUR : Usage: bloom [rebuild]");
         return null;
       }
+      return new BloomCommande(dns, parts.length == 2);
+    }
+    if (first.equalsIgnoreCase("stats")) {
+      return new StatsCommande(dns);
+    }
+    if (first.equalsIgnoreCase("import")) {
+      return parseImportCommande(parts);
     }
 
-    System.out.println("ERREUR : Commande non reconnue");
+    out().println("ERREUR : Commande non reconnue");
     return null;
   }
 
+  private Commande parseRecherche(String token) {
+    long ip = AdresseIP.parse(token, 0, token.length());
+    if (ip >= 0) {
+      return new RechercheIpCommande(dns, new AdresseIP((int) ip));
+    }
+
+    try {
+      return new RechercheNomCommande(dns, new NomMachine(token));
+    } catch (IllegalArgumentException e) {
+      out().println("ERREUR : Nom de machine invalide");
+      return null;
+    }
+  }
+
   private Commande parseListeCommande(String[] parts) {
+    if (parts.length >= 2 && parts[1].equals("-net")) {
+      return parseListeReseauCommande(parts);
+    }
+
     boolean sortByIp = false;
-    String domain;
-
-    if (parts.length == 2) {
-      // ls <domain>
-      domain = parts[1];
-    } else if (parts.length == 3 && parts[1].equals("-a")) {
-      // ls -a <domain>
-      sortByIp = true;
-      domain = parts[2];
-    } else {
-      System.out.println("ERREUR : Usage: ls [-a] <domaine>");
+    boolean recursive = false;
+    int limit = Listing.UNLIMITED;
+    NomMachine after = null;
+    AdresseIP afterIp = null;
+    boolean valid = parts.length >= 2 && !parts[parts.length - 1].startsWith("-");
+
+    // ls [-a] [-r] [--limit N] [--after <nom>[@<ip>]] <domain>, options in any order
+    try {
+      for (int i = 1; valid && i < parts.length - 1; i++) {
+        if (parts[i].equals("-a")) {
+          sortByIp = true;
+        } else if (parts[i].equals("-r")) {
+          recursive = true;
+        } else if (parts[i].equals("--limit") && i + 1 < parts.length - 1) {
+          limit = Integer.parseInt(parts[++i]);
+          valid = limit > 0;
+        } else if (parts[i].equals("--after") && i + 1 < parts.length - 1) {
+          String cursor = parts[++i];
+          int at = cursor.indexOf('@');
+          after = new NomMachine(at < 0 ? cursor : cursor.substring(0, at));
+          afterIp = at < 0 ? null : new AdresseIP(cursor.substring(at + 1));
+        } else {
+          valid = false;
+        }
+      }
+    } catch (IllegalArgumentException e) {
+      valid = false; // Limit, name or address invalid, NumberFormatException included
+    }
+    if (!valid) {
+      out().println(
+          "ERREUR : Usage: ls [-a] [-r] [--limit N] [--after <nom>[@<ip>]] <domaine>");
+      return null;
+    }
+
+    return new ListeDomaineCommande(dns, parts[parts.length - 1], sortByIp, recursive, limit,
+        after, afterIp);
+  }
+
+  private Commande parseListeReseauCommande(String[] parts) {
+    if (parts.length != 3) {
+      out().println("ERREUR : Usage: ls -net <adresse_ip>/<longueur>");
       return null;
     }
 
-    return new ListeDomaineCommande(dns, domain, sortByIp);
+    String cidr = parts[2];
+    int slash = cidr.indexOf('/');
+    try {
+      if (slash < 0) {
+        throw new IllegalArgumentException("Réseau invalide : " + cidr);
+      }
+      AdresseIP reseau = new AdresseIP(cidr.substring(0, slash));
+      int longueur = Integer.parseInt(cidr.substring(slash + 1));
+      if (longueur < 0 || longueur > 32) {
+        throw new IllegalArgumentException("Longueur de préfixe invalide : " + longueur);
+      }
+      return new ListeReseauCommande(dns, reseau, longueur);
+    } catch (NumberFormatException e) {
+      out().println("ERREUR : Longueur de préfixe invalide : " + cidr.substring(slash + 1));
+      return null;
+    } catch (IllegalArgumentException e) {
+      out().println("ERREUR : " + e.getMessage());
+      return null;
+    }
   }
 
   private Commande parseAjoutCommande(String[] parts) {
+    // add [-async|-multi] <ip> <name>, -async returns without waiting for the write, -multi
+    // adds the address to the name if it exists
+    boolean async = parts.length == 4 && parts[1].equals("-async");
+    boolean multiple = parts.length == 4 && parts[1].equals("-multi");
+    if (parts.length != 3 && !async && !multiple) {
+      out().println("ERREUR : Usage: add [-async|-multi] <adresse_ip> <nom_qualifie>");
+      return null;
+    }
+
+    try {
+      AdresseIP ip = new AdresseIP(parts[parts.length - 2]);
+      NomMachine nom = new NomMachine(parts[parts.length - 1]);
+      return new AjoutCommande(dns, ip, nom, !async, multiple, failures::add);
+    } catch (IllegalArgumentException e) {
+      out().println("ERREUR : " + e.getMessage());
+      return null;
+    }
+  }
+
+  private Commande parseSuppressionCommande(String[] parts) {
+    if (parts.length != 2) {
+      out().println("ERREUR : Usage: del <nom_qualifie|adresse_ip>");
+      return null;
+    }
+
+    long ip = AdresseIP.parse(parts[1], 0, parts[1].length());
+    if (ip >= 0) {
+      return new SuppressionCommande(dns, new AdresseIP((int) ip));
+    }
+    try {
+      return new SuppressionCommande(dns, new NomMachine(parts[1]));
+    } catch (IllegalArgumentException e) {
+      out().println("ERREUR : " + e.getMessage());
+      return null;
+    }
+  }
+
+  private Commande parseModificationCommande(String[] parts) {
+    // mv <name> <new name|new ip>, the second token is classified like a lookup
     if (parts.length != 3) {
-      System.out.println("ERREUR : Usage: add <adresse_ip> <nom_qualifie>");
+      out().println("ERREUR : Usage: mv <nom_qualifie> <nouveau_nom|nouvelle_ip>");
       return null;
     }
 
     try {
-      AdresseIP ip = new AdresseIP(parts[1]);
-      NomMachine nom = new NomMachine(parts[2]);
-      return new AjoutCommande(dns, ip, nom);
+      NomMachine nom = new NomMachine(parts[1]);
+      long ip = AdresseIP.parse(parts[2], 0, parts[2].length());
+      if (ip >= 0) {
+        return new ModificationCommande(dns, nom, new AdresseIP((int) ip));
+      }
+      return new ModificationCommande(dns, nom, new NomMachine(parts[2]));
     } catch (IllegalArgumentException e) {
-      System.out.println("ERREUR : " + e.getMessage());
+      out().println("ERREUR : " + e.getMessage());
+      return null;
+    }
+  }
+
+  private Commande parseImportCommande(String[] parts) {
+    if (parts.length != 2) {
+      out().println("ERREUR : Usage: import <fichier>");
+      return null;
+    }
+
+    try {
+      return new ImportCommande(dns, Paths.get(parts[1]));
+    } catch (InvalidPathException e) {
+      out().println("ERREUR : Chemin invalide : " + parts[1]);
       return null;
     }
   }
 
   /**
-   * Displays the result of a command execution.
+   * Returns the statistics of the database the commands run against.
+   *
+   * @return the statistics of the DNS database
+   */
+  DnsStats getStats() {
+    return dns.getStats();
+  }
+
+  /**
+   * Displays the result of a command execution, then the errors that arrived meanwhile. Listings
+   * are written line by line.
    *
    * @param result the result to display
    */
   public void affiche(Object result) {
-    if (result != null) {
-      System.out.println(result);
+    if (result instanceof Listing) {
+      ((Listing) result).writeTo(out());
+    } else if (result != null) {
+      out().println(result);
+    }
+    for (String failure = failures.poll(); failure != null; failure = failures.poll()) {
+      out().println(failure);
     }
   }
+
+  /**
+   * Writes out the results buffered by the output stream.
+   */
+  public void flush() {
+    out().flush();
+  }
 }
@@ -0,0 +1,182 @@
+package fr.uvsq.cprog.collex;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Server exposing the text commands of {@link DnsTUI} over TCP to many concurrent clients.
+ * Each client sends one command per line and receives the result followed by an empty line.
+ * All clients share the same thread-safe {@link Dns}.
+ *
+ * <p>Each client is served by its own thread: a virtual thread when the runtime provides them,
+ * a pooled platform thread otherwise. Responses are flushed once the client has no pipelined
+ * command waiting. The {@code import} command is refused, since it reads files of the server.
+ */
+public class DnsTcpServer implements AutoCloseable {
+  private static final int BACKLOG = 1024;
+  private static final int BUFFER_SIZE = 8192;
+
+  private final Dns dns;
+  private final ServerSocket serverSocket;
+  private final ExecutorService clients;
+  private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+  private Thread acceptor;
+
+  /**
+   * Creates a server bound to a local address.
+   *
+   * @param dns the DNS database
+   * @param address the address to bind, for instance the loopback address
+   * @throws IOException if the address cannot be bound
+   */
+  public DnsTcpServer(Dns dns, InetSocketAddress address) throws IOException {
+    this.dns = dns;
+    this.serverSocket = new ServerSocket();
+    serverSocket.bind(address, BACKLOG);
+    this.clients = newClientExecutor();
+  }
+
+  /**
+   * Creates a server bound to a port of the loopback interface.
+   *
+   * @param dns the DNS database
+   * @param port the TCP port, or 0 for any free port
+   * @return the server, not yet started
+   * @throws IOException if the port cannot be bound
+   */
+  public static DnsTcpServer onLoopback(Dns dns, int port) throws IOException {
+    return new DnsTcpServer(dns, new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+  }
+
+  /**
+   * Returns an executor running each task in a new virtual thread, or in a cached pool of
+   * daemon threads on runtimes without virtual threads.
+   */
+  static ExecutorService newClientExecutor() {
+    try {
+      Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) factory.invoke(null);
+    } catch (ReflectiveOperationException e) {
+      return Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "dns-tcp-client");
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+  }
+
+  /**
+   * Returns the address the server is bound to.
+   *
+   * @return the local address
+   */
+  public InetSocketAddress getLocalAddress() {
+    return (InetSocketAddress) serverSocket.getLocalSocketAddress();
+  }
+
+  /**
+   * Returns the number of clients currently connected.
+   *
+   * @return the number of open connections
+   */
+  public int getConnectionCount() {
+    return connections.size();
+  }
+
+  /**
+   * Starts accepting clients.
+   */
+  public void start() {
+    acceptor = new Thread(this::accept, "dns-tcp-acceptor");
+    acceptor.setDaemon(true);
+    acceptor.start();
+  }
+
+  private void accept() {
+    while (!serverSocket.isClosed()) {
+      try {
+        Socket socket = serverSocket.accept();
+        socket.setTcpNoDelay(true);
+        connections.add(socket);
+        clients.execute(() -> serve(socket));
+      } catch (IOException e) {
+        // Closing the server socket ends the loop
+      }
+    }
+  }
+
+  private void serve(Socket socket) {
+    try (socket) {
+      BufferedReader reader = new BufferedReader(new InputStreamReader(
+          socket.getInputStream(), StandardCharsets.UTF_8), BUFFER_SIZE);
+      PrintStream out = new PrintStream(new BufferedOutputStream(
+          socket.getOutputStream(), BUFFER_SIZE), false, StandardCharsets.UTF_8);
+      DnsTUI tui = new DnsTUI(reader, out, dns);
+      DnsStats stats = dns.getStats();
+      while (true) {
+        Commande cmd = tui.nextCommande();
+        if (cmd == null && tui.isFinished()) {
+          return;
+        }
+        if (cmd instanceof ImportCommande) {
+          tui.affiche("ERREUR : Commande non disponible à distance");
+        } else if (cmd != null) {
+          Object result = DnsApp.execute(cmd, tui, stats);
+          if ("quit".equals(result)) {
+            out.flush();
+            return;
+          }
+        }
+        out.println();
+        if (!reader.ready()) {
+          out.flush();
+        }
+      }
+    } catch (IOException | UncheckedIOException e) {
+      // The client went away
+    } finally {
+      connections.remove(socket);
+    }
+  }
+
+  /**
+   * Stops accepting clients and closes every connection.
+   *
+   * @throws IOException if the server socket cannot be closed
+   */
+  @Override
+  public void close() throws IOException {
+    serverSocket.close();
+    for (Socket socket : connections) {
+      try {
+        socket.close();
+      } catch (IOException e) {
+        // Already closed by its client
+      }
+    }
+    clients.shutdown();
+    try {
+      if (acceptor != null) {
+        acceptor.join(1000);
+      }
+      clients.awaitTermination(1, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,372 @@
+package fr.uvsq.cprog.collex;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * DNS server answering RFC 1035 queries over UDP from a Dns database.
+ * A queries are answered with every address of the name in round-robin order, and PTR queries on
+ * {@code in-addr.arpa} names from {@link Dns#getItem(AdresseIP)}. Every worker thread owns a
+ * pair of direct buffers and a {@link NameProbe} allocated once, so answering a PTR query
+ * allocates nothing, and the name of an A query is looked up without building a String.
+ *
+ * <p>The server listens on the loopback interface when started from {@link DnsApp}.
+ */
+public class DnsUdpServer implements AutoCloseable {
+  static final int MAX_MESSAGE = 512;
+  static final int TYPE_A = 1;
+  static final int TYPE_PTR = 12;
+  static final int CLASS_IN = 1;
+  static final int RCODE_FORMERR = 1;
+  static final int RCODE_SERVFAIL = 2;
+  static final int RCODE_NXDOMAIN = 3;
+  static final int RCODE_NOTIMP = 4;
+
+  private static final int HEADER_SIZE = 12;
+  private static final int MAX_NAME = 253;
+  private static final int MAX_LABEL = 63;
+  private static final int A_RECORD_SIZE = 16;
+  private static final int DEFAULT_TTL = 300;
+
+  private final Dns dns;
+  private final DatagramChannel channel;
+  private final List<Thread> workers = new ArrayList<>();
+
+  /**
+   * Creates a server bound to a local address.
+   *
+   * @param dns the DNS database
+   * @param address the address to bind, for instance the loopback address
+   * @throws IOException if the address cannot be bound
+   */
+  public DnsUdpServer(Dns dns, InetSocketAddress address) throws IOException {
+    this.dns = dns;
+    this.channel = DatagramChannel.open();
+    channel.bind(address);
+  }
+
+  /**
+   * Creates a server bound to a port of the loopback interface.
+   *
+   * @param dns the DNS database
+   * @param port the UDP port, or 0 for any free port
+   * @return the server, not yet started
+   * @throws IOException if the port cannot be bound
+   */
+  public static DnsUdpServer onLoopback(Dns dns, int port) throws IOException {
+    return new DnsUdpServer(dns, new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+  }
+
+  /**
+   * Returns the address the server is bound to.
+   *
+   * @return the local address
+   * @throws IOException if the address cannot be read
+   */
+  public InetSocketAddress getLocalAddress() throws IOException {
+    return (InetSocketAddress) channel.getLocalAddress();
+  }
+
+  /**
+   * Starts the worker threads answering queries.
+   *
+   * @param threads the number of worker threads
+   */
+  public void start(int threads) {
+    for (int i = 0; i < threads; i++) {
+      Thread worker = new Thread(this::serve, "dns-udp-" + i);
+      worker.setDaemon(true);
+      worker.start();
+      workers.add(worker);
+    }
+  }
+
+  private void serve() {
+    ByteBuffer request = ByteBuffer.allocateDirect(MAX_MESSAGE);
+    ByteBuffer response = ByteBuffer.allocateDirect(MAX_MESSAGE);
+    NameProbe name = new NameProbe();
+    while (channel.isOpen()) {
+      try {
+        request.clear();
+        SocketAddress client = channel.receive(request);
+        request.flip();
+        response.clear();
+        if (answer(request, response, name)) {
+          response.flip();
+          channel.send(response, client);
+        }
+      } catch (ClosedChannelException e) {
+        return;
+      } catch (IOException e) {
+        // A failed exchange only concerns one client
+      } catch (RuntimeException e) {
+        // A message the server fails to answer is dropped; the worker goes on with the next
+      }
+    }
+  }
+
+  /**
+   * Builds the response to one query.
+   *
+   * @param request the query, between position 0 and its limit
+   * @param response the buffer receiving the response from position 0
+   * @param name scratch probe for the queried name
+   * @return true if a response must be sent, false if the message is ignored
+   */
+  boolean answer(ByteBuffer request, ByteBuffer response, NameProbe name) {
+    int length = request.limit();
+    if (length < HEADER_SIZE) {
+      return false;
+    }
+    int flags = request.getShort(2) & 0xFFFF;
+    if ((flags & 0x8000) != 0) {
+      return false; // Not a query
+    }
+    int opcode = (flags >>> 11) & 0xF;
+    if (opcode != 0) {
+      return header(request, response, RCODE_NOTIMP, HEADER_SIZE, 0);
+    }
+    if ((request.getShort(4) & 0xFFFF) != 1) {
+      return header(request, response, RCODE_FORMERR, HEADER_SIZE, 0);
+    }
+
+    int end = skipName(request, HEADER_SIZE, length);
+    if (end < 0 || end + 4 > length) {
+      return header(request, response, RCODE_FORMERR, HEADER_SIZE, 0);
+    }
+    int questionEnd = end + 4;
+    int type = request.getShort(end) & 0xFFFF;
+    int qclass = request.getShort(end + 2) & 0xFFFF;
+    if (qclass != CLASS_IN) {
+      return header(request, response, RCODE_NOTIMP, questionEnd, 0);
+    }
+
+    if (type == TYPE_PTR) {
+      long ip = reverseAddress(request, HEADER_SIZE, end);
+      DnsItem item = ip < 0 ? null : dns.getItem((int) ip);
+      if (item == null) {
+        return header(request, response, RCODE_NXDOMAIN, questionEnd, 0);
+      }
+      if (!encodable(item.getNomMachine().getNomQualifie())) {
+        return header(request, response, RCODE_SERVFAIL, questionEnd, 0);
+      }
+      header(request, response, 0, questionEnd, 1);
+      int rdata = answerHeader(response, questionEnd, TYPE_PTR);
+      int rdataEnd = writeName(response, rdata, item.getNomMachine().getNomQualifie());
+      response.putShort(rdata - 2, (short) (rdataEnd - rdata));
+      response.position(rdataEnd);
+      return true;
+    }
+
+    DnsItem item = lookupName(request, end, name);
+    if (item == null) {
+      return header(request, response, RCODE_NXDOMAIN, questionEnd, 0);
+    }
+    if (type != TYPE_A) {
+      return header(request, response, 0, questionEnd, 0); // The name exists without this type
+    }
+    int[] addresses = dns.getAddresses(item, true);
+    // The addresses that do not fit are left out; the rotation shows them in later answers
+    int answers = Math.min(addresses.length, (MAX_MESSAGE - questionEnd) / A_RECORD_SIZE);
+    header(request, response, 0, questionEnd, answers);
+    int offset = questionEnd;
+    for (int i = 0; i < answers; i++) {
+      int rdata = answerHeader(response, offset, TYPE_A);
+      response.putShort(rdata - 2, (short) 4);
+      response.putInt(rdata, addresses[i]);
+      offset = rdata + 4;
+    }
+    response.position(offset);
+    return true;
+  }
+
+  /**
+   * Writes the response header and copies the question section.
+   *
+   * @return true, so error responses can be returned directly
+   */
+  private static boolean header(ByteBuffer request, ByteBuffer response, int rcode,
+      int questionEnd, int answers) {
+    int flags = request.getShort(2) & 0xFFFF;
+    response.putShort(0, request.getShort(0));
+    response.putShort(2, (short) (0x8000 | (flags & 0x7900) | 0x0400 | rcode));
+    response.putShort(4, (short) (questionEnd > HEADER_SIZE ? 1 : 0));
+    response.putShort(6, (short) answers);
+    response.putShort(8, (short) 0);
+    response.putShort(10, (short) 0);
+    for (int i = HEADER_SIZE; i < questionEnd; i++) {
+      response.put(i, request.get(i));
+    }
+    response.position(questionEnd);
+    return true;
+  }
+
+  /**
+   * Writes the fixed part of an answer pointing to the question name.
+   *
+   * @return the offset of the record data
+   */
+  private static int answerHeader(ByteBuffer response, int offset, int type) {
+    response.putShort(offset, (short) 0xC00C);
+    response.putShort(offset + 2, (short) type);
+    response.putShort(offset + 4, (short) CLASS_IN);
+    response.putInt(offset + 6, DEFAULT_TTL);
+    return offset + 12;
+  }
+
+  /**
+   * Returns the offset after an uncompressed name, or -1 if the name is malformed.
+   */
+  private static int skipName(ByteBuffer request, int offset, int limit) {
+    int total = 0;
+    while (offset < limit) {
+      int label = request.get(offset) & 0xFF;
+      if (label == 0) {
+        return offset + 1;
+      }
+      if (label > MAX_LABEL) {
+        return -1; // Compression pointers are not expected in a question
+      }
+      total += label + 1;
+      if (total > 255) {
+        return -1;
+      }
+      offset += label + 1;
+    }
+    return -1;
+  }
+
+  /**
+   * Decodes a name of the form d.c.b.a.in-addr.arpa into the packed address a.b.c.d.
+   *
+   * @param end the offset after the name
+   * @return the packed address as an unsigned value, or -1 if the name is not of this form
+   */
+  private static long reverseAddress(ByteBuffer request, int offset, int end) {
+    long ip = 0;
+    for (int octet = 0; octet < 4; octet++) {
+      int label = offset < end ? request.get(offset) & 0xFF : 0;
+      if (label < 1 || label > 3 || offset + label >= end) {
+        return -1;
+      }
+      int value = 0;
+      for (int i = 1; i <= label; i++) {
+        int digit = request.get(offset + i) - '0';
+        if (digit < 0 || digit > 9) {
+          return -1;
+        }
+        value = value * 10 + digit;
+      }
+      if (value > 255) {
+        return -1;
+      }
+      ip |= (long) value << (8 * octet);
+      offset += label + 1;
+    }
+    if (!labelEquals(request, offset, end, "in-addr")) {
+      return -1;
+    }
+    offset += 8;
+    if (!labelEquals(request, offset, end, "arpa") || offset + 6 != end) {
+      return -1;
+    }
+    return ip;
+  }
+
+  private static boolean labelEquals(ByteBuffer request, int offset, int end, String label) {
+    if (offset + label.length() >= end || (request.get(offset) & 0xFF) != label.length()) {
+      return false;
+    }
+    for (int i = 0; i < label.length(); i++) {
+      if (Character.toLowerCase((char) request.get(offset + 1 + i)) != label.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private DnsItem lookupName(ByteBuffer request, int end, NameProbe name) {
+    name.clear();
+    int offset = HEADER_SIZE;
+    int label;
+    while (offset < end && (label = request.get(offset) & 0xFF) != 0 && offset + label < end) {
+      if (name.length() > 0) {
+        name.append('.');
+      }
+      for (int i = 1; i <= label; i++) {
+        name.append(Character.toLowerCase((char) (request.get(offset + i) & 0xFF)));
+      }
+      offset += label + 1;
+    }
+    return dns.getItem(name); // A name without a dot is not qualified and matches no entry
+  }
+
+  /**
+   * Tells whether a dotted name can be encoded in an answer: at most {@value #MAX_NAME}
+   * characters, in labels of 1 to {@value #MAX_LABEL} ASCII characters.
+   */
+  static boolean encodable(String name) {
+    if (name.length() > MAX_NAME) {
+      return false;
+    }
+    int label = 0;
+    for (int i = 0; i < name.length(); i++) {
+      char c = name.charAt(i);
+      if (c == '.') {
+        if (label == 0) {
+          return false;
+        }
+        label = 0;
+      } else if (c > 0x7F || ++label > MAX_LABEL) {
+        return false;
+      }
+    }
+    return label > 0;
+  }
+
+  /**
+   * Encodes a dotted name as a sequence of labels. The name must be {@link #encodable}.
+   *
+   * @return the offset after the encoded name
+   */
+  private static int writeName(ByteBuffer response, int offset, String name) {
+    int lengthOffset = offset++;
+    for (int i = 0; i < name.length(); i++) {
+      char c = name.charAt(i);
+      if (c == '.') {
+        response.put(lengthOffset, (byte) (offset - lengthOffset - 1));
+        lengthOffset = offset++;
+      } else {
+        response.put(offset++, (byte) c);
+      }
+    }
+    response.put(lengthOffset, (byte) (offset - lengthOffset - 1));
+    response.put(offset++, (byte) 0);
+    return offset;
+  }
+
+  /**
+   * Stops the server and waits for its worker threads.
+   *
+   * @throws IOException if the channel cannot be closed
+   */
+  @Override
+  public void close() throws IOException {
+    channel.close();
+    for (Thread worker : workers) {
+      try {
+        worker.join(1000);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+}
@@ -0,0 +1,677 @@
+package fr.uvsq.cprog.collex;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Secondary index grouping DNS entries by domain.
+ * Each domain keeps its entries in two sorted arrays, by machine name and by numeric IP
+ * address, so a listing costs time proportional to the size of the domain only.
+ *
+ * <p>Domains also form a trie of reversed labels (fr, then uvsq, then info...) in which every
+ * node counts the entries of its whole subtree. Listing or counting a domain with its subdomains
+ * only visits the nodes below it.
+ *
+ * <p>While a bulk load is in progress, entries are only appended to their domain and each domain
+ * is sorted once when the load ends.
+ *
+ * <p>Arrays keep free slots: tombstones, a gap before every {@value #GAP_INTERVAL} entries and
+ * empty slots at the end. Tombstones and gaps keep the sort keys of an entry so the arrays stay
+ * sorted, and readers skip them. A removal replaces the entry by a tombstone in place, found by
+ * binary search. An addition takes the free slot at its position, or shifts the entries up to
+ * the nearest free slot on its right, at most {@value #MAX_SHIFT} slots away; only when there is
+ * none is the array rebuilt, with a gap before each entry around the addition since the next
+ * ones tend to land nearby. So both cost a binary search plus a bounded shift, rebuilds being
+ * spread over many additions, and an array is also rebuilt once free slots make up half of it.
+ *
+ * <p>Readers never block. Entries only move towards the end of an array, each slot being
+ * written with release semantics, so a cursor never misses an entry present throughout its
+ * walk; it skips an entry it meets twice by comparing it with the last one returned. A listing
+ * read during a change may miss an entry added or removed meanwhile. Callers serialize writes.
+ *
+ * <p>Cursors walk the published arrays in place and can start after any entry by binary search,
+ * so a page of a listing costs its own size plus a logarithmic seek, whatever the domain size.
+ */
+class DomainIndex {
+  /**
+   * Orders entries of the same domain by machine name, then the addresses of a name by numeric
+   * IP address. The '.' ending the machine name sorts before any other character, so comparing
+   * the qualified names compares the machine names.
+   */
+  static final Comparator<DnsItem> BY_NAME = (a, b) -> {
+    String x = a.getNomMachine().getNomQualifie();
+    String y = b.getNomMachine().getNomQualifie();
+    int length = Math.min(x.length(), y.length());
+    for (int i = 0; i < length; i++) {
+      char cx = x.charAt(i);
+      char cy = y.charAt(i);
+      if (cx != cy) {
+        return cx == '.' ? -1 : cy == '.' ? 1 : cx - cy;
+      }
+    }
+    return x.length() != y.length() ? x.length() - y.length()
+        : a.getAdresseIp().compareTo(b.getAdresseIp());
+  };
+
+  /**
+   * Orders entries by numeric IP address.
+   */
+  static final Comparator<DnsItem> BY_IP =
+      (a, b) -> a.getAdresseIp().compareTo(b.getAdresseIp());
+
+  /** Number of entries between two gaps of a rebuilt array. */
+  static final int GAP_INTERVAL = 16;
+
+  /** Largest number of entries an addition shifts before the array is rebuilt. */
+  static final int MAX_SHIFT = 1024;
+
+  private static final DnsItem[] EMPTY = new DnsItem[0];
+  private static final VarHandle SLOT = MethodHandles.arrayElementVarHandle(DnsItem[].class);
+
+  private final Map<String, Domain> domains = new ConcurrentHashMap<>();
+  private final Domain root = new Domain(null, "", "");
+  private List<Domain> pending;
+
+  /**
+   * Entries of a single domain, kept in both sort orders, and node of the domain trie.
+   */
+  private static class Domain {
+    private final Domain parent;
+    private final String label;
+    private final String name;
+    private final Map<String, Domain> children = new ConcurrentHashMap<>();
+    private final Slots byName = new Slots(BY_NAME);
+    private final Slots byIp = new Slots(BY_IP);
+    private volatile int size;
+    private volatile int subtreeSize;
+    private List<DnsItem> unsorted;
+
+    Domain(Domain parent, String label, String name) {
+      this.parent = parent;
+      this.label = label;
+      this.name = name;
+    }
+
+    private String[] sortedLabels() {
+      String[] labels = children.keySet().toArray(new String[0]);
+      Arrays.sort(labels);
+      return labels;
+    }
+
+    private void insert(DnsItem item) {
+      byName.insert(item);
+      byIp.insert(item);
+      size++;
+    }
+
+    private boolean remove(DnsItem item) {
+      DnsItem tombstone = new Removed(item);
+      if (!byName.remove(item, tombstone)) {
+        return unsorted != null && unsorted.remove(item);
+      }
+      byIp.remove(item, tombstone);
+      size--;
+      return true;
+    }
+
+    private void sortUnsorted() {
+      List<DnsItem> names = byName.live();
+      names.addAll(unsorted);
+      DnsItem[] sorted = names.toArray(EMPTY);
+      Arrays.sort(sorted, BY_NAME);
+      byName.layout(sorted, -1);
+      Arrays.sort(sorted, BY_IP);
+      byIp.layout(sorted, -1);
+      size = sorted.length;
+      unsorted = null;
+    }
+  }
+
+  /**
+   * Entries of a domain in one order, in an array holding free slots: tombstones and gaps, which
+   * keep sort keys, among the entries, and nulls after them. Only the writer changes the counts
+   * of used and removed slots.
+   */
+  private static final class Slots {
+    private final Comparator<DnsItem> order;
+    private volatile DnsItem[] items = EMPTY;
+    private int used;
+    private int removed;
+
+    Slots(Comparator<DnsItem> order) {
+      this.order = order;
+    }
+
+    private static boolean free(DnsItem slot) {
+      return slot == null || slot instanceof Removed;
+    }
+
+    /**
+     * Puts an entry in the free slot at its position, or shifts the entries from its position up
+     * to the nearest free slot, the last one first, or rebuilds the array with gaps around the
+     * entry since further additions are likely to land nearby.
+     */
+    void insert(DnsItem item) {
+      DnsItem[] slots = items;
+      int position = lowerBound(slots, item, order);
+      int limit = Math.min(slots.length, position + MAX_SHIFT);
+      int target = position;
+      while (target < limit && !free(slots[target])) {
+        target++;
+      }
+      if (target == limit) {
+        List<DnsItem> live = live();
+        int at = Collections.binarySearch(live, item, order);
+        at = at < 0 ? -at - 1 : at;
+        live.add(at, item);
+        layout(live.toArray(EMPTY), at);
+        return;
+      }
+      if (slots[target] == null) {
+        used++;
+      } else {
+        removed--;
+      }
+      for (int i = target; i > position; i--) {
+        SLOT.setRelease(slots, i, slots[i - 1]);
+      }
+      SLOT.setRelease(slots, position, item);
+    }
+
+    /**
+     * Replaces an entry by a tombstone, and rebuilds the array once tombstones make up half of
+     * it.
+     *
+     * @return false if the entry is absent
+     */
+    boolean remove(DnsItem item, DnsItem tombstone) {
+      DnsItem[] slots = items;
+      int position = lowerBound(slots, item, order);
+      // A gap or a tombstone may have the same keys; neither is ever equal to the entry
+      while (position < used && !item.equals(slots[position])
+          && order.compare(slots[position], item) == 0) {
+        position++;
+      }
+      if (position == used || !item.equals(slots[position])) {
+        return false;
+      }
+      SLOT.setRelease(slots, position, tombstone);
+      if (++removed * 2 > used) {
+        layout(live().toArray(EMPTY), -1);
+      }
+      return true;
+    }
+
+    /**
+     * Publishes a new array holding sorted entries, with a gap before every
+     * {@value #GAP_INTERVAL} entries and before each of the {@value #MAX_SHIFT} entries around
+     * a hot position, then one empty slot per gap at the end.
+     *
+     * @param sorted the entries, in the order of this array
+     * @param hot the position of the entry just added, or -1
+     */
+    void layout(DnsItem[] sorted, int hot) {
+      int from = hot < 0 ? 0 : Math.max(1, hot - MAX_SHIFT / 2);
+      int to = hot < 0 ? 0 : Math.min(sorted.length, hot + MAX_SHIFT / 2);
+      int gaps = 0;
+      for (int i = 1; i < sorted.length; i++) {
+        if (i % GAP_INTERVAL == 0 || i >= from && i < to) {
+          gaps++;
+        }
+      }
+      DnsItem[] slots = new DnsItem[sorted.length + 2 * gaps + 1];
+      int count = 0;
+      for (int i = 0; i < sorted.length; i++) {
+        if (i > 0 && (i % GAP_INTERVAL == 0 || i >= from && i < to)) {
+          slots[count++] = new Removed(sorted[i]);
+        }
+        slots[count++] = sorted[i];
+      }
+      used = count;
+      removed = gaps;
+      items = slots;
+    }
+
+    /**
+     * Returns the entries, without tombstones and gaps.
+     */
+    List<DnsItem> live() {
+      List<DnsItem> list = new ArrayList<>();
+      new Cursor(items, 0, order, null).forEachRemaining(list::add);
+      return list;
+    }
+  }
+
+  /**
+   * Free slot, left by a removed entry or laid out as a gap, keeping the sort keys of an entry so
+   * that an array stays sorted. Readers skip it, and it never equals an entry.
+   */
+  private static final class Removed extends DnsItem {
+    Removed(DnsItem item) {
+      super(item.getAdresseIp(), item.getNomMachine());
+    }
+  }
+
+  private static DnsItem slot(DnsItem[] items, int position) {
+    return (DnsItem) SLOT.getAcquire(items, position);
+  }
+
+  /**
+   * Returns the position of the first slot not less than an entry, empty slots being greater
+   * than any entry.
+   */
+  private static int lowerBound(DnsItem[] items, DnsItem item, Comparator<DnsItem> order) {
+    return search(items, item, order, 0);
+  }
+
+  /**
+   * Returns the position of the first slot greater than an entry, empty slots being greater
+   * than any entry.
+   */
+  private static int upperBound(DnsItem[] items, DnsItem item, Comparator<DnsItem> order) {
+    return search(items, item, order, 1);
+  }
+
+  private static int search(DnsItem[] items, DnsItem item, Comparator<DnsItem> order, int bias) {
+    int low = 0;
+    int high = items.length;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      DnsItem slot = slot(items, middle);
+      if (slot != null && order.compare(slot, item) < bias) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Starts a bulk load: entries added until {@link #endBulk()} are sorted all at once.
+   */
+  void beginBulk() {
+    pending = new ArrayList<>();
+  }
+
+  /**
+   * Ends a bulk load, sorting every domain that received entries.
+   */
+  void endBulk() {
+    for (Domain domain : pending) {
+      domain.sortUnsorted();
+    }
+    pending = null;
+  }
+
+  /**
+   * Returns an entry equal to the given one whose machine name holds the same domain string as
+   * the other machines of its domain, creating the domain if needed, so that an indexed domain
+   * name is stored once. Only the entries about to be indexed go through here, never the names
+   * built for lookups.
+   *
+   * @param item the entry about to be indexed
+   * @return the entry, or an equal entry sharing the domain string
+   */
+  DnsItem shareDomain(DnsItem item) {
+    NomMachine nom = item.getNomMachine();
+    NomMachine shared = nom.withDomaine(domain(nom.getNomDomaine()).name);
+    return shared == nom ? item : new DnsItem(item.getAdresseIp(), shared);
+  }
+
+  /**
+   * Adds an entry to the index of its domain.
+   *
+   * @param item the entry to index
+   */
+  void add(DnsItem item) {
+    Domain domain = domain(item.getNomMachine().getNomDomaine());
+    for (Domain node = domain; node != null; node = node.parent) {
+      node.subtreeSize++; // Writes are serialized
+    }
+    if (pending == null) {
+      domain.insert(item);
+      return;
+    }
+    if (domain.unsorted == null) {
+      domain.unsorted = new ArrayList<>();
+      pending.add(domain);
+    }
+    domain.unsorted.add(item);
+  }
+
+  /**
+   * Removes an entry from the index of its domain. The domain node is kept even if it becomes
+   * empty.
+   *
+   * @param item the entry to remove
+   * @return true if the entry was indexed
+   */
+  boolean remove(DnsItem item) {
+    Domain domain = domains.get(item.getNomMachine().getNomDomaine());
+    if (domain == null || !domain.remove(item)) {
+      return false;
+    }
+    for (Domain node = domain; node != null; node = node.parent) {
+      node.subtreeSize--;
+    }
+    return true;
+  }
+
+  /**
+   * Returns the node of a domain, creating it and its missing parents.
+   */
+  private Domain domain(String name) {
+    Domain domain = domains.get(name);
+    if (domain != null) {
+      return domain;
+    }
+    int dot = name.indexOf('.');
+    Domain parent = dot < 0 ? root : domain(name.substring(dot + 1));
+    String label = dot < 0 ? name : name.substring(0, dot);
+    domain = new Domain(parent, label, name);
+    parent.children.put(label, domain);
+    domains.put(name, domain);
+    return domain;
+  }
+
+  /**
+   * Returns the entries of a domain sorted by machine name.
+   *
+   * @param domain the domain name
+   * @return the entries of the domain, possibly empty
+   */
+  List<DnsItem> byName(String domain) {
+    Domain entries = domains.get(domain);
+    return entries == null ? new ArrayList<>() : entries.byName.live();
+  }
+
+  /**
+   * Returns the entries of a domain sorted by numeric IP address.
+   *
+   * @param domain the domain name
+   * @return the entries of the domain, possibly empty
+   */
+  List<DnsItem> byIp(String domain) {
+    Domain entries = domains.get(domain);
+    return entries == null ? new ArrayList<>() : entries.byIp.live();
+  }
+
+  /**
+   * Returns the entries of a domain and of all its subdomains. Each domain lists its own entries
+   * sorted by machine name, followed by its subdomains in label order.
+   *
+   * @param domain the domain name
+   * @return the entries of the subtree, possibly empty
+   */
+  List<DnsItem> subtree(String domain) {
+    Domain node = domains.get(domain);
+    List<DnsItem> items = new ArrayList<>(node == null ? 0 : node.subtreeSize);
+    if (node != null) {
+      collect(node, items);
+    }
+    return items;
+  }
+
+  private static void collect(Domain node, List<DnsItem> items) {
+    items.addAll(node.byName.live());
+    if (node.children.isEmpty()) {
+      return;
+    }
+    for (String label : node.sortedLabels()) {
+      collect(node.children.get(label), items);
+    }
+  }
+
+  /**
+   * Returns the number of entries of a domain, without its subdomains.
+   *
+   * @param domain the domain name
+   * @return the number of entries of the domain
+   */
+  int size(String domain) {
+    Domain node = domains.get(domain);
+    return node == null ? 0 : node.size;
+  }
+
+  /**
+   * Returns a cursor over the entries of a domain, in the order of {@link #byName},
+   * {@link #byIp} or {@link #subtree}, or over the entries of the subtree sorted by IP address.
+   *
+   * @param domain the domain name
+   * @param byIp whether the entries are sorted by numeric IP address rather than by name
+   * @param recursive whether the entries of the subdomains are included
+   * @param after the entry after which the cursor starts, in the order of the listing, or null to
+   *     start at the first entry; only its name is used when sorting by name
+   * @return the cursor, empty if the domain has no entry
+   * @throws IllegalArgumentException if {@code after} does not belong to the listed domain
+   */
+  Iterator<DnsItem> iterator(String domain, boolean byIp, boolean recursive, DnsItem after) {
+    Domain node = domains.get(domain);
+    Domain afterDomain = null;
+    if (after != null) {
+      afterDomain = domains.get(after.getNomMachine().getNomDomaine());
+      Domain ancestor = afterDomain;
+      while (recursive && ancestor != null && ancestor != node) {
+        ancestor = ancestor.parent;
+      }
+      if (node == null || ancestor != node) {
+        throw new IllegalArgumentException(after.getNomMachine()
+            + " n'appartient pas au domaine " + domain);
+      }
+    }
+    if (node == null) {
+      return Collections.emptyIterator();
+    }
+
+    if (!recursive) {
+      Slots slots = byIp ? node.byIp : node.byName;
+      DnsItem[] items = slots.items;
+      int from = after == null ? 0 : upperBound(items, after, slots.order);
+      return new Cursor(items, from, slots.order, after);
+    }
+    if (byIp) {
+      return new MergeIterator(node, after);
+    }
+    return new SubtreeIterator(node, afterDomain, after);
+  }
+
+  /**
+   * Cursor over an array from a position up to its first empty slot, skipping tombstones and
+   * gaps. Each slot is read once, and an entry is only returned if it follows the last one, so
+   * an entry moved by an addition is not returned twice.
+   */
+  private static final class Cursor implements Iterator<DnsItem> {
+    private final DnsItem[] items;
+    private final Comparator<DnsItem> order;
+    private int position;
+    private DnsItem last;
+    private DnsItem next;
+
+    Cursor(DnsItem[] items, int from, Comparator<DnsItem> order, DnsItem after) {
+      this.items = items;
+      this.order = order;
+      this.position = from;
+      this.last = after;
+    }
+
+    @Override
+    public boolean hasNext() {
+      while (next == null && position < items.length) {
+        DnsItem item = slot(items, position++);
+        if (item == null) {
+          position = items.length;
+        } else if (!(item instanceof Removed)
+            && (last == null || order.compare(item, last) > 0)) {
+          next = item;
+        }
+      }
+      return next != null;
+    }
+
+    @Override
+    public DnsItem next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      last = next;
+      next = null;
+      return last;
+    }
+  }
+
+  /**
+   * Depth-first cursor over a subtree: the entries of each domain sorted by name, then its
+   * subdomains in label order. Only the path to the current domain is kept.
+   */
+  private static final class SubtreeIterator implements Iterator<DnsItem> {
+    private final Deque<Frame> frames = new ArrayDeque<>();
+    private Iterator<DnsItem> entries = Collections.emptyIterator();
+
+    /**
+     * Domain being visited, with the labels of its subdomains still to visit.
+     */
+    private static final class Frame {
+      final Domain node;
+      final String[] labels;
+      int next;
+
+      Frame(Domain node) {
+        this.node = node;
+        this.labels = node.sortedLabels();
+      }
+    }
+
+    SubtreeIterator(Domain top, Domain afterDomain, DnsItem after) {
+      if (after == null) {
+        enter(top, null);
+        return;
+      }
+      // Rebuild the path from the top domain, each frame past the subdomain being left
+      List<Domain> path = new ArrayList<>();
+      for (Domain node = afterDomain; node != top; node = node.parent) {
+        path.add(node);
+      }
+      Domain node = top;
+      for (int i = path.size() - 1; i >= 0; i--) {
+        Frame frame = new Frame(node);
+        frame.next = Arrays.binarySearch(frame.labels, path.get(i).label) + 1;
+        frames.push(frame);
+        node = path.get(i);
+      }
+      enter(node, after);
+    }
+
+    private void enter(Domain node, DnsItem after) {
+      frames.push(new Frame(node));
+      DnsItem[] items = node.byName.items;
+      int from = after == null ? 0 : upperBound(items, after, BY_NAME);
+      entries = new Cursor(items, from, BY_NAME, after);
+    }
+
+    @Override
+    public boolean hasNext() {
+      while (!entries.hasNext()) {
+        Frame frame = frames.peek();
+        if (frame == null) {
+          return false;
+        }
+        if (frame.next == frame.labels.length) {
+          frames.pop();
+          continue;
+        }
+        enter(frame.node.children.get(frame.labels[frame.next++]), null);
+      }
+      return true;
+    }
+
+    @Override
+    public DnsItem next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      return entries.next();
+    }
+  }
+
+  /**
+   * Cursor merging the entries of every domain of a subtree by numeric IP address, holding one
+   * cursor per domain. A cursor waits in the queue with its next entry already read, so the
+   * queue order does not change while entries move.
+   */
+  private static final class MergeIterator implements Iterator<DnsItem> {
+    private final PriorityQueue<Head> heads = new PriorityQueue<>(
+        (a, b) -> BY_IP.compare(a.item, b.item));
+
+    /**
+     * Cursor over the entries of a domain, with the entry it returns next.
+     */
+    private static final class Head {
+      final Cursor cursor;
+      DnsItem item;
+
+      Head(Cursor cursor) {
+        this.cursor = cursor;
+      }
+    }
+
+    MergeIterator(Domain top, DnsItem after) {
+      addSources(top, after);
+    }
+
+    private void addSources(Domain node, DnsItem after) {
+      DnsItem[] items = node.byIp.items;
+      int from = after == null ? 0 : upperBound(items, after, BY_IP);
+      advance(new Head(new Cursor(items, from, BY_IP, after)));
+      for (Domain child : node.children.values()) {
+        addSources(child, after);
+      }
+    }
+
+    private void advance(Head head) {
+      if (head.cursor.hasNext()) {
+        head.item = head.cursor.next();
+        heads.add(head);
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return !heads.isEmpty();
+    }
+
+    @Override
+    public DnsItem next() {
+      Head head = heads.poll();
+      if (head == null) {
+        throw new NoSuchElementException();
+      }
+      DnsItem item = head.item;
+      advance(head);
+      return item;
+    }
+  }
+
+  /**
+   * Returns the number of entries of a domain and of all its subdomains, without visiting them.
+   *
+   * @param domain the domain name
+   * @return the number of entries of the subtree
+   */
+  int subtreeSize(String domain) {
+    Domain node = domains.get(domain);
+    return node == null ? 0 : node.subtreeSize;
+  }
+}
@@ -0,0 +1,96 @@
+package fr.uvsq.cprog.collex;
+
+import java.util.Collection;
+import java.util.function.Consumer;
+
+/**
+ * Primary store of the DNS entries, indexed by packed IP address and by name. A name having
+ * several addresses has one entry per address; the name index refers to one of them.
+ *
+ * <p>Implementations support one writer at a time and any number of concurrent readers that
+ * never block. Callers serialize writes.
+ */
+interface EntryStore {
+  /**
+   * Returns the entry of an address.
+   *
+   * @param ip the packed address
+   * @return the entry, or null if the address is absent
+   */
+  DnsItem get(int ip);
+
+  /**
+   * Returns the entry of a machine name, the one the name index refers to if it has several.
+   *
+   * @param nom the machine name
+   * @return the entry, or null if the name is absent
+   */
+  DnsItem get(NomMachine nom);
+
+  /**
+   * Returns the entry of a machine name held by a probe, without creating a NomMachine.
+   *
+   * @param nom the qualified name, in lower case
+   * @return the entry, or null if the name is absent
+   */
+  DnsItem get(NameProbe nom);
+
+  /**
+   * Tells whether an address is present.
+   *
+   * @param ip the packed address
+   * @return true if an entry has this address
+   */
+  boolean containsIp(int ip);
+
+  /**
+   * Tells whether a machine name is present.
+   *
+   * @param nom the machine name
+   * @return true if an entry has this name
+   */
+  boolean containsName(NomMachine nom);
+
+  /**
+   * Stores an entry whose address and name are both absent.
+   *
+   * @param item the entry
+   */
+  void put(DnsItem item);
+
+  /**
+   * Stores an entry whose address is absent and whose name is already stored with another
+   * address. Only the address index refers to it.
+   *
+   * @param item the entry
+   */
+  void putAddress(DnsItem item);
+
+  /**
+   * Removes a stored entry from the address index, and from the name index if it refers to it.
+   *
+   * @param item the entry, as returned by a lookup
+   */
+  void remove(DnsItem item);
+
+  /**
+   * Returns the number of stored entries.
+   *
+   * @return the number of entries
+   */
+  int size();
+
+  /**
+   * Applies an action to every stored entry, in no particular order.
+   *
+   * @param action the action to apply
+   */
+  void forEach(Consumer<DnsItem> action);
+
+  /**
+   * Returns a live view of the stored entries, in no particular order.
+   *
+   * @return the entries
+   */
+  Collection<DnsItem> values();
+}
@@ -0,0 +1,284 @@
+package fr.uvsq.cprog.collex;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Persists entries through another storage from a single writer thread, merging every save
+ * that arrives while a write is running, or within a short window after the first one, into a
+ * single write. The cost of a rewrite or of an fsync is thus shared by all the concurrent adds.
+ *
+ * <p>The futures returned by {@link #saveAsync} complete once the entries are written, and in
+ * {@link Durability#BATCH} mode forced to the device. In the other modes they are forced by a
+ * periodic sync, losing at most one sync interval of adds in a system crash, or left to the
+ * operating system.
+ */
+class GroupCommitStorage implements DnsStorage {
+  static final long DEFAULT_WINDOW_MILLIS = 2;
+  static final long DEFAULT_SYNC_INTERVAL_MILLIS = 100;
+
+  /**
+   * Point at which a save is considered done.
+   */
+  enum Durability {
+    /** Every batch is forced to the device before its saves complete. */
+    BATCH,
+    /** Saves complete once written, written batches are forced once per sync interval. */
+    INTERVAL,
+    /** Saves complete once written, the operating system flushes them later. */
+    NONE
+  }
+
+  /**
+   * Changes of one save, with the future completed once they are persisted.
+   */
+  private static final class Pending {
+    final List<DnsItem> removed;
+    final List<DnsItem> added;
+    final Collection<DnsItem> all;
+    final CompletableFuture<Void> done = new CompletableFuture<>();
+
+    Pending(List<DnsItem> removed, List<DnsItem> added, Collection<DnsItem> all) {
+      this.removed = removed;
+      this.added = added;
+      this.all = all;
+    }
+  }
+
+  private static final Pending STOP = new Pending(List.of(), List.of(), List.of());
+
+  private final DnsStorage delegate;
+  private final long windowNanos;
+  private final Durability durability;
+  private final long syncIntervalNanos;
+  private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+  private final AtomicLong batches = new AtomicLong();
+  private final AtomicLong syncs = new AtomicLong();
+  private final Thread writer;
+  private boolean closed;
+
+  /**
+   * Creates a group-commit storage and starts its writer thread.
+   *
+   * @param delegate the storage the merged entries are written to
+   * @param windowMillis how long the writer waits for more saves after the first one, 0 to
+   *     merge only the saves queued during the previous write
+   * @param durability the point at which saves complete
+   * @param syncIntervalMillis the minimum time between two syncs in {@link Durability#INTERVAL}
+   *     mode
+   */
+  GroupCommitStorage(DnsStorage delegate, long windowMillis, Durability durability,
+      long syncIntervalMillis) {
+    this.delegate = delegate;
+    this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+    this.durability = durability;
+    this.syncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(syncIntervalMillis);
+    this.writer = new Thread(this::run, "dns-group-commit");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  /**
+   * Returns the number of writes made to the underlying storage.
+   *
+   * @return the number of batches written
+   */
+  long getBatchCount() {
+    return batches.get();
+  }
+
+  /**
+   * Returns the number of syncs made on the underlying storage.
+   *
+   * @return the number of syncs
+   */
+  long getSyncCount() {
+    return syncs.get();
+  }
+
+  @Override
+  public void load(Consumer<DnsItem> sink, Consumer<DnsItem> removals) throws DnsException {
+    delegate.load(sink, removals);
+  }
+
+  /**
+   * Persists removed and added entries and waits until their batch is written, and forced in
+   * {@link Durability#BATCH} mode.
+   *
+   * @param removed the entries that were just removed
+   * @param added the entries that were just added
+   * @param all a view of every entry of the database, after the changes
+   * @throws DnsException if the changes cannot be persisted
+   */
+  @Override
+  public void saveChanges(List<DnsItem> removed, List<DnsItem> added, Collection<DnsItem> all)
+      throws DnsException {
+    await(saveChangesAsync(removed, added, all));
+  }
+
+  @Override
+  public synchronized CompletableFuture<Void> saveChangesAsync(List<DnsItem> removed,
+      List<DnsItem> added, Collection<DnsItem> all) {
+    if (closed) {
+      return CompletableFuture.failedFuture(new DnsException("La base de données est fermée"));
+    }
+    Pending pending = new Pending(removed, added, all);
+    queue.add(pending);
+    return pending.done;
+  }
+
+  /**
+   * Waits for a save and rethrows its failure.
+   *
+   * @param future the future of the save
+   * @throws DnsException if the save failed or the wait was interrupted
+   */
+  static void await(CompletableFuture<Void> future) throws DnsException {
+    try {
+      future.get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof DnsException) {
+        throw (DnsException) e.getCause();
+      }
+      throw new DnsException("Erreur lors de la sauvegarde de la base de données", e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DnsException("Interrompu pendant la sauvegarde de la base de données", e);
+    }
+  }
+
+  private void run() {
+    List<Pending> batch = new ArrayList<>();
+    long lastSync = System.nanoTime();
+    boolean unsynced = false;
+    boolean stopping = false;
+    while (!stopping) {
+      try {
+        Pending first = !unsynced ? queue.take()
+            : queue.poll(lastSync + syncIntervalNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        if (first != null) {
+          batch.add(first);
+          collect(batch);
+        }
+      } catch (InterruptedException e) {
+        stopping = true; // Not expected, the pending saves are still written
+        queue.drainTo(batch);
+      }
+      stopping |= batch.remove(STOP);
+
+      if (!batch.isEmpty()) {
+        unsynced |= write(batch);
+        batch.clear();
+      }
+      if (unsynced && (stopping || System.nanoTime() - lastSync >= syncIntervalNanos)) {
+        try {
+          delegate.sync();
+          syncs.incrementAndGet();
+          unsynced = false;
+        } catch (DnsException | RuntimeException e) {
+          // The written entries stay in the system cache, the next sync tries again
+        }
+        lastSync = System.nanoTime();
+      }
+    }
+  }
+
+  /**
+   * Adds the saves arriving within the window, then every save already queued.
+   */
+  private void collect(List<Pending> batch) throws InterruptedException {
+    if (windowNanos > 0 && batch.get(0) != STOP) {
+      long deadline = System.nanoTime() + windowNanos;
+      long remaining;
+      while ((remaining = deadline - System.nanoTime()) > 0) {
+        Pending next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+        if (next == null) {
+          break;
+        }
+        batch.add(next);
+        if (next == STOP) {
+          return;
+        }
+      }
+    }
+    queue.drainTo(batch);
+  }
+
+  /**
+   * Writes a batch and completes its saves.
+   *
+   * @return true if the batch was written and awaits a periodic sync
+   */
+  private boolean write(List<Pending> batch) {
+    // The delegate writes removals before adds: an entry added then removed within the batch
+    // is left out of both, instead of being removed before it is added
+    Set<DnsItem> removed = new LinkedHashSet<>();
+    Set<DnsItem> added = new LinkedHashSet<>();
+    for (Pending pending : batch) {
+      for (DnsItem item : pending.removed) {
+        if (!added.remove(item)) {
+          removed.add(item);
+        }
+      }
+      added.addAll(pending.added);
+    }
+    try {
+      // Every save passes a view of the whole database, the last one is as recent as any
+      delegate.saveChanges(new ArrayList<>(removed), new ArrayList<>(added),
+          batch.get(batch.size() - 1).all);
+      batches.incrementAndGet();
+      if (durability == Durability.BATCH) {
+        delegate.sync();
+        syncs.incrementAndGet();
+      }
+    } catch (DnsException | RuntimeException e) {
+      for (Pending pending : batch) {
+        pending.done.completeExceptionally(e);
+      }
+      return false;
+    }
+
+    for (Pending pending : batch) {
+      pending.done.complete(null);
+    }
+    return durability == Durability.INTERVAL;
+  }
+
+  @Override
+  public void sync() throws DnsException {
+    delegate.sync();
+  }
+
+  /**
+   * Writes the pending saves, stops the writer thread and closes the underlying storage.
+   *
+   * @throws DnsException if the underlying storage cannot be closed
+   */
+  @Override
+  public void close() throws DnsException {
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      queue.add(STOP);
+    }
+    try {
+      writer.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DnsException("Interrompu pendant la sauvegarde de la base de données", e);
+    }
+    delegate.close();
+  }
+}
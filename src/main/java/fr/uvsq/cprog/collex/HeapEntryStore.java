@@ -0,0 +1,82 @@
+package fr.uvsq.cprog.collex;
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.function.Consumer;
+
+/**
+ * Entry store keeping the DnsItem objects on the heap, in an {@link IpIndex} and a
+ * {@link NameIndex}. The IpIndex holds every entry, so it also serves iteration.
+ */
+class HeapEntryStore implements EntryStore {
+  private final IpIndex byIp = new IpIndex();
+  private final NameIndex byName = new NameIndex();
+
+  @Override
+  public DnsItem get(int ip) {
+    return byIp.get(ip);
+  }
+
+  @Override
+  public DnsItem get(NomMachine nom) {
+    return byName.get(nom);
+  }
+
+  @Override
+  public DnsItem get(NameProbe nom) {
+    return byName.get(nom);
+  }
+
+  @Override
+  public boolean containsIp(int ip) {
+    return byIp.containsKey(ip);
+  }
+
+  @Override
+  public boolean containsName(NomMachine nom) {
+    return byName.containsKey(nom);
+  }
+
+  @Override
+  public void put(DnsItem item) {
+    byName.put(item);
+    byIp.put(item.getAdresseIp().toInt(), item);
+  }
+
+  @Override
+  public void putAddress(DnsItem item) {
+    byIp.put(item.getAdresseIp().toInt(), item);
+  }
+
+  @Override
+  public void remove(DnsItem item) {
+    byIp.remove(item.getAdresseIp().toInt());
+    byName.remove(item);
+  }
+
+  @Override
+  public int size() {
+    return byIp.size();
+  }
+
+  @Override
+  public void forEach(Consumer<DnsItem> action) {
+    byIp.forEach(action);
+  }
+
+  @Override
+  public Collection<DnsItem> values() {
+    return new AbstractCollection<>() {
+      @Override
+      public Iterator<DnsItem> iterator() {
+        return byIp.iterator();
+      }
+
+      @Override
+      public int size() {
+        return byIp.size();
+      }
+    };
+  }
+}
@@ -0,0 +1,42 @@
+package fr.uvsq.cprog.collex;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Command to import every DNS entry of a file in a single operation.
+ */
+public class ImportCommande implements Commande {
+  private final Dns dns;
+  private final Path fichier;
+
+  /**
+   * Creates a command to import DNS entries.
+   *
+   * @param dns the DNS database
+   * @param fichier the file to import, in the format of the database file
+   */
+  public ImportCommande(Dns dns, Path fichier) {
+    this.dns = dns;
+    this.fichier = fichier;
+  }
+
+  @Override
+  public Object execute() {
+    List<DnsItem> items = new ArrayList<>();
+    try {
+      new DnsLoader().load(fichier, items::add);
+    } catch (IOException e) {
+      return "ERREUR : Impossible de lire le fichier : " + fichier;
+    }
+
+    try {
+      dns.addItems(items);
+      return items.size() + " entrée(s) DNS importée(s) depuis " + fichier;
+    } catch (DnsException e) {
+      return "ERREUR : " + e.getMessage() + " (aucune entrée importée)";
+    }
+  }
+}
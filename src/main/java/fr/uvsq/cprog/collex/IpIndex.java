@@ -0,0 +1,217 @@
+package fr.uvsq.cprog.collex;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+/**
+ * Open-addressing hash table mapping packed IPv4 addresses to DNS entries.
+ * Keys are kept in a primitive array so lookups neither box nor allocate.
+ *
+ * <p>The table supports one writer at a time and any number of concurrent readers that never
+ * block: a key is written before its value is published with release semantics, and a grown
+ * table is fully filled before it replaces the old one. Callers serialize writes.
+ *
+ * <p>A removed entry leaves a tombstone, so the probe sequences of the other keys stay intact
+ * for readers. Tombstones count as used slots until the table grows and drops them.
+ */
+class IpIndex {
+  private static final int INITIAL_CAPACITY = 16;
+  private static final VarHandle VALUES = MethodHandles.arrayElementVarHandle(DnsItem[].class);
+  private static final DnsItem REMOVED =
+      new DnsItem(new AdresseIP(0), NomMachine.ofNormalized("supprime.invalid"));
+
+  private volatile Table table;
+  private volatile int size;
+  private int used;
+
+  /**
+   * Arrays of one capacity, replaced as a whole when the index grows.
+   */
+  private static class Table {
+    private final int[] keys;
+    private final DnsItem[] values;
+
+    Table(int capacity) {
+      this.keys = new int[capacity];
+      this.values = new DnsItem[capacity];
+    }
+
+    DnsItem valueAt(int i) {
+      return (DnsItem) VALUES.getAcquire(values, i);
+    }
+  }
+
+  /**
+   * Creates an empty index.
+   */
+  IpIndex() {
+    this.table = new Table(INITIAL_CAPACITY);
+  }
+
+  private static int slot(int key, int mask) {
+    int h = key * 0x9E3779B9;
+    return (h ^ (h >>> 16)) & mask;
+  }
+
+  /**
+   * Returns the entry stored for an address.
+   *
+   * @param key the packed address
+   * @return the entry, or null if the address is absent
+   */
+  DnsItem get(int key) {
+    Table current = table;
+    int mask = current.keys.length - 1;
+    DnsItem item;
+    for (int i = slot(key, mask); (item = current.valueAt(i)) != null; i = (i + 1) & mask) {
+      if (current.keys[i] == key && item != REMOVED) {
+        return item;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Tells whether an address is present.
+   *
+   * @param key the packed address
+   * @return true if an entry is stored for the address
+   */
+  boolean containsKey(int key) {
+    return get(key) != null;
+  }
+
+  /**
+   * Stores an entry for an address, replacing any previous one.
+   *
+   * @param key the packed address
+   * @param item the entry
+   * @return the previous entry, or null if the address was absent
+   */
+  DnsItem put(int key, DnsItem item) {
+    Table current = table;
+    if ((used + 1) * 4 > current.keys.length * 3) {
+      current = grow(current);
+    }
+    int mask = current.keys.length - 1;
+    int i = slot(key, mask);
+    DnsItem previous;
+    while ((previous = current.values[i]) != null) {
+      if (current.keys[i] == key && previous != REMOVED) {
+        VALUES.setRelease(current.values, i, item);
+        return previous;
+      }
+      i = (i + 1) & mask;
+    }
+    current.keys[i] = key;
+    VALUES.setRelease(current.values, i, item);
+    size++;
+    used++;
+    return null;
+  }
+
+  /**
+   * Removes the entry stored for an address.
+   *
+   * @param key the packed address
+   * @return the removed entry, or null if the address was absent
+   */
+  DnsItem remove(int key) {
+    Table current = table;
+    int mask = current.keys.length - 1;
+    DnsItem item;
+    for (int i = slot(key, mask); (item = current.values[i]) != null; i = (i + 1) & mask) {
+      if (current.keys[i] == key && item != REMOVED) {
+        VALUES.setRelease(current.values, i, REMOVED);
+        size--;
+        return item;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the number of stored entries.
+   *
+   * @return the number of entries
+   */
+  int size() {
+    return size;
+  }
+
+  /**
+   * Applies an action to every stored entry, in no particular order.
+   *
+   * @param action the action to apply
+   */
+  void forEach(Consumer<DnsItem> action) {
+    Table current = table;
+    for (int i = 0; i < current.values.length; i++) {
+      DnsItem item = current.valueAt(i);
+      if (item != null && item != REMOVED) {
+        action.accept(item);
+      }
+    }
+  }
+
+  /**
+   * Returns an iterator over the entries stored when it is created, in no particular order.
+   * Entries stored or removed meanwhile may or may not be returned.
+   *
+   * @return the iterator
+   */
+  Iterator<DnsItem> iterator() {
+    Table current = table;
+    return new Iterator<>() {
+      private int position = -1;
+      private DnsItem item = advance();
+
+      private DnsItem advance() {
+        while (++position < current.values.length) {
+          DnsItem found = current.valueAt(position);
+          if (found != null && found != REMOVED) {
+            return found;
+          }
+        }
+        return null;
+      }
+
+      @Override
+      public boolean hasNext() {
+        return item != null;
+      }
+
+      @Override
+      public DnsItem next() {
+        if (item == null) {
+          throw new NoSuchElementException();
+        }
+        DnsItem found = item;
+        item = advance();
+        return found;
+      }
+    };
+  }
+
+  private Table grow(Table old) {
+    // Dropping the tombstones may be enough to make room
+    Table grown = new Table(size * 2 >= old.keys.length ? old.keys.length * 2 : old.keys.length);
+    int mask = grown.keys.length - 1;
+    for (int j = 0; j < old.keys.length; j++) {
+      if (old.values[j] != null && old.values[j] != REMOVED) {
+        int i = slot(old.keys[j], mask);
+        while (grown.values[i] != null) {
+          i = (i + 1) & mask;
+        }
+        grown.keys[i] = old.keys[j];
+        grown.values[i] = old.values[j];
+      }
+    }
+    used = size;
+    table = grown;
+    return grown;
+  }
+}
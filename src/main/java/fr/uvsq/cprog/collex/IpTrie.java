@@ -0,0 +1,162 @@
+package fr.uvsq.cprog.collex;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Patricia trie of DNS entries keyed by packed IPv4 address.
+ * Each internal node holds the prefix shared by its subtree and branches on the next bit, so a
+ * network given in CIDR notation is found in at most 32 steps and its entries are then read in
+ * numeric order without visiting anything outside the network.
+ *
+ * <p>Nodes are linked through volatile fields and a new node is complete before it is linked, so
+ * readers never block and see a consistent trie. Callers serialize writes.
+ */
+class IpTrie {
+  private volatile Node root;
+
+  /**
+   * Node of the trie: a leaf when its prefix has 32 bits, an internal node otherwise.
+   */
+  private static class Node {
+    private final int prefix;
+    private final int length;
+    private final DnsItem item;
+    private volatile Node zero;
+    private volatile Node one;
+
+    Node(int key, DnsItem item) {
+      this.prefix = key;
+      this.length = 32;
+      this.item = item;
+    }
+
+    Node(int prefix, int length, Node zero, Node one) {
+      this.prefix = prefix;
+      this.length = length;
+      this.item = null;
+      this.zero = zero;
+      this.one = one;
+    }
+  }
+
+  private static int mask(int length) {
+    return length == 0 ? 0 : -1 << (32 - length);
+  }
+
+  private static int bit(int key, int position) {
+    return (key >>> (31 - position)) & 1;
+  }
+
+  private static int commonLength(int a, int b, int limit) {
+    return Math.min(Integer.numberOfLeadingZeros(a ^ b), limit);
+  }
+
+  /**
+   * Stores an entry for an address, replacing any previous one.
+   *
+   * @param key the packed address
+   * @param item the entry
+   */
+  void put(int key, DnsItem item) {
+    Node leaf = new Node(key, item);
+    Node parent = null;
+    Node node = root;
+    while (node != null) {
+      int common = commonLength(key, node.prefix, node.length);
+      if (common < node.length) {
+        Node split = bit(key, common) == 0
+            ? new Node(key & mask(common), common, leaf, node)
+            : new Node(key & mask(common), common, node, leaf);
+        link(parent, key, split);
+        return;
+      }
+      if (node.length == 32) {
+        link(parent, key, leaf); // Same address
+        return;
+      }
+      parent = node;
+      node = bit(key, node.length) == 0 ? node.zero : node.one;
+    }
+    link(parent, key, leaf);
+  }
+
+  /**
+   * Removes the entry of an address. Its parent node is replaced by the sibling subtree, so
+   * readers still on the old path see the trie as it was before the removal.
+   *
+   * @param key the packed address
+   * @return the removed entry, or null if the address was absent
+   */
+  DnsItem remove(int key) {
+    Node grandparent = null;
+    Node parent = null;
+    Node node = root;
+    while (node != null && node.length < 32) {
+      if (commonLength(key, node.prefix, node.length) < node.length) {
+        return null;
+      }
+      grandparent = parent;
+      parent = node;
+      node = bit(key, node.length) == 0 ? node.zero : node.one;
+    }
+    if (node == null || node.prefix != key) {
+      return null;
+    }
+    if (parent == null) {
+      root = null;
+    } else {
+      link(grandparent, key, bit(key, parent.length) == 0 ? parent.one : parent.zero);
+    }
+    return node.item;
+  }
+
+  /**
+   * Replaces the child of a node on the path of a key, or the root.
+   */
+  private void link(Node parent, int key, Node child) {
+    if (parent == null) {
+      root = child;
+    } else if (bit(key, parent.length) == 0) {
+      parent.zero = child;
+    } else {
+      parent.one = child;
+    }
+  }
+
+  /**
+   * Returns the entries of a network in numeric order of address.
+   *
+   * @param network the packed network address; bits beyond the prefix are ignored
+   * @param prefixLength the length of the network prefix, between 0 and 32
+   * @return the entries whose address belongs to the network, possibly empty
+   */
+  List<DnsItem> range(int network, int prefixLength) {
+    List<DnsItem> items = new ArrayList<>();
+    Node node = root;
+    while (node != null) {
+      int limit = Math.min(node.length, prefixLength);
+      if (commonLength(network, node.prefix, limit) < limit) {
+        break; // The network diverges from this subtree
+      }
+      if (node.length >= prefixLength) {
+        collect(node, items);
+        break;
+      }
+      node = bit(network, node.length) == 0 ? node.zero : node.one;
+    }
+    return items;
+  }
+
+  private static void collect(Node node, List<DnsItem> items) {
+    if (node == null) {
+      return;
+    }
+    if (node.item != null) {
+      items.add(node.item);
+      return;
+    }
+    collect(node.zero, items);
+    collect(node.one, items);
+  }
+}
@@ -0,0 +1,250 @@
+package fr.uvsq.cprog.collex;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Stores the database as a snapshot text file plus an append-only journal.
+ * Each add appends one record to the journal, so its cost does not depend on the size of the
+ * database. Once the journal grows past a threshold it is rotated and merged into a new
+ * snapshot by a background thread.
+ *
+ * <p>Journal records are lines of the form {@code + name ip} for an add and {@code - name ip} for
+ * a removal. On startup the snapshot is read first, then the rotated journal if a compaction was
+ * interrupted, then the current journal. A compaction drops the removed entries from the new
+ * snapshot.
+ *
+ * <p>A failed compaction leaves its rotated journal in place. The next save reports the failure
+ * without writing anything, and the save after it merges the rotated journal again before any
+ * new rotation.
+ */
+class JournalStorage implements DnsStorage {
+  static final long DEFAULT_COMPACTION_THRESHOLD = 1L << 20;
+
+  private final TextFileStorage snapshot;
+  private final Path journalPath;
+  private final Path compactingPath;
+  private final long compactionThreshold;
+  private final ExecutorService compactor;
+  private FileChannel journal;
+  private Future<?> compaction;
+  private boolean retryCompaction;
+
+  /**
+   * Creates a journal-backed storage.
+   *
+   * @param databasePath the path to the snapshot file
+   * @param compactionThreshold the journal size in bytes that triggers a compaction
+   */
+  JournalStorage(Path databasePath, long compactionThreshold) {
+    this(new TextFileStorage(databasePath), compactionThreshold);
+  }
+
+  /**
+   * Creates a journal-backed storage on top of a text storage.
+   *
+   * @param snapshot the storage of the snapshot file
+   * @param compactionThreshold the journal size in bytes that triggers a compaction
+   */
+  JournalStorage(TextFileStorage snapshot, long compactionThreshold) {
+    Path databasePath = snapshot.getDatabasePath();
+    this.snapshot = snapshot;
+    this.journalPath = sibling(databasePath, ".journal");
+    this.compactingPath = sibling(databasePath, ".journal.compacting");
+    this.compactionThreshold = compactionThreshold;
+    this.compactor = Executors.newSingleThreadExecutor(r -> {
+      Thread thread = new Thread(r, "dns-journal-compactor");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  private static Path sibling(Path path, String suffix) {
+    return path.resolveSibling(path.getFileName() + suffix);
+  }
+
+  /**
+   * Returns the path to the journal file.
+   *
+   * @return the path to the journal file
+   */
+  Path getJournalPath() {
+    return journalPath;
+  }
+
+  @Override
+  public void load(Consumer<DnsItem> sink, Consumer<DnsItem> removals) throws DnsException {
+    snapshot.load(sink);
+    replay(compactingPath, sink, removals);
+    replay(journalPath, sink, removals);
+  }
+
+  private static void replay(Path path, Consumer<DnsItem> sink, Consumer<DnsItem> removals)
+      throws DnsException {
+    if (!Files.exists(path)) {
+      return;
+    }
+
+    try (BufferedReader reader = Files.newBufferedReader(path)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        String[] parts = line.trim().split("\\s+");
+        if (parts.length != 3 || !(parts[0].equals("+") || parts[0].equals("-"))) {
+          continue; // Skip records truncated by a crash
+        }
+
+        try {
+          DnsItem item = new DnsItem(new AdresseIP(parts[2]), new NomMachine(parts[1]));
+          (parts[0].equals("+") ? sink : removals).accept(item);
+        } catch (IllegalArgumentException e) {
+          // Skip invalid entries
+        }
+      }
+    } catch (IOException e) {
+      throw new DnsException("Erreur lors de la lecture du journal : " + path, e);
+    }
+  }
+
+  @Override
+  public synchronized void saveChanges(List<DnsItem> removed, List<DnsItem> added,
+      Collection<DnsItem> all) throws DnsException {
+    StringBuilder records = new StringBuilder();
+    for (DnsItem item : removed) {
+      records.append("- ").append(item.getNomMachine())
+          .append(' ').append(item.getAdresseIp()).append('\n');
+    }
+    for (DnsItem item : added) {
+      records.append("+ ").append(item.getNomMachine())
+          .append(' ').append(item.getAdresseIp()).append('\n');
+    }
+
+    checkCompaction();
+    try {
+      FileChannel channel = openJournal();
+      ByteBuffer buffer = ByteBuffer.wrap(records.toString().getBytes(StandardCharsets.UTF_8));
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      if (retryCompaction || channel.size() >= compactionThreshold) {
+        startCompaction();
+      }
+    } catch (IOException e) {
+      throw new DnsException("Erreur lors de l'écriture du journal", e);
+    }
+  }
+
+  private FileChannel openJournal() throws IOException {
+    if (journal == null) {
+      journal = FileChannel.open(journalPath, StandardOpenOption.CREATE,
+          StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+    return journal;
+  }
+
+  /**
+   * Throws the failure of the last compaction, once, and marks it to be retried.
+   */
+  private void checkCompaction() throws DnsException {
+    if (compaction == null || !compaction.isDone()) {
+      return;
+    }
+    Future<?> done = compaction;
+    compaction = null;
+    try {
+      done.get();
+    } catch (ExecutionException e) {
+      retryCompaction = true;
+      throw new DnsException("Le compactage du journal a échoué, il sera repris : "
+          + e.getCause().getMessage(), e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void startCompaction() throws IOException {
+    if (compaction != null && !compaction.isDone()) {
+      return; // The journal keeps growing until the running compaction ends
+    }
+    retryCompaction = false;
+    // The journal of a failed or interrupted compaction is merged first, never overwritten
+    if (!Files.exists(compactingPath)) {
+      journal.close();
+      journal = null;
+      Files.move(journalPath, compactingPath, StandardCopyOption.ATOMIC_MOVE);
+    }
+    compaction = compactor.submit(() -> {
+      compact();
+      return null;
+    });
+  }
+
+  /**
+   * Merges the snapshot and the rotated journal into a new snapshot. Entries are keyed by
+   * address, so that every address of a name is kept and a removal drops its exact entry.
+   *
+   * @throws DnsException if the new snapshot cannot be written
+   * @throws IOException if the files cannot be replaced
+   */
+  private void compact() throws DnsException, IOException {
+    Map<AdresseIP, DnsItem> items = new LinkedHashMap<>();
+    Consumer<DnsItem> merge = item -> items.putIfAbsent(item.getAdresseIp(), item);
+    Consumer<DnsItem> unmerge = item -> items.remove(item.getAdresseIp(), item);
+    snapshot.load(merge);
+    replay(compactingPath, merge, unmerge);
+
+    Path databasePath = snapshot.getDatabasePath();
+    Path temporary = sibling(databasePath, ".tmp");
+    new TextFileStorage(temporary).write(items.values());
+    Files.move(temporary, databasePath, StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+    Files.delete(compactingPath);
+  }
+
+  @Override
+  public synchronized void sync() throws DnsException {
+    try {
+      if (journal != null) {
+        journal.force(false);
+      }
+    } catch (IOException e) {
+      throw new DnsException("Erreur lors de la synchronisation du journal", e);
+    }
+  }
+
+  @Override
+  public synchronized void close() throws DnsException {
+    compactor.shutdown();
+    try {
+      if (journal != null) {
+        journal.close();
+        journal = null;
+      }
+      if (!compactor.awaitTermination(1, TimeUnit.MINUTES)) {
+        throw new DnsException("Le compactage du journal ne s'est pas terminé");
+      }
+      checkCompaction();
+    } catch (IOException e) {
+      throw new DnsException("Erreur lors de la fermeture du journal", e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DnsException("Interrompu pendant le compactage du journal", e);
+    }
+  }
+}
@@ -0,0 +1,228 @@
+package fr.uvsq.cprog.collex;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Hashes of the entry lines of a database file, with the entry each line defines, used to find
+ * what changed between two reads of the file.
+ *
+ * <p>Each line has a stable id indexing its hash and entry, and the ids are also kept in file
+ * order. A read checks each line against the line following the previous match in that order
+ * first, so an unchanged file is compared sequentially; a line found out of order is looked up in
+ * an open-addressing table and the comparison resumes after it. Only the lines added or removed
+ * by a read touch the table.
+ *
+ * <p>A read starts with {@link #startRead()}, reports each line with {@link #found} or
+ * {@link #add}, and ends with {@link #endRead} or {@link #abortRead()}. The class is not
+ * thread-safe.
+ */
+class LineHashes {
+  private static final int INITIAL_CAPACITY = 1024;
+
+  private long[] hashes = new long[INITIAL_CAPACITY];
+  private DnsItem[] items = new DnsItem[INITIAL_CAPACITY];
+  private int[] positions = new int[INITIAL_CAPACITY];
+  private long[] found = new long[INITIAL_CAPACITY / Long.SIZE];
+  private int ids;
+  private int[] freeIds = new int[INITIAL_CAPACITY];
+  private int freeCount;
+  private int[] slots = new int[INITIAL_CAPACITY * 2];
+  private int size;
+
+  private int[] order = new int[INITIAL_CAPACITY];
+  private int orderLength;
+  private int[] nextOrder = new int[INITIAL_CAPACITY];
+  private int nextLength;
+  private int cursor;
+  private int[] addedIds = new int[INITIAL_CAPACITY];
+  private int addedCount;
+
+  private static int slot(long hash, int mask) {
+    return (int) hash & mask;
+  }
+
+  /**
+   * Returns the number of known lines.
+   *
+   * @return the number of distinct lines found by the last read
+   */
+  int size() {
+    return size;
+  }
+
+  /**
+   * Starts a new read of the file.
+   */
+  void startRead() {
+    cursor = 0;
+    nextLength = 0;
+    addedCount = 0;
+  }
+
+  /**
+   * Marks a line as found by the current read.
+   *
+   * @param hash the hash of the line, never 0
+   * @return true if the line is known, or repeats a line already reported by this read
+   */
+  boolean found(long hash) {
+    int id;
+    if (cursor < orderLength && hashes[order[cursor]] == hash) {
+      id = order[cursor++];
+    } else {
+      id = lookup(hash);
+      if (id < 0) {
+        return false;
+      }
+      if (positions[id] >= 0) {
+        cursor = positions[id] + 1;
+      }
+    }
+    if ((found[id >>> 6] & (1L << id)) == 0) {
+      found[id >>> 6] |= 1L << id;
+      append(id);
+    }
+    return true;
+  }
+
+  /**
+   * Records a new line found by the current read.
+   *
+   * @param hash the hash of the line, never 0, for which {@link #found} returned false
+   * @param item the entry the line defines
+   */
+  void add(long hash, DnsItem item) {
+    if ((size + 1) * 2 > slots.length) {
+      rehash(slots.length * 2);
+    }
+    int id = freeCount > 0 ? freeIds[--freeCount] : newId();
+    hashes[id] = hash;
+    items[id] = item;
+    positions[id] = -1;
+    found[id >>> 6] |= 1L << id;
+    link(id);
+    size++;
+    append(id);
+    if (addedCount == addedIds.length) {
+      addedIds = Arrays.copyOf(addedIds, addedCount * 2);
+    }
+    addedIds[addedCount++] = id;
+  }
+
+  /**
+   * Ends the current read, forgetting the lines it did not find.
+   *
+   * @param removed receives the entries of the forgotten lines
+   */
+  void endRead(List<DnsItem> removed) {
+    for (int word = 0; word << 6 < ids; word++) {
+      long missing = ~found[word];
+      while (missing != 0) {
+        int id = (word << 6) + Long.numberOfTrailingZeros(missing);
+        missing &= missing - 1;
+        if (id >= ids) {
+          break;
+        }
+        if (hashes[id] != 0) {
+          removed.add(items[id]);
+          forget(id);
+        }
+      }
+    }
+    int[] swap = order;
+    order = nextOrder;
+    orderLength = nextLength;
+    nextOrder = swap;
+    for (int i = 0; i < orderLength; i++) {
+      positions[order[i]] = i;
+    }
+    Arrays.fill(found, 0);
+  }
+
+  /**
+   * Cancels the current read: the lines it added are forgotten and every known line stays.
+   */
+  void abortRead() {
+    for (int i = 0; i < addedCount; i++) {
+      forget(addedIds[i]);
+    }
+    Arrays.fill(found, 0);
+  }
+
+  private int newId() {
+    if (ids == hashes.length) {
+      int capacity = ids * 2;
+      hashes = Arrays.copyOf(hashes, capacity);
+      items = Arrays.copyOf(items, capacity);
+      positions = Arrays.copyOf(positions, capacity);
+      found = Arrays.copyOf(found, capacity / Long.SIZE);
+      freeIds = Arrays.copyOf(freeIds, capacity);
+    }
+    return ids++;
+  }
+
+  private void append(int id) {
+    if (nextLength == nextOrder.length) {
+      nextOrder = Arrays.copyOf(nextOrder, nextLength * 2);
+    }
+    nextOrder[nextLength++] = id;
+  }
+
+  private void forget(int id) {
+    unlink(id);
+    hashes[id] = 0;
+    items[id] = null;
+    freeIds[freeCount++] = id;
+    size--;
+  }
+
+  private int lookup(long hash) {
+    int mask = slots.length - 1;
+    for (int i = slot(hash, mask); slots[i] != 0; i = (i + 1) & mask) {
+      if (hashes[slots[i] - 1] == hash) {
+        return slots[i] - 1;
+      }
+    }
+    return -1;
+  }
+
+  private void link(int id) {
+    int mask = slots.length - 1;
+    int i = slot(hashes[id], mask);
+    while (slots[i] != 0) {
+      i = (i + 1) & mask;
+    }
+    slots[i] = id + 1;
+  }
+
+  /**
+   * Removes the slot of an id, shifting back the following slots of the cluster that probed past
+   * it, so that no tombstone is needed.
+   */
+  private void unlink(int id) {
+    int mask = slots.length - 1;
+    int i = slot(hashes[id], mask);
+    while (slots[i] != id + 1) {
+      i = (i + 1) & mask;
+    }
+    for (int j = (i + 1) & mask; slots[j] != 0; j = (j + 1) & mask) {
+      int home = slot(hashes[slots[j] - 1], mask);
+      boolean between = i <= j ? i < home && home <= j : i < home || home <= j;
+      if (!between) {
+        slots[i] = slots[j];
+        i = j;
+      }
+    }
+    slots[i] = 0;
+  }
+
+  private void rehash(int capacity) {
+    slots = new int[capacity];
+    for (int id = 0; id < ids; id++) {
+      if (hashes[id] != 0) {
+        link(id);
+      }
+    }
+  }
+}
@@ -1,15 +1,25 @@
 package fr.uvsq.cprog.collex;
 
 import java.util.List;
+import java.util.Locale;
 import java.util.stream.Collectors;
 
 /**
- * Command to list all machines in a domain.
+ * Command to list all machines in a domain, optionally with its subdomains.
+ * Rendered listings of up to {@value #MAX_CACHED_ENTRIES} entries are kept in the cache of the
+ * database until the domain changes. Larger listings, and pages of a listing, are returned as a
+ * {@link Listing} written line by line from a cursor on the database.
  */
 public class ListeDomaineCommande implements Commande {
+  static final int MAX_CACHED_ENTRIES = 10_000;
+
   private final Dns dns;
   private final String domaine;
   private final boolean sortByIp;
+  private final boolean recursive;
+  private final int limit;
+  private final NomMachine after;
+  private final AdresseIP afterIp;
 
   /**
    * Creates a command to list machines in a domain.
@@ -19,23 +29,103 @@ public class ListeDomaineCommande implements Commande {
    * @param sortByIp if true, sort by IP address; otherwise sort by machine name
    */
   public ListeDomaineCommande(Dns dns, String domaine, boolean sortByIp) {
+    this(dns, domaine, sortByIp, false);
+  }
+
+  /**
+   * Creates a command to list machines in a domain and possibly its subdomains.
+   *
+   * @param dns the DNS database
+   * @param domaine the domain name
+   * @param sortByIp if true, sort by IP address; otherwise sort by machine name
+   * @param recursive if true, also list the machines of the subdomains
+   */
+  public ListeDomaineCommande(Dns dns, String domaine, boolean sortByIp, boolean recursive) {
+    this(dns, domaine, sortByIp, recursive, Listing.UNLIMITED, null);
+  }
+
+  /**
+   * Creates a command to list one page of the machines in a domain.
+   *
+   * @param dns the DNS database
+   * @param domaine the domain name
+   * @param sortByIp if true, sort by IP address; otherwise sort by machine name
+   * @param recursive if true, also list the machines of the subdomains
+   * @param limit the maximum number of machines listed
+   * @param after the machine after which the page starts, or null to start at the first one
+   */
+  public ListeDomaineCommande(Dns dns, String domaine, boolean sortByIp, boolean recursive,
+      int limit, NomMachine after) {
+    this(dns, domaine, sortByIp, recursive, limit, after, null);
+  }
+
+  /**
+   * Creates a command to list the page of the machines in a domain following an entry, as
+   * named by the continuation line of the previous page.
+   *
+   * @param dns the DNS database
+   * @param domaine the domain name
+   * @param sortByIp if true, sort by IP address; otherwise sort by machine name
+   * @param recursive if true, also list the machines of the subdomains
+   * @param limit the maximum number of machines listed
+   * @param after the machine of the entry after which the page starts, or null to start at the
+   *     first one
+   * @param afterIp the address of that entry, or null to start after every address of the
+   *     machine when sorting by name, and after its first address when sorting by IP address
+   */
+  public ListeDomaineCommande(Dns dns, String domaine, boolean sortByIp, boolean recursive,
+      int limit, NomMachine after, AdresseIP afterIp) {
     this.dns = dns;
     this.domaine = domaine;
     this.sortByIp = sortByIp;
+    this.recursive = recursive;
+    this.limit = limit;
+    this.after = after;
+    this.afterIp = afterIp;
+  }
+
+  private List<DnsItem> items() {
+    if (!recursive) {
+      return sortByIp ? dns.getItemsSortedByIp(domaine) : dns.getItems(domaine);
+    }
+    List<DnsItem> items = dns.getItemsUnder(domaine);
+    if (sortByIp) {
+      items.sort(DomainIndex.BY_IP);
+    }
+    return items;
   }
 
   @Override
   public Object execute() {
-    List<DnsItem> items = sortByIp 
-        ? dns.getItemsSortedByIp(domaine)
-        : dns.getItems(domaine);
+    int size = recursive ? dns.countItemsUnder(domaine) : dns.countItems(domaine);
+    if (limit != Listing.UNLIMITED || after != null || size > MAX_CACHED_ENTRIES) {
+      try {
+        return new Listing(dns.iterateItems(domaine, sortByIp, recursive, after, afterIp), limit,
+            after == null ? "Aucune machine trouvée pour le domaine : " + domaine
+                : "Aucune machine après " + after + " dans le domaine : " + domaine);
+      } catch (IllegalArgumentException e) {
+        return "ERREUR : " + e.getMessage();
+      }
+    }
+
+    ListingCache cache = dns.getListingCache();
+    String key = domaine.toLowerCase(Locale.ROOT);
+    String listing = cache.get(key, sortByIp, recursive);
+    if (listing != null) {
+      return listing;
+    }
+
+    long version = cache.version();
+    List<DnsItem> items = items();
 
     if (items.isEmpty()) {
       return "Aucune machine trouvée pour le domaine : " + domaine;
     }
 
-    return items.stream()
+    listing = items.stream()
         .map(item -> item.getAdresseIp() + " " + item.getNomMachine())
         .collect(Collectors.joining("\n"));
+    cache.put(key, sortByIp, recursive, listing, version);
+    return listing;
   }
 }
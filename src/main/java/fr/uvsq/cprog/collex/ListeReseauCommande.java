@@ -0,0 +1,39 @@
+package fr.uvsq.cprog.collex;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Command to list all machines of an IP network given in CIDR notation.
+ */
+public class ListeReseauCommande implements Commande {
+  private final Dns dns;
+  private final AdresseIP reseau;
+  private final int longueur;
+
+  /**
+   * Creates a command to list machines in a network.
+   *
+   * @param dns the DNS database
+   * @param reseau the network address
+   * @param longueur the length of the network prefix, between 0 and 32
+   */
+  public ListeReseauCommande(Dns dns, AdresseIP reseau, int longueur) {
+    this.dns = dns;
+    this.reseau = reseau;
+    this.longueur = longueur;
+  }
+
+  @Override
+  public Object execute() {
+    List<DnsItem> items = dns.getItemsInNetwork(reseau, longueur);
+
+    if (items.isEmpty()) {
+      return "Aucune machine trouvée pour le réseau : " + reseau + "/" + longueur;
+    }
+
+    return items.stream()
+        .map(item -> item.getAdresseIp() + " " + item.getNomMachine())
+        .collect(Collectors.joining("\n"));
+  }
+}
@@ -0,0 +1,80 @@
+package fr.uvsq.cprog.collex;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+
+/**
+ * Result of a listing written entry by entry as the cursor advances, so that printing a listing
+ * holds a single line in memory whatever its size. A listing can be written only once.
+ *
+ * <p>When a page limit stops the listing before its end, a last line gives the option that
+ * continues it, naming the last entry listed by its machine name and address, so that a page may
+ * end between two addresses of the same name.
+ */
+final class Listing {
+  static final int UNLIMITED = Integer.MAX_VALUE;
+
+  private final Iterator<DnsItem> items;
+  private final int limit;
+  private final String emptyMessage;
+
+  /**
+   * Creates a listing.
+   *
+   * @param items the cursor over the entries to list
+   * @param limit the maximum number of entries written, or {@link #UNLIMITED}
+   * @param emptyMessage the line written when the cursor has no entry
+   */
+  Listing(Iterator<DnsItem> items, int limit, String emptyMessage) {
+    this.items = items;
+    this.limit = limit;
+    this.emptyMessage = emptyMessage;
+  }
+
+  /**
+   * Writes the listing, one line per entry.
+   *
+   * @param out the destination of the lines
+   * @throws UncheckedIOException if the destination fails
+   */
+  void writeTo(Appendable out) {
+    try {
+      if (!items.hasNext()) {
+        out.append(emptyMessage).append('\n');
+        return;
+      }
+      StringBuilder line = new StringBuilder(64);
+      DnsItem item = null;
+      for (int count = 0; count < limit && items.hasNext(); count++) {
+        item = items.next();
+        line.setLength(0);
+        item.getAdresseIp().appendTo(line).append(' ')
+            .append(item.getNomMachine().getNomQualifie()).append('\n');
+        out.append(line); // One write per line, the destination may encode each one
+      }
+      if (items.hasNext()) {
+        line.setLength(0);
+        line.append("-- suite : --after ").append(item.getNomMachine().getNomQualifie())
+            .append('@');
+        item.getAdresseIp().appendTo(line).append('\n');
+        out.append(line);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Renders the whole listing, without the final line break.
+   *
+   * @return the lines of the listing
+   */
+  @Override
+  public String toString() {
+    StringBuilder text = new StringBuilder();
+    writeTo(text);
+    text.setLength(text.length() - 1);
+    return text.toString();
+  }
+}
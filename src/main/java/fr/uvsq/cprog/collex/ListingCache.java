@@ -0,0 +1,152 @@
+package fr.uvsq.cprog.collex;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded LRU cache of rendered domain listings, keyed by domain, sort order and recursion.
+ *
+ * <p>Adding an entry to a domain invalidates the listings of that domain and the recursive
+ * listings of its parent domains. A listing computed while an invalidation happened is not
+ * stored, so the cache never serves a listing older than the last completed add.
+ *
+ * <p>No operation takes a lock. Each listing carries the tick of its last use, taken from a
+ * clock that advances only when a listing other than the most recent one is used or stored, and
+ * storing a listing beyond the capacity evicts the one with the oldest tick.
+ */
+class ListingCache {
+  private final DnsStats stats;
+  private final Map<String, Cached> listings = new ConcurrentHashMap<>();
+  private final AtomicLong clock = new AtomicLong();
+  private final AtomicLong version = new AtomicLong();
+  private volatile int capacity;
+
+  /**
+   * A cached listing and the tick of its last use.
+   */
+  private static final class Cached {
+    private final String listing;
+    private volatile long lastUsed;
+
+    Cached(String listing, long lastUsed) {
+      this.listing = listing;
+      this.lastUsed = lastUsed;
+    }
+  }
+
+  /**
+   * Creates an empty cache.
+   *
+   * @param capacity the maximum number of cached listings, 0 to disable the cache
+   * @param stats the statistics receiving the hit and miss counts
+   */
+  ListingCache(int capacity, DnsStats stats) {
+    this.capacity = capacity;
+    this.stats = stats;
+  }
+
+  private static String key(String domain, boolean sortByIp, boolean recursive) {
+    return (recursive ? "r" : "") + (sortByIp ? "a:" : "n:") + domain;
+  }
+
+  /**
+   * Changes the maximum number of cached listings, evicting the least recently used ones.
+   *
+   * @param capacity the new capacity, 0 to disable the cache
+   */
+  void setCapacity(int capacity) {
+    this.capacity = capacity;
+    evict();
+  }
+
+  /**
+   * Evicts the least recently used listings until the cache fits its capacity.
+   */
+  private void evict() {
+    while (listings.size() > capacity) {
+      Map.Entry<String, Cached> eldest = null;
+      for (Map.Entry<String, Cached> entry : listings.entrySet()) {
+        if (eldest == null || entry.getValue().lastUsed < eldest.getValue().lastUsed) {
+          eldest = entry;
+        }
+      }
+      if (eldest == null) {
+        return;
+      }
+      listings.remove(eldest.getKey(), eldest.getValue());
+    }
+  }
+
+  /**
+   * Returns the version to pass to {@link #put} for a listing about to be computed.
+   *
+   * @return the current version of the cache
+   */
+  long version() {
+    return version.get();
+  }
+
+  /**
+   * Returns a cached listing and counts the hit or the miss.
+   *
+   * @param domain the domain name, in lower case
+   * @param sortByIp whether the listing is sorted by IP address
+   * @param recursive whether the listing includes the subdomains
+   * @return the rendered listing, or null if it is not cached
+   */
+  String get(String domain, boolean sortByIp, boolean recursive) {
+    Cached cached = listings.get(key(domain, sortByIp, recursive));
+    stats.recordListing(cached != null);
+    if (cached == null) {
+      return null;
+    }
+    if (cached.lastUsed != clock.get()) {
+      cached.lastUsed = clock.incrementAndGet();
+    }
+    return cached.listing;
+  }
+
+  /**
+   * Stores a listing unless the cache was invalidated since it was computed.
+   *
+   * @param domain the domain name, in lower case
+   * @param sortByIp whether the listing is sorted by IP address
+   * @param recursive whether the listing includes the subdomains
+   * @param listing the rendered listing
+   * @param computedAt the version returned by {@link #version()} before computing the listing
+   */
+  void put(String domain, boolean sortByIp, boolean recursive, String listing,
+      long computedAt) {
+    if (computedAt != version.get() || capacity == 0) {
+      return;
+    }
+    String key = key(domain, sortByIp, recursive);
+    Cached cached = new Cached(listing, clock.incrementAndGet());
+    listings.put(key, cached);
+    if (version.get() != computedAt) {
+      // An invalidation ran meanwhile and may have missed the listing just stored
+      listings.remove(key, cached);
+      return;
+    }
+    evict();
+  }
+
+  /**
+   * Drops the listings affected by a change in a domain: its own listings and the recursive
+   * listings of the domain and of every parent domain.
+   *
+   * @param domain the changed domain, in lower case
+   */
+  void invalidate(String domain) {
+    version.incrementAndGet();
+    listings.remove(key(domain, false, false));
+    listings.remove(key(domain, true, false));
+    for (String parent = domain; parent != null; ) {
+      listings.remove(key(parent, false, true));
+      listings.remove(key(parent, true, true));
+      int dot = parent.indexOf('.');
+      parent = dot < 0 ? null : parent.substring(dot + 1);
+    }
+  }
+}
@@ -0,0 +1,53 @@
+package fr.uvsq.cprog.collex;
+
+/**
+ * Command to rename a DNS entry or to move it to another IP address.
+ */
+public class ModificationCommande implements Commande {
+  private final Dns dns;
+  private final NomMachine nomMachine;
+  private final NomMachine nouveauNom;
+  private final AdresseIP nouvelleIp;
+
+  /**
+   * Creates a command to rename a DNS entry.
+   *
+   * @param dns the DNS database
+   * @param nomMachine the machine name of the entry
+   * @param nouveauNom the new machine name
+   */
+  public ModificationCommande(Dns dns, NomMachine nomMachine, NomMachine nouveauNom) {
+    this.dns = dns;
+    this.nomMachine = nomMachine;
+    this.nouveauNom = nouveauNom;
+    this.nouvelleIp = null;
+  }
+
+  /**
+   * Creates a command to move a DNS entry to another IP address.
+   *
+   * @param dns the DNS database
+   * @param nomMachine the machine name of the entry
+   * @param nouvelleIp the new IP address
+   */
+  public ModificationCommande(Dns dns, NomMachine nomMachine, AdresseIP nouvelleIp) {
+    this.dns = dns;
+    this.nomMachine = nomMachine;
+    this.nouveauNom = null;
+    this.nouvelleIp = nouvelleIp;
+  }
+
+  @Override
+  public Object execute() {
+    try {
+      DnsItem old = nouveauNom != null ? dns.updateItem(nomMachine, nouveauNom)
+          : dns.updateItem(nomMachine, nouvelleIp);
+      AdresseIP ip = nouvelleIp != null ? nouvelleIp : old.getAdresseIp();
+      NomMachine nom = nouveauNom != null ? nouveauNom : nomMachine;
+      return "Entrée DNS modifiée : " + old.getAdresseIp() + " " + old.getNomMachine()
+          + " -> " + ip + " " + nom;
+    } catch (DnsException e) {
+      return "ERREUR : " + e.getMessage();
+    }
+  }
+}
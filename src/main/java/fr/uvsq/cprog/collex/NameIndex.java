@@ -0,0 +1,184 @@
+package fr.uvsq.cprog.collex;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Open-addressing hash table mapping machine names to DNS entries. Slots hold the hash of the
+ * name in a primitive array and the entry, whose name is compared as characters, so a name read
+ * from a message is looked up through a {@link NameProbe} without creating a NomMachine.
+ *
+ * <p>Like {@link IpIndex}, the table supports one writer at a time and any number of concurrent
+ * readers that never block: a hash is written before its entry is published with release
+ * semantics, and a grown table is fully filled before it replaces the old one. A removed entry
+ * leaves a tombstone until the table grows. Callers serialize writes.
+ */
+class NameIndex {
+  private static final int INITIAL_CAPACITY = 16;
+  private static final VarHandle VALUES = MethodHandles.arrayElementVarHandle(DnsItem[].class);
+  private static final DnsItem REMOVED =
+      new DnsItem(new AdresseIP(0), NomMachine.ofNormalized("supprime.invalid"));
+
+  private volatile Table table;
+  private volatile int size;
+  private int used;
+
+  /**
+   * Arrays of one capacity, replaced as a whole when the index grows.
+   */
+  private static class Table {
+    private final int[] hashes;
+    private final DnsItem[] values;
+
+    Table(int capacity) {
+      this.hashes = new int[capacity];
+      this.values = new DnsItem[capacity];
+    }
+
+    DnsItem valueAt(int i) {
+      return (DnsItem) VALUES.getAcquire(values, i);
+    }
+  }
+
+  /**
+   * Creates an empty index.
+   */
+  NameIndex() {
+    this.table = new Table(INITIAL_CAPACITY);
+  }
+
+  private static int slot(int hash, int mask) {
+    int h = hash * 0x9E3779B9;
+    return (h ^ (h >>> 16)) & mask;
+  }
+
+  private static boolean matches(DnsItem item, CharSequence name) {
+    return item != REMOVED && item.getNomMachine().getNomQualifie().contentEquals(name);
+  }
+
+  /**
+   * Returns the entry stored for a machine name.
+   *
+   * @param nom the machine name
+   * @return the entry, or null if the name is absent
+   */
+  DnsItem get(NomMachine nom) {
+    return find(nom.getNomQualifie(), nom.hashCode());
+  }
+
+  /**
+   * Returns the entry stored for the machine name held by a probe.
+   *
+   * @param nom the qualified name, in lower case
+   * @return the entry, or null if the name is absent
+   */
+  DnsItem get(NameProbe nom) {
+    return find(nom, nom.hash());
+  }
+
+  private DnsItem find(CharSequence name, int hash) {
+    Table current = table;
+    int mask = current.hashes.length - 1;
+    DnsItem item;
+    for (int i = slot(hash, mask); (item = current.valueAt(i)) != null; i = (i + 1) & mask) {
+      if (current.hashes[i] == hash && matches(item, name)) {
+        return item;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Tells whether a machine name is present.
+   *
+   * @param nom the machine name
+   * @return true if an entry is stored for the name
+   */
+  boolean containsKey(NomMachine nom) {
+    return get(nom) != null;
+  }
+
+  /**
+   * Stores an entry for its machine name, replacing any previous one.
+   *
+   * @param item the entry
+   * @return the previous entry, or null if the name was absent
+   */
+  DnsItem put(DnsItem item) {
+    Table current = table;
+    if ((used + 1) * 4 > current.hashes.length * 3) {
+      current = grow(current);
+    }
+    NomMachine nom = item.getNomMachine();
+    int hash = nom.hashCode();
+    int mask = current.hashes.length - 1;
+    int i = slot(hash, mask);
+    DnsItem previous;
+    while ((previous = current.values[i]) != null) {
+      if (current.hashes[i] == hash && matches(previous, nom.getNomQualifie())) {
+        VALUES.setRelease(current.values, i, item);
+        return previous;
+      }
+      i = (i + 1) & mask;
+    }
+    current.hashes[i] = hash;
+    VALUES.setRelease(current.values, i, item);
+    size++;
+    used++;
+    return null;
+  }
+
+  /**
+   * Removes the entry of a machine name if it is the given one.
+   *
+   * @param item the entry
+   * @return true if the entry was stored and is removed
+   */
+  boolean remove(DnsItem item) {
+    NomMachine nom = item.getNomMachine();
+    int hash = nom.hashCode();
+    Table current = table;
+    int mask = current.hashes.length - 1;
+    DnsItem found;
+    for (int i = slot(hash, mask); (found = current.values[i]) != null; i = (i + 1) & mask) {
+      if (current.hashes[i] == hash && matches(found, nom.getNomQualifie())) {
+        if (!found.equals(item)) {
+          return false;
+        }
+        VALUES.setRelease(current.values, i, REMOVED);
+        size--;
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns the number of stored entries.
+   *
+   * @return the number of entries
+   */
+  int size() {
+    return size;
+  }
+
+  private Table grow(Table old) {
+    // Dropping the tombstones may be enough to make room
+    Table grown = new Table(size * 2 >= old.hashes.length ? old.hashes.length * 2
+        : old.hashes.length);
+    int mask = grown.hashes.length - 1;
+    for (int j = 0; j < old.hashes.length; j++) {
+      if (old.values[j] != null && old.values[j] != REMOVED) {
+        int i = slot(old.hashes[j], mask);
+        while (grown.values[i] != null) {
+          i = (i + 1) & mask;
+        }
+        grown.hashes[i] = old.hashes[j];
+        grown.values[i] = old.values[j];
+      }
+    }
+    used = size;
+    table = grown;
+    return grown;
+  }
+}
@@ -0,0 +1,66 @@
+package fr.uvsq.cprog.collex;
+
+/**
+ * Reusable lookup key holding a qualified name as characters, so that a name read from a
+ * message is looked up without creating a String and a NomMachine. Its {@link #hash()} is the
+ * hash code of the NomMachine of the same name, and the entry stores compare its characters as a
+ * CharSequence: a probe is not a key and keeps the equality of Object.
+ */
+final class NameProbe implements CharSequence {
+  /** Maximum length of a name in a DNS message, in characters. */
+  static final int MAX_LENGTH = 255;
+
+  private final char[] chars = new char[MAX_LENGTH];
+  private int length;
+  private int hash;
+
+  /**
+   * Empties the probe.
+   */
+  void clear() {
+    length = 0;
+    hash = 0;
+  }
+
+  /**
+   * Appends a character, the hash being updated as {@link String#hashCode()} computes it.
+   *
+   * @param c the character, already in lower case
+   */
+  void append(char c) {
+    chars[length++] = c;
+    hash = 31 * hash + c;
+  }
+
+  /**
+   * Returns the hash code of the NomMachine holding the same name.
+   *
+   * @return the hash of the characters
+   */
+  int hash() {
+    return hash;
+  }
+
+  @Override
+  public int length() {
+    return length;
+  }
+
+  @Override
+  public char charAt(int index) {
+    if (index >= length) {
+      throw new IndexOutOfBoundsException(index);
+    }
+    return chars[index];
+  }
+
+  @Override
+  public CharSequence subSequence(int start, int end) {
+    return toString().substring(start, end);
+  }
+
+  @Override
+  public String toString() {
+    return new String(chars, 0, length);
+  }
+}
@@ -1,19 +1,27 @@
 package fr.uvsq.cprog.collex;
 
-import java.util.Objects;
+import java.util.Locale;
 
 /**
  * Represents a qualified machine name (e.g., www.uvsq.fr).
  * A qualified name consists of a machine name (before first '.') and a domain name (after first
  * '.').
+ *
+ * <p>DNS names are case-insensitive, so the name is stored once in lower case, together with its
+ * hash, the position of its first '.' and its domain name, so comparing or hashing a name never
+ * allocates. The machines of an indexed domain share the string of its name, see
+ * {@link DomainIndex#shareDomain}; names built for lookups keep their own and are not retained.
  */
 public class NomMachine {
   private final String nomQualifie;
+  private final String nomDomaine;
+  private final int separateur;
+  private final int hash;
 
   /**
    * Creates a qualified machine name.
    *
-   * @param nomQualifie the qualified name (e.g., "www.uvsq.fr")
+   * @param nomQualifie the qualified name (e.g., "www.uvsq.fr"), in any case
    * @throws IllegalArgumentException if the name is null, empty, or doesn't contain a domain
    */
   public NomMachine(String nomQualifie) {
@@ -24,33 +32,65 @@ public class NomMachine {
       throw new IllegalArgumentException(
           "Le nom doit être qualifié (contenir au moins un point) : " + nomQualifie);
     }
-    this.nomQualifie = nomQualifie.trim();
+    this.nomQualifie = nomQualifie.trim().toLowerCase(Locale.ROOT);
+    this.separateur = this.nomQualifie.indexOf('.');
+    this.nomDomaine = this.nomQualifie.substring(separateur + 1);
+    this.hash = this.nomQualifie.hashCode();
+  }
+
+  private NomMachine(String nomQualifie, int separateur, String nomDomaine, int hash) {
+    this.nomQualifie = nomQualifie;
+    this.separateur = separateur;
+    this.nomDomaine = nomDomaine;
+    this.hash = hash;
   }
 
   /**
-   * Returns the machine name (part before the first '.').
+   * Recreates a name from the qualified name of a valid NomMachine, skipping its validation
+   * and normalization.
    *
+   * @param nomQualifie a qualified name as returned by {@link #getNomQualifie()}
    * @return the machine name
    */
+  static NomMachine ofNormalized(String nomQualifie) {
+    int separateur = nomQualifie.indexOf('.');
+    return new NomMachine(nomQualifie, separateur, nomQualifie.substring(separateur + 1),
+        nomQualifie.hashCode());
+  }
+
+  /**
+   * Returns this name holding the given string as its domain name.
+   *
+   * @param nomDomaine a string equal to the domain name of this name
+   * @return this name if it already holds that string, otherwise an equal name holding it
+   */
+  NomMachine withDomaine(String nomDomaine) {
+    return nomDomaine == this.nomDomaine ? this
+        : new NomMachine(nomQualifie, separateur, nomDomaine, hash);
+  }
+
+  /**
+   * Returns the machine name (part before the first '.').
+   *
+   * @return the machine name, in lower case
+   */
   public String getNomMachine() {
-    int index = nomQualifie.indexOf('.');
-    return nomQualifie.substring(0, index);
+    return nomQualifie.substring(0, separateur);
   }
 
   /**
    * Returns the domain name (part after the first '.').
    *
-   * @return the domain name
+   * @return the domain name, in lower case
    */
   public String getNomDomaine() {
-    int index = nomQualifie.indexOf('.');
-    return nomQualifie.substring(index + 1);
+    return nomDomaine;
   }
 
   /**
    * Returns the fully qualified name.
    *
-   * @return the qualified name
+   * @return the qualified name, in lower case
    */
   public String getNomQualifie() {
     return nomQualifie;
@@ -70,11 +110,11 @@ public class NomMachine {
       return false;
     }
     NomMachine other = (NomMachine) obj;
-    return Objects.equals(nomQualifie, other.nomQualifie);
+    return hash == other.hash && nomQualifie.equals(other.nomQualifie);
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(nomQualifie);
+    return hash;
   }
 }
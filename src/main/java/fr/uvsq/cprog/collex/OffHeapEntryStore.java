@@ -0,0 +1,513 @@
+package fr.uvsq.cprog.collex;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+/**
+ * Entry store keeping packed records and hash indexes in direct buffers, outside the heap.
+ * The garbage collector only sees a few buffer objects whatever the number of entries, and a
+ * DnsItem is created only when a lookup or an iteration returns one.
+ *
+ * <p>Records are appended to fixed-size chunks: an address on 4 bytes, the length
+ * of the name on 2 bytes with its top bit set when the name is UTF-8 rather than ASCII, then the
+ * name, padded to a multiple of 4 bytes. A record is referenced by its offset divided by 4, plus
+ * one, which addresses 16 GiB of records in an unsigned int. Each address of a name having
+ * several gets its own record; the name index refers to one of them.
+ *
+ * <p>Each index is an open-addressing table of longs packing a 32-bit key, the address or the
+ * hash of the name, with the reference of the record in the chunks the table belongs to. A slot
+ * is published with release semantics once its record is written, and a grown table is fully
+ * filled before it replaces the old one, so readers never block. Callers serialize writes.
+ *
+ * <p>Removing an entry replaces its slots with tombstones, skipped by lookups and reused by later
+ * inserts, and dropped when a table is rebuilt. Its record becomes dead space. Once the dead space
+ * exceeds both one chunk and the space of the live records, the live records are copied to new
+ * chunks and both indexes rebuilt over them before they replace the old ones. A reader still
+ * probing an old table reads the old chunks, which are freed once no reader holds them.
+ */
+class OffHeapEntryStore implements EntryStore {
+  static final int DEFAULT_CHUNK_SIZE = 1 << 24;
+
+  private static final int INITIAL_CAPACITY = 1024;
+  private static final int UTF8 = 0x8000;
+  private static final long REMOVED = 0xFFFFFFFFL;
+  private static final VarHandle SLOTS =
+      MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+  private final int chunkShift;
+  private final int chunkMask;
+  private Records records = new Records();
+  private long end;
+  private long liveBytes;
+  private volatile long deadBytes;
+  private volatile int compactions;
+  private volatile Table ipTable = new Table(INITIAL_CAPACITY, records);
+  private volatile Table nameTable = new Table(INITIAL_CAPACITY, records);
+  private volatile int size;
+
+  /**
+   * Chunks holding the records, replaced as a whole by a compaction.
+   */
+  private static final class Records {
+    private volatile ByteBuffer[] chunks = new ByteBuffer[0];
+  }
+
+  /**
+   * Slots of one capacity, replaced as a whole when the index grows or the records are compacted.
+   */
+  private static final class Table {
+    private final ByteBuffer slots;
+    private final int mask;
+    private final Records records;
+    private int used;
+
+    Table(int capacity, Records records) {
+      this.slots = ByteBuffer.allocateDirect(capacity * Long.BYTES).order(ByteOrder.nativeOrder());
+      this.mask = capacity - 1;
+      this.records = records;
+    }
+
+    long slot(int i) {
+      return (long) SLOTS.getAcquire(slots, i * Long.BYTES);
+    }
+
+    void publish(int i, long value) {
+      SLOTS.setRelease(slots, i * Long.BYTES, value);
+    }
+
+    int capacity() {
+      return mask + 1;
+    }
+  }
+
+  /**
+   * Creates an empty store with chunks of {@value #DEFAULT_CHUNK_SIZE} bytes.
+   */
+  OffHeapEntryStore() {
+    this(DEFAULT_CHUNK_SIZE);
+  }
+
+  /**
+   * Creates an empty store.
+   *
+   * @param chunkSize the size of the record chunks, a power of two of at least 1 KiB
+   */
+  OffHeapEntryStore(int chunkSize) {
+    if (Integer.bitCount(chunkSize) != 1 || chunkSize < 1024) {
+      throw new IllegalArgumentException("Taille de bloc invalide : " + chunkSize);
+    }
+    this.chunkShift = Integer.numberOfTrailingZeros(chunkSize);
+    this.chunkMask = chunkSize - 1;
+  }
+
+  private static int slot(int key, int mask) {
+    int h = key * 0x9E3779B9;
+    return (h ^ (h >>> 16)) & mask;
+  }
+
+  private static int key(long slot) {
+    return (int) (slot >>> 32);
+  }
+
+  private static boolean removed(long slot) {
+    return (slot & REMOVED) == REMOVED;
+  }
+
+  private static long offset(long slot) {
+    return ((slot & 0xFFFFFFFFL) - 1) << 2;
+  }
+
+  private ByteBuffer chunk(Records records, long offset) {
+    return records.chunks[(int) (offset >>> chunkShift)];
+  }
+
+  @Override
+  public DnsItem get(int ip) {
+    Table table = ipTable;
+    long found = findIp(table, ip);
+    return found == 0 ? null : read(table.records, offset(found));
+  }
+
+  @Override
+  public DnsItem get(NomMachine nom) {
+    Table table = nameTable;
+    long found = findName(table, nom.getNomQualifie(), nom.hashCode());
+    return found == 0 ? null : read(table.records, offset(found));
+  }
+
+  @Override
+  public DnsItem get(NameProbe nom) {
+    Table table = nameTable;
+    long found = findName(table, nom, nom.hash());
+    return found == 0 ? null : read(table.records, offset(found));
+  }
+
+  /**
+   * Returns the slot of an address as read while probing, so that a slot removed or reused
+   * meanwhile is not read again, or 0 if the address is absent.
+   */
+  private static long findIp(Table table, int ip) {
+    long slot;
+    for (int i = slot(ip, table.mask); (slot = table.slot(i)) != 0; i = (i + 1) & table.mask) {
+      if (key(slot) == ip && !removed(slot)) {
+        return slot;
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Returns the slot of a name as read while probing, or 0 if the name is absent.
+   */
+  private long findName(Table table, CharSequence name, int hash) {
+    long slot;
+    for (int i = slot(hash, table.mask); (slot = table.slot(i)) != 0; i = (i + 1) & table.mask) {
+      if (key(slot) == hash && !removed(slot)
+          && nameEquals(table.records, offset(slot), name)) {
+        return slot;
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Returns the index of the slot of an address, or -1 if it is absent. Only the writer uses
+   * the index, the slot staying as it reads it.
+   */
+  private static int indexOfIp(Table table, int ip) {
+    long slot;
+    for (int i = slot(ip, table.mask); (slot = table.slot(i)) != 0; i = (i + 1) & table.mask) {
+      if (key(slot) == ip && !removed(slot)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private int indexOfName(Table table, CharSequence name, int hash) {
+    long slot;
+    for (int i = slot(hash, table.mask); (slot = table.slot(i)) != 0; i = (i + 1) & table.mask) {
+      if (key(slot) == hash && !removed(slot)
+          && nameEquals(table.records, offset(slot), name)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private boolean nameEquals(Records records, long offset, CharSequence name) {
+    ByteBuffer chunk = chunk(records, offset);
+    int position = (int) (offset & chunkMask);
+    int header = chunk.getShort(position + 4) & 0xFFFF;
+    if ((header & UTF8) != 0) {
+      return readName(chunk, position).contentEquals(name);
+    }
+    if (header != name.length()) {
+      return false;
+    }
+    for (int i = 0; i < header; i++) {
+      if (chunk.get(position + 6 + i) != name.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static String readName(ByteBuffer chunk, int position) {
+    int header = chunk.getShort(position + 4) & 0xFFFF;
+    byte[] bytes = new byte[header & ~UTF8];
+    chunk.get(position + 6, bytes);
+    return new String(bytes,
+        (header & UTF8) != 0 ? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1);
+  }
+
+  private DnsItem read(Records records, long offset) {
+    ByteBuffer chunk = chunk(records, offset);
+    int position = (int) (offset & chunkMask);
+    return new DnsItem(new AdresseIP(chunk.getInt(position)),
+        NomMachine.ofNormalized(readName(chunk, position)));
+  }
+
+  @Override
+  public boolean containsIp(int ip) {
+    return findIp(ipTable, ip) != 0;
+  }
+
+  @Override
+  public boolean containsName(NomMachine nom) {
+    return findName(nameTable, nom.getNomQualifie(), nom.hashCode()) != 0;
+  }
+
+  @Override
+  public void put(DnsItem item) {
+    store(item, true);
+  }
+
+  @Override
+  public void putAddress(DnsItem item) {
+    store(item, false);
+  }
+
+  private void store(DnsItem item, boolean named) {
+    String name = item.getNomMachine().getNomQualifie();
+    boolean ascii = true;
+    for (int i = 0; i < name.length() && ascii; i++) {
+      ascii = name.charAt(i) < 0x80;
+    }
+    byte[] bytes = name.getBytes(ascii ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8);
+    int ip = item.getAdresseIp().toInt();
+
+    long offset = allocate(6 + bytes.length);
+    liveBytes += (6 + bytes.length + 3) & ~3;
+    ByteBuffer chunk = chunk(records, offset);
+    int position = (int) (offset & chunkMask);
+    chunk.putInt(position, ip);
+    chunk.putShort(position + 4, (short) (bytes.length | (ascii ? 0 : UTF8)));
+    chunk.put(position + 6, bytes);
+
+    long reference = (offset >>> 2) + 1;
+    if ((ipTable.used + 1) * 4L > ipTable.capacity() * 3L) {
+      ipTable = grow(ipTable);
+    }
+    if (named && (nameTable.used + 1) * 4L > nameTable.capacity() * 3L) {
+      nameTable = grow(nameTable);
+    }
+    insert(ipTable, ip, reference);
+    if (named) {
+      insert(nameTable, item.getNomMachine().hashCode(), reference);
+    }
+    size++;
+  }
+
+  @Override
+  public void remove(DnsItem item) {
+    int ip = item.getAdresseIp().toInt();
+    Table ips = ipTable;
+    int i = indexOfIp(ips, ip);
+    if (i < 0) {
+      return;
+    }
+    int length = recordLength(records, offset(ips.slot(i)));
+    liveBytes -= length;
+    deadBytes += length;
+    Table names = nameTable;
+    NomMachine nom = item.getNomMachine();
+    int j = indexOfName(names, nom.getNomQualifie(), nom.hashCode());
+    boolean named = j >= 0 && offset(names.slot(j)) == offset(ips.slot(i));
+    ips.publish(i, ((long) ip << 32) | REMOVED);
+    if (named) {
+      names.publish(j, ((long) nom.hashCode() << 32) | REMOVED);
+    }
+    size--;
+    if (deadBytes > chunkMask && deadBytes > liveBytes) {
+      compact();
+    }
+  }
+
+  private int recordLength(Records records, long offset) {
+    int header = chunk(records, offset).getShort((int) (offset & chunkMask) + 4) & 0xFFFF;
+    return (6 + (header & ~UTF8) + 3) & ~3;
+  }
+
+  /**
+   * Copies the live records to new chunks and rebuilds both indexes over them. The name index
+   * finds the new record of each name through the address of its old record.
+   */
+  private void compact() {
+    Table oldIps = ipTable;
+    records = new Records();
+    end = 0;
+    Table ips = new Table(oldIps.capacity(), records);
+    for (int j = 0; j < oldIps.capacity(); j++) {
+      long slot = oldIps.slot(j);
+      if (slot != 0 && !removed(slot)) {
+        insert(ips, key(slot), copy(oldIps.records, offset(slot)));
+      }
+    }
+    Table oldNames = nameTable;
+    Table names = new Table(oldNames.capacity(), records);
+    for (int j = 0; j < oldNames.capacity(); j++) {
+      long slot = oldNames.slot(j);
+      if (slot != 0 && !removed(slot)) {
+        long offset = offset(slot);
+        int ip = chunk(oldNames.records, offset).getInt((int) (offset & chunkMask));
+        insert(names, key(slot), findIp(ips, ip) & 0xFFFFFFFFL);
+      }
+    }
+    ipTable = ips;
+    nameTable = names;
+    deadBytes = 0;
+    compactions++;
+  }
+
+  /**
+   * Copies a record to the current chunks.
+   *
+   * @return the reference of the copy
+   */
+  private long copy(Records from, long offset) {
+    int length = recordLength(from, offset);
+    long target = allocate(length);
+    chunk(records, target).put((int) (target & chunkMask), chunk(from, offset),
+        (int) (offset & chunkMask), length);
+    return (target >>> 2) + 1;
+  }
+
+  /**
+   * Reserves room for a record at the end of the last chunk, or in a new chunk.
+   *
+   * @return the offset of the record
+   */
+  private long allocate(int length) {
+    int aligned = (length + 3) & ~3;
+    long offset = end;
+    int chunkIndex = (int) (offset >>> chunkShift);
+    ByteBuffer[] chunks = records.chunks;
+    if (chunkIndex == chunks.length || (offset & chunkMask) + aligned > chunkMask + 1) {
+      chunkIndex = chunks.length;
+      offset = (long) chunkIndex << chunkShift;
+      if ((offset >>> 2) + 1 >= REMOVED) {
+        throw new IllegalStateException("Capacité du stockage hors du tas dépassée");
+      }
+      ByteBuffer[] grown = Arrays.copyOf(chunks, chunkIndex + 1);
+      grown[chunkIndex] = ByteBuffer.allocateDirect(chunkMask + 1);
+      records.chunks = grown;
+    }
+    end = offset + aligned;
+    return offset;
+  }
+
+  /**
+   * Publishes a slot in the first free or removed slot of the probe sequence of its key, which
+   * the caller guarantees absent.
+   */
+  private static void insert(Table table, int key, long reference) {
+    int i = slot(key, table.mask);
+    long slot;
+    while ((slot = table.slots.getLong(i * Long.BYTES)) != 0 && !removed(slot)) {
+      i = (i + 1) & table.mask;
+    }
+    if (slot == 0) {
+      table.used++;
+    }
+    table.publish(i, ((long) key << 32) | reference);
+  }
+
+  /**
+   * Rebuilds a table without its tombstones, twice as large unless they were enough to make room.
+   */
+  private Table grow(Table old) {
+    int capacity = size * 2 >= old.capacity() ? old.capacity() * 2 : old.capacity();
+    Table grown = new Table(capacity, old.records);
+    for (int j = 0; j < old.capacity(); j++) {
+      long slot = old.slots.getLong(j * Long.BYTES);
+      if (slot != 0 && !removed(slot)) {
+        int i = slot(key(slot), grown.mask);
+        while (grown.slots.getLong(i * Long.BYTES) != 0) {
+          i = (i + 1) & grown.mask;
+        }
+        grown.slots.putLong(i * Long.BYTES, slot);
+        grown.used++;
+      }
+    }
+    return grown;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns the number of bytes allocated outside the heap, for records and indexes.
+   *
+   * @return the size of the direct buffers
+   */
+  long allocatedBytes() {
+    Table ips = ipTable;
+    return ((long) ips.records.chunks.length << chunkShift)
+        + (long) (ips.capacity() + nameTable.capacity()) * Long.BYTES;
+  }
+
+  /**
+   * Returns the number of bytes of removed records not yet reclaimed by a compaction.
+   *
+   * @return the dead space in the chunks
+   */
+  long deadBytes() {
+    return deadBytes;
+  }
+
+  /**
+   * Returns the number of compactions since the store was created.
+   *
+   * @return the number of compactions
+   */
+  int compactions() {
+    return compactions;
+  }
+
+  @Override
+  public void forEach(Consumer<DnsItem> action) {
+    values().forEach(action);
+  }
+
+  @Override
+  public Collection<DnsItem> values() {
+    return new AbstractCollection<>() {
+      @Override
+      public Iterator<DnsItem> iterator() {
+        return new SlotIterator(ipTable);
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+    };
+  }
+
+  /**
+   * Iterator over the occupied slots of one table, creating the entries as it goes.
+   */
+  private final class SlotIterator implements Iterator<DnsItem> {
+    private final Table table;
+    private int next = -1;
+    private long slot;
+
+    SlotIterator(Table table) {
+      this.table = table;
+      advance();
+    }
+
+    private void advance() {
+      do {
+        next++;
+      } while (next < table.capacity() && ((slot = table.slot(next)) == 0 || removed(slot)));
+    }
+
+    @Override
+    public boolean hasNext() {
+      return next < table.capacity();
+    }
+
+    @Override
+    public DnsItem next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      DnsItem item = read(table.records, offset(slot));
+      advance();
+      return item;
+    }
+  }
+}
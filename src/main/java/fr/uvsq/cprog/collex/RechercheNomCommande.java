@@ -2,28 +2,53 @@ package fr.uvsq.cprog.collex;
 
 /**
  * Command to search for an IP address by machine name.
+ *
+ * <p>A name having several addresses answers all of them on one line. In round-robin order,
+ * each answer for that name starts one address further than the previous one, so clients taking
+ * the first address are spread over all of them; otherwise they come in the order they were
+ * added.
  */
 public class RechercheNomCommande implements Commande {
   private final Dns dns;
   private final NomMachine nomMachine;
+  private final boolean roundRobin;
 
   /**
-   * Creates a command to search by machine name.
+   * Creates a command to search by machine name, answering in round-robin order.
    *
    * @param dns the DNS database
    * @param nomMachine the machine name to search for
    */
   public RechercheNomCommande(Dns dns, NomMachine nomMachine) {
+    this(dns, nomMachine, true);
+  }
+
+  /**
+   * Creates a command to search by machine name.
+   *
+   * @param dns the DNS database
+   * @param nomMachine the machine name to search for
+   * @param roundRobin whether the addresses rotate from one answer to the next
+   */
+  public RechercheNomCommande(Dns dns, NomMachine nomMachine, boolean roundRobin) {
     this.dns = dns;
     this.nomMachine = nomMachine;
+    this.roundRobin = roundRobin;
   }
 
   @Override
   public Object execute() {
-    DnsItem item = dns.getItem(nomMachine);
-    if (item == null) {
+    int[] addresses = dns.getAddresses(nomMachine, roundRobin);
+    if (addresses.length == 0) {
       return "Aucune adresse IP trouvée pour : " + nomMachine;
     }
-    return item.getAdresseIp().getAdresse();
+    StringBuilder answer = new StringBuilder(addresses.length * 16);
+    for (int ip : addresses) {
+      if (answer.length() > 0) {
+        answer.append(' ');
+      }
+      new AdresseIP(ip).appendTo(answer);
+    }
+    return answer.toString();
   }
 }
@@ -0,0 +1,317 @@
+package fr.uvsq.cprog.collex;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Stores the database in a directory of shard files, each holding the domains whose name hashes
+ * to it, plus a manifest giving the number of shards. An add appends its entry to the shard of
+ * its domain only, so the cost of a write does not depend on the size of the database, and the
+ * shards are parsed in parallel on startup.
+ *
+ * <p>Shards are text files of "name ip" lines, like the database file. A removal appends a
+ * "- name ip" tombstone to the shard of the entry, which cancels the entry when the shard is
+ * read; a shard whose removed entries and tombstones make up most of its lines is rewritten
+ * without them when the storage is loaded. The directory is created next to the database file,
+ * from its entries, the first time the storage is used; the manifest is written last, so an
+ * interrupted creation starts over. An existing directory keeps the number of shards of its
+ * manifest.
+ */
+class ShardedStorage implements DnsStorage {
+  static final int DEFAULT_SHARD_COUNT = 16;
+  static final String MANIFEST = "manifest";
+
+  private final Path directory;
+  private final int shardCount;
+  private final FileChannel[] shards;
+  private final boolean[] unsynced;
+
+  /**
+   * Opens the shards next to a database file, creating them from its entries if needed.
+   *
+   * @param source the storage of the database file, read only to create the shards
+   * @param shardCount the number of shards of a new directory
+   * @throws DnsException if the directory cannot be read or created
+   */
+  ShardedStorage(TextFileStorage source, int shardCount) throws DnsException {
+    Path databasePath = source.getDatabasePath();
+    this.directory = databasePath.resolveSibling(databasePath.getFileName() + ".shards");
+    try {
+      Path manifest = directory.resolve(MANIFEST);
+      if (!Files.exists(manifest)) {
+        create(source, shardCount);
+      }
+      this.shardCount = readShardCount(manifest);
+    } catch (IOException e) {
+      throw new DnsException("Erreur lors de l'ouverture des partitions : " + directory, e);
+    }
+    this.shards = new FileChannel[this.shardCount];
+    this.unsynced = new boolean[this.shardCount];
+  }
+
+  /**
+   * Returns the directory holding the shards.
+   *
+   * @return the path to the directory
+   */
+  Path getDirectory() {
+    return directory;
+  }
+
+  /**
+   * Returns the number of shards, as recorded in the manifest.
+   *
+   * @return the number of shards
+   */
+  int getShardCount() {
+    return shardCount;
+  }
+
+  /**
+   * Returns the path to a shard file.
+   *
+   * @param shard the shard number
+   * @return the path to the shard
+   */
+  Path shardPath(int shard) {
+    return directory.resolve(String.format("shard-%03d.txt", shard));
+  }
+
+  /**
+   * Returns the shard holding the entries of a domain.
+   *
+   * @param domain the domain name, in lower case
+   * @return the shard number
+   */
+  int shardOf(String domain) {
+    return Math.floorMod(domain.hashCode(), shardCount);
+  }
+
+  private void create(TextFileStorage source, int count) throws IOException, DnsException {
+    if (count < 1 || count > 1000) {
+      throw new DnsException("Nombre de partitions invalide : " + count);
+    }
+    List<List<DnsItem>> items = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      items.add(new ArrayList<>());
+    }
+    source.load(item -> items.get(Math.floorMod(
+        item.getNomMachine().getNomDomaine().hashCode(), count)).add(item));
+
+    Files.createDirectories(directory);
+    for (int i = 0; i < count; i++) {
+      new TextFileStorage(shardPath(i)).write(items.get(i));
+    }
+    Path temporary = directory.resolve(MANIFEST + ".tmp");
+    Files.write(temporary, List.of("# Partitions de la base DNS", "version 1", "shards " + count));
+    Files.move(temporary, directory.resolve(MANIFEST), StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private static int readShardCount(Path manifest) throws IOException, DnsException {
+    for (String line : Files.readAllLines(manifest)) {
+      String[] parts = line.trim().split("\\s+");
+      if (parts.length == 2 && parts[0].equals("shards")
+          && parts[1].matches("[1-9][0-9]{0,2}")) {
+        return Integer.parseInt(parts[1]);
+      }
+    }
+    throw new DnsException("Manifeste des partitions invalide : " + manifest);
+  }
+
+  /**
+   * Reads every shard, parsing them in parallel. The entries of a name all live in the same
+   * shard, so each shard cancels its own tombstones, and the remaining entries are handed to the
+   * sink from the calling thread, one shard after the other in shard order, each as soon as it
+   * is parsed.
+   *
+   * @param sink receives the entries
+   * @param removals never called, the removed entries are not delivered
+   * @throws DnsException if a shard cannot be read
+   */
+  @Override
+  public synchronized void load(Consumer<DnsItem> sink, Consumer<DnsItem> removals)
+      throws DnsException {
+    int threads = Math.min(shardCount, Runtime.getRuntime().availableProcessors());
+    ExecutorService loaders = Executors.newFixedThreadPool(threads, r -> {
+      Thread thread = new Thread(r, "dns-shard-loader");
+      thread.setDaemon(true);
+      return thread;
+    });
+    try {
+      List<Future<List<DnsItem>>> parsed = new ArrayList<>();
+      for (int i = 0; i < shardCount; i++) {
+        Path shard = shardPath(i);
+        boolean closed = shards[i] == null; // An open shard is appended to, it is not rewritten
+        parsed.add(loaders.submit(() -> readShard(shard, closed)));
+      }
+      for (Future<List<DnsItem>> shard : parsed) {
+        shard.get().forEach(sink);
+      }
+    } catch (ExecutionException e) {
+      throw new DnsException("Erreur lors de la lecture des partitions", e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DnsException("Interrompu pendant la lecture des partitions", e);
+    } finally {
+      loaders.shutdownNow();
+    }
+  }
+
+  /**
+   * Reads a shard and drops the entries cancelled by its tombstones, rewriting it without them
+   * when they make up most of its lines.
+   */
+  private static List<DnsItem> readShard(Path shard, boolean compact) throws IOException {
+    List<DnsItem> items = new ArrayList<>();
+    if (!Files.exists(shard)) {
+      return items;
+    }
+    List<DnsItem> tombstones = new ArrayList<>();
+    new DnsLoader().load(shard, items::add, tombstones::add);
+    if (tombstones.isEmpty()) {
+      return items;
+    }
+
+    Map<DnsItem, Integer> pending = new HashMap<>();
+    for (DnsItem item : tombstones) {
+      pending.merge(item, 1, Integer::sum);
+    }
+    List<DnsItem> live = new ArrayList<>(items.size());
+    for (DnsItem item : items) {
+      Integer count = pending.get(item);
+      if (count == null) {
+        live.add(item);
+      } else if (count == 1) {
+        pending.remove(item);
+      } else {
+        pending.put(item, count - 1);
+      }
+    }
+    // Each tombstone cancels one line besides its own
+    if (compact && tombstones.size() * 4L > items.size() + tombstones.size()) {
+      try {
+        new TextFileStorage(shard).write(live);
+      } catch (DnsException e) {
+        // The tombstones are read again on the next load
+      }
+    }
+    return live;
+  }
+
+  /**
+   * Appends tombstones for the removed entries, then the added entries, to the shards of their
+   * domains. The other shards are not touched.
+   *
+   * @param removed the entries that were just removed
+   * @param added the entries that were just added
+   * @param all ignored
+   * @throws DnsException if a shard cannot be written
+   */
+  @Override
+  public synchronized void saveChanges(List<DnsItem> removed, List<DnsItem> added,
+      Collection<DnsItem> all) throws DnsException {
+    StringBuilder[] records = new StringBuilder[shardCount];
+    for (DnsItem item : removed) {
+      record(records, item).append("- ").append(item.getNomMachine()).append(' ')
+          .append(item.getAdresseIp()).append('\n');
+    }
+    for (DnsItem item : added) {
+      record(records, item).append(item.getNomMachine()).append(' ')
+          .append(item.getAdresseIp()).append('\n');
+    }
+
+    try {
+      for (int i = 0; i < shardCount; i++) {
+        if (records[i] != null) {
+          ByteBuffer buffer = ByteBuffer.wrap(records[i].toString()
+              .getBytes(StandardCharsets.UTF_8));
+          FileChannel channel = openShard(i);
+          while (buffer.hasRemaining()) {
+            channel.write(buffer);
+          }
+          unsynced[i] = true;
+        }
+      }
+    } catch (IOException e) {
+      throw new DnsException("Erreur lors de l'écriture des partitions", e);
+    }
+  }
+
+  /**
+   * Returns the records to append to the shard of an entry.
+   */
+  private StringBuilder record(StringBuilder[] records, DnsItem item) {
+    int shard = shardOf(item.getNomMachine().getNomDomaine());
+    if (records[shard] == null) {
+      records[shard] = new StringBuilder();
+    }
+    return records[shard];
+  }
+
+  /**
+   * Opens a shard for appending. A last line left incomplete by a crash is ended first, so the
+   * next record is not merged into it.
+   */
+  private FileChannel openShard(int shard) throws IOException {
+    if (shards[shard] == null) {
+      FileChannel channel = FileChannel.open(shardPath(shard), StandardOpenOption.CREATE,
+          StandardOpenOption.READ, StandardOpenOption.WRITE);
+      long size = channel.size();
+      channel.position(size); // Only this instance writes, always at the end
+      if (size > 0) {
+        ByteBuffer last = ByteBuffer.allocate(1);
+        channel.read(last, size - 1);
+        if (last.get(0) != '\n') {
+          channel.write(ByteBuffer.wrap(new byte[] {'\n'}));
+        }
+      }
+      shards[shard] = channel;
+    }
+    return shards[shard];
+  }
+
+  @Override
+  public synchronized void sync() throws DnsException {
+    try {
+      for (int i = 0; i < shardCount; i++) {
+        if (unsynced[i]) {
+          shards[i].force(false);
+          unsynced[i] = false;
+        }
+      }
+    } catch (IOException e) {
+      throw new DnsException("Erreur lors de la synchronisation des partitions", e);
+    }
+  }
+
+  @Override
+  public synchronized void close() throws DnsException {
+    try {
+      for (int i = 0; i < shardCount; i++) {
+        if (shards[i] != null) {
+          shards[i].close();
+          shards[i] = null;
+        }
+      }
+    } catch (IOException e) {
+      throw new DnsException("Erreur lors de la fermeture des partitions", e);
+    }
+  }
+}
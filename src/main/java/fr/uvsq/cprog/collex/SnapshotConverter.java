@@ -0,0 +1,80 @@
+package fr.uvsq.cprog.collex;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Command line tool converting a database between its text form and its binary snapshot.
+ *
+ * <p>Usage: {@code SnapshotConverter text2bin <fichier.txt> [<fichier.bin>]} or
+ * {@code SnapshotConverter bin2text <fichier.bin> <fichier.txt>}.
+ */
+public class SnapshotConverter {
+  private SnapshotConverter() {
+  }
+
+  /**
+   * Converts a text database into a binary snapshot. The snapshot records the size and
+   * checksum of the text file, so it is used on startup only if written next to it.
+   *
+   * @param text the text database file
+   * @param snapshot the snapshot file to write
+   * @return the number of converted entries
+   * @throws IOException if a file cannot be read or written
+   */
+  static int textToBinary(Path text, Path snapshot) throws IOException {
+    long size = Files.size(text);
+    int checksum = BinarySnapshot.checksum(text);
+    List<DnsItem> items = new ArrayList<>();
+    new DnsLoader().load(text, items::add);
+    BinarySnapshot.write(snapshot, items, size, checksum);
+    return items.size();
+  }
+
+  /**
+   * Converts a binary snapshot back into a text database.
+   *
+   * @param snapshot the snapshot file
+   * @param text the text database file to write
+   * @return the number of converted entries
+   * @throws IOException if the snapshot is invalid or a file cannot be read
+   * @throws DnsException if the text file cannot be written
+   */
+  static int binaryToText(Path snapshot, Path text) throws IOException, DnsException {
+    List<DnsItem> items = new ArrayList<>();
+    BinarySnapshot.read(snapshot, items::add);
+    new TextFileStorage(text).write(items);
+    return items.size();
+  }
+
+  /**
+   * Main entry point of the converter.
+   *
+   * @param args the direction of the conversion followed by the source and target files
+   */
+  public static void main(String[] args) {
+    try {
+      int count;
+      if (args.length >= 2 && args.length <= 3 && args[0].equals("text2bin")) {
+        Path text = Paths.get(args[1]);
+        Path snapshot = args.length == 3 ? Paths.get(args[2]) : BinarySnapshot.pathFor(text);
+        count = textToBinary(text, snapshot);
+      } else if (args.length == 3 && args[0].equals("bin2text")) {
+        count = binaryToText(Paths.get(args[1]), Paths.get(args[2]));
+      } else {
+        System.err.println("Usage: text2bin <fichier.txt> [<fichier.bin>]"
+            + " | bin2text <fichier.bin> <fichier.txt>");
+        System.exit(2);
+        return;
+      }
+      System.out.println(count + " entrée(s) DNS converties");
+    } catch (IOException | DnsException e) {
+      System.err.println("ERREUR FATALE : " + e.getMessage());
+      System.exit(1);
+    }
+  }
+}
@@ -0,0 +1,22 @@
+package fr.uvsq.cprog.collex;
+
+/**
+ * Command to display the latency of each command type and the lookup hit rates.
+ */
+public class StatsCommande implements Commande {
+  private final Dns dns;
+
+  /**
+   * Creates a command to display statistics.
+   *
+   * @param dns the DNS database
+   */
+  public StatsCommande(Dns dns) {
+    this.dns = dns;
+  }
+
+  @Override
+  public Object execute() {
+    return dns.getStats().render();
+  }
+}
@@ -0,0 +1,44 @@
+package fr.uvsq.cprog.collex;
+
+/**
+ * Command to remove a DNS entry, found by its machine name or its IP address.
+ */
+public class SuppressionCommande implements Commande {
+  private final Dns dns;
+  private final NomMachine nomMachine;
+  private final AdresseIP adresseIp;
+
+  /**
+   * Creates a command to remove the entry of a machine name.
+   *
+   * @param dns the DNS database
+   * @param nomMachine the machine name
+   */
+  public SuppressionCommande(Dns dns, NomMachine nomMachine) {
+    this.dns = dns;
+    this.nomMachine = nomMachine;
+    this.adresseIp = null;
+  }
+
+  /**
+   * Creates a command to remove the entry of an IP address.
+   *
+   * @param dns the DNS database
+   * @param adresseIp the IP address
+   */
+  public SuppressionCommande(Dns dns, AdresseIP adresseIp) {
+    this.dns = dns;
+    this.nomMachine = null;
+    this.adresseIp = adresseIp;
+  }
+
+  @Override
+  public Object execute() {
+    try {
+      DnsItem item = nomMachine != null ? dns.removeItem(nomMachine) : dns.removeItem(adresseIp);
+      return "Entrée DNS supprimée : " + item.getAdresseIp() + " " + item.getNomMachine();
+    } catch (DnsException e) {
+      return "ERREUR : " + e.getMessage();
+    }
+  }
+}
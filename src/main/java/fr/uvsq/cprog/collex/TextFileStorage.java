@@ -0,0 +1,190 @@
+package fr.uvsq.cprog.collex;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Stores the database as a text file of "name ip" lines, rewritten on every change.
+ *
+ * <p>Optionally, a {@link BinarySnapshot} of the text file is kept next to it. It is read instead
+ * of the text when it is fresh, written after the text had to be parsed, and refreshed on close
+ * when the text file changed.
+ */
+class TextFileStorage implements DnsStorage {
+  private final Path databasePath;
+  private final Path snapshotPath;
+  private Collection<DnsItem> unsnapshotted;
+  private long writtenSize;
+  private int writtenChecksum;
+
+  /**
+   * Creates a storage backed by a text file only.
+   *
+   * @param databasePath the path to the database file
+   */
+  TextFileStorage(Path databasePath) {
+    this(databasePath, false);
+  }
+
+  /**
+   * Creates a storage backed by a text file.
+   *
+   * @param databasePath the path to the database file
+   * @param binarySnapshot whether a binary snapshot is kept next to the text file
+   */
+  TextFileStorage(Path databasePath, boolean binarySnapshot) {
+    this.databasePath = databasePath;
+    this.snapshotPath = binarySnapshot ? BinarySnapshot.pathFor(databasePath) : null;
+  }
+
+  /**
+   * Returns the path to the database file.
+   *
+   * @return the path to the database file
+   */
+  Path getDatabasePath() {
+    return databasePath;
+  }
+
+  /**
+   * Reads the entries of the file, which holds no removals since it is rewritten on every
+   * change.
+   *
+   * @param sink receives the entries
+   * @param removals never called
+   * @throws DnsException if the file cannot be read
+   */
+  @Override
+  public void load(Consumer<DnsItem> sink, Consumer<DnsItem> removals) throws DnsException {
+    load(sink);
+  }
+
+  /**
+   * Reads the entries of the file, from the binary snapshot when it is fresh.
+   *
+   * @param sink receives the entries in file order
+   * @throws DnsException if the file cannot be read
+   */
+  void load(Consumer<DnsItem> sink) throws DnsException {
+    if (!Files.exists(databasePath)) {
+      return; // Empty database
+    }
+
+    if (snapshotPath != null && BinarySnapshot.isFresh(snapshotPath, databasePath)) {
+      try {
+        BinarySnapshot.read(snapshotPath, sink);
+        return;
+      } catch (IOException e) {
+        // A damaged snapshot delivers no entry, the text file is read instead
+      }
+    }
+
+    try {
+      if (snapshotPath == null) {
+        new DnsLoader().load(databasePath, sink);
+        return;
+      }
+      // Checksum first: if the file changes while it is parsed, the snapshot is stale on arrival
+      long size = Files.size(databasePath);
+      int checksum = BinarySnapshot.checksum(databasePath);
+      List<DnsItem> items = new ArrayList<>();
+      new DnsLoader().load(databasePath, item -> {
+        items.add(item);
+        sink.accept(item);
+      });
+      writeSnapshot(items, size, checksum);
+    } catch (IOException e) {
+      throw new DnsException("Erreur lors de la lecture de la base de données", e);
+    }
+  }
+
+  private void writeSnapshot(Collection<DnsItem> items, long size, int checksum) {
+    try {
+      BinarySnapshot.write(snapshotPath, items, size, checksum);
+    } catch (IOException e) {
+      // Without a snapshot the next startup reads the text file
+    }
+  }
+
+  @Override
+  public synchronized void saveChanges(List<DnsItem> removed, List<DnsItem> added,
+      Collection<DnsItem> all) throws DnsException {
+    byte[] content = write(all);
+    if (snapshotPath != null) {
+      unsnapshotted = all;
+      writtenSize = content.length;
+      writtenChecksum = BinarySnapshot.checksum(content);
+    }
+  }
+
+  /**
+   * Rewrites the whole file with the given entries, sorted by name. The entries are written to a
+   * temporary file that then replaces the database file, so a reader of the file never sees it
+   * half written.
+   *
+   * @param items the entries to write
+   * @return the content written
+   * @throws DnsException if the file cannot be written
+   */
+  byte[] write(Collection<DnsItem> items) throws DnsException {
+    try {
+      List<String> lines = new ArrayList<>();
+      for (DnsItem item : items) {
+        lines.add(item.getNomMachine() + " " + item.getAdresseIp());
+      }
+
+      // Sort lines for consistent output
+      lines.sort(String::compareTo);
+      StringBuilder text = new StringBuilder(lines.size() * 32);
+      for (String line : lines) {
+        text.append(line).append(System.lineSeparator());
+      }
+      byte[] content = text.toString().getBytes(StandardCharsets.UTF_8);
+
+      Path temporary = databasePath.resolveSibling(databasePath.getFileName() + ".tmp");
+      Files.write(temporary, content, StandardOpenOption.CREATE,
+          StandardOpenOption.TRUNCATE_EXISTING);
+      try {
+        Files.move(temporary, databasePath, StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(temporary, databasePath, StandardCopyOption.REPLACE_EXISTING);
+      }
+      return content;
+    } catch (IOException e) {
+      throw new DnsException("Erreur lors de la sauvegarde de la base de données", e);
+    }
+  }
+
+  @Override
+  public synchronized void sync() throws DnsException {
+    if (!Files.exists(databasePath)) {
+      return; // Nothing was saved yet
+    }
+    try (FileChannel channel = FileChannel.open(databasePath, StandardOpenOption.WRITE)) {
+      channel.force(false);
+    } catch (IOException e) {
+      throw new DnsException("Erreur lors de la synchronisation de la base de données", e);
+    }
+  }
+
+  @Override
+  public synchronized void close() {
+    // Every change is already in the text file, only the snapshot may be stale. It records the
+    // content written, so an edit of the file by another program since makes it ignored.
+    if (unsnapshotted != null) {
+      writeSnapshot(unsnapshotted, writtenSize, writtenChecksum);
+      unsnapshotted = null;
+    }
+  }
+}
@@ -0,0 +1,33 @@
+package fr.uvsq.cprog.collex;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for AddressSet class.
+ */
+public class AddressSetTest {
+
+  @Test
+  public void testWithAndWithout() {
+    AddressSet set = new AddressSet(1, 2).with(3);
+
+    assertEquals(3, set.size());
+    assertArrayEquals(new int[] {1, 2, 3}, set.toArray());
+    assertArrayEquals(new int[] {1, 3}, set.without(2));
+    assertArrayEquals(new int[] {1, 2, 3}, set.without(4));
+  }
+
+  @Test
+  public void testRotateStartsOneAddressFurther() {
+    AddressSet set = new AddressSet(1, 2, 3);
+
+    assertArrayEquals(new int[] {1, 2, 3}, set.rotate());
+    assertArrayEquals(new int[] {2, 3, 1}, set.rotate());
+    assertArrayEquals(new int[] {3, 1, 2}, set.rotate());
+    assertArrayEquals(new int[] {1, 2, 3}, set.rotate());
+    assertArrayEquals(new int[] {1, 2, 3}, set.toArray());
+  }
+}
@@ -3,7 +3,9 @@ package fr.uvsq.cprog.collex;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
 
+import java.nio.charset.StandardCharsets;
 import org.junit.Test;
 
 /**
@@ -60,6 +62,44 @@ public class AdresseIpTest {
     });
   }
 
+  @Test
+  public void testInvalidIpAddressLeadingZero() {
+    assertThrows(IllegalArgumentException.class, () -> {
+      new AdresseIP("192.168.01.1");
+    });
+  }
+
+  @Test
+  public void testInvalidIpAddressEmptyOctet() {
+    assertThrows(IllegalArgumentException.class, () -> {
+      new AdresseIP("192..0.1");
+    });
+    assertThrows(IllegalArgumentException.class, () -> {
+      new AdresseIP("192.168.0.");
+    });
+  }
+
+  @Test
+  public void testPackedValue() {
+    assertEquals(0xC0A80001, new AdresseIP("192.168.0.1").toInt());
+    assertEquals(0xFFFFFFFF, new AdresseIP("255.255.255.255").toInt());
+    assertEquals(0, new AdresseIP("0.0.0.0").toInt());
+  }
+
+  @Test
+  public void testFromPackedValue() {
+    AdresseIP ip = new AdresseIP(0xC1331F5A);
+    assertEquals("193.51.31.90", ip.getAdresse());
+    assertEquals(new AdresseIP("193.51.31.90"), ip);
+  }
+
+  @Test
+  public void testCompareToIsNumeric() {
+    assertTrue(new AdresseIP("193.51.31.90").compareTo(new AdresseIP("193.51.31.154")) < 0);
+    assertTrue(new AdresseIP("10.0.0.1").compareTo(new AdresseIP("200.0.0.1")) < 0);
+    assertEquals(0, new AdresseIP("1.2.3.4").compareTo(new AdresseIP("1.2.3.4")));
+  }
+
   @Test
   public void testEquals() {
     AdresseIP ip1 = new AdresseIP("192.168.0.1");
@@ -79,4 +119,21 @@ public class AdresseIpTest {
 
     assertEquals(ip1.hashCode(), ip2.hashCode());
   }
+
+  @Test
+  public void testAppendTo() {
+    StringBuilder out = new StringBuilder("ip ");
+    new AdresseIP("255.0.10.1").appendTo(out);
+
+    assertEquals("ip 255.0.10.1", out.toString());
+  }
+
+  @Test
+  public void testParseBytesInPlace() {
+    byte[] line = "www.uvsq.fr 193.51.31.90\n".getBytes(StandardCharsets.US_ASCII);
+
+    assertEquals(new AdresseIP("193.51.31.90").toInt(), (int) AdresseIP.parse(line, 12, 24));
+    assertEquals(-1, AdresseIP.parse(line, 12, 25));
+    assertEquals(-1, AdresseIP.parse(line, 0, 11));
+  }
 }
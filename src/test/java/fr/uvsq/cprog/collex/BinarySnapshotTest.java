@@ -0,0 +1,157 @@
+package fr.uvsq.cprog.collex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for BinarySnapshot class and the snapshot support of TextFileStorage.
+ */
+public class BinarySnapshotTest {
+  private Path tempDir;
+  private Path databaseFile;
+  private Path snapshotFile;
+
+  /**
+   * Setup method to create a database file in a temporary directory before each test.
+   *
+   * @throws Exception if setup fails
+   */
+  @Before
+  public void setUp() throws Exception {
+    tempDir = Files.createTempDirectory("dns-snapshot");
+    databaseFile = tempDir.resolve("dns-database.txt");
+    snapshotFile = BinarySnapshot.pathFor(databaseFile);
+    Files.write(databaseFile, List.of(
+        "www.uvsq.fr 193.51.31.90",
+        "ecampus.uvsq.fr 193.51.25.12"
+    ));
+  }
+
+  /**
+   * Teardown method to delete the temporary directory after each test.
+   *
+   * @throws Exception if cleanup fails
+   */
+  @After
+  public void tearDown() throws Exception {
+    try (Stream<Path> paths = Files.walk(tempDir)) {
+      for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+        Files.delete(path);
+      }
+    }
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    List<DnsItem> items = List.of(
+        new DnsItem(new AdresseIP("193.51.31.90"), new NomMachine("www.uvsq.fr")),
+        new DnsItem(new AdresseIP("255.255.255.255"), new NomMachine("max.exemple.fr")));
+    BinarySnapshot.write(snapshotFile, items, 10, 20);
+
+    List<DnsItem> read = new ArrayList<>();
+    BinarySnapshot.read(snapshotFile, read::add);
+
+    assertEquals(items, read);
+  }
+
+  @Test
+  public void testTextLoadWritesFreshSnapshot() throws DnsException {
+    new Dns(new TextFileStorage(databaseFile, true));
+
+    assertTrue(BinarySnapshot.isFresh(snapshotFile, databaseFile));
+  }
+
+  @Test
+  public void testLoadPrefersFreshSnapshot() throws DnsException, IOException {
+    List<DnsItem> items = List.of(
+        new DnsItem(new AdresseIP("10.0.0.1"), new NomMachine("depuis.instantane.fr")));
+    BinarySnapshot.write(snapshotFile, items, Files.size(databaseFile),
+        BinarySnapshot.checksum(databaseFile));
+
+    Dns dns = new Dns(new TextFileStorage(databaseFile, true));
+
+    assertNotNull(dns.getItem(new NomMachine("depuis.instantane.fr")));
+    assertEquals(null, dns.getItem(new NomMachine("www.uvsq.fr")));
+  }
+
+  @Test
+  public void testStaleSnapshotIsIgnored() throws DnsException, IOException {
+    new Dns(new TextFileStorage(databaseFile, true));
+    Files.write(databaseFile, List.of("poste.uvsq.fr 193.51.31.154"));
+    Files.setLastModifiedTime(databaseFile, FileTime.fromMillis(0));
+
+    assertFalse(BinarySnapshot.isFresh(snapshotFile, databaseFile));
+    Dns dns = new Dns(new TextFileStorage(databaseFile, true));
+
+    assertNotNull(dns.getItem(new NomMachine("poste.uvsq.fr")));
+    assertEquals(null, dns.getItem(new NomMachine("www.uvsq.fr")));
+  }
+
+  @Test
+  public void testSameSizeEditKeepingModificationTimeIsDetected()
+      throws DnsException, IOException {
+    new Dns(new TextFileStorage(databaseFile, true));
+    FileTime modified = Files.getLastModifiedTime(databaseFile);
+    // Same length and modification time, as after "cp -p" of another version of the file
+    String text = Files.readString(databaseFile).replace("www.uvsq.fr", "web.uvsq.fr");
+    Files.writeString(databaseFile, text);
+    Files.setLastModifiedTime(databaseFile, modified);
+
+    assertFalse(BinarySnapshot.isFresh(snapshotFile, databaseFile));
+    Dns dns = new Dns(new TextFileStorage(databaseFile, true));
+    assertNotNull(dns.getItem(new NomMachine("web.uvsq.fr")));
+    assertEquals(null, dns.getItem(new NomMachine("www.uvsq.fr")));
+  }
+
+  @Test
+  public void testDamagedSnapshotFallsBackToText() throws DnsException, IOException {
+    new Dns(new TextFileStorage(databaseFile, true));
+    byte[] bytes = Files.readAllBytes(snapshotFile);
+    bytes[bytes.length - 1] ^= 0x20;
+    Files.write(snapshotFile, bytes);
+
+    assertThrows(IOException.class, () -> BinarySnapshot.read(snapshotFile, item -> { }));
+    Dns dns = new Dns(new TextFileStorage(databaseFile, true));
+
+    assertEquals(2, dns.getItems("uvsq.fr").size());
+  }
+
+  @Test
+  public void testCloseRefreshesSnapshotAfterAdd() throws DnsException, IOException {
+    Dns dns = new Dns(new TextFileStorage(databaseFile, true));
+    dns.addItem(new AdresseIP("193.51.25.24"), new NomMachine("pikachu.uvsq.fr"));
+    dns.close();
+
+    assertTrue(BinarySnapshot.isFresh(snapshotFile, databaseFile));
+    List<DnsItem> read = new ArrayList<>();
+    BinarySnapshot.read(snapshotFile, read::add);
+    assertEquals(3, read.size());
+  }
+
+  @Test
+  public void testConverterRoundTrip() throws IOException, DnsException {
+    Path binary = tempDir.resolve("copie.bin");
+    Path text = tempDir.resolve("copie.txt");
+
+    assertEquals(2, SnapshotConverter.textToBinary(databaseFile, binary));
+    assertEquals(2, SnapshotConverter.binaryToText(binary, text));
+
+    assertEquals(List.of("ecampus.uvsq.fr 193.51.25.12", "www.uvsq.fr 193.51.31.90"),
+        Files.readAllLines(text));
+  }
+}
@@ -0,0 +1,61 @@
+package fr.uvsq.cprog.collex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for BloomFilter class.
+ */
+public class BloomFilterTest {
+
+  @Test
+  public void testNoFalseNegatives() {
+    BloomFilter filter = new BloomFilter(10_000, 0.01);
+    for (int i = 0; i < 10_000; i++) {
+      filter.add(i * 7919);
+    }
+
+    for (int i = 0; i < 10_000; i++) {
+      assertTrue(filter.mightContain(i * 7919));
+    }
+    assertEquals(10_000, filter.insertions());
+  }
+
+  @Test
+  public void testFalsePositiveRateNearTarget() {
+    BloomFilter filter = new BloomFilter(10_000, 0.01);
+    for (int i = 0; i < 10_000; i++) {
+      filter.add(i);
+    }
+
+    int positives = 0;
+    for (int i = 10_000; i < 110_000; i++) {
+      if (filter.mightContain(i)) {
+        positives++;
+        filter.recordFalsePositive();
+      }
+    }
+    assertTrue("faux positifs : " + positives, positives < 2_000);
+    assertEquals(positives / 100_000.0, filter.observedFalsePositiveRate(), 1e-9);
+    assertTrue(filter.expectedFalsePositiveRate() < 0.02);
+  }
+
+  @Test
+  public void testSizing() {
+    BloomFilter filter = new BloomFilter(1000, 0.01);
+
+    assertEquals(16384, filter.bitSize());
+    assertTrue(filter.hashCount() >= 7);
+    assertEquals(0, filter.expectedFalsePositiveRate(), 0);
+  }
+
+  @Test
+  public void testSizeIsCappedForHugeCapacities() {
+    assertEquals(BloomFilter.MAX_BITS, BloomFilter.size(112_000_000L, 0.01));
+    assertEquals(BloomFilter.MAX_BITS, BloomFilter.size(Integer.MAX_VALUE, 0.001));
+    assertEquals(16384, BloomFilter.size(1000, 0.01));
+    assertEquals(64, BloomFilter.size(1, 0.5));
+  }
+}
@@ -1,10 +1,13 @@
 package fr.uvsq.cprog.collex;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
 import org.junit.After;
 import org.junit.Before;
@@ -106,12 +109,12 @@ public class CommandeTest {
     Object result = cmd.execute();
 
     String output = result.toString();
-    // Verify order (sorted by IP: 193.51.25.12, 193.51.31.154, 193.51.31.90)
+    // Verify numeric order (sorted by IP: 193.51.25.12, 193.51.31.90, 193.51.31.154)
     int ip12Index = output.indexOf("193.51.25.12");
     int ip154Index = output.indexOf("193.51.31.154");
     int ip90Index = output.indexOf("193.51.31.90");
-    assertTrue(ip12Index < ip154Index);
-    assertTrue(ip154Index < ip90Index);
+    assertTrue(ip12Index < ip90Index);
+    assertTrue(ip90Index < ip154Index);
   }
 
   @Test
@@ -122,6 +125,50 @@ public class CommandeTest {
     assertTrue(result.toString().contains("Aucune machine trouvée"));
   }
 
+  @Test
+  public void testListeDomaineCommandePages() {
+    Object first = new ListeDomaineCommande(dns, "uvsq.fr", false, false, 1, null).execute();
+    assertTrue(first instanceof Listing);
+    String[] lines = first.toString().split("\n");
+    assertEquals(2, lines.length);
+    String[] entry = lines[0].split(" ");
+    assertEquals("-- suite : --after " + entry[1] + "@" + entry[0], lines[1]);
+
+    Object rest = new ListeDomaineCommande(dns, "uvsq.fr", false, false, 10,
+        new NomMachine(lines[0].split(" ")[1])).execute();
+    assertEquals(2, rest.toString().split("\n").length);
+    assertTrue(new ListeDomaineCommande(dns, "uvsq.fr", true, false, 10,
+        new NomMachine("inconnu.uvsq.fr")).execute().toString().startsWith("ERREUR"));
+  }
+
+  @Test
+  public void testListeDomaineCommandePagesThroughAddressesOfOneName() throws DnsException {
+    NomMachine www = new NomMachine("www.uvsq.fr");
+    dns.addAddress(www, new AdresseIP("10.0.0.1"));
+    dns.addAddress(www, new AdresseIP("193.51.31.91"));
+    dns.addAddress(new NomMachine("ftp.uvsq.fr"), new AdresseIP("193.51.31.92"));
+
+    for (boolean sortByIp : new boolean[] {false, true}) {
+      List<String> pages = new ArrayList<>();
+      NomMachine after = null;
+      AdresseIP afterIp = null;
+      while (true) {
+        String[] lines = new ListeDomaineCommande(dns, "uvsq.fr", sortByIp, false, 1, after,
+            afterIp).execute().toString().split("\n");
+        pages.add(lines[0]);
+        if (lines.length == 1) {
+          break;
+        }
+        String cursor = lines[1].substring("-- suite : --after ".length());
+        after = new NomMachine(cursor.substring(0, cursor.indexOf('@')));
+        afterIp = new AdresseIP(cursor.substring(cursor.indexOf('@') + 1));
+      }
+      String all = new ListeDomaineCommande(dns, "uvsq.fr", sortByIp).execute().toString();
+      assertEquals(List.of(all.split("\n")), pages);
+      assertEquals(6, pages.size());
+    }
+  }
+
   @Test
   public void testAjoutCommandeSuccess() {
     AdresseIP newIp = new AdresseIP("193.51.25.24");
@@ -137,6 +184,18 @@ public class CommandeTest {
     assertEquals(newNom, item.getNomMachine());
   }
 
+  @Test
+  public void testAjoutCommandeWithoutWaiting() throws Exception {
+    AdresseIP newIp = new AdresseIP("193.51.25.24");
+    NomMachine newNom = new NomMachine("pikachu.uvsq.fr");
+    Object result = new AjoutCommande(dns, newIp, newNom, false).execute();
+
+    assertTrue(result.toString().contains("pikachu.uvsq.fr"));
+    assertEquals(newNom, dns.getItem(newIp).getNomMachine());
+    // Without group commit the entry is saved before the command returns
+    assertTrue(Files.readAllLines(tempFile).contains("pikachu.uvsq.fr 193.51.25.24"));
+  }
+
   @Test
   public void testAjoutCommandeDuplicateIp() {
     AdresseIP existingIp = new AdresseIP("193.51.31.90");
@@ -166,4 +225,175 @@ public class CommandeTest {
 
     assertEquals("quit", result);
   }
+
+  @Test
+  public void testImportCommandeSuccess() throws Exception {
+    Path importFile = Files.createTempFile("dns-import", ".txt");
+    try {
+      Files.write(importFile, List.of(
+          "pikachu.uvsq.fr 193.51.25.24",
+          "serveur.exemple.fr 10.0.0.1"
+      ));
+      Object result = new ImportCommande(dns, importFile).execute();
+
+      assertTrue(result.toString().contains("2 entrée(s) DNS importée(s)"));
+      assertEquals(4, dns.getItems("uvsq.fr").size());
+      assertEquals(1, dns.getItems("exemple.fr").size());
+    } finally {
+      Files.deleteIfExists(importFile);
+    }
+  }
+
+  @Test
+  public void testImportCommandeDuplicate() throws Exception {
+    Path importFile = Files.createTempFile("dns-import", ".txt");
+    try {
+      Files.write(importFile, List.of(
+          "serveur.exemple.fr 10.0.0.1",
+          "autre.uvsq.fr 193.51.31.90"
+      ));
+      Object result = new ImportCommande(dns, importFile).execute();
+
+      assertTrue(result.toString().contains("ERREUR"));
+      assertTrue(result.toString().contains("aucune entrée importée"));
+      assertTrue(dns.getItems("exemple.fr").isEmpty());
+    } finally {
+      Files.deleteIfExists(importFile);
+    }
+  }
+
+  @Test
+  public void testImportCommandeMissingFile() {
+    Object result = new ImportCommande(dns, tempFile.resolveSibling("absent-dns.txt")).execute();
+
+    assertTrue(result.toString().contains("Impossible de lire"));
+  }
+
+  @Test
+  public void testStatsCommande() {
+    dns.getStats().recordCommande(RechercheIpCommande.class, 2_000);
+    new RechercheNomCommande(dns, new NomMachine("www.uvsq.fr")).execute();
+    new RechercheNomCommande(dns, new NomMachine("absent.uvsq.fr")).execute();
+
+    String result = new StatsCommande(dns).execute().toString();
+
+    assertTrue(result.contains("RechercheIpCommande"));
+    assertTrue(result.contains("p99"));
+    assertTrue(result.contains("recherches par nom : 1 trouvées, 1 absentes"));
+  }
+
+  @Test
+  public void testListeDomaineCommandeRecursive() throws DnsException {
+    dns.addItem(new AdresseIP("193.51.40.1"), new NomMachine("www.info.uvsq.fr"));
+
+    Object result = new ListeDomaineCommande(dns, "uvsq.fr", false, true).execute();
+
+    assertEquals("193.51.25.12 ecampus.uvsq.fr\n193.51.31.154 poste.uvsq.fr\n"
+        + "193.51.31.90 www.uvsq.fr\n193.51.40.1 www.info.uvsq.fr", result);
+  }
+
+  @Test
+  public void testListeDomaineCommandeRecursiveByIp() throws DnsException {
+    dns.addItem(new AdresseIP("193.51.1.1"), new NomMachine("www.info.uvsq.fr"));
+
+    Object result = new ListeDomaineCommande(dns, "fr", true, true).execute();
+
+    assertTrue(result.toString().startsWith("193.51.1.1 www.info.uvsq.fr\n193.51.25.12"));
+  }
+
+  @Test
+  public void testCompteDomaineCommande() throws DnsException {
+    dns.addItem(new AdresseIP("193.51.40.1"), new NomMachine("www.info.uvsq.fr"));
+
+    assertEquals("4 machine(s) dans le domaine uvsq.fr et ses sous-domaines",
+        new CompteDomaineCommande(dns, "uvsq.fr").execute());
+  }
+
+  @Test
+  public void testListeReseauCommande() throws DnsException {
+    dns.addItem(new AdresseIP("193.52.0.1"), new NomMachine("autre.exemple.fr"));
+
+    Object result = new ListeReseauCommande(dns, new AdresseIP("193.51.0.0"), 16).execute();
+
+    assertEquals("193.51.25.12 ecampus.uvsq.fr\n193.51.31.90 www.uvsq.fr\n"
+        + "193.51.31.154 poste.uvsq.fr", result);
+  }
+
+  @Test
+  public void testListeReseauCommandeEmpty() {
+    Object result = new ListeReseauCommande(dns, new AdresseIP("10.0.0.0"), 8).execute();
+
+    assertEquals("Aucune machine trouvée pour le réseau : 10.0.0.0/8", result);
+  }
+
+  @Test
+  public void testBloomCommande() {
+    assertTrue(new BloomCommande(dns, false).execute().toString().contains("bloom rebuild"));
+
+    String result = new BloomCommande(dns, true).execute().toString();
+
+    assertTrue(result.contains("filtre des adresses IP"));
+    assertTrue(result.contains("3/1024"));
+  }
+
+  @Test
+  public void testListeDomaineCommandeCachedUntilDomainChanges() throws DnsException {
+    ListeDomaineCommande cmd = new ListeDomaineCommande(dns, "UVSQ.fr", false);
+    Object first = cmd.execute();
+
+    assertSame(first, cmd.execute());
+    dns.addItem(new AdresseIP("10.0.0.1"), new NomMachine("www.exemple.fr"));
+    assertSame(first, cmd.execute());
+    dns.addItem(new AdresseIP("10.0.0.2"), new NomMachine("zz.uvsq.fr"));
+    assertTrue(cmd.execute().toString().endsWith("10.0.0.2 zz.uvsq.fr"));
+    assertTrue(new StatsCommande(dns).execute().toString()
+        .contains("cache des listes   : 2"));
+  }
+
+  @Test
+  public void testSuppressionCommande() {
+    Object result = new SuppressionCommande(dns, new NomMachine("www.uvsq.fr")).execute();
+    assertEquals("Entrée DNS supprimée : 193.51.31.90 www.uvsq.fr", result);
+    assertNull(dns.getItem(new AdresseIP("193.51.31.90")));
+
+    result = new SuppressionCommande(dns, new AdresseIP("193.51.31.90")).execute();
+    assertTrue(result.toString().contains("n'existe pas"));
+  }
+
+  @Test
+  public void testModificationCommande() {
+    Object result = new ModificationCommande(dns, new NomMachine("www.uvsq.fr"),
+        new NomMachine("web.uvsq.fr")).execute();
+    assertEquals("Entrée DNS modifiée : 193.51.31.90 www.uvsq.fr -> 193.51.31.90 web.uvsq.fr",
+        result);
+
+    result = new ModificationCommande(dns, new NomMachine("web.uvsq.fr"),
+        new AdresseIP("193.51.31.91")).execute();
+    assertEquals("Entrée DNS modifiée : 193.51.31.90 web.uvsq.fr -> 193.51.31.91 web.uvsq.fr",
+        result);
+    assertEquals(new NomMachine("web.uvsq.fr"),
+        dns.getItem(new AdresseIP("193.51.31.91")).getNomMachine());
+  }
+
+  @Test
+  public void testRechercheNomCommandeRoundRobin() throws DnsException {
+    NomMachine nom = new NomMachine("www.uvsq.fr");
+    dns.addAddress(nom, new AdresseIP("193.51.31.91"));
+
+    assertEquals("193.51.31.90 193.51.31.91", new RechercheNomCommande(dns, nom).execute());
+    assertEquals("193.51.31.91 193.51.31.90", new RechercheNomCommande(dns, nom).execute());
+    assertEquals("193.51.31.90 193.51.31.91",
+        new RechercheNomCommande(dns, nom, false).execute());
+  }
+
+  @Test
+  public void testAjoutCommandeAddress() {
+    NomMachine nom = new NomMachine("www.uvsq.fr");
+    Object result = new AjoutCommande(dns, new AdresseIP("193.51.31.91"), nom, true, true)
+        .execute();
+
+    assertTrue(result.toString().contains("Entrée DNS ajoutée"));
+    assertEquals(nom, dns.getItem(new AdresseIP("193.51.31.91")).getNomMachine());
+    assertEquals(2, dns.getAddresses(nom, false).length);
+  }
 }
@@ -1,9 +1,13 @@
 package fr.uvsq.cprog.collex;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
+import java.io.StringReader;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
@@ -91,4 +95,81 @@ public class DnsAppTest {
     String output = outputStream.toString();
     assertTrue(output.contains("DNS Simulator"));
   }
+
+  @Test
+  public void testRunRecordsCommandLatency() throws DnsException {
+    Dns dns = new Dns(tempFile);
+    Scanner scanner = new Scanner("www.uvsq.fr\n193.51.31.90\nstats\nquit\n");
+    DnsApp app = new DnsApp(new DnsTUI(scanner, dns));
+
+    app.run();
+
+    assertEquals(1, dns.getStats().getHistogram(RechercheNomCommande.class).getCount());
+    assertEquals(1, dns.getStats().getHistogram(RechercheIpCommande.class).getCount());
+    assertTrue(outputStream.toString().contains("RechercheNomCommande"));
+  }
+
+  @Test
+  public void testExecuteTimesTheDisplayOfTheResult() throws DnsException {
+    Dns dns = new Dns(tempFile);
+    DnsTUI tui = new DnsTUI(new Scanner(""), dns);
+    Object slowToWrite = new Object() {
+      @Override
+      public String toString() {
+        try {
+          Thread.sleep(20);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        return "lent";
+      }
+    };
+    Commande cmd = () -> slowToWrite;
+
+    DnsApp.execute(cmd, tui, dns.getStats());
+
+    assertTrue(outputStream.toString().contains("lent"));
+    assertTrue(dns.getStats().getHistogram(cmd.getClass()).getMax() >= 20_000_000L);
+  }
+
+  @Test
+  public void testRunStopsAtEndOfInput() throws DnsException {
+    Dns dns = new Dns(tempFile);
+    DnsApp app = new DnsApp(new DnsTUI(new Scanner("www.uvsq.fr\n"), dns));
+
+    app.run();
+
+    assertTrue(outputStream.toString().contains("193.51.31.90"));
+  }
+
+  @Test
+  public void testRunBatchWritesResultsOnly() throws DnsException {
+    Dns dns = new Dns(tempFile);
+    BufferedReader script = new BufferedReader(new StringReader(
+        "www.uvsq.fr\n\ninconnu\n193.51.31.90\n"));
+    ByteArrayOutputStream results = new ByteArrayOutputStream();
+    PrintStream out = new PrintStream(new BufferedOutputStream(results), false);
+    DnsApp app = new DnsApp(new DnsTUI(script, out, dns));
+
+    app.runBatch();
+
+    assertEquals("193.51.31.90\nERREUR : Commande non reconnue\nwww.uvsq.fr\n",
+        results.toString().replace(System.lineSeparator(), "\n"));
+    assertEquals("", outputStream.toString());
+    assertEquals(2, dns.getStats().getHistogram(RechercheNomCommande.class).getCount()
+        + dns.getStats().getHistogram(RechercheIpCommande.class).getCount());
+  }
+
+  @Test
+  public void testRunBatchStopsAtQuit() throws DnsException {
+    Dns dns = new Dns(tempFile);
+    BufferedReader script = new BufferedReader(new StringReader(
+        "www.uvsq.fr\nquit\n193.51.31.90\n"));
+    ByteArrayOutputStream results = new ByteArrayOutputStream();
+    DnsApp app = new DnsApp(new DnsTUI(script, new PrintStream(results), dns));
+
+    app.runBatch();
+
+    assertEquals("193.51.31.90", results.toString().trim());
+  }
 }
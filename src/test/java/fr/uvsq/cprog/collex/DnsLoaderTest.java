@@ -0,0 +1,121 @@
+package fr.uvsq.cprog.collex;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for DnsLoader class.
+ */
+public class DnsLoaderTest {
+  private Path tempFile;
+
+  /**
+   * Setup method to create a temporary file before each test.
+   *
+   * @throws Exception if setup fails
+   */
+  @Before
+  public void setUp() throws Exception {
+    tempFile = Files.createTempFile("dns-loader", ".txt");
+  }
+
+  /**
+   * Teardown method to delete temporary file after each test.
+   *
+   * @throws Exception if cleanup fails
+   */
+  @After
+  public void tearDown() throws Exception {
+    Files.deleteIfExists(tempFile);
+  }
+
+  private List<String> load(DnsLoader loader, String content) throws IOException {
+    Files.write(tempFile, content.getBytes(StandardCharsets.UTF_8));
+    List<String> items = new ArrayList<>();
+    loader.load(tempFile, item -> items.add(item.toString()));
+    return items;
+  }
+
+  @Test
+  public void testLoadSimpleLines() throws IOException {
+    List<String> items = load(new DnsLoader(),
+        "www.uvsq.fr 193.51.31.90\necampus.uvsq.fr 193.51.25.12\n");
+
+    assertEquals(List.of("193.51.31.90 www.uvsq.fr", "193.51.25.12 ecampus.uvsq.fr"), items);
+  }
+
+  @Test
+  public void testLoadSkipsCommentsBlankAndInvalidLines() throws IOException {
+    List<String> items = load(new DnsLoader(), "# commentaire\n"
+        + "\n"
+        + "   \n"
+        + "sans-point 10.0.0.1\n"
+        + "trop.de champs.fr 10.0.0.2\n"
+        + "mauvaise.ip.fr 10.0.0.256\n"
+        + "seul.fr\n"
+        + "ok.domaine.fr 10.0.0.3\n");
+
+    assertEquals(List.of("10.0.0.3 ok.domaine.fr"), items);
+  }
+
+  @Test
+  public void testLoadHandlesWhitespaceVariants() throws IOException {
+    List<String> items = load(new DnsLoader(),
+        "  a.domaine.fr\t10.0.0.1  \r\nb.domaine.fr   10.0.0.2\r\nc.domaine.fr 10.0.0.3");
+
+    assertEquals(List.of("10.0.0.1 a.domaine.fr", "10.0.0.2 b.domaine.fr",
+        "10.0.0.3 c.domaine.fr"), items);
+  }
+
+  @Test
+  public void testLoadLinesAcrossBufferBoundaries() throws IOException {
+    StringBuilder content = new StringBuilder();
+    List<String> expected = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      content.append("machine").append(i).append(".domaine.fr 10.0.0.").append(i).append('\n');
+      expected.add("10.0.0." + i + " machine" + i + ".domaine.fr");
+    }
+
+    assertEquals(expected, load(new DnsLoader(40), content.toString()));
+  }
+
+  @Test
+  public void testLoadSkipsLinesLongerThanBuffer() throws IOException {
+    String longName = "x".repeat(100) + ".domaine.fr";
+    List<String> items = load(new DnsLoader(32),
+        "a.domaine.fr 10.0.0.1\n" + longName + " 10.0.0.2\nb.domaine.fr 10.0.0.3\n");
+
+    assertEquals(List.of("10.0.0.1 a.domaine.fr", "10.0.0.3 b.domaine.fr"), items);
+  }
+
+  @Test
+  public void testReloadParsesOnlyUnknownLines() throws IOException {
+    DnsLoader loader = new DnsLoader();
+    Files.write(tempFile, ("www.uvsq.fr 193.51.31.90\n# commentaire\n\n"
+        + "poste.uvsq.fr 193.51.31.154\n").getBytes(StandardCharsets.UTF_8));
+    Set<Long> hashes = new HashSet<>();
+    loader.reload(tempFile, hashes::contains, (item, hash) -> hashes.add(hash));
+    assertEquals(2, hashes.size());
+
+    // Surrounding blanks do not change the hash of a line
+    Files.write(tempFile, "  www.uvsq.fr 193.51.31.90 \r\nposte.uvsq.fr 193.51.31.155\n"
+        .getBytes(StandardCharsets.UTF_8));
+    List<String> changed = new ArrayList<>();
+    Set<Long> seen = new HashSet<>();
+    loader.reload(tempFile, hash -> seen.add(hash) && hashes.contains(hash),
+        (item, hash) -> changed.add(item.toString()));
+    assertEquals(List.of("193.51.31.155 poste.uvsq.fr"), changed);
+    assertEquals(2, seen.size());
+  }
+}
@@ -0,0 +1,148 @@
+package fr.uvsq.cprog.collex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for DnsReloader class.
+ */
+public class DnsReloaderTest {
+  private Path directory;
+  private Path database;
+  private Dns dns;
+  private DnsReloader reloader;
+
+  /**
+   * Setup method to create a database file in its own directory and watch it.
+   *
+   * @throws Exception if setup fails
+   */
+  @Before
+  public void setUp() throws Exception {
+    directory = Files.createTempDirectory("dns-reload");
+    database = directory.resolve("dns-database.txt");
+    Files.write(database, List.of(
+        "www.uvsq.fr 193.51.31.90",
+        "ecampus.uvsq.fr 193.51.25.12",
+        "poste.uvsq.fr 193.51.31.154"));
+    dns = new Dns(database);
+    // Long enough for the tests to reload the file before the watching thread does
+    reloader = new DnsReloader(dns, database, 60_000);
+  }
+
+  /**
+   * Teardown method to stop watching and delete the files.
+   *
+   * @throws Exception if cleanup fails
+   */
+  @After
+  public void tearDown() throws Exception {
+    reloader.close();
+    try (var files = Files.list(directory)) {
+      for (Path file : (Iterable<Path>) files::iterator) {
+        Files.delete(file);
+      }
+    }
+    Files.delete(directory);
+  }
+
+  private static String ip(DnsItem item) {
+    return item == null ? null : item.getAdresseIp().toString();
+  }
+
+  @Test
+  public void testReloadAppliesOnlyTheChangedLines() throws Exception {
+    Files.write(database, List.of(
+        "www.uvsq.fr 193.51.31.91",
+        "ecampus.uvsq.fr 193.51.25.12",
+        "mail.uvsq.fr 193.51.31.1"));
+
+    // Two lines gone, two new lines
+    assertEquals(4, reloader.reload());
+    assertEquals("193.51.31.91", ip(dns.getItem(new NomMachine("www.uvsq.fr"))));
+    assertNull(dns.getItem(new AdresseIP("193.51.31.90")));
+    assertNull(dns.getItem(new NomMachine("poste.uvsq.fr")));
+    assertEquals("193.51.31.1", ip(dns.getItem(new NomMachine("mail.uvsq.fr"))));
+    assertEquals(3, dns.countItems("uvsq.fr"));
+    assertEquals(0, reloader.reload());
+  }
+
+  @Test
+  public void testLineMovingAnAddressToAnotherName() throws Exception {
+    Files.write(database, List.of(
+        "web.uvsq.fr 193.51.31.90",
+        "ecampus.uvsq.fr 193.51.25.12",
+        "poste.uvsq.fr 193.51.31.154"));
+
+    reloader.reload();
+    assertEquals("web.uvsq.fr",
+        dns.getItem(new AdresseIP("193.51.31.90")).getNomMachine().getNomQualifie());
+    assertNull(dns.getItem(new NomMachine("www.uvsq.fr")));
+    assertEquals(List.of("193.51.25.12", "193.51.31.90", "193.51.31.154"),
+        dns.getItemsSortedByIp("uvsq.fr").stream().map(DnsReloaderTest::ip).toList());
+  }
+
+  @Test
+  public void testVanishedLineKeepsAnAddressBoundSince() throws Exception {
+    reloader.close();
+    dns = new Dns(new JournalStorage(database, 1 << 20));
+    reloader = new DnsReloader(dns, database, 60_000);
+    // Journaled only, the database file still binds the address to www
+    dns.removeItem(new NomMachine("www.uvsq.fr"));
+    dns.addItem(new AdresseIP("193.51.31.90"), new NomMachine("web.uvsq.fr"));
+
+    // A later rewrite of the file, by a compaction for instance, drops the www line
+    Files.write(database, List.of(
+        "web.uvsq.fr 193.51.31.90",
+        "ecampus.uvsq.fr 193.51.25.12",
+        "poste.uvsq.fr 193.51.31.154"));
+    reloader.reload();
+    assertEquals("web.uvsq.fr",
+        dns.getItem(new AdresseIP("193.51.31.90")).getNomMachine().getNomQualifie());
+    assertEquals(3, dns.countItems("uvsq.fr"));
+    dns.close();
+  }
+
+  @Test
+  public void testOwnRewriteChangesNothing() throws Exception {
+    dns.addItem(new AdresseIP("193.51.31.1"), new NomMachine("mail.uvsq.fr"));
+
+    reloader.reload();
+    assertEquals(4, dns.countItems("uvsq.fr"));
+    assertEquals("193.51.31.1", ip(dns.getItem(new NomMachine("mail.uvsq.fr"))));
+    assertEquals(0, reloader.reload());
+  }
+
+  @Test
+  public void testDeletedFileKeepsTheEntries() throws Exception {
+    Files.delete(database);
+
+    assertEquals(0, reloader.reload());
+    assertEquals(3, dns.countItems("uvsq.fr"));
+  }
+
+  @Test
+  public void testWatchReloadsInBackground() throws Exception {
+    reloader.close();
+    reloader = new DnsReloader(dns, database, 20);
+    Files.write(database, List.of(
+        "www.uvsq.fr 193.51.31.90",
+        "ecampus.uvsq.fr 193.51.25.12",
+        "poste.uvsq.fr 193.51.31.154",
+        "mail.uvsq.fr 193.51.31.1"));
+
+    long deadline = System.currentTimeMillis() + 20_000;
+    while (dns.getItem(new NomMachine("mail.uvsq.fr")) == null
+        && System.currentTimeMillis() < deadline) {
+      Thread.sleep(20);
+    }
+    assertEquals("193.51.31.1", ip(dns.getItem(new NomMachine("mail.uvsq.fr"))));
+  }
+}
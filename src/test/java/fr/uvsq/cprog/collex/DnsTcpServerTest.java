@@ -0,0 +1,162 @@
+package fr.uvsq.cprog.collex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for DnsTcpServer class.
+ */
+public class DnsTcpServerTest {
+  private Path tempFile;
+  private Dns dns;
+  private DnsTcpServer server;
+
+  /**
+   * Setup method to start a server on the loopback interface before each test.
+   *
+   * @throws Exception if setup fails
+   */
+  @Before
+  public void setUp() throws Exception {
+    tempFile = Files.createTempFile("dns-test", ".txt");
+    Files.write(tempFile, List.of(
+        "www.uvsq.fr 193.51.31.90",
+        "ecampus.uvsq.fr 193.51.25.12"
+    ));
+    dns = new Dns(tempFile);
+    server = DnsTcpServer.onLoopback(dns, 0);
+    server.start();
+  }
+
+  /**
+   * Teardown method to stop the server and delete temporary file after each test.
+   *
+   * @throws Exception if cleanup fails
+   */
+  @After
+  public void tearDown() throws Exception {
+    server.close();
+    Files.deleteIfExists(tempFile);
+  }
+
+  /**
+   * Client connection reading one response per command.
+   */
+  private class Client implements AutoCloseable {
+    private final Socket socket;
+    private final BufferedReader in;
+    private final PrintWriter out;
+
+    Client() throws IOException {
+      InetSocketAddress address = server.getLocalAddress();
+      socket = new Socket(address.getAddress(), address.getPort());
+      in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+          StandardCharsets.UTF_8));
+      out = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+    }
+
+    String send(String command) throws IOException {
+      out.println(command);
+      return response();
+    }
+
+    String response() throws IOException {
+      StringBuilder response = new StringBuilder();
+      String line;
+      while ((line = in.readLine()) != null && !line.isEmpty()) {
+        response.append(response.length() == 0 ? "" : "\n").append(line);
+      }
+      return response.toString();
+    }
+
+    @Override
+    public void close() throws IOException {
+      socket.close();
+    }
+  }
+
+  @Test
+  public void testLookups() throws IOException {
+    try (Client client = new Client()) {
+      assertEquals("193.51.31.90", client.send("www.uvsq.fr"));
+      assertEquals("ecampus.uvsq.fr", client.send("193.51.25.12"));
+      assertEquals("193.51.25.12 ecampus.uvsq.fr\n193.51.31.90 www.uvsq.fr",
+          client.send("ls uvsq.fr"));
+    }
+  }
+
+  @Test
+  public void testErrorsAndBlankLinesGetAResponse() throws IOException {
+    try (Client client = new Client()) {
+      assertEquals("ERREUR : Commande non reconnue", client.send("inconnu"));
+      assertEquals("", client.send(""));
+      assertTrue(client.send("import /etc/passwd").startsWith("ERREUR"));
+      assertEquals("193.51.31.90", client.send("www.uvsq.fr"));
+    }
+  }
+
+  @Test
+  public void testPipelinedCommands() throws IOException {
+    try (Client client = new Client()) {
+      client.out.print("www.uvsq.fr\n193.51.25.12\nls -a uvsq.fr\n");
+      client.out.flush();
+
+      assertEquals("193.51.31.90", client.response());
+      assertEquals("ecampus.uvsq.fr", client.response());
+      assertEquals("193.51.25.12 ecampus.uvsq.fr\n193.51.31.90 www.uvsq.fr", client.response());
+    }
+  }
+
+  @Test
+  public void testQuitClosesTheConnection() throws IOException {
+    try (Client client = new Client()) {
+      client.out.println("quit");
+
+      assertNull(client.in.readLine());
+    }
+  }
+
+  @Test
+  public void testClientsShareTheDatabase() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<String>> results = new ArrayList<>();
+      for (int i = 0; i < 32; i++) {
+        int n = i;
+        results.add(executor.submit(() -> {
+          try (Client client = new Client()) {
+            return client.send("add 10.0.0." + n + " m" + n + ".tcp.fr");
+          }
+        }));
+      }
+      for (Future<String> result : results) {
+        assertTrue(result.get().startsWith("Entr"));
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    assertEquals(32, dns.getItems("tcp.fr").size());
+    assertNotNull(dns.getItem(new NomMachine("m7.tcp.fr")));
+  }
+}
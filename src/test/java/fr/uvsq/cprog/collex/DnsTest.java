@@ -1,6 +1,8 @@
 package fr.uvsq.cprog.collex;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThrows;
@@ -9,7 +11,10 @@ import static org.junit.Assert.assertTrue;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -114,10 +119,10 @@ public class DnsTest {
     List<DnsItem> items = dns.getItemsSortedByIp("uvsq.fr");
 
     assertEquals(3, items.size());
-    // Should be sorted by IP address
+    // Should be sorted by numeric IP address
     assertEquals("193.51.25.12", items.get(0).getAdresseIp().getAdresse());
-    assertEquals("193.51.31.154", items.get(1).getAdresseIp().getAdresse());
-    assertEquals("193.51.31.90", items.get(2).getAdresseIp().getAdresse());
+    assertEquals("193.51.31.90", items.get(1).getAdresseIp().getAdresse());
+    assertEquals("193.51.31.154", items.get(2).getAdresseIp().getAdresse());
   }
 
   @Test
@@ -133,6 +138,11 @@ public class DnsTest {
     assertEquals(newIp, item.getAdresseIp());
     assertEquals(newNom, item.getNomMachine());
 
+    // Verify the domain index was updated
+    List<DnsItem> items = dns.getItems("uvsq.fr");
+    assertEquals(4, items.size());
+    assertEquals("pikachu", items.get(1).getNomMachine().getNomMachine());
+
     // Verify file was updated
     List<String> lines = Files.readAllLines(tempFile);
     assertTrue(lines.stream().anyMatch(line -> line.contains("pikachu.uvsq.fr")));
@@ -197,4 +207,407 @@ public class DnsTest {
       Files.deleteIfExists(commentFile);
     }
   }
+
+  @Test
+  public void testGetItemsOnlyMatchesExactDomain() throws DnsException {
+    dns.addItem(new AdresseIP("10.0.0.1"), new NomMachine("serveur.exemple.fr"));
+    dns.addItem(new AdresseIP("10.0.0.2"), new NomMachine("www.info.uvsq.fr"));
+
+    assertEquals(3, dns.getItems("uvsq.fr").size());
+    assertEquals(1, dns.getItems("exemple.fr").size());
+    assertEquals(1, dns.getItemsSortedByIp("info.uvsq.fr").size());
+  }
+
+  @Test
+  public void testLoadDatabaseWithDuplicates() throws DnsException, IOException {
+    Path duplicateFile = Files.createTempFile("dns-duplicate", ".txt");
+    try {
+      List<String> lines = List.of(
+          "www.domain.fr 10.0.0.1",
+          "www.domain.fr 10.0.0.2",
+          "autre.domain.fr 10.0.0.1"
+      );
+      Files.write(duplicateFile, lines);
+
+      Dns duplicateDns = new Dns(duplicateFile);
+
+      // A repeated name gets several addresses, a repeated address keeps its first name
+      assertEquals(2, duplicateDns.getItems("domain.fr").size());
+      assertEquals("10.0.0.1",
+          duplicateDns.getItem(new NomMachine("www.domain.fr")).getAdresseIp().getAdresse());
+      assertEquals("www.domain.fr",
+          duplicateDns.getItem(new AdresseIP("10.0.0.2")).getNomMachine().getNomQualifie());
+      assertNull(duplicateDns.getItem(new NomMachine("autre.domain.fr")));
+    } finally {
+      Files.deleteIfExists(duplicateFile);
+    }
+  }
+
+  @Test
+  public void testConcurrentReadsDuringWrites() throws Exception {
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    Thread[] readers = new Thread[4];
+    Thread writer = new Thread(() -> {
+      try {
+        for (int i = 0; i < 500; i++) {
+          dns.addItem(new AdresseIP(0x0A000000 + i), new NomMachine("m" + i + ".charge.fr"));
+        }
+      } catch (DnsException e) {
+        failure.set(e);
+      }
+    });
+    for (int t = 0; t < readers.length; t++) {
+      readers[t] = new Thread(() -> {
+        try {
+          while (writer.isAlive()) {
+            for (int i = 0; i < 500; i++) {
+              DnsItem item = dns.getItem(new AdresseIP(0x0A000000 + i));
+              if (item != null && !item.getNomMachine().getNomQualifie().equals(
+                  "m" + i + ".charge.fr")) {
+                throw new AssertionError("Entrée incohérente : " + item);
+              }
+            }
+            List<DnsItem> items = dns.getItemsSortedByIp("charge.fr");
+            for (int i = 1; i < items.size(); i++) {
+              assertTrue(items.get(i - 1).getAdresseIp().compareTo(items.get(i).getAdresseIp())
+                  < 0);
+            }
+          }
+        } catch (Throwable e) {
+          failure.set(e);
+        }
+      });
+    }
+
+    writer.start();
+    for (Thread reader : readers) {
+      reader.start();
+    }
+    writer.join();
+    for (Thread reader : readers) {
+      reader.join();
+    }
+
+    assertNull(failure.get());
+    assertEquals(500, dns.getItems("charge.fr").size());
+    assertNotNull(dns.getItem(new NomMachine("m499.charge.fr")));
+  }
+
+  @Test
+  public void testReadersWaitForUpdates() throws Exception {
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    NomMachine www = new NomMachine("www.uvsq.fr");
+    Thread writer = new Thread(() -> {
+      try {
+        for (int i = 0; i < 300; i++) {
+          dns.updateItem(www, new AdresseIP(i % 2 == 0 ? "10.0.0.1" : "10.0.0.2"));
+        }
+      } catch (DnsException e) {
+        failure.set(e);
+      }
+    });
+    Thread[] readers = new Thread[4];
+    for (int t = 0; t < readers.length; t++) {
+      readers[t] = new Thread(() -> {
+        try {
+          while (writer.isAlive()) {
+            // A reader never sees the name between the removal of its address and its new one
+            assertNotNull(dns.getItem(www));
+            assertEquals(3, dns.countItems("uvsq.fr"));
+            assertEquals(3, dns.getItems("uvsq.fr").size());
+          }
+        } catch (Throwable e) {
+          failure.set(e);
+        }
+      });
+    }
+
+    writer.start();
+    for (Thread reader : readers) {
+      reader.start();
+    }
+    writer.join();
+    for (Thread reader : readers) {
+      reader.join();
+    }
+
+    assertNull(failure.get());
+    assertEquals("10.0.0.2", dns.getItem(www).getAdresseIp().toString());
+  }
+
+  @Test
+  public void testAddItems() throws DnsException, IOException {
+    dns.addItems(List.of(
+        new DnsItem(new AdresseIP("193.51.25.24"), new NomMachine("pikachu.uvsq.fr")),
+        new DnsItem(new AdresseIP("10.0.0.1"), new NomMachine("serveur.exemple.fr"))
+    ));
+
+    assertEquals(4, dns.getItems("uvsq.fr").size());
+    assertNotNull(dns.getItem(new AdresseIP("10.0.0.1")));
+    List<String> lines = Files.readAllLines(tempFile);
+    assertEquals(5, lines.size());
+    assertTrue(lines.contains("serveur.exemple.fr 10.0.0.1"));
+  }
+
+  @Test
+  public void testAddItemsIsAllOrNothing() throws IOException {
+    List<DnsItem> items = List.of(
+        new DnsItem(new AdresseIP("10.0.0.1"), new NomMachine("serveur.exemple.fr")),
+        new DnsItem(new AdresseIP("193.51.31.90"), new NomMachine("web.uvsq.fr"))
+    );
+
+    DnsException exception = assertThrows(DnsException.class, () -> dns.addItems(items));
+
+    assertTrue(exception.getMessage().contains("193.51.31.90"));
+    assertNull(dns.getItem(new AdresseIP("10.0.0.1")));
+    assertTrue(dns.getItems("exemple.fr").isEmpty());
+    assertEquals(3, Files.readAllLines(tempFile).size());
+  }
+
+  @Test
+  public void testAddItemsRejectsRepeatedEntries() {
+    List<DnsItem> items = List.of(
+        new DnsItem(new AdresseIP("10.0.0.1"), new NomMachine("a.exemple.fr")),
+        new DnsItem(new AdresseIP("10.0.0.1"), new NomMachine("b.exemple.fr"))
+    );
+
+    DnsException exception = assertThrows(DnsException.class, () -> dns.addItems(items));
+
+    assertTrue(exception.getMessage().contains("plusieurs fois"));
+    assertNull(dns.getItem(new NomMachine("a.exemple.fr")));
+  }
+
+  @Test
+  public void testAddItemsAcceptsSeveralAddressesOfAName() throws DnsException {
+    dns.addItems(List.of(
+        new DnsItem(new AdresseIP("10.0.0.1"), new NomMachine("serveur.exemple.fr")),
+        new DnsItem(new AdresseIP("10.0.0.2"), new NomMachine("serveur.exemple.fr")),
+        new DnsItem(new AdresseIP("10.0.0.3"), new NomMachine("www.uvsq.fr"))
+    ));
+
+    assertEquals(2, dns.getAddresses(new NomMachine("serveur.exemple.fr"), false).length);
+    assertEquals(2, dns.getAddresses(new NomMachine("www.uvsq.fr"), false).length);
+  }
+
+  @Test
+  public void testAddItemsIsUndoneWhenSavingFails() throws DnsException {
+    Dns failing = new Dns(new DnsStorage() {
+      @Override
+      public void load(Consumer<DnsItem> sink, Consumer<DnsItem> removals) {
+        sink.accept(new DnsItem(new AdresseIP("193.51.31.90"), new NomMachine("www.uvsq.fr")));
+      }
+
+      @Override
+      public void saveChanges(List<DnsItem> removed, List<DnsItem> added,
+          Collection<DnsItem> all) throws DnsException {
+        throw new DnsException("Disque plein");
+      }
+
+      @Override
+      public void sync() {
+      }
+
+      @Override
+      public void close() {
+      }
+    });
+    assertEquals(1, failing.getItems("uvsq.fr").size());
+
+    assertThrows(DnsException.class, () -> failing.addItems(List.of(
+        new DnsItem(new AdresseIP("10.0.0.1"), new NomMachine("serveur.uvsq.fr")),
+        new DnsItem(new AdresseIP("10.0.0.2"), new NomMachine("www.uvsq.fr")))));
+
+    assertNull(failing.getItem(new AdresseIP("10.0.0.1")));
+    assertNull(failing.getItem(new NomMachine("serveur.uvsq.fr")));
+    assertEquals(1, failing.getAddresses(new NomMachine("www.uvsq.fr"), false).length);
+    assertEquals(1, failing.getItems("uvsq.fr").size());
+  }
+
+  @Test
+  public void testLookupsIgnoreCase() {
+    DnsItem item = dns.getItem(new NomMachine("WWW.UVSQ.FR"));
+    assertNotNull(item);
+    assertEquals("193.51.31.90", item.getAdresseIp().getAdresse());
+    assertEquals(dns.getItems("uvsq.fr").size(), dns.getItems("UVSQ.Fr").size());
+    assertThrows(DnsException.class,
+        () -> dns.addItem(new AdresseIP("10.0.0.1"), new NomMachine("Www.Uvsq.Fr")));
+  }
+
+  @Test
+  public void testGetItemsInNetwork() throws DnsException {
+    dns.addItem(new AdresseIP("193.51.31.1"), new NomMachine("routeur.uvsq.fr"));
+
+    List<DnsItem> items = dns.getItemsInNetwork(new AdresseIP("193.51.31.0"), 24);
+    assertEquals(3, items.size());
+    assertEquals("193.51.31.1", items.get(0).getAdresseIp().getAdresse());
+    assertEquals(4, dns.getItemsInNetwork(new AdresseIP("0.0.0.0"), 0).size());
+    assertThrows(IllegalArgumentException.class,
+        () -> dns.getItemsInNetwork(new AdresseIP("0.0.0.0"), 33));
+  }
+
+  @Test
+  public void testLookupsThroughBloomFilters() throws DnsException {
+    Dns filtered = new Dns(new TextFileStorage(tempFile), true);
+    filtered.addItem(new AdresseIP("10.0.0.1"), new NomMachine("nouveau.uvsq.fr"));
+
+    assertNotNull(filtered.getItem(new NomMachine("www.uvsq.fr")));
+    assertNotNull(filtered.getItem(new AdresseIP("10.0.0.1")));
+    assertNotNull(filtered.getItem(new NomMachine("nouveau.uvsq.fr")));
+    for (int i = 0; i < 1000; i++) {
+      assertNull(filtered.getItem(new AdresseIP(0x0B000000 + i)));
+    }
+    BloomFilter ips = filtered.getIpFilter();
+    assertEquals(1000, ips.rejections() + ips.falsePositives());
+    assertTrue(ips.rejections() > 900);
+  }
+
+  @Test
+  public void testRebuildFiltersEnablesThem() {
+    assertNull(dns.getIpFilter());
+
+    dns.rebuildFilters();
+
+    assertEquals(3, dns.getIpFilter().insertions());
+    assertEquals(3, dns.getNameFilter().insertions());
+    assertNotNull(dns.getItem(new AdresseIP("193.51.31.90")));
+  }
+
+  @Test
+  public void testOffHeapStoreMatchesHeapStore() throws DnsException {
+    Dns offHeap = new Dns(new TextFileStorage(tempFile), false, true);
+    for (Dns db : List.of(dns, offHeap)) {
+      db.addItem(new AdresseIP("193.51.40.1"), new NomMachine("www.info.uvsq.fr"));
+    }
+
+    assertEquals(dns.getItems("uvsq.fr").toString(), offHeap.getItems("UVSQ.fr").toString());
+    assertEquals(dns.getItemsSortedByIp("uvsq.fr").toString(),
+        offHeap.getItemsSortedByIp("uvsq.fr").toString());
+    assertEquals(dns.getItemsUnder("uvsq.fr").toString(),
+        offHeap.getItemsUnder("uvsq.fr").toString());
+    assertEquals(4, offHeap.countItemsUnder("fr"));
+    assertEquals(3, offHeap.countItems("uvsq.fr"));
+    assertEquals(dns.getItemsInNetwork(new AdresseIP("193.51.31.0"), 24).toString(),
+        offHeap.getItemsInNetwork(new AdresseIP("193.51.31.0"), 24).toString());
+    assertEquals("www.info.uvsq.fr",
+        offHeap.getItem(new AdresseIP("193.51.40.1")).getNomMachine().getNomQualifie());
+    assertThrows(DnsException.class,
+        () -> offHeap.addItem(new AdresseIP("193.51.40.1"), new NomMachine("autre.uvsq.fr")));
+    assertTrue(offHeap.getStats().render().contains("octets morts"));
+    assertFalse(dns.getStats().render().contains("octets morts"));
+  }
+
+  @Test
+  public void testApplyChangesReplacesConflictingAddresses() throws DnsException {
+    Dns offHeap = new Dns(new TextFileStorage(tempFile), false, true);
+    for (Dns db : List.of(dns, offHeap)) {
+      db.applyChanges(List.of(
+          new DnsItem(new AdresseIP("193.51.25.12"), new NomMachine("ecampus.uvsq.fr")),
+          new DnsItem(new AdresseIP("10.0.0.1"), new NomMachine("absent.uvsq.fr"))), List.of(
+          new DnsItem(new AdresseIP("193.51.31.90"), new NomMachine("www.uvsq.fr")),
+          new DnsItem(new AdresseIP("193.51.31.154"), new NomMachine("web.uvsq.fr")),
+          new DnsItem(new AdresseIP("193.51.31.1"), new NomMachine("www.uvsq.fr"))));
+
+      assertEquals("[193.51.31.154 web.uvsq.fr, 193.51.31.1 www.uvsq.fr, "
+          + "193.51.31.90 www.uvsq.fr]", db.getItems("uvsq.fr").toString());
+      assertNull(db.getItem(new NomMachine("poste.uvsq.fr")));
+      assertEquals(2, db.getAddresses(new NomMachine("www.uvsq.fr"), false).length);
+      assertEquals(3, db.countItemsUnder("fr"));
+      assertEquals(1, db.getItemsInNetwork(new AdresseIP("193.51.31.128"), 25).size());
+    }
+  }
+
+  @Test
+  public void testRemoveItem() throws DnsException, IOException {
+    DnsItem removed = dns.removeItem(new NomMachine("www.uvsq.fr"));
+    assertEquals(new AdresseIP("193.51.31.90"), removed.getAdresseIp());
+    dns.removeItem(new AdresseIP("193.51.25.12"));
+
+    assertNull(dns.getItem(new NomMachine("www.uvsq.fr")));
+    assertNull(dns.getItem(new AdresseIP("193.51.31.90")));
+    assertEquals(1, dns.getItems("uvsq.fr").size());
+    assertEquals(1, dns.countItemsUnder("fr"));
+    assertTrue(dns.getItemsInNetwork(new AdresseIP("193.51.25.0"), 24).isEmpty());
+    assertEquals(List.of("poste.uvsq.fr 193.51.31.154"), Files.readAllLines(tempFile));
+    assertThrows(DnsException.class, () -> dns.removeItem(new NomMachine("www.uvsq.fr")));
+    assertThrows(DnsException.class, () -> dns.removeItem(new AdresseIP("193.51.31.90")));
+  }
+
+  @Test
+  public void testUpdateItem() throws DnsException {
+    Dns offHeap = new Dns(new TextFileStorage(tempFile), false, true);
+    for (Dns db : List.of(dns, offHeap)) {
+      db.updateItem(new NomMachine("www.uvsq.fr"), new AdresseIP("193.51.31.91"));
+      db.updateItem(new NomMachine("poste.uvsq.fr"), new NomMachine("mail.exemple.fr"));
+
+      assertEquals(new NomMachine("www.uvsq.fr"), db.getItem(new AdresseIP("193.51.31.91"))
+          .getNomMachine());
+      assertNull(db.getItem(new AdresseIP("193.51.31.90")));
+      assertEquals(new AdresseIP("193.51.31.154"), db.getItem(new NomMachine("mail.exemple.fr"))
+          .getAdresseIp());
+      assertNull(db.getItem(new NomMachine("poste.uvsq.fr")));
+      assertEquals(2, db.countItems("uvsq.fr"));
+      assertEquals(1, db.countItems("exemple.fr"));
+    }
+
+    assertThrows(DnsException.class,
+        () -> dns.updateItem(new NomMachine("www.uvsq.fr"), new AdresseIP("193.51.25.12")));
+    assertThrows(DnsException.class,
+        () -> dns.updateItem(new NomMachine("www.uvsq.fr"), new NomMachine("ecampus.uvsq.fr")));
+    assertThrows(DnsException.class,
+        () -> dns.updateItem(new NomMachine("absent.uvsq.fr"), new AdresseIP("10.0.0.1")));
+    assertNotNull(dns.getItem(new NomMachine("www.uvsq.fr")));
+  }
+
+  @Test
+  public void testMultipleAddresses() throws DnsException, IOException {
+    NomMachine www = new NomMachine("www.uvsq.fr");
+    int first = new AdresseIP("193.51.31.90").toInt();
+    int second = new AdresseIP("193.51.31.91").toInt();
+    int third = new AdresseIP("193.51.31.92").toInt();
+    dns.addAddress(www, new AdresseIP(second));
+    dns.addAddress(www, new AdresseIP(third));
+
+    assertArrayEquals(new int[] {first, second, third}, dns.getAddresses(www, false));
+    assertArrayEquals(new int[] {first, second, third}, dns.getAddresses(www, true));
+    assertArrayEquals(new int[] {second, third, first}, dns.getAddresses(www, true));
+    assertEquals(www, dns.getItem(new AdresseIP(third)).getNomMachine());
+    assertEquals(3, dns.getItemsInNetwork(new AdresseIP("193.51.31.88"), 29).size());
+    assertTrue(Files.readAllLines(tempFile).contains("www.uvsq.fr 193.51.31.92"));
+    assertThrows(DnsException.class, () -> dns.addAddress(www, new AdresseIP(second)));
+    assertThrows(DnsException.class, () -> dns.addItem(new AdresseIP("10.0.0.1"), www));
+
+    Dns reloaded = new Dns(tempFile);
+    assertArrayEquals(new int[] {first, second, third}, reloaded.getAddresses(www, false));
+    assertEquals(5, reloaded.getItems("uvsq.fr").size());
+  }
+
+  @Test
+  public void testRemoveAndRenameMultipleAddresses() throws DnsException {
+    Dns offHeap = new Dns(new TextFileStorage(tempFile), false, true);
+    for (Dns db : List.of(dns, offHeap)) {
+      NomMachine www = new NomMachine("www.uvsq.fr");
+      int first = new AdresseIP("193.51.31.90").toInt();
+      int second = new AdresseIP("10.0.0.2").toInt();
+      int third = new AdresseIP("10.0.0.3").toInt();
+      db.addAddress(www, new AdresseIP(second));
+      db.addAddress(www, new AdresseIP(third));
+
+      // Removing the first address makes the next one answer lookups by name
+      db.removeItem(new AdresseIP(first));
+      assertEquals(second, db.getItem(www).getAdresseIp().toInt());
+      assertArrayEquals(new int[] {second, third}, db.getAddresses(www, false));
+
+      NomMachine web = new NomMachine("web.uvsq.fr");
+      db.updateItem(www, web);
+      assertNull(db.getItem(www));
+      assertArrayEquals(new int[] {second, third}, db.getAddresses(web, false));
+      assertEquals(web, db.getItem(new AdresseIP(third)).getNomMachine());
+
+      db.removeItem(web);
+      assertNull(db.getItem(new AdresseIP(second)));
+      assertNull(db.getItem(new AdresseIP(third)));
+      assertEquals(0, db.getAddresses(web, false).length);
+      db.addItem(new AdresseIP(first), www);
+    }
+  }
 }
@@ -1,16 +1,22 @@
 package fr.uvsq.cprog.collex;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.BufferedReader;
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Collection;
 import java.util.List;
 import java.util.Scanner;
+import java.util.function.Consumer;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -108,6 +114,16 @@ public class DnsTuiTest {
     assertTrue(cmd instanceof AjoutCommande);
   }
 
+  @Test
+  public void testNextCommandeAddAsync() {
+    Scanner scanner = new Scanner("add -async 1.2.3.4 test.domain.fr\nadd -x 1.2.3.4 a.fr");
+    DnsTUI tui = new DnsTUI(scanner, dns);
+
+    assertTrue(tui.nextCommande() instanceof AjoutCommande);
+    assertNull(tui.nextCommande());
+    assertTrue(outputStream.toString().contains("Usage"));
+  }
+
   @Test
   public void testNextCommandeQuit() {
     Scanner scanner = new Scanner("quit");
@@ -194,4 +210,211 @@ public class DnsTuiTest {
     Commande cmd = tui.nextCommande();
     assertNull(cmd);
   }
+
+  @Test
+  public void testNextCommandeImport() {
+    Scanner scanner = new Scanner("import nouvelles-entrees.txt");
+    DnsTUI tui = new DnsTUI(scanner, dns);
+
+    Commande cmd = tui.nextCommande();
+    assertNotNull(cmd);
+    assertTrue(cmd instanceof ImportCommande);
+  }
+
+  @Test
+  public void testNextCommandeInvalidImportUsage() {
+    Scanner scanner = new Scanner("import");
+    DnsTUI tui = new DnsTUI(scanner, dns);
+
+    Commande cmd = tui.nextCommande();
+    assertNull(cmd);
+    assertTrue(outputStream.toString().contains("Usage"));
+  }
+
+  @Test
+  public void testNextCommandeStats() {
+    Scanner scanner = new Scanner("stats");
+    DnsTUI tui = new DnsTUI(scanner, dns);
+
+    Commande cmd = tui.nextCommande();
+    assertTrue(cmd instanceof StatsCommande);
+  }
+
+  @Test
+  public void testNextCommandeLsRecursive() {
+    Scanner scanner = new Scanner("ls -r -a uvsq.fr");
+    DnsTUI tui = new DnsTUI(scanner, dns);
+
+    Commande cmd = tui.nextCommande();
+    assertTrue(cmd instanceof ListeDomaineCommande);
+  }
+
+  @Test
+  public void testNextCommandeLsPage() {
+    Scanner scanner = new Scanner("ls --limit 1 uvsq.fr\nls -a --after www.uvsq.fr --limit 5 uvsq.fr\n"
+        + "ls --limit 0 uvsq.fr\nls --limit uvsq.fr");
+    DnsTUI tui = new DnsTUI(scanner, dns);
+
+    Commande page = tui.nextCommande();
+    assertTrue(page instanceof ListeDomaineCommande);
+    tui.affiche(page.execute());
+    assertTrue(tui.nextCommande() instanceof ListeDomaineCommande);
+    assertNull(tui.nextCommande());
+    assertNull(tui.nextCommande());
+    String output = outputStream.toString();
+    assertTrue(output.contains("193.51.25.12 ecampus.uvsq.fr"));
+    assertTrue(output.contains("-- suite : --after ecampus.uvsq.fr@193.51.25.12"));
+    assertTrue(output.contains("Usage"));
+  }
+
+  @Test
+  public void testNextCommandeLsUnknownOption() {
+    Scanner scanner = new Scanner("ls -x uvsq.fr");
+    DnsTUI tui = new DnsTUI(scanner, dns);
+
+    assertNull(tui.nextCommande());
+    assertTrue(outputStream.toString().contains("Usage"));
+  }
+
+  @Test
+  public void testNextCommandeCount() {
+    Scanner scanner = new Scanner("count fr");
+    DnsTUI tui = new DnsTUI(scanner, dns);
+
+    Commande cmd = tui.nextCommande();
+    assertTrue(cmd instanceof CompteDomaineCommande);
+  }
+
+  @Test
+  public void testNextCommandeLsNet() {
+    Scanner scanner = new Scanner("ls -net 193.51.0.0/16");
+    DnsTUI tui = new DnsTUI(scanner, dns);
+
+    Commande cmd = tui.nextCommande();
+    assertTrue(cmd instanceof ListeReseauCommande);
+  }
+
+  @Test
+  public void testNextCommandeLsNetInvalid() {
+    Scanner scanner = new Scanner("ls -net 193.51.0.0/40\nls -net 193.51.0.0\nls -net 1.2.3.4/x");
+    DnsTUI tui = new DnsTUI(scanner, dns);
+
+    assertNull(tui.nextCommande());
+    assertNull(tui.nextCommande());
+    assertNull(tui.nextCommande());
+    String output = outputStream.toString();
+    assertTrue(output.contains("invalide : 40"));
+    assertTrue(output.contains("seau invalide : 193.51.0.0"));
+    assertTrue(output.contains("invalide : x"));
+  }
+
+  @Test
+  public void testNextCommandeBloom() {
+    Scanner scanner = new Scanner("bloom\nbloom rebuild\nbloom vider");
+    DnsTUI tui = new DnsTUI(scanner, dns);
+
+    assertTrue(tui.nextCommande() instanceof BloomCommande);
+    assertTrue(tui.nextCommande() instanceof BloomCommande);
+    assertNull(tui.nextCommande());
+    assertTrue(outputStream.toString().contains("Usage"));
+  }
+
+  @Test
+  public void testTokenize() {
+    assertArrayEquals(new String[] {"ls", "-a", "uvsq.fr"},
+        DnsTUI.tokenize("\t ls  -a\tuvsq.fr  "));
+    assertArrayEquals(new String[0], DnsTUI.tokenize(" \t "));
+  }
+
+  @Test
+  public void testParseClassifiesFirstToken() {
+    DnsTUI tui = new DnsTUI(new Scanner(""), dns);
+
+    assertTrue(tui.parse("193.51.31.90") instanceof RechercheIpCommande);
+    assertTrue(tui.parse("  WWW.uvsq.fr ") instanceof RechercheNomCommande);
+    assertTrue(tui.parse("999.1.1.1") instanceof RechercheNomCommande);
+    assertTrue(tui.parse("QUIT") instanceof QuitterCommande);
+    assertNull(tui.parse(".fr"));
+    assertNull(tui.parse("www."));
+    assertTrue(outputStream.toString().contains("Commande non reconnue"));
+  }
+
+  @Test
+  public void testNextCommandeDelAndMv() {
+    Scanner scanner = new Scanner("del www.uvsq.fr\ndel 1.2.3.4\nmv a.uvsq.fr b.uvsq.fr\n"
+        + "mv a.uvsq.fr 1.2.3.4\ndel\nmv a.uvsq.fr");
+    DnsTUI tui = new DnsTUI(scanner, dns);
+
+    assertTrue(tui.nextCommande() instanceof SuppressionCommande);
+    assertTrue(tui.nextCommande() instanceof SuppressionCommande);
+    assertTrue(tui.nextCommande() instanceof ModificationCommande);
+    assertTrue(tui.nextCommande() instanceof ModificationCommande);
+    assertNull(tui.nextCommande());
+    assertNull(tui.nextCommande());
+    assertTrue(outputStream.toString().contains("Usage: del"));
+    assertTrue(outputStream.toString().contains("Usage: mv"));
+  }
+
+  @Test
+  public void testNextCommandeLsAfterEntry() throws DnsException {
+    dns.addAddress(new NomMachine("www.uvsq.fr"), new AdresseIP("193.51.31.91"));
+    Scanner scanner = new Scanner("ls --limit 1 --after ecampus.uvsq.fr@193.51.25.12 uvsq.fr\n"
+        + "ls --after ecampus.uvsq.fr@999.1.1.1 uvsq.fr");
+    DnsTUI tui = new DnsTUI(scanner, dns);
+
+    Commande page = tui.nextCommande();
+    tui.affiche(page.execute());
+    assertNull(tui.nextCommande());
+    String output = outputStream.toString();
+    assertTrue(output.contains("193.51.31.90 www.uvsq.fr"));
+    assertTrue(output.contains("-- suite : --after www.uvsq.fr@193.51.31.90"));
+    assertTrue(output.contains("Usage: ls"));
+  }
+
+  @Test
+  public void testNextCommandeAddMultiple() {
+    Scanner scanner = new Scanner(
+        "add -multi 1.2.3.4 test.domain.fr\nadd -multi 1.2.3.4 a.fr b.fr");
+    DnsTUI tui = new DnsTUI(scanner, dns);
+
+    assertTrue(tui.nextCommande() instanceof AjoutCommande);
+    assertNull(tui.nextCommande());
+    assertTrue(outputStream.toString().contains("Usage: add [-async|-multi]"));
+  }
+
+  @Test
+  public void testFailedAsyncAddIsShownToItsSession() throws DnsException {
+    Dns failing = new Dns(new DnsStorage() {
+      @Override
+      public void load(Consumer<DnsItem> sink, Consumer<DnsItem> removals) {
+      }
+
+      @Override
+      public void saveChanges(List<DnsItem> removed, List<DnsItem> added,
+          Collection<DnsItem> all) throws DnsException {
+        throw new DnsException("Disque plein");
+      }
+
+      @Override
+      public void sync() {
+      }
+
+      @Override
+      public void close() {
+      }
+    });
+    ByteArrayOutputStream session = new ByteArrayOutputStream();
+    DnsTUI tui = new DnsTUI(new BufferedReader(new StringReader(
+        "add -async 10.0.0.1 serveur.uvsq.fr\nstats\n")),
+        new PrintStream(session, true, StandardCharsets.UTF_8), failing);
+
+    tui.affiche(tui.nextCommande().execute());
+    tui.affiche(tui.nextCommande().execute());
+    String output = session.toString(StandardCharsets.UTF_8);
+    assertTrue(output.contains("ERREUR : serveur.uvsq.fr non sauvegardé : "));
+    assertTrue(output.contains("Disque plein"));
+    assertTrue(output.contains("écritures échouées : 1, dernière : serveur.uvsq.fr"));
+    // Nothing goes to the console of the server
+    assertEquals("", outputStream.toString());
+  }
 }
@@ -0,0 +1,211 @@
+package fr.uvsq.cprog.collex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for DnsUdpServer class.
+ */
+public class DnsUdpServerTest {
+  private static final int HEADER_END = 12;
+
+  private Path tempFile;
+  private Dns dns;
+  private DnsUdpServer server;
+
+  /**
+   * Setup method to start a server on the loopback interface before each test.
+   *
+   * @throws Exception if setup fails
+   */
+  @Before
+  public void setUp() throws Exception {
+    tempFile = Files.createTempFile("dns-test", ".txt");
+    Files.write(tempFile, List.of(
+        "www.uvsq.fr 193.51.31.90",
+        "ecampus.uvsq.fr 193.51.25.12"
+    ));
+    dns = new Dns(tempFile);
+    server = DnsUdpServer.onLoopback(dns, 0);
+    server.start(2);
+  }
+
+  /**
+   * Teardown method to stop the server and delete temporary file after each test.
+   *
+   * @throws Exception if cleanup fails
+   */
+  @After
+  public void tearDown() throws Exception {
+    server.close();
+    Files.deleteIfExists(tempFile);
+  }
+
+  /**
+   * Encodes a standard query with one question.
+   */
+  static byte[] query(int id, String name, int type) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    out.writeBytes(new byte[] {(byte) (id >> 8), (byte) id, 0x01, 0x00, 0, 1, 0, 0, 0, 0, 0, 0});
+    for (String label : name.split("\\.")) {
+      out.write(label.length());
+      out.writeBytes(label.getBytes(StandardCharsets.US_ASCII));
+    }
+    out.writeBytes(new byte[] {0, 0, (byte) type, 0, 1});
+    return out.toByteArray();
+  }
+
+  private ByteBuffer exchange(byte[] query) throws Exception {
+    try (DatagramChannel client = DatagramChannel.open()) {
+      client.connect(server.getLocalAddress());
+      client.write(ByteBuffer.wrap(query));
+      ByteBuffer response = ByteBuffer.allocate(DnsUdpServer.MAX_MESSAGE);
+      client.read(response);
+      response.flip();
+      return response;
+    }
+  }
+
+  @Test
+  public void testServerListensOnLoopback() throws Exception {
+    InetSocketAddress address = server.getLocalAddress();
+    assertEquals(true, address.getAddress().isLoopbackAddress());
+  }
+
+  @Test
+  public void testAnswerAQuery() throws Exception {
+    byte[] query = query(0x1234, "www.uvsq.fr", DnsUdpServer.TYPE_A);
+    ByteBuffer response = exchange(query);
+
+    assertEquals(0x1234, response.getShort(0) & 0xFFFF);
+    assertEquals(0x8500, response.getShort(2) & 0xFFFF); // QR, AA, RD, NOERROR
+    assertEquals(1, response.getShort(6));
+    int answer = query.length;
+    assertEquals(0xC00C, response.getShort(answer) & 0xFFFF);
+    assertEquals(DnsUdpServer.TYPE_A, response.getShort(answer + 2));
+    assertEquals(4, response.getShort(answer + 10));
+    assertEquals(new AdresseIP("193.51.31.90").toInt(), response.getInt(answer + 12));
+  }
+
+  @Test
+  public void testAnswerAQueryIgnoresCase() throws Exception {
+    ByteBuffer response = exchange(query(1, "ECampus.UVSQ.fr", DnsUdpServer.TYPE_A));
+
+    assertEquals(0, response.getShort(2) & 0x000F);
+    assertEquals(1, response.getShort(6));
+  }
+
+  @Test
+  public void testAnswerPtrQuery() throws Exception {
+    byte[] query = query(7, "90.31.51.193.in-addr.arpa", DnsUdpServer.TYPE_PTR);
+    ByteBuffer response = exchange(query);
+
+    assertEquals(1, response.getShort(6));
+    int rdata = query.length + 12;
+    int length = response.getShort(rdata - 2);
+    byte[] name = new byte[length];
+    response.get(rdata, name);
+    assertEquals("\u0003www\u0004uvsq\u0002fr\u0000", new String(name, StandardCharsets.US_ASCII));
+  }
+
+  @Test
+  public void testUnknownNameIsNxdomain() throws Exception {
+    ByteBuffer response = exchange(query(2, "inconnu.uvsq.fr", DnsUdpServer.TYPE_A));
+
+    assertEquals(DnsUdpServer.RCODE_NXDOMAIN, response.getShort(2) & 0x000F);
+    assertEquals(0, response.getShort(6));
+  }
+
+  @Test
+  public void testUnknownAddressIsNxdomain() throws Exception {
+    ByteBuffer response = exchange(query(3, "4.3.2.1.in-addr.arpa", DnsUdpServer.TYPE_PTR));
+
+    assertEquals(DnsUdpServer.RCODE_NXDOMAIN, response.getShort(2) & 0x000F);
+  }
+
+  @Test
+  public void testTruncatedQuestionIsFormerr() throws Exception {
+    byte[] query = query(4, "www.uvsq.fr", DnsUdpServer.TYPE_A);
+    byte[] truncated = new byte[query.length - 3];
+    System.arraycopy(query, 0, truncated, 0, truncated.length);
+    ByteBuffer response = exchange(truncated);
+
+    assertEquals(DnsUdpServer.RCODE_FORMERR, response.getShort(2) & 0x000F);
+  }
+
+  @Test
+  public void testResponsesAreIgnored() {
+    byte[] message = query(5, "www.uvsq.fr", DnsUdpServer.TYPE_A);
+    message[2] |= (byte) 0x80;
+    ByteBuffer response = ByteBuffer.allocate(DnsUdpServer.MAX_MESSAGE);
+
+    assertFalse(server.answer(ByteBuffer.wrap(message), response, new NameProbe()));
+  }
+
+  @Test
+  public void testAnswerAQueryWithEveryAddress() throws Exception {
+    dns.addAddress(new NomMachine("www.uvsq.fr"), new AdresseIP("193.51.31.91"));
+    byte[] query = query(2, "www.uvsq.fr", DnsUdpServer.TYPE_A);
+
+    for (String first : List.of("193.51.31.90", "193.51.31.91")) {
+      ByteBuffer response = exchange(query);
+      assertEquals(2, response.getShort(6));
+      int answer = query.length;
+      assertEquals(new AdresseIP(first).toInt(), response.getInt(answer + 12));
+      assertEquals(0xC00C, response.getShort(answer + 16) & 0xFFFF);
+      assertEquals(4, response.getShort(answer + 26));
+      assertEquals(answer + 32, response.limit());
+    }
+  }
+
+  @Test
+  public void testNameWithTooLongLabelIsServfail() throws Exception {
+    dns.addItem(new AdresseIP("10.0.0.1"), new NomMachine("a".repeat(64) + ".uvsq.fr"));
+    ByteBuffer response = exchange(query(8, "1.0.0.10.in-addr.arpa", DnsUdpServer.TYPE_PTR));
+
+    assertEquals(DnsUdpServer.RCODE_SERVFAIL, response.getShort(2) & 0x000F);
+  }
+
+  @Test
+  public void testEncodableNames() {
+    assertTrue(DnsUdpServer.encodable("www.uvsq.fr"));
+    assertTrue(DnsUdpServer.encodable("a".repeat(63) + ".fr"));
+    assertFalse(DnsUdpServer.encodable("a".repeat(64) + ".fr"));
+    assertFalse(DnsUdpServer.encodable("www..uvsq.fr"));
+    assertFalse(DnsUdpServer.encodable("www.uvsq.fr."));
+    assertFalse(DnsUdpServer.encodable("caf\u00e9.uvsq.fr"));
+  }
+
+  @Test
+  public void testReverseNameWithExtraLabelIsNxdomain() throws Exception {
+    ByteBuffer response = exchange(query(9, "90.31.51.193.in-addr.arpa.fr", DnsUdpServer.TYPE_PTR));
+    assertEquals(DnsUdpServer.RCODE_NXDOMAIN, response.getShort(2) & 0x000F);
+
+    response = exchange(query(10, "90.31.51.193.in-addr", DnsUdpServer.TYPE_PTR));
+    assertEquals(DnsUdpServer.RCODE_NXDOMAIN, response.getShort(2) & 0x000F);
+  }
+
+  @Test
+  public void testQuestionCutAtTheBufferLimitIsFormerr() {
+    byte[] query = query(11, "90.31.51.193.in-addr.arpa", DnsUdpServer.TYPE_PTR);
+    ByteBuffer request = ByteBuffer.wrap(query);
+    request.limit(HEADER_END + 3);
+    ByteBuffer response = ByteBuffer.allocate(DnsUdpServer.MAX_MESSAGE);
+
+    assertTrue(server.answer(request, response, new NameProbe()));
+    assertEquals(DnsUdpServer.RCODE_FORMERR, response.getShort(2) & 0x000F);
+  }
+}
@@ -0,0 +1,322 @@
+package fr.uvsq.cprog.collex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Unit tests for DomainIndex class.
+ */
+public class DomainIndexTest {
+
+  private static DnsItem item(String ip, String nom) {
+    return new DnsItem(new AdresseIP(ip), new NomMachine(nom));
+  }
+
+  @Test
+  public void testIndexedEntriesShareTheirDomain() {
+    DomainIndex index = new DomainIndex();
+    DnsItem www = index.shareDomain(item("193.51.31.90", "www.uvsq.fr"));
+    index.add(www);
+    DnsItem ecampus = index.shareDomain(item("193.51.25.12", "ecampus.UVSQ.fr"));
+
+    assertEquals(item("193.51.25.12", "ecampus.uvsq.fr"), ecampus);
+    assertSame(www.getNomMachine().getNomDomaine(), ecampus.getNomMachine().getNomDomaine());
+    // Lookups of absent domains create nothing
+    assertEquals(0, index.size("inconnu.fr"));
+    assertTrue(index.byName("inconnu.fr").isEmpty());
+  }
+
+  @Test
+  public void testByNameIsSorted() {
+    DomainIndex index = new DomainIndex();
+    index.add(item("193.51.31.90", "www.uvsq.fr"));
+    index.add(item("193.51.25.12", "ecampus.uvsq.fr"));
+    index.add(item("193.51.31.154", "poste.uvsq.fr"));
+
+    List<DnsItem> items = index.byName("uvsq.fr");
+    assertEquals(3, items.size());
+    assertEquals("ecampus.uvsq.fr", items.get(0).getNomMachine().getNomQualifie());
+    assertEquals("poste.uvsq.fr", items.get(1).getNomMachine().getNomQualifie());
+    assertEquals("www.uvsq.fr", items.get(2).getNomMachine().getNomQualifie());
+  }
+
+  @Test
+  public void testByIpIsNumeric() {
+    DomainIndex index = new DomainIndex();
+    index.add(item("193.51.31.154", "poste.uvsq.fr"));
+    index.add(item("193.51.31.90", "www.uvsq.fr"));
+    index.add(item("9.1.1.1", "vieux.uvsq.fr"));
+
+    List<DnsItem> items = index.byIp("uvsq.fr");
+    assertEquals("9.1.1.1", items.get(0).getAdresseIp().getAdresse());
+    assertEquals("193.51.31.90", items.get(1).getAdresseIp().getAdresse());
+    assertEquals("193.51.31.154", items.get(2).getAdresseIp().getAdresse());
+  }
+
+  @Test
+  public void testDomainsAreSeparated() {
+    DomainIndex index = new DomainIndex();
+    index.add(item("10.0.0.1", "www.uvsq.fr"));
+    index.add(item("10.0.0.2", "www.info.uvsq.fr"));
+
+    assertEquals(1, index.byName("uvsq.fr").size());
+    assertEquals(1, index.byIp("info.uvsq.fr").size());
+    assertTrue(index.byName("fr").isEmpty());
+  }
+
+  @Test
+  public void testByNameComparesMachineNamesOnly() {
+    DomainIndex index = new DomainIndex();
+    index.add(item("10.0.0.1", "a-b.uvsq.fr"));
+    index.add(item("10.0.0.2", "a.uvsq.fr"));
+
+    List<DnsItem> items = index.byName("uvsq.fr");
+    assertEquals("a.uvsq.fr", items.get(0).getNomMachine().getNomQualifie());
+    assertEquals("a-b.uvsq.fr", items.get(1).getNomMachine().getNomQualifie());
+  }
+
+  @Test
+  public void testBulkLoadSortsOnceAtTheEnd() {
+    DomainIndex index = new DomainIndex();
+    index.add(item("10.0.0.5", "m.uvsq.fr"));
+    index.beginBulk();
+    index.add(item("10.0.0.9", "z.uvsq.fr"));
+    index.add(item("10.0.0.1", "a.uvsq.fr"));
+    index.add(item("10.0.0.3", "www.exemple.fr"));
+    index.endBulk();
+    index.add(item("10.0.0.2", "b.uvsq.fr"));
+
+    List<DnsItem> byName = index.byName("uvsq.fr");
+    assertEquals(4, byName.size());
+    assertEquals("a.uvsq.fr", byName.get(0).getNomMachine().getNomQualifie());
+    assertEquals("b.uvsq.fr", byName.get(1).getNomMachine().getNomQualifie());
+    assertEquals("m.uvsq.fr", byName.get(2).getNomMachine().getNomQualifie());
+    assertEquals("z.uvsq.fr", byName.get(3).getNomMachine().getNomQualifie());
+    List<DnsItem> byIp = index.byIp("uvsq.fr");
+    assertEquals("10.0.0.1", byIp.get(0).getAdresseIp().getAdresse());
+    assertEquals("10.0.0.9", byIp.get(3).getAdresseIp().getAdresse());
+    assertEquals(1, index.byName("exemple.fr").size());
+  }
+
+  @Test
+  public void testSubtreeListsSubdomainsInLabelOrder() {
+    DomainIndex index = new DomainIndex();
+    index.add(item("10.0.0.1", "www.uvsq.fr"));
+    index.add(item("10.0.0.2", "www.info.uvsq.fr"));
+    index.add(item("10.0.0.3", "a.bio.uvsq.fr"));
+    index.add(item("10.0.0.4", "ecampus.uvsq.fr"));
+    index.add(item("10.0.0.5", "www.exemple.fr"));
+
+    List<DnsItem> items = index.subtree("uvsq.fr");
+    assertEquals(4, items.size());
+    assertEquals("ecampus.uvsq.fr", items.get(0).getNomMachine().getNomQualifie());
+    assertEquals("www.uvsq.fr", items.get(1).getNomMachine().getNomQualifie());
+    assertEquals("a.bio.uvsq.fr", items.get(2).getNomMachine().getNomQualifie());
+    assertEquals("www.info.uvsq.fr", items.get(3).getNomMachine().getNomQualifie());
+    assertEquals(5, index.subtree("fr").size());
+    assertTrue(index.subtree("com").isEmpty());
+  }
+
+  @Test
+  public void testSubtreeSize() {
+    DomainIndex index = new DomainIndex();
+    index.beginBulk();
+    index.add(item("10.0.0.1", "www.uvsq.fr"));
+    index.add(item("10.0.0.2", "www.info.uvsq.fr"));
+    index.endBulk();
+    index.add(item("10.0.0.3", "www.exemple.fr"));
+
+    assertEquals(3, index.subtreeSize("fr"));
+    assertEquals(2, index.subtreeSize("uvsq.fr"));
+    assertEquals(1, index.subtreeSize("info.uvsq.fr"));
+    assertEquals(0, index.subtreeSize("com"));
+  }
+
+  private static List<String> names(Iterator<DnsItem> items) {
+    List<String> names = new ArrayList<>();
+    items.forEachRemaining(item -> names.add(item.getNomMachine().getNomQualifie()));
+    return names;
+  }
+
+  private static DomainIndex tree() {
+    DomainIndex index = new DomainIndex();
+    index.add(item("10.0.0.5", "www.uvsq.fr"));
+    index.add(item("10.0.0.1", "mail.uvsq.fr"));
+    index.add(item("10.0.0.4", "a.math.uvsq.fr"));
+    index.add(item("10.0.0.2", "b.info.uvsq.fr"));
+    index.add(item("10.0.0.3", "a.info.uvsq.fr"));
+    return index;
+  }
+
+  @Test
+  public void testIteratorFollowsListingOrder() {
+    DomainIndex index = tree();
+
+    assertEquals(List.of("mail.uvsq.fr", "www.uvsq.fr"),
+        names(index.iterator("uvsq.fr", false, false, null)));
+    assertEquals(names(index.subtree("uvsq.fr").iterator()),
+        names(index.iterator("uvsq.fr", false, true, null)));
+    assertEquals(List.of("mail.uvsq.fr", "b.info.uvsq.fr", "a.info.uvsq.fr", "a.math.uvsq.fr",
+        "www.uvsq.fr"), names(index.iterator("uvsq.fr", true, true, null)));
+    assertFalse(index.iterator("absent.fr", false, true, null).hasNext());
+  }
+
+  @Test
+  public void testIteratorStartsAfterEntry() {
+    DomainIndex index = tree();
+
+    assertEquals(List.of("www.uvsq.fr"),
+        names(index.iterator("uvsq.fr", false, false, item("10.0.0.1", "mail.uvsq.fr"))));
+    // Pages of a subtree resume in the subdomain of the last entry, then in the next ones
+    assertEquals(List.of("b.info.uvsq.fr", "a.math.uvsq.fr"),
+        names(index.iterator("uvsq.fr", false, true, item("10.0.0.3", "a.info.uvsq.fr"))));
+    assertEquals(List.of("a.math.uvsq.fr", "www.uvsq.fr"),
+        names(index.iterator("uvsq.fr", true, true, item("10.0.0.3", "a.info.uvsq.fr"))));
+    // Sorting by name, the entry only marks a position
+    assertEquals(List.of("www.uvsq.fr"),
+        names(index.iterator("uvsq.fr", false, false, item("0.0.0.0", "supprime.uvsq.fr"))));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testIteratorRejectsEntryOutsideDomain() {
+    tree().iterator("uvsq.fr", false, false, item("10.0.0.3", "a.info.uvsq.fr"));
+  }
+
+  @Test
+  public void testRemove() {
+    DomainIndex index = tree();
+
+    assertTrue(index.remove(item("10.0.0.2", "b.info.uvsq.fr")));
+    assertFalse(index.remove(item("10.0.0.2", "b.info.uvsq.fr")));
+    assertFalse(index.remove(item("10.0.0.9", "www.uvsq.fr")));
+    assertEquals(List.of("a.info.uvsq.fr"), names(index.byIp("info.uvsq.fr").iterator()));
+    assertEquals(4, index.subtreeSize("uvsq.fr"));
+    assertEquals(1, index.subtreeSize("info.uvsq.fr"));
+  }
+
+  @Test
+  public void testRemovedEntriesAreSkippedUntilCompacted() {
+    DomainIndex index = new DomainIndex();
+    for (int i = 0; i < 10; i++) {
+      index.add(item("10.0.0." + (10 - i), "m" + i + ".uvsq.fr"));
+    }
+    index.add(item("10.0.1.1", "a.info.uvsq.fr"));
+    for (int i = 0; i < 4; i++) {
+      assertTrue(index.remove(item("10.0.0." + (10 - i), "m" + i + ".uvsq.fr")));
+    }
+
+    List<String> live = List.of("m4.uvsq.fr", "m5.uvsq.fr", "m6.uvsq.fr", "m7.uvsq.fr",
+        "m8.uvsq.fr", "m9.uvsq.fr");
+    assertEquals(6, index.size("uvsq.fr"));
+    assertEquals(7, index.subtreeSize("uvsq.fr"));
+    assertEquals(live, names(index.byName("uvsq.fr").iterator()));
+    assertEquals(live, names(index.iterator("uvsq.fr", false, false, null)));
+    assertEquals(6, index.byIp("uvsq.fr").size());
+    assertEquals(7, names(index.iterator("uvsq.fr", true, true, null)).size());
+    assertEquals(7, names(index.iterator("uvsq.fr", false, true, null)).size());
+    assertFalse(index.remove(item("10.0.0.10", "m0.uvsq.fr")));
+    // A cursor may start after a removed entry
+    assertEquals(live.subList(2, 6),
+        names(index.iterator("uvsq.fr", false, false, item("10.0.0.5", "m5.uvsq.fr"))));
+
+    // Adding back an address reuses its slot, with another name too
+    index.add(item("10.0.0.10", "autre.uvsq.fr"));
+    assertEquals("autre.uvsq.fr", index.byIp("uvsq.fr").get(6).getNomMachine().getNomQualifie());
+    assertEquals(7, index.size("uvsq.fr"));
+    for (int i = 4; i < 10; i++) {
+      assertTrue(index.remove(item("10.0.0." + (10 - i), "m" + i + ".uvsq.fr")));
+    }
+    assertEquals(List.of("autre.uvsq.fr"), names(index.byName("uvsq.fr").iterator()));
+    assertEquals(List.of("autre.uvsq.fr"), names(index.iterator("uvsq.fr", true, false, null)));
+    assertEquals(2, index.subtreeSize("uvsq.fr"));
+  }
+
+  @Test
+  public void testManyAdditionsAndRenamesKeepBothOrders() {
+    DomainIndex index = new DomainIndex();
+    Random random = new Random(42);
+    List<DnsItem> expected = new ArrayList<>();
+    for (int i = 0; i < 3000; i++) {
+      DnsItem added = item("10.0." + (i / 250) + "." + (i % 250),
+          "m" + random.nextInt(100000) + "-" + i + ".uvsq.fr");
+      index.add(added);
+      expected.add(added);
+      if (i % 3 == 0) {
+        // A rename removes the entry and adds it back under another name
+        DnsItem renamed = expected.remove(random.nextInt(expected.size()));
+        assertTrue(index.remove(renamed));
+        renamed = new DnsItem(renamed.getAdresseIp(),
+            new NomMachine("r" + random.nextInt(100000) + "-" + i + ".uvsq.fr"));
+        index.add(renamed);
+        expected.add(renamed);
+      }
+      if (i % 5 == 0) {
+        assertTrue(index.remove(expected.remove(random.nextInt(expected.size()))));
+      }
+    }
+
+    expected.sort(DomainIndex.BY_NAME);
+    assertEquals(expected, index.byName("uvsq.fr"));
+    assertEquals(expected, list(index.iterator("uvsq.fr", false, true, null)));
+    assertEquals(expected.subList(1001, expected.size()),
+        list(index.iterator("uvsq.fr", false, false, expected.get(1000))));
+    expected.sort(DomainIndex.BY_IP);
+    assertEquals(expected, index.byIp("uvsq.fr"));
+    assertEquals(expected, list(index.iterator("uvsq.fr", true, true, null)));
+    assertEquals(expected.size(), index.size("uvsq.fr"));
+  }
+
+  @Test
+  public void testCursorSurvivesAdditionsInItsDomain() {
+    DomainIndex index = new DomainIndex();
+    for (int i = 0; i < 200; i += 2) {
+      index.add(item("10.0.0." + i, String.format("m%03d.uvsq.fr", i)));
+    }
+    Iterator<DnsItem> cursor = index.iterator("uvsq.fr", false, false, null);
+    List<DnsItem> seen = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      seen.add(cursor.next());
+    }
+    // Additions before and after the cursor shift the entries it has yet to reach
+    for (int i = 1; i < 200; i += 2) {
+      index.add(item("10.0.0." + i, String.format("m%03d.uvsq.fr", i)));
+    }
+    cursor.forEachRemaining(seen::add);
+
+    List<DnsItem> sorted = new ArrayList<>(seen);
+    sorted.sort(DomainIndex.BY_NAME);
+    assertEquals(sorted, seen);
+    assertEquals(seen.size(), new HashSet<>(seen).size());
+    for (int i = 0; i < 200; i += 2) {
+      assertTrue(seen.contains(item("10.0.0." + i, String.format("m%03d.uvsq.fr", i))));
+    }
+  }
+
+  private static List<DnsItem> list(Iterator<DnsItem> items) {
+    List<DnsItem> list = new ArrayList<>();
+    items.forEachRemaining(list::add);
+    return list;
+  }
+
+  @Test
+  public void testRemoveDuringBulk() {
+    DomainIndex index = tree();
+    index.beginBulk();
+    index.add(item("10.0.0.6", "ftp.uvsq.fr"));
+
+    assertTrue(index.remove(item("10.0.0.6", "ftp.uvsq.fr")));
+    assertTrue(index.remove(item("10.0.0.5", "www.uvsq.fr")));
+    index.endBulk();
+    assertEquals(List.of("mail.uvsq.fr"), names(index.byName("uvsq.fr").iterator()));
+    assertEquals(4, index.subtreeSize("uvsq.fr"));
+  }
+}
@@ -0,0 +1,215 @@
+package fr.uvsq.cprog.collex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for GroupCommitStorage class.
+ */
+public class GroupCommitStorageTest {
+  private Path tempDir;
+  private Path databaseFile;
+
+  /**
+   * Setup method to create a database file in a temporary directory before each test.
+   *
+   * @throws Exception if setup fails
+   */
+  @Before
+  public void setUp() throws Exception {
+    tempDir = Files.createTempDirectory("dns-group");
+    databaseFile = tempDir.resolve("dns-database.txt");
+    Files.write(databaseFile, List.of("www.uvsq.fr 193.51.31.90"));
+  }
+
+  /**
+   * Teardown method to delete the temporary directory after each test.
+   *
+   * @throws Exception if cleanup fails
+   */
+  @After
+  public void tearDown() throws Exception {
+    try (Stream<Path> paths = Files.walk(tempDir)) {
+      for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+        Files.delete(path);
+      }
+    }
+  }
+
+  private GroupCommitStorage journal(long windowMillis,
+      GroupCommitStorage.Durability durability) {
+    return new GroupCommitStorage(new JournalStorage(databaseFile, 1 << 20), windowMillis,
+        durability, 20);
+  }
+
+  @Test
+  public void testAddWaitsForTheWrite() throws DnsException, IOException {
+    GroupCommitStorage storage = journal(0, GroupCommitStorage.Durability.BATCH);
+    Dns dns = new Dns(storage);
+
+    dns.addItem(new AdresseIP("193.51.25.24"), new NomMachine("pikachu.uvsq.fr"));
+
+    assertEquals(List.of("+ pikachu.uvsq.fr 193.51.25.24"),
+        Files.readAllLines(tempDir.resolve("dns-database.txt.journal")));
+    assertEquals(1, storage.getBatchCount());
+    assertEquals(1, storage.getSyncCount());
+    dns.close();
+  }
+
+  @Test
+  public void testConcurrentAddsShareWrites() throws Exception {
+    GroupCommitStorage storage = journal(20, GroupCommitStorage.Durability.BATCH);
+    Dns dns = new Dns(storage);
+    int threads = 16;
+    CountDownLatch start = new CountDownLatch(1);
+    List<Thread> writers = new ArrayList<>();
+    List<Throwable> failures = new ArrayList<>();
+    for (int t = 0; t < threads; t++) {
+      int host = t + 1;
+      Thread writer = new Thread(() -> {
+        try {
+          start.await();
+          dns.addItem(new AdresseIP("10.0.0." + host), new NomMachine("m" + host + ".exemple.fr"));
+        } catch (Exception e) {
+          synchronized (failures) {
+            failures.add(e);
+          }
+        }
+      });
+      writer.start();
+      writers.add(writer);
+    }
+    start.countDown();
+    for (Thread writer : writers) {
+      writer.join();
+    }
+
+    assertTrue(failures.toString(), failures.isEmpty());
+    assertTrue(storage.getBatchCount() < threads);
+    assertEquals(threads, Files.readAllLines(tempDir.resolve("dns-database.txt.journal")).size());
+    dns.close();
+  }
+
+  @Test
+  public void testAsyncAddIsVisibleBeforeItIsWritten() throws Exception {
+    GroupCommitStorage storage = journal(0, GroupCommitStorage.Durability.INTERVAL);
+    Dns dns = new Dns(storage);
+
+    CompletableFuture<Void> done =
+        dns.addItemAsync(new AdresseIP("193.51.25.24"), new NomMachine("pikachu.uvsq.fr"));
+
+    assertEquals("193.51.25.24",
+        dns.getItem(new NomMachine("pikachu.uvsq.fr")).getAdresseIp().toString());
+    done.get();
+    assertEquals(1, storage.getBatchCount());
+    dns.close();
+    assertEquals(1, storage.getSyncCount());
+  }
+
+  @Test
+  public void testIntervalModeSyncsPeriodically() throws Exception {
+    GroupCommitStorage storage = journal(0, GroupCommitStorage.Durability.INTERVAL);
+    Dns dns = new Dns(storage);
+    List<CompletableFuture<Void>> futures = new ArrayList<>();
+    for (int i = 1; i <= 50; i++) {
+      futures.add(dns.addItemAsync(new AdresseIP("10.0.1." + i),
+          new NomMachine("h" + i + ".exemple.fr")));
+    }
+    for (CompletableFuture<Void> future : futures) {
+      GroupCommitStorage.await(future);
+    }
+
+    Thread.sleep(100);
+    assertTrue(storage.getSyncCount() >= 1);
+    assertTrue(storage.getSyncCount() <= storage.getBatchCount());
+    dns.close();
+
+    Dns reloaded = new Dns(new JournalStorage(databaseFile, 1 << 20));
+    assertEquals(50, reloaded.getItems("exemple.fr").size());
+    reloaded.close();
+  }
+
+  @Test
+  public void testNoneModeNeverSyncs() throws DnsException {
+    GroupCommitStorage storage = journal(0, GroupCommitStorage.Durability.NONE);
+    Dns dns = new Dns(storage);
+
+    dns.addItem(new AdresseIP("193.51.25.24"), new NomMachine("pikachu.uvsq.fr"));
+
+    assertEquals(1, storage.getBatchCount());
+    assertEquals(0, storage.getSyncCount());
+    dns.close();
+  }
+
+  @Test
+  public void testCloseWritesPendingAdds() throws DnsException {
+    GroupCommitStorage storage = journal(50, GroupCommitStorage.Durability.INTERVAL);
+    Dns dns = new Dns(storage);
+    CompletableFuture<Void> done =
+        dns.addItemAsync(new AdresseIP("193.51.25.24"), new NomMachine("pikachu.uvsq.fr"));
+    dns.close();
+
+    assertTrue(done.isDone());
+    assertFalse(done.isCompletedExceptionally());
+    Dns reloaded = new Dns(new JournalStorage(databaseFile, 1 << 20));
+    assertEquals(2, reloaded.getItems("uvsq.fr").size());
+    reloaded.close();
+  }
+
+  @Test
+  public void testSaveAfterCloseFails() throws DnsException {
+    GroupCommitStorage storage = journal(0, GroupCommitStorage.Durability.BATCH);
+    storage.close();
+
+    try {
+      storage.save(List.of(), List.of());
+      fail("Expected DnsException");
+    } catch (DnsException e) {
+      assertTrue(e.getMessage().contains("ferm"));
+    }
+  }
+
+  @Test
+  public void testWriteFailureIsReported() throws IOException {
+    Files.createDirectory(tempDir.resolve("dns-database.txt.journal"));
+    GroupCommitStorage storage = journal(0, GroupCommitStorage.Durability.BATCH);
+
+    try {
+      storage.save(List.of(new DnsItem(new AdresseIP("10.0.0.1"),
+          new NomMachine("a.exemple.fr"))), List.of());
+      fail("Expected DnsException");
+    } catch (DnsException e) {
+      assertTrue(e.getMessage().contains("journal"));
+    }
+  }
+
+  @Test
+  public void testEntryAddedAndRemovedInOneBatchIsNotWritten() throws Exception {
+    GroupCommitStorage storage = journal(500, GroupCommitStorage.Durability.NONE);
+    Dns dns = new Dns(storage);
+
+    dns.addItemAsync(new AdresseIP("193.51.25.24"), new NomMachine("pikachu.uvsq.fr"));
+    dns.addItemAsync(new AdresseIP("10.0.0.1"), new NomMachine("serveur.exemple.fr"));
+    dns.removeItem(new NomMachine("pikachu.uvsq.fr"));
+
+    assertEquals(1, storage.getBatchCount());
+    assertEquals(List.of("+ serveur.exemple.fr 10.0.0.1"),
+        Files.readAllLines(tempDir.resolve("dns-database.txt.journal")));
+    dns.close();
+  }
+}
@@ -0,0 +1,124 @@
+package fr.uvsq.cprog.collex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * Unit tests for IpIndex class.
+ */
+public class IpIndexTest {
+
+  private static DnsItem item(int ip) {
+    return new DnsItem(new AdresseIP(ip), new NomMachine("m" + ip + ".uvsq.fr"));
+  }
+
+  @Test
+  public void testPutAndGet() {
+    IpIndex index = new IpIndex();
+    DnsItem item = item(0xC1331F5A);
+
+    assertNull(index.put(0xC1331F5A, item));
+    assertSame(item, index.get(0xC1331F5A));
+    assertTrue(index.containsKey(0xC1331F5A));
+    assertEquals(1, index.size());
+  }
+
+  @Test
+  public void testGetMissing() {
+    IpIndex index = new IpIndex();
+    index.put(1, item(1));
+
+    assertNull(index.get(2));
+    assertFalse(index.containsKey(0));
+  }
+
+  @Test
+  public void testPutReplaces() {
+    IpIndex index = new IpIndex();
+    DnsItem first = item(7);
+    DnsItem second = item(7);
+
+    index.put(7, first);
+    assertSame(first, index.put(7, second));
+    assertSame(second, index.get(7));
+    assertEquals(1, index.size());
+  }
+
+  @Test
+  public void testGrowKeepsAllEntries() {
+    IpIndex index = new IpIndex();
+    for (int i = 0; i < 10_000; i++) {
+      index.put(i << 8, item(i << 8));
+    }
+
+    assertEquals(10_000, index.size());
+    for (int i = 0; i < 10_000; i++) {
+      assertEquals(i << 8, index.get(i << 8).getAdresseIp().toInt());
+    }
+    List<DnsItem> all = new ArrayList<>();
+    index.forEach(all::add);
+    assertEquals(10_000, all.size());
+  }
+
+  @Test
+  public void testRemoveKeepsOtherKeysReachable() {
+    IpIndex index = new IpIndex();
+    for (int i = 0; i < 100; i++) {
+      index.put(i, item(i));
+    }
+    for (int i = 0; i < 100; i += 2) {
+      assertEquals(i, index.remove(i).getAdresseIp().toInt());
+    }
+
+    assertNull(index.remove(0));
+    assertEquals(50, index.size());
+    for (int i = 0; i < 100; i++) {
+      assertEquals(i % 2 == 1, index.containsKey(i));
+    }
+    List<DnsItem> all = new ArrayList<>();
+    index.forEach(all::add);
+    assertEquals(50, all.size());
+  }
+
+  @Test
+  public void testPutAfterRemoveReusesTheTable() {
+    IpIndex index = new IpIndex();
+    for (int round = 0; round < 100; round++) {
+      for (int i = 0; i < 100; i++) {
+        index.put(round * 100 + i, item(round * 100 + i));
+      }
+      for (int i = 0; i < 100; i++) {
+        index.remove(round * 100 + i);
+      }
+    }
+
+    assertEquals(0, index.size());
+    index.put(7, item(7));
+    assertSame(index.get(7), index.get(7));
+    assertEquals(1, index.size());
+  }
+
+  @Test
+  public void testIteratorSkipsRemovedEntries() {
+    IpIndex index = new IpIndex();
+    for (int i = 0; i < 100; i++) {
+      index.put(i, item(i));
+    }
+    for (int i = 0; i < 100; i += 3) {
+      index.remove(i);
+    }
+
+    List<DnsItem> items = new ArrayList<>();
+    index.iterator().forEachRemaining(items::add);
+    assertEquals(index.size(), items.size());
+    assertFalse(items.contains(item(0)));
+    assertTrue(items.contains(item(1)));
+  }
+}
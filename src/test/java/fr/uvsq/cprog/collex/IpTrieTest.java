@@ -0,0 +1,103 @@
+package fr.uvsq.cprog.collex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import org.junit.Test;
+
+/**
+ * Unit tests for IpTrie class.
+ */
+public class IpTrieTest {
+
+  private static DnsItem item(int ip) {
+    return new DnsItem(new AdresseIP(ip), new NomMachine("h" + Integer.toHexString(ip) + ".fr"));
+  }
+
+  private static int ip(String adresse) {
+    return new AdresseIP(adresse).toInt();
+  }
+
+  @Test
+  public void testEmpty() {
+    assertTrue(new IpTrie().range(0, 0).isEmpty());
+  }
+
+  @Test
+  public void testRangeIsNumericAndBounded() {
+    IpTrie trie = new IpTrie();
+    for (String adresse : List.of("193.51.31.154", "193.52.0.1", "193.51.25.12",
+        "193.51.31.90", "9.1.1.1", "193.50.255.255")) {
+      trie.put(ip(adresse), item(ip(adresse)));
+    }
+
+    List<DnsItem> items = trie.range(ip("193.51.0.0"), 16);
+    assertEquals(3, items.size());
+    assertEquals("193.51.25.12", items.get(0).getAdresseIp().getAdresse());
+    assertEquals("193.51.31.90", items.get(1).getAdresseIp().getAdresse());
+    assertEquals("193.51.31.154", items.get(2).getAdresseIp().getAdresse());
+    assertEquals(6, trie.range(0, 0).size());
+    assertEquals("9.1.1.1", trie.range(0, 0).get(0).getAdresseIp().getAdresse());
+    assertEquals(1, trie.range(ip("193.51.31.90"), 32).size());
+    assertTrue(trie.range(ip("10.0.0.0"), 8).isEmpty());
+  }
+
+  @Test
+  public void testPutReplacesSameAddress() {
+    IpTrie trie = new IpTrie();
+    DnsItem second = new DnsItem(new AdresseIP("10.0.0.1"), new NomMachine("b.fr"));
+    trie.put(ip("10.0.0.1"), item(ip("10.0.0.1")));
+    trie.put(ip("10.0.0.2"), item(ip("10.0.0.2")));
+    trie.put(ip("10.0.0.1"), second);
+
+    List<DnsItem> items = trie.range(ip("10.0.0.0"), 24);
+    assertEquals(2, items.size());
+    assertEquals(second, items.get(0));
+  }
+
+  @Test
+  public void testMatchesSortedMapOnRandomNetworks() {
+    Random random = new Random(42);
+    IpTrie trie = new IpTrie();
+    TreeMap<Long, DnsItem> expected = new TreeMap<>();
+    for (int i = 0; i < 5000; i++) {
+      int key = random.nextInt() & 0xFF0FFFFF;
+      DnsItem item = item(key);
+      trie.put(key, item);
+      expected.put(Integer.toUnsignedLong(key), item);
+    }
+
+    for (int i = 0; i < 200; i++) {
+      int length = random.nextInt(33);
+      int network = random.nextInt() & (length == 0 ? 0 : -1 << (32 - length));
+      long first = Integer.toUnsignedLong(network);
+      long last = first + (1L << (32 - length)) - 1;
+      List<DnsItem> wanted = new ArrayList<>(expected.subMap(first, true, last, true).values());
+
+      assertEquals(wanted, trie.range(network, length));
+    }
+  }
+
+  @Test
+  public void testRemove() {
+    IpTrie trie = new IpTrie();
+    int[] keys = {ip("10.0.0.1"), ip("10.0.0.2"), ip("10.0.1.1"), ip("192.168.0.1")};
+    for (int key : keys) {
+      trie.put(key, item(key));
+    }
+
+    assertEquals(item(keys[1]), trie.remove(keys[1]));
+    assertNull(trie.remove(keys[1]));
+    assertNull(trie.remove(ip("10.0.0.3")));
+    assertEquals(List.of(item(keys[0]), item(keys[2])), trie.range(ip("10.0.0.0"), 8));
+    trie.remove(keys[0]);
+    trie.remove(keys[2]);
+    trie.remove(keys[3]);
+    assertTrue(trie.range(0, 0).isEmpty());
+  }
+}
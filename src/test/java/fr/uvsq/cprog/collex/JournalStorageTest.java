@@ -0,0 +1,218 @@
+package fr.uvsq.cprog.collex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for JournalStorage class.
+ */
+public class JournalStorageTest {
+  private Path tempDir;
+  private Path databaseFile;
+
+  /**
+   * Setup method to create a database file in a temporary directory before each test.
+   *
+   * @throws Exception if setup fails
+   */
+  @Before
+  public void setUp() throws Exception {
+    tempDir = Files.createTempDirectory("dns-journal");
+    databaseFile = tempDir.resolve("dns-database.txt");
+    Files.write(databaseFile, List.of(
+        "www.uvsq.fr 193.51.31.90",
+        "ecampus.uvsq.fr 193.51.25.12"
+    ));
+  }
+
+  /**
+   * Teardown method to delete the temporary directory after each test.
+   *
+   * @throws Exception if cleanup fails
+   */
+  @After
+  public void tearDown() throws Exception {
+    try (Stream<Path> paths = Files.walk(tempDir)) {
+      for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+        Files.delete(path);
+      }
+    }
+  }
+
+  @Test
+  public void testAddAppendsToJournalOnly() throws DnsException, IOException {
+    JournalStorage storage = new JournalStorage(databaseFile, 1 << 20);
+    Dns dns = new Dns(storage);
+
+    dns.addItem(new AdresseIP("193.51.25.24"), new NomMachine("pikachu.uvsq.fr"));
+    dns.close();
+
+    List<String> snapshot = Files.readAllLines(databaseFile);
+    assertEquals(2, snapshot.size());
+    List<String> journal = Files.readAllLines(storage.getJournalPath());
+    assertEquals(List.of("+ pikachu.uvsq.fr 193.51.25.24"), journal);
+  }
+
+  @Test
+  public void testReplayOnStartup() throws DnsException {
+    Dns dns = new Dns(new JournalStorage(databaseFile, 1 << 20));
+    dns.addItem(new AdresseIP("193.51.25.24"), new NomMachine("pikachu.uvsq.fr"));
+    dns.addItem(new AdresseIP("10.0.0.1"), new NomMachine("serveur.exemple.fr"));
+    dns.close();
+
+    Dns reloaded = new Dns(new JournalStorage(databaseFile, 1 << 20));
+    assertNotNull(reloaded.getItem(new NomMachine("pikachu.uvsq.fr")));
+    assertNotNull(reloaded.getItem(new AdresseIP("10.0.0.1")));
+    assertEquals(3, reloaded.getItems("uvsq.fr").size());
+    reloaded.close();
+  }
+
+  @Test
+  public void testReplaySkipsTruncatedRecord() throws DnsException, IOException {
+    JournalStorage storage = new JournalStorage(databaseFile, 1 << 20);
+    Files.write(storage.getJournalPath(), List.of(
+        "+ pikachu.uvsq.fr 193.51.25.24",
+        "+ coupe.uvsq"
+    ));
+
+    Dns dns = new Dns(storage);
+    assertNotNull(dns.getItem(new NomMachine("pikachu.uvsq.fr")));
+    assertEquals(3, dns.getItems("uvsq.fr").size());
+    dns.close();
+  }
+
+  @Test
+  public void testCompactionMergesJournalIntoSnapshot() throws DnsException, IOException {
+    JournalStorage storage = new JournalStorage(databaseFile, 64);
+    Dns dns = new Dns(storage);
+    for (int i = 1; i <= 10; i++) {
+      dns.addItem(new AdresseIP("10.0.0." + i), new NomMachine("m" + i + ".exemple.fr"));
+    }
+    dns.close();
+
+    List<String> snapshot = Files.readAllLines(databaseFile);
+    assertTrue(snapshot.size() > 2);
+    assertTrue(snapshot.contains("m1.exemple.fr 10.0.0.1"));
+    assertFalse(Files.exists(tempDir.resolve("dns-database.txt.journal.compacting")));
+
+    Dns reloaded = new Dns(new JournalStorage(databaseFile, 64));
+    assertEquals(10, reloaded.getItems("exemple.fr").size());
+    assertEquals(2, reloaded.getItems("uvsq.fr").size());
+    reloaded.close();
+  }
+
+  @Test
+  public void testRemovalsAndUpdatesAreJournaled() throws DnsException, IOException {
+    JournalStorage storage = new JournalStorage(databaseFile, 1 << 20);
+    Dns dns = new Dns(storage);
+    dns.addItem(new AdresseIP("193.51.25.24"), new NomMachine("pikachu.uvsq.fr"));
+    dns.removeItem(new NomMachine("pikachu.uvsq.fr"));
+    dns.updateItem(new NomMachine("www.uvsq.fr"), new NomMachine("web.uvsq.fr"));
+    dns.close();
+
+    assertEquals(List.of("+ pikachu.uvsq.fr 193.51.25.24", "- pikachu.uvsq.fr 193.51.25.24",
+        "- www.uvsq.fr 193.51.31.90", "+ web.uvsq.fr 193.51.31.90"),
+        Files.readAllLines(storage.getJournalPath()));
+    assertEquals(2, Files.readAllLines(databaseFile).size());
+
+    Dns reloaded = new Dns(new JournalStorage(databaseFile, 1 << 20));
+    assertNull(reloaded.getItem(new NomMachine("pikachu.uvsq.fr")));
+    assertNull(reloaded.getItem(new NomMachine("www.uvsq.fr")));
+    assertEquals(new NomMachine("web.uvsq.fr"),
+        reloaded.getItem(new AdresseIP("193.51.31.90")).getNomMachine());
+    assertEquals(2, reloaded.getItems("uvsq.fr").size());
+    reloaded.close();
+  }
+
+  @Test
+  public void testCompactionDropsRemovedEntries() throws DnsException, IOException {
+    Dns dns = new Dns(new JournalStorage(databaseFile, 64));
+    for (int i = 1; i <= 10; i++) {
+      dns.addItem(new AdresseIP("10.0.0." + i), new NomMachine("m" + i + ".exemple.fr"));
+    }
+    for (int i = 1; i <= 10; i += 2) {
+      dns.removeItem(new AdresseIP("10.0.0." + i));
+    }
+    dns.close();
+
+    Dns reloaded = new Dns(new JournalStorage(databaseFile, 64));
+    assertEquals(5, reloaded.getItems("exemple.fr").size());
+    assertNull(reloaded.getItem(new NomMachine("m9.exemple.fr")));
+    reloaded.close();
+  }
+
+  @Test
+  public void testCompactionKeepsEveryAddressOfAName() throws DnsException, IOException {
+    Dns dns = new Dns(new JournalStorage(databaseFile, 64));
+    for (int i = 1; i <= 10; i++) {
+      dns.addAddress(new NomMachine("www.uvsq.fr"), new AdresseIP("10.0.0." + i));
+    }
+    dns.removeItem(new AdresseIP("10.0.0.5"));
+    dns.close();
+
+    assertFalse(Files.exists(tempDir.resolve("dns-database.txt.journal.compacting")));
+    List<String> snapshot = Files.readAllLines(databaseFile);
+    // The original address and those merged by the compactions before the last records
+    assertTrue(snapshot.stream().filter(line -> line.startsWith("www.uvsq.fr ")).count() > 2);
+    assertFalse(snapshot.contains("www.uvsq.fr 10.0.0.5"));
+
+    Dns reloaded = new Dns(new JournalStorage(databaseFile, 64));
+    assertEquals(10, reloaded.getAddresses(new NomMachine("www.uvsq.fr"), false).length);
+    assertNull(reloaded.getItem(new AdresseIP("10.0.0.5")));
+    reloaded.close();
+  }
+
+  @Test
+  public void testFailedCompactionIsReportedThenRetried() throws Exception {
+    // A non-empty directory in place of the temporary snapshot makes the compaction fail
+    Path temporary = tempDir.resolve("dns-database.txt.tmp");
+    Files.createDirectory(temporary);
+    Files.createFile(temporary.resolve("bloque"));
+    Path compacting = tempDir.resolve("dns-database.txt.journal.compacting");
+    JournalStorage storage = new JournalStorage(databaseFile, 64);
+    DnsException failure = null;
+    int refused = 0;
+    while (failure == null && refused < 200) {
+      refused++;
+      try {
+        storage.save(List.of(new DnsItem(new AdresseIP("10.0.0." + refused),
+            new NomMachine("m" + refused + ".exemple.fr"))), List.of());
+        Thread.sleep(5);
+      } catch (DnsException e) {
+        failure = e;
+      }
+    }
+    assertNotNull(failure);
+    assertTrue(failure.getMessage().startsWith("Le compactage du journal a échoué"));
+    assertTrue(Files.exists(compacting));
+
+    // Once the cause is gone, the next save merges the rotated journal
+    Files.delete(temporary.resolve("bloque"));
+    Files.delete(temporary);
+    storage.save(List.of(new DnsItem(new AdresseIP("10.0.1.1"),
+        new NomMachine("apres.exemple.fr"))), List.of());
+    storage.close();
+    assertFalse(Files.exists(compacting));
+    assertTrue(Files.readAllLines(databaseFile).contains("m1.exemple.fr 10.0.0.1"));
+
+    Dns reloaded = new Dns(new JournalStorage(databaseFile, 1 << 20));
+    assertNotNull(reloaded.getItem(new NomMachine("apres.exemple.fr")));
+    // The save reporting the failure wrote nothing
+    assertNull(reloaded.getItem(new AdresseIP("10.0.0." + refused)));
+    assertNotNull(reloaded.getItem(new AdresseIP("10.0.0." + (refused - 1))));
+    reloaded.close();
+  }
+}
@@ -0,0 +1,71 @@
+package fr.uvsq.cprog.collex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for LatencyHistogram class.
+ */
+public class LatencyHistogramTest {
+
+  @Test
+  public void testEmpty() {
+    LatencyHistogram histogram = new LatencyHistogram();
+
+    assertEquals(0, histogram.getCount());
+    assertEquals(0, histogram.getPercentile(50));
+    assertEquals(0, histogram.getMax());
+  }
+
+  @Test
+  public void testSmallValuesAreExact() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 50; i++) {
+      histogram.record(i);
+    }
+
+    assertEquals(50, histogram.getCount());
+    assertEquals(25, histogram.getPercentile(50));
+    assertEquals(50, histogram.getPercentile(100));
+    assertEquals(50, histogram.getMax());
+  }
+
+  @Test
+  public void testPercentilesWithinPrecision() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 100_000; i++) {
+      histogram.record(i * 1000L);
+    }
+
+    assertWithin(50_000_000L, histogram.getPercentile(50));
+    assertWithin(99_000_000L, histogram.getPercentile(99));
+    assertWithin(99_900_000L, histogram.getPercentile(99.9));
+    assertEquals(100_000_000L, histogram.getMax());
+  }
+
+  @Test
+  public void testBucketsAreContiguous() {
+    for (long value = 0; value < 1 << 16; value++) {
+      int bucket = LatencyHistogram.bucket(value);
+      assertTrue(value <= LatencyHistogram.highestValue(bucket));
+      assertTrue(bucket == 0 || value > LatencyHistogram.highestValue(bucket - 1));
+    }
+    assertTrue(LatencyHistogram.bucket(Long.MAX_VALUE) >= 0);
+  }
+
+  @Test
+  public void testNegativeValueCountsAsZero() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(-5);
+
+    assertEquals(1, histogram.getCount());
+    assertEquals(0, histogram.getMax());
+  }
+
+  private static void assertWithin(long expected, long actual) {
+    assertTrue("attendu ~" + expected + ", obtenu " + actual,
+        Math.abs(actual - expected) <= expected * 0.04);
+  }
+}
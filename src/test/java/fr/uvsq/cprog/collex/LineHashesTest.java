@@ -0,0 +1,106 @@
+package fr.uvsq.cprog.collex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Test;
+
+/**
+ * Unit tests for LineHashes class.
+ */
+public class LineHashesTest {
+
+  /**
+   * Reads lines identified by their hash, the address of a line being its hash.
+   */
+  private static List<DnsItem> read(LineHashes lines, long... hashes) {
+    lines.startRead();
+    for (long hash : hashes) {
+      if (!lines.found(hash)) {
+        lines.add(hash, item(hash));
+      }
+    }
+    List<DnsItem> removed = new ArrayList<>();
+    lines.endRead(removed);
+    return removed;
+  }
+
+  private static DnsItem item(long hash) {
+    return new DnsItem(new AdresseIP((int) hash), new NomMachine("m" + hash + ".exemple.fr"));
+  }
+
+  @Test
+  public void testFindsRemovedLines() {
+    LineHashes lines = new LineHashes();
+    assertTrue(read(lines, 1, 2, 3, 4).isEmpty());
+
+    assertEquals(List.of(item(2)), read(lines, 1, 3, 5, 4));
+    assertEquals(4, lines.size());
+    assertTrue(read(lines, 1, 3, 5, 4).isEmpty());
+  }
+
+  @Test
+  public void testReorderedAndRepeatedLinesAreKnown() {
+    LineHashes lines = new LineHashes();
+    read(lines, 1, 2, 3, 4);
+
+    lines.startRead();
+    for (long hash : new long[] {4, 3, 3, 1, 2, 1}) {
+      assertTrue(lines.found(hash));
+    }
+    assertFalse(lines.found(9));
+    List<DnsItem> removed = new ArrayList<>();
+    lines.endRead(removed);
+    assertTrue(removed.isEmpty());
+    assertEquals(4, lines.size());
+  }
+
+  @Test
+  public void testAbortedReadKeepsKnownLines() {
+    LineHashes lines = new LineHashes();
+    read(lines, 1, 2, 3);
+
+    lines.startRead();
+    lines.found(1);
+    lines.add(7, item(7));
+    lines.abortRead();
+    assertEquals(3, lines.size());
+    assertTrue(read(lines, 1, 2, 3).isEmpty());
+    read(lines, 1, 2, 3, 7);
+    assertEquals(List.of(item(7)), read(lines, 1, 2, 3));
+  }
+
+  @Test
+  public void testMatchesSetOnRandomChanges() {
+    Random random = new Random(42);
+    LineHashes lines = new LineHashes();
+    List<Long> file = new ArrayList<>();
+    for (int round = 0; round < 50; round++) {
+      Set<Long> before = new HashSet<>(file);
+      for (int i = 0; i < 200; i++) {
+        int position = file.isEmpty() ? 0 : random.nextInt(file.size());
+        if (random.nextInt(3) == 0 && !file.isEmpty()) {
+          file.remove(position);
+        } else {
+          // Small hashes collide in the table, which exercises the removal of slots
+          file.add(position, (long) random.nextInt(5000) + 1);
+        }
+      }
+      Set<Long> after = new HashSet<>(file);
+
+      List<DnsItem> removed = read(lines, file.stream().mapToLong(Long::longValue).toArray());
+      Set<Long> expected = new HashSet<>(before);
+      expected.removeAll(after);
+      Set<Long> actual = new HashSet<>();
+      removed.forEach(item -> actual.add((long) item.getAdresseIp().toInt()));
+      assertEquals(expected, actual);
+      assertEquals(after.size(), lines.size());
+    }
+  }
+}
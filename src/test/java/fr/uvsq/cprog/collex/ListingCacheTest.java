@@ -0,0 +1,106 @@
+package fr.uvsq.cprog.collex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for ListingCache class.
+ */
+public class ListingCacheTest {
+
+  @Test
+  public void testEvictsLeastRecentlyUsed() {
+    ListingCache cache = new ListingCache(2, new DnsStats());
+    cache.put("a.fr", false, false, "A", cache.version());
+    cache.put("b.fr", false, false, "B", cache.version());
+    cache.get("a.fr", false, false);
+    cache.put("c.fr", false, false, "C", cache.version());
+
+    assertEquals("A", cache.get("a.fr", false, false));
+    assertNull(cache.get("b.fr", false, false));
+    assertEquals("C", cache.get("c.fr", false, false));
+  }
+
+  @Test
+  public void testSortOrderAndRecursionAreDistinctKeys() {
+    ListingCache cache = new ListingCache(8, new DnsStats());
+    cache.put("uvsq.fr", false, false, "par nom", cache.version());
+
+    assertNull(cache.get("uvsq.fr", true, false));
+    assertNull(cache.get("uvsq.fr", false, true));
+    assertEquals("par nom", cache.get("uvsq.fr", false, false));
+  }
+
+  @Test
+  public void testInvalidateDomainAndRecursiveParents() {
+    ListingCache cache = new ListingCache(8, new DnsStats());
+    long version = cache.version();
+    cache.put("info.uvsq.fr", false, false, "info", version);
+    cache.put("uvsq.fr", false, false, "uvsq", version);
+    cache.put("uvsq.fr", true, true, "uvsq -r", version);
+    cache.put("fr", false, true, "fr -r", version);
+    cache.put("exemple.fr", false, true, "exemple -r", version);
+
+    cache.invalidate("info.uvsq.fr");
+
+    assertNull(cache.get("info.uvsq.fr", false, false));
+    assertEquals("uvsq", cache.get("uvsq.fr", false, false));
+    assertNull(cache.get("uvsq.fr", true, true));
+    assertNull(cache.get("fr", false, true));
+    assertEquals("exemple -r", cache.get("exemple.fr", false, true));
+  }
+
+  @Test
+  public void testListingComputedBeforeInvalidationIsDropped() {
+    ListingCache cache = new ListingCache(8, new DnsStats());
+    long version = cache.version();
+    cache.invalidate("uvsq.fr");
+    cache.put("uvsq.fr", false, false, "périmé", version);
+
+    assertNull(cache.get("uvsq.fr", false, false));
+  }
+
+  @Test
+  public void testShrinkingCapacityEvicts() {
+    ListingCache cache = new ListingCache(4, new DnsStats());
+    cache.put("a.fr", false, false, "A", cache.version());
+    cache.put("b.fr", false, false, "B", cache.version());
+    cache.setCapacity(1);
+
+    assertNull(cache.get("a.fr", false, false));
+    assertEquals("B", cache.get("b.fr", false, false));
+    cache.setCapacity(0);
+    cache.put("c.fr", false, false, "C", cache.version());
+    assertNull(cache.get("c.fr", false, false));
+  }
+
+  @Test
+  public void testConcurrentPutsStayWithinCapacity() throws InterruptedException {
+    ListingCache cache = new ListingCache(16, new DnsStats());
+    Thread[] writers = new Thread[4];
+    for (int t = 0; t < writers.length; t++) {
+      int first = t * 1000;
+      writers[t] = new Thread(() -> {
+        for (int i = first; i < first + 1000; i++) {
+          cache.put("d" + i + ".fr", false, false, "L" + i, cache.version());
+          cache.get("d" + (i - 1) + ".fr", false, false);
+        }
+      });
+      writers[t].start();
+    }
+    for (Thread writer : writers) {
+      writer.join();
+    }
+
+    int cached = 0;
+    for (int i = 0; i < 4000; i++) {
+      if (cache.get("d" + i + ".fr", false, false) != null) {
+        cached++;
+      }
+    }
+    assertTrue(cached > 0 && cached <= 16);
+  }
+}
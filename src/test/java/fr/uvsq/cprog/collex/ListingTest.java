@@ -0,0 +1,37 @@
+package fr.uvsq.cprog.collex;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * Unit tests for Listing class.
+ */
+public class ListingTest {
+  private static final List<DnsItem> ITEMS = List.of(
+      new DnsItem(new AdresseIP("10.0.0.1"), new NomMachine("a.exemple.fr")),
+      new DnsItem(new AdresseIP("10.0.0.2"), new NomMachine("b.exemple.fr")));
+
+  @Test
+  public void testWritesOneLinePerEntry() {
+    StringBuilder out = new StringBuilder();
+    new Listing(ITEMS.iterator(), Listing.UNLIMITED, "vide").writeTo(out);
+
+    assertEquals("10.0.0.1 a.exemple.fr\n10.0.0.2 b.exemple.fr\n", out.toString());
+  }
+
+  @Test
+  public void testLimitEndsWithContinuation() {
+    assertEquals("10.0.0.1 a.exemple.fr\n-- suite : --after a.exemple.fr@10.0.0.1",
+        new Listing(ITEMS.iterator(), 1, "vide").toString());
+    assertEquals("10.0.0.1 a.exemple.fr\n10.0.0.2 b.exemple.fr",
+        new Listing(ITEMS.iterator(), 2, "vide").toString());
+  }
+
+  @Test
+  public void testEmptyListing() {
+    assertEquals("vide", new Listing(Collections.emptyIterator(), 1, "vide").toString());
+  }
+}
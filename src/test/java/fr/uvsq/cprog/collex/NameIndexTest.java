@@ -0,0 +1,86 @@
+package fr.uvsq.cprog.collex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for NameIndex class.
+ */
+public class NameIndexTest {
+
+  private static DnsItem item(int ip, String nom) {
+    return new DnsItem(new AdresseIP(ip), new NomMachine(nom));
+  }
+
+  private static NameProbe probe(String name) {
+    NameProbe probe = new NameProbe();
+    for (int i = 0; i < name.length(); i++) {
+      probe.append(name.charAt(i));
+    }
+    return probe;
+  }
+
+  @Test
+  public void testPutAndGet() {
+    NameIndex index = new NameIndex();
+    DnsItem item = item(1, "www.uvsq.fr");
+
+    assertNull(index.put(item));
+    assertSame(item, index.get(new NomMachine("WWW.uvsq.fr")));
+    assertSame(item, index.get(probe("www.uvsq.fr")));
+    assertTrue(index.containsKey(new NomMachine("www.uvsq.fr")));
+    assertNull(index.get(probe("ww.uvsq.fr")));
+    assertEquals(1, index.size());
+  }
+
+  @Test
+  public void testPutReplacesTheEntryOfAName() {
+    NameIndex index = new NameIndex();
+    DnsItem first = item(1, "www.uvsq.fr");
+    DnsItem second = item(2, "www.uvsq.fr");
+    index.put(first);
+
+    assertSame(first, index.put(second));
+    assertSame(second, index.get(probe("www.uvsq.fr")));
+    assertEquals(1, index.size());
+  }
+
+  @Test
+  public void testRemoveOnlyTheGivenEntry() {
+    NameIndex index = new NameIndex();
+    DnsItem item = item(1, "www.uvsq.fr");
+    index.put(item);
+
+    assertFalse(index.remove(item(2, "www.uvsq.fr")));
+    assertTrue(index.remove(item));
+    assertFalse(index.remove(item));
+    assertNull(index.get(new NomMachine("www.uvsq.fr")));
+    assertEquals(0, index.size());
+  }
+
+  @Test
+  public void testGrowKeepsEveryName() {
+    NameIndex index = new NameIndex();
+    for (int i = 0; i < 1000; i++) {
+      index.put(item(i, "m" + i + ".uvsq.fr"));
+      if (i % 3 == 0) {
+        index.remove(item(i, "m" + i + ".uvsq.fr"));
+      }
+    }
+
+    for (int i = 0; i < 1000; i++) {
+      DnsItem found = index.get(probe("m" + i + ".uvsq.fr"));
+      if (i % 3 == 0) {
+        assertNull(found);
+      } else {
+        assertEquals(item(i, "m" + i + ".uvsq.fr"), found);
+      }
+    }
+    assertEquals(666, index.size());
+  }
+}
@@ -0,0 +1,51 @@
+package fr.uvsq.cprog.collex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for NameProbe class.
+ */
+public class NameProbeTest {
+
+  private static NameProbe probe(String name) {
+    NameProbe probe = new NameProbe();
+    for (int i = 0; i < name.length(); i++) {
+      probe.append(name.charAt(i));
+    }
+    return probe;
+  }
+
+  @Test
+  public void testProbeHashesLikeTheName() {
+    NameProbe probe = probe("www.uvsq.fr");
+    NomMachine nom = new NomMachine("WWW.uvsq.fr");
+
+    assertEquals(nom.hashCode(), probe.hash());
+    assertTrue(nom.getNomQualifie().contentEquals(probe));
+    // A probe is never equal to a name, in either direction
+    assertFalse(probe.equals(nom));
+    assertFalse(nom.equals(probe));
+    assertEquals("www.uvsq.fr", probe.toString());
+
+    probe.clear();
+    assertEquals(0, probe.length());
+    assertEquals(probe("ecampus.uvsq.fr").hash(), new NomMachine("ecampus.uvsq.fr").hashCode());
+  }
+
+  @Test
+  public void testStoresFindEntriesByProbe() {
+    DnsItem item = new DnsItem(new AdresseIP("193.51.31.90"), new NomMachine("www.uvsq.fr"));
+    for (EntryStore store : new EntryStore[] {new HeapEntryStore(), new OffHeapEntryStore()}) {
+      store.put(item);
+
+      assertEquals(item, store.get(probe("www.uvsq.fr")));
+      assertNull(store.get(probe("ww.uvsq.fr")));
+      assertNull(store.get(probe("www")));
+    }
+  }
+}
@@ -2,6 +2,7 @@ package fr.uvsq.cprog.collex;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThrows;
 
 import org.junit.Test;
@@ -93,4 +94,35 @@ public class NomMachineTest {
     assertEquals("www.uvsq.fr", nom.getNomQualifie());
     assertEquals("www", nom.getNomMachine());
   }
+
+  @Test
+  public void testCaseInsensitive() {
+    NomMachine nom1 = new NomMachine("WWW.Uvsq.FR");
+    NomMachine nom2 = new NomMachine("www.uvsq.fr");
+
+    assertEquals("www.uvsq.fr", nom1.getNomQualifie());
+    assertEquals(nom2, nom1);
+    assertEquals(nom2.hashCode(), nom1.hashCode());
+  }
+
+  @Test
+  public void testWithDomaineKeepsTheName() {
+    NomMachine nom = new NomMachine("www.uvsq.fr");
+    String domaine = new String("uvsq.fr");
+    NomMachine partage = nom.withDomaine(domaine);
+
+    assertEquals(nom, partage);
+    assertSame(domaine, partage.getNomDomaine());
+    assertSame(partage, partage.withDomaine(domaine));
+  }
+
+  @Test
+  public void testOfNormalizedEqualsValidatedName() {
+    NomMachine nom = new NomMachine("WWW.Uvsq.fr");
+    NomMachine copie = NomMachine.ofNormalized(nom.getNomQualifie());
+
+    assertEquals(nom, copie);
+    assertEquals("www", copie.getNomMachine());
+    assertEquals(nom.getNomDomaine(), copie.getNomDomaine());
+  }
 }
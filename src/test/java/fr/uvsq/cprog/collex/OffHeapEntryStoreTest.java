@@ -0,0 +1,139 @@
+package fr.uvsq.cprog.collex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.Test;
+
+/**
+ * Unit tests for OffHeapEntryStore class.
+ */
+public class OffHeapEntryStoreTest {
+
+  private static DnsItem item(String ip, String nom) {
+    return new DnsItem(new AdresseIP(ip), new NomMachine(nom));
+  }
+
+  @Test
+  public void testLookupsMaterializeEntries() {
+    OffHeapEntryStore store = new OffHeapEntryStore();
+    store.put(item("193.51.31.90", "www.uvsq.fr"));
+    store.put(item("0.0.0.0", "zero.exemple.fr"));
+
+    DnsItem byIp = store.get(new AdresseIP("193.51.31.90").toInt());
+    assertEquals("www.uvsq.fr", byIp.getNomMachine().getNomQualifie());
+    assertEquals("uvsq.fr", byIp.getNomMachine().getNomDomaine());
+    assertEquals("0.0.0.0", store.get(new NomMachine("ZERO.exemple.fr")).getAdresseIp().toString());
+    assertNull(store.get(new AdresseIP("10.0.0.1").toInt()));
+    assertNull(store.get(new NomMachine("absent.uvsq.fr")));
+    assertTrue(store.containsIp(0));
+    assertFalse(store.containsName(new NomMachine("ww.uvsq.fr")));
+    assertEquals(2, store.size());
+  }
+
+  @Test
+  public void testNonAsciiNames() {
+    OffHeapEntryStore store = new OffHeapEntryStore();
+    store.put(item("10.0.0.1", "café.exemple.fr"));
+
+    assertEquals("café.exemple.fr", store.get(new NomMachine("CAFÉ.exemple.fr"))
+        .getNomMachine().getNomQualifie());
+    assertNull(store.get(new NomMachine("cafe.exemple.fr")));
+  }
+
+  @Test
+  public void testGrowsAcrossChunksAndTables() {
+    OffHeapEntryStore store = new OffHeapEntryStore(1024);
+    int count = 5000;
+    for (int i = 0; i < count; i++) {
+      store.put(new DnsItem(new AdresseIP(0x0A000000 + i), new NomMachine("h" + i + ".exemple.fr")));
+    }
+
+    assertEquals(count, store.size());
+    for (int i = 0; i < count; i += 7) {
+      assertEquals("h" + i + ".exemple.fr",
+          store.get(0x0A000000 + i).getNomMachine().getNomQualifie());
+      assertEquals(0x0A000000 + i,
+          store.get(new NomMachine("h" + i + ".exemple.fr")).getAdresseIp().toInt());
+    }
+    Set<String> names = new HashSet<>();
+    store.forEach(item -> names.add(item.getNomMachine().getNomQualifie()));
+    assertEquals(count, names.size());
+    assertEquals(count, store.values().size());
+    assertTrue(store.allocatedBytes() > 0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testChunkSizeMustBeAPowerOfTwo() {
+    new OffHeapEntryStore(3000);
+  }
+
+  @Test
+  public void testRemove() {
+    OffHeapEntryStore store = new OffHeapEntryStore(1024);
+    for (int i = 0; i < 2000; i++) {
+      store.put(new DnsItem(new AdresseIP(i), new NomMachine("h" + i + ".exemple.fr")));
+    }
+    for (int i = 0; i < 2000; i += 2) {
+      store.remove(store.get(i));
+    }
+
+    assertEquals(1000, store.size());
+    assertNull(store.get(0));
+    assertFalse(store.containsName(new NomMachine("h0.exemple.fr")));
+    assertEquals("h1.exemple.fr", store.get(1).getNomMachine().getNomQualifie());
+    assertEquals(1000, store.values().stream().count());
+    // Removed slots are reused
+    store.put(new DnsItem(new AdresseIP(0), new NomMachine("autre.exemple.fr")));
+    assertEquals("autre.exemple.fr", store.get(0).getNomMachine().getNomQualifie());
+    assertEquals(1001, store.size());
+  }
+
+  @Test
+  public void testAddressesOfOneName() {
+    OffHeapEntryStore store = new OffHeapEntryStore(1024);
+    store.put(item("10.0.0.1", "www.exemple.fr"));
+    store.putAddress(item("10.0.0.2", "www.exemple.fr"));
+
+    assertEquals(2, store.size());
+    assertEquals("10.0.0.1", store.get(new NomMachine("www.exemple.fr")).getAdresseIp()
+        .toString());
+    assertEquals("www.exemple.fr", store.get(new AdresseIP("10.0.0.2").toInt()).getNomMachine()
+        .toString());
+    // Removing an address the name index does not refer to keeps the name
+    store.remove(item("10.0.0.2", "www.exemple.fr"));
+    assertTrue(store.containsName(new NomMachine("www.exemple.fr")));
+    store.remove(item("10.0.0.1", "www.exemple.fr"));
+    assertFalse(store.containsName(new NomMachine("www.exemple.fr")));
+  }
+
+  @Test
+  public void testRemovedRecordsAreReclaimed() {
+    OffHeapEntryStore store = new OffHeapEntryStore(1024);
+    for (int i = 0; i < 2000; i++) {
+      store.put(new DnsItem(new AdresseIP(i), new NomMachine("h" + i + ".exemple.fr")));
+    }
+    store.putAddress(new DnsItem(new AdresseIP(5000), new NomMachine("h1999.exemple.fr")));
+    long allocated = store.allocatedBytes();
+    for (int i = 0; i < 1990; i++) {
+      store.remove(store.get(i));
+    }
+
+    assertTrue(store.compactions() > 0);
+    assertTrue(store.deadBytes() < 1024);
+    assertTrue(store.allocatedBytes() < allocated);
+    assertEquals(11, store.size());
+    assertNull(store.get(0));
+    assertEquals(1999, store.get(new NomMachine("h1999.exemple.fr")).getAdresseIp().toInt());
+    assertEquals("h1999.exemple.fr", store.get(5000).getNomMachine().getNomQualifie());
+    assertEquals("h1990.exemple.fr", store.get(1990).getNomMachine().getNomQualifie());
+    assertEquals(11, store.values().stream().count());
+    // Later additions go to the new chunks
+    store.put(new DnsItem(new AdresseIP(0), new NomMachine("autre.exemple.fr")));
+    assertEquals(0, store.get(new NomMachine("autre.exemple.fr")).getAdresseIp().toInt());
+  }
+}
@@ -0,0 +1,172 @@
+package fr.uvsq.cprog.collex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for ShardedStorage class.
+ */
+public class ShardedStorageTest {
+  private Path tempDir;
+  private Path databaseFile;
+
+  /**
+   * Setup method to create a database file in a temporary directory before each test.
+   *
+   * @throws Exception if setup fails
+   */
+  @Before
+  public void setUp() throws Exception {
+    tempDir = Files.createTempDirectory("dns-shards");
+    databaseFile = tempDir.resolve("dns-database.txt");
+    Files.write(databaseFile, List.of(
+        "www.uvsq.fr 193.51.31.90",
+        "ecampus.uvsq.fr 193.51.25.12",
+        "www.exemple.com 10.0.0.1"
+    ));
+  }
+
+  /**
+   * Teardown method to delete the temporary directory after each test.
+   *
+   * @throws Exception if cleanup fails
+   */
+  @After
+  public void tearDown() throws Exception {
+    try (Stream<Path> paths = Files.walk(tempDir)) {
+      for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+        Files.delete(path);
+      }
+    }
+  }
+
+  private ShardedStorage open(int shards) throws DnsException {
+    return new ShardedStorage(new TextFileStorage(databaseFile), shards);
+  }
+
+  @Test
+  public void testCreatesShardsFromDatabaseFile() throws DnsException, IOException {
+    ShardedStorage storage = open(4);
+
+    assertTrue(Files.exists(storage.getDirectory().resolve(ShardedStorage.MANIFEST)));
+    List<String> uvsq = Files.readAllLines(storage.shardPath(storage.shardOf("uvsq.fr")));
+    assertTrue(uvsq.containsAll(List.of("www.uvsq.fr 193.51.31.90",
+        "ecampus.uvsq.fr 193.51.25.12")));
+    List<DnsItem> items = new ArrayList<>();
+    storage.load(items::add, items::remove);
+    assertEquals(3, items.size());
+    storage.close();
+  }
+
+  @Test
+  public void testAddAppendsToItsShardOnly() throws DnsException, IOException {
+    ShardedStorage storage = open(4);
+    int shard = storage.shardOf("exemple.fr");
+    List<Long> sizes = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      sizes.add(Files.size(storage.shardPath(i)));
+    }
+    Dns dns = new Dns(storage);
+
+    dns.addItem(new AdresseIP("10.0.0.2"), new NomMachine("serveur.exemple.fr"));
+    dns.close();
+
+    for (int i = 0; i < 4; i++) {
+      if (i != shard) {
+        assertEquals((long) sizes.get(i), Files.size(storage.shardPath(i)));
+      }
+    }
+    List<String> lines = Files.readAllLines(storage.shardPath(shard));
+    assertEquals("serveur.exemple.fr 10.0.0.2", lines.get(lines.size() - 1));
+  }
+
+  @Test
+  public void testReloadKeepsShardCountOfManifest() throws DnsException {
+    Dns dns = new Dns(open(4));
+    dns.addItem(new AdresseIP("10.0.0.2"), new NomMachine("serveur.exemple.fr"));
+    dns.close();
+
+    ShardedStorage storage = open(16);
+    Dns reloaded = new Dns(storage);
+    assertEquals(4, storage.getShardCount());
+    assertNotNull(reloaded.getItem(new NomMachine("serveur.exemple.fr")));
+    assertEquals(2, reloaded.getItems("uvsq.fr").size());
+    reloaded.close();
+  }
+
+  @Test
+  public void testIncompleteLastLineIsEndedBeforeAppending() throws DnsException, IOException {
+    ShardedStorage storage = open(1);
+    Files.write(storage.shardPath(0), "tronque.uvsq.fr 10.0".getBytes(StandardCharsets.UTF_8),
+        StandardOpenOption.APPEND);
+    Dns dns = new Dns(storage);
+
+    dns.addItem(new AdresseIP("10.0.0.2"), new NomMachine("serveur.exemple.fr"));
+    dns.close();
+
+    Dns reloaded = new Dns(open(1));
+    assertNotNull(reloaded.getItem(new NomMachine("serveur.exemple.fr")));
+    assertEquals(4, reloaded.countItemsUnder("fr") + reloaded.countItemsUnder("com"));
+    reloaded.close();
+  }
+
+  @Test
+  public void testInvalidManifest() throws IOException, DnsException {
+    open(2).close();
+    Files.write(tempDir.resolve("dns-database.txt.shards").resolve(ShardedStorage.MANIFEST),
+        List.of("shards zero"));
+
+    assertThrows(DnsException.class, () -> open(2));
+  }
+
+  @Test
+  public void testRemovalAppendsTombstoneToItsShard() throws DnsException, IOException {
+    ShardedStorage storage = open(4);
+    Dns dns = new Dns(storage);
+
+    dns.removeItem(new NomMachine("www.uvsq.fr"));
+    dns.updateItem(new NomMachine("www.exemple.com"), new AdresseIP("10.0.0.2"));
+    dns.close();
+
+    List<String> uvsq = Files.readAllLines(storage.shardPath(storage.shardOf("uvsq.fr")));
+    assertEquals("- www.uvsq.fr 193.51.31.90", uvsq.get(uvsq.size() - 1));
+    Dns reloaded = new Dns(open(4));
+    assertNull(reloaded.getItem(new NomMachine("www.uvsq.fr")));
+    assertEquals(1, reloaded.getItems("uvsq.fr").size());
+    assertNull(reloaded.getItem(new AdresseIP("10.0.0.1")));
+    assertNotNull(reloaded.getItem(new AdresseIP("10.0.0.2")));
+    reloaded.close();
+  }
+
+  @Test
+  public void testShardMostlyRemovedIsRewrittenOnLoad() throws DnsException, IOException {
+    ShardedStorage storage = open(1);
+    Dns dns = new Dns(storage);
+    dns.removeItem(new NomMachine("www.uvsq.fr"));
+    dns.removeItem(new NomMachine("www.exemple.com"));
+    dns.close();
+    assertEquals(5, Files.readAllLines(storage.shardPath(0)).size());
+
+    Dns reloaded = new Dns(open(1));
+    assertEquals(List.of("ecampus.uvsq.fr 193.51.25.12"),
+        Files.readAllLines(storage.shardPath(0)));
+    assertEquals(1, reloaded.countItemsUnder("fr") + reloaded.countItemsUnder("com"));
+    reloaded.close();
+  }
+}